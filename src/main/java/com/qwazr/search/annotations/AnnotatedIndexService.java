@@ -28,6 +28,7 @@ import com.qwazr.search.index.IndexCheckStatus;
 import com.qwazr.search.index.IndexServiceInterface;
 import com.qwazr.search.index.IndexSettingsDefinition;
 import com.qwazr.search.index.IndexStatus;
+import com.qwazr.search.index.LeaseDefinition;
 import com.qwazr.search.index.PostDefinition;
 import com.qwazr.search.index.QueryDefinition;
 import com.qwazr.search.index.QueryDocumentsIterator;
@@ -711,6 +712,22 @@ public class AnnotatedIndexService<T> {
         return indexService.explainQueryDot(schemaName, indexName, query, docId, descriptionWrapSize);
     }
 
+    /**
+     * Acquire a point-in-time lease. The queries built with this lease id see the same version of the index.
+     *
+     * @param ttlMs the lease expires if it is not used during this period, in milliseconds
+     * @return the lease
+     */
+    public LeaseDefinition acquireLease(final Long ttlMs) {
+        checkParameters();
+        return indexService.acquireLease(schemaName, indexName, ttlMs);
+    }
+
+    public boolean releaseLease(final String leaseId) {
+        checkParameters();
+        return indexService.releaseLease(schemaName, indexName, leaseId);
+    }
+
     public ResultDefinition.WithMap searchQueryWithMap(final QueryDefinition query) {
         checkParameters();
         return indexService.searchQuery(schemaName, indexName, query, false);
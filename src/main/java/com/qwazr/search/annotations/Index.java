@@ -66,4 +66,24 @@ public @interface Index {
 	double nrtCachingDirectoryMaxMergeSizeMB() default IndexSettingsDefinition.DEFAULT_NRT_CACHING_DIRECTORY_MERGE_SIZE_MB;
 
 	double nrtCachingDirectoryMaxCachedMB() default IndexSettingsDefinition.DEFAULT_NRT_CACHING_DIRECTORY_MAX_CACHED_MB;
+
+	IndexSettingsDefinition.CommitPolicy commitPolicy() default IndexSettingsDefinition.CommitPolicy.IMMEDIATE;
+
+	IndexSettingsDefinition.CommitWait commitWait() default IndexSettingsDefinition.CommitWait.DURABLE;
+
+	int groupCommitDelayMs() default IndexSettingsDefinition.DEFAULT_GROUP_COMMIT_DELAY_MS;
+
+	int groupCommitMaxPending() default IndexSettingsDefinition.DEFAULT_GROUP_COMMIT_MAX_PENDING;
+
+	double nrtTargetMaxStaleSec() default IndexSettingsDefinition.DEFAULT_NRT_TARGET_MAX_STALE_SEC;
+
+	double nrtTargetMinStaleSec() default IndexSettingsDefinition.DEFAULT_NRT_TARGET_MIN_STALE_SEC;
+
+	boolean translog() default false;
+
+	int translogCommitIntervalSec() default IndexSettingsDefinition.DEFAULT_TRANSLOG_COMMIT_INTERVAL_SEC;
+
+	boolean idBloomFilter() default false;
+
+	int maxLeases() default IndexSettingsDefinition.DEFAULT_MAX_LEASES;
 }
@@ -17,6 +17,7 @@
 package com.qwazr.search.field.Converters;
 
 import com.qwazr.search.index.BytesRefUtils;
+import com.qwazr.utils.concurrent.FunctionEx;
 import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
@@ -30,7 +31,9 @@ import org.apache.lucene.util.BytesRef;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class MultiReader {
 
@@ -49,6 +52,26 @@ public class MultiReader {
 
 	final static int NOT_FOUND = -1;
 
+	NumericDocValues numeric(final int pos, final String field) throws IOException {
+		return leafReaders[pos].getNumericDocValues(field);
+	}
+
+	SortedDocValues sorted(final int pos, final String field) throws IOException {
+		return leafReaders[pos].getSortedDocValues(field);
+	}
+
+	BinaryDocValues binary(final int pos, final String field) throws IOException {
+		return leafReaders[pos].getBinaryDocValues(field);
+	}
+
+	SortedNumericDocValues sortedNumeric(final int pos, final String field) throws IOException {
+		return leafReaders[pos].getSortedNumericDocValues(field);
+	}
+
+	SortedSetDocValues sortedSet(final int pos, final String field) throws IOException {
+		return leafReaders[pos].getSortedSetDocValues(field);
+	}
+
 	int getLeafReader(final int docId) {
 		int i = NOT_FOUND;
 		for (final int docBase : docBases) {
@@ -63,7 +86,7 @@ public class MultiReader {
 		final int pos = getLeafReader(docId);
 		if (pos == NOT_FOUND)
 			return 0;
-		final NumericDocValues docValues = leafReaders[pos].getNumericDocValues(field);
+		final NumericDocValues docValues = numeric(pos, field);
 		if (docValues == null)
 			return 0;
 		return docValues.get(docId - docBases[pos]);
@@ -73,7 +96,7 @@ public class MultiReader {
 		final int pos = getLeafReader(docId);
 		if (pos == NOT_FOUND)
 			return BytesRefUtils.EMPTY;
-		final SortedDocValues docValues = leafReaders[pos].getSortedDocValues(field);
+		final SortedDocValues docValues = sorted(pos, field);
 		if (docValues == null)
 			return BytesRefUtils.EMPTY;
 		return BytesRef.deepCopyOf(docValues.get(docId - docBases[pos]));
@@ -83,7 +106,7 @@ public class MultiReader {
 		final int pos = getLeafReader(docId);
 		if (pos == NOT_FOUND)
 			return BytesRefUtils.EMPTY;
-		final BinaryDocValues docValues = leafReaders[pos].getBinaryDocValues(field);
+		final BinaryDocValues docValues = binary(pos, field);
 		if (docValues == null)
 			return BytesRefUtils.EMPTY;
 		return docValues.get(docId - docBases[pos]);
@@ -95,7 +118,7 @@ public class MultiReader {
 		final int pos = getLeafReader(docId);
 		if (pos == NOT_FOUND)
 			return empty;
-		final SortedNumericDocValues docValues = leafReaders[pos].getSortedNumericDocValues(field);
+		final SortedNumericDocValues docValues = sortedNumeric(pos, field);
 		if (docValues == null)
 			return empty;
 		docValues.setDocument(docId - docBases[pos]);
@@ -112,7 +135,7 @@ public class MultiReader {
 		final int pos = getLeafReader(docId);
 		if (pos == NOT_FOUND)
 			return Collections.emptyList();
-		final SortedSetDocValues docValues = leafReaders[pos].getSortedSetDocValues(field);
+		final SortedSetDocValues docValues = sortedSet(pos, field);
 		if (docValues == null)
 			return Collections.emptyList();
 		docValues.setDocument(docId - docBases[pos]);
@@ -123,4 +146,61 @@ public class MultiReader {
 		return values;
 	}
 
+	/**
+	 * The doc values of one segment, the doc ids are relative to the segment.
+	 * The doc values of each field are retrieved once and reused for the next documents:
+	 * the segment must be read by one thread.
+	 */
+	public static final class Leaf extends MultiReader {
+
+		private final LeafReader leafReader;
+		private final Map<String, Object> docValues;
+
+		public Leaf(final LeafReader leafReader) {
+			super(leafReader);
+			this.leafReader = leafReader;
+			this.docValues = new HashMap<>();
+		}
+
+		@SuppressWarnings("unchecked")
+		private <T> T cached(final String field, final FunctionEx<String, T, IOException> supplier)
+				throws IOException {
+			if (docValues.containsKey(field))
+				return (T) docValues.get(field);
+			final T values = supplier.apply(field);
+			docValues.put(field, values);
+			return values;
+		}
+
+		@Override
+		int getLeafReader(final int docId) {
+			return 0;
+		}
+
+		@Override
+		NumericDocValues numeric(final int pos, final String field) throws IOException {
+			return cached(field, leafReader::getNumericDocValues);
+		}
+
+		@Override
+		SortedDocValues sorted(final int pos, final String field) throws IOException {
+			return cached(field, leafReader::getSortedDocValues);
+		}
+
+		@Override
+		BinaryDocValues binary(final int pos, final String field) throws IOException {
+			return cached(field, leafReader::getBinaryDocValues);
+		}
+
+		@Override
+		SortedNumericDocValues sortedNumeric(final int pos, final String field) throws IOException {
+			return cached(field, leafReader::getSortedNumericDocValues);
+		}
+
+		@Override
+		SortedSetDocValues sortedSet(final int pos, final String field) throws IOException {
+			return cached(field, leafReader::getSortedSetDocValues);
+		}
+	}
+
 }
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.server.ServerException;
+
+import javax.ws.rs.core.Response;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control of the requests of one index.
+ * <p>
+ * At most maxConcurrent requests run at the same time. The other ones wait in a bounded queue,
+ * the highest priority first, until a slot is free or the timeout is reached.
+ * A request is rejected immediately (503) when the queue is full for its priority,
+ * or when the latency observed so far for its priority says it would not be admitted before the timeout.
+ * Each priority has its own latency average: a long export does not make the interactive requests shed.
+ */
+final class AdmissionController {
+
+    enum Priority {
+
+        /**
+         * Searches and gets issued by a user
+         */
+        INTERACTIVE(1.0),
+
+        /**
+         * Long running reads (export, backups)
+         */
+        EXPORT(0.5),
+
+        /**
+         * Bulk ingestion and maintenance writes
+         */
+        BULK(0.5);
+
+        /**
+         * The fraction of the queue available to this priority
+         */
+        private final double queueShare;
+
+        Priority(final double queueShare) {
+            this.queueShare = queueShare;
+        }
+    }
+
+    /**
+     * The weight of the last request in the moving average of the latency
+     */
+    private final static double LATENCY_ALPHA = 0.1;
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long timeoutNanos;
+
+    private final ReentrantLock lock;
+    private final ArrayDeque<Waiter>[] queues;
+
+    private int running;
+    private int queued;
+    private final double[] averageLatencyNanos;
+
+    private final LongAdder admittedCount;
+    private final LongAdder rejectedCount;
+    private final LongAdder timedOutCount;
+
+    @SuppressWarnings("unchecked")
+    AdmissionController(final String name, final Integer maxConcurrent, final Integer maxQueued,
+            final Integer timeoutMs) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent == null || maxConcurrent <= 0 ? Integer.MAX_VALUE : maxConcurrent;
+        this.maxQueued = maxQueued == null ? IndexSettingsDefinition.DEFAULT_MAX_QUEUED_REQUESTS : maxQueued;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(
+                timeoutMs == null ? IndexSettingsDefinition.DEFAULT_ADMISSION_TIMEOUT_MS : timeoutMs);
+        lock = new ReentrantLock();
+        averageLatencyNanos = new double[Priority.values().length];
+        queues = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < queues.length; i++)
+            queues[i] = new ArrayDeque<>();
+        admittedCount = new LongAdder();
+        rejectedCount = new LongAdder();
+        timedOutCount = new LongAdder();
+    }
+
+    /**
+     * Wait for a slot. The returned ticket must be closed when the request is done.
+     *
+     * @param priority the priority of the request
+     * @return a ticket releasing the slot when closed
+     * @throws ServerException (503) if the request is rejected or not admitted before the timeout
+     */
+    Ticket acquire(final Priority priority) {
+        lock.lock();
+        try {
+            if (running < maxConcurrent && queued == 0) {
+                running++;
+                admittedCount.increment();
+                return new Ticket(priority);
+            }
+            checkShedding(priority);
+            final Waiter waiter = new Waiter(lock.newCondition());
+            queues[priority.ordinal()].addLast(waiter);
+            queued++;
+            long nanos = timeoutNanos;
+            try {
+                while (!waiter.admitted) {
+                    if (nanos <= 0) {
+                        queues[priority.ordinal()].remove(waiter);
+                        queued--;
+                        timedOutCount.increment();
+                        throw new ServerException(Response.Status.SERVICE_UNAVAILABLE,
+                                "Timeout while waiting for admission - Index: " + name);
+                    }
+                    nanos = waiter.condition.awaitNanos(nanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (waiter.admitted)
+                    release(priority, null);
+                else {
+                    queues[priority.ordinal()].remove(waiter);
+                    queued--;
+                }
+                throw new ServerException(Response.Status.SERVICE_UNAVAILABLE,
+                        "Interrupted while waiting for admission - Index: " + name);
+            }
+            admittedCount.increment();
+            return new Ticket(priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkShedding(final Priority priority) {
+        if (queued >= maxQueued * priority.queueShare) {
+            rejectedCount.increment();
+            throw new ServerException(Response.Status.SERVICE_UNAVAILABLE,
+                    "Too many pending requests (" + queued + ") - Index: " + name);
+        }
+        // The expected wait: the requests ahead of us, served maxConcurrent at a time
+        final double expectedWaitNanos = averageLatencyNanos[priority.ordinal()] * (queued + 1) / maxConcurrent;
+        if (expectedWaitNanos > timeoutNanos) {
+            rejectedCount.increment();
+            throw new ServerException(Response.Status.SERVICE_UNAVAILABLE,
+                    "The index is overloaded (expected wait: " + TimeUnit.NANOSECONDS.toMillis(
+                            (long) expectedWaitNanos) + " ms) - Index: " + name);
+        }
+    }
+
+    private void release(final Priority priority, final Long latencyNanos) {
+        lock.lock();
+        try {
+            if (latencyNanos != null) {
+                final double average = averageLatencyNanos[priority.ordinal()];
+                averageLatencyNanos[priority.ordinal()] =
+                        average == 0 ? latencyNanos : average + LATENCY_ALPHA * (latencyNanos - average);
+            }
+            running--;
+            for (final ArrayDeque<Waiter> queue : queues) {
+                while (running < maxConcurrent && !queue.isEmpty()) {
+                    final Waiter waiter = queue.pollFirst();
+                    waiter.admitted = true;
+                    running++;
+                    queued--;
+                    waiter.condition.signal();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The reported average latency is the one of the interactive requests
+     */
+    IndexStatus.AdmissionStatus getStatus() {
+        lock.lock();
+        try {
+            return new IndexStatus.AdmissionStatus(maxConcurrent == Integer.MAX_VALUE ? null : maxConcurrent,
+                    running, queued, maxQueued, TimeUnit.NANOSECONDS.toMillis(
+                    (long) averageLatencyNanos[Priority.INTERACTIVE.ordinal()]),
+                    admittedCount.sum(), rejectedCount.sum(), timedOutCount.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private final static class Waiter {
+
+        private final Condition condition;
+        private boolean admitted;
+
+        private Waiter(final Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * Closing the ticket releases the slot and records the execution time of the request
+     */
+    final class Ticket implements AutoCloseable {
+
+        private final Priority priority;
+        private final long startTime;
+
+        private Ticket(final Priority priority) {
+            this.priority = priority;
+            startTime = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            release(priority, System.nanoTime() - startTime);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.utils.LoggerUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decides when the changes applied to the IndexWriter are committed.
+ * With the IMMEDIATE policy every write is committed before returning.
+ * With the GROUP policy concurrent writes are coalesced into one commit,
+ * which occurs when the delay has elapsed or when enough writes are pending.
+ * <p>
+ * The delay is measured by the scheduler, the commits are run by the maintenance pool.
+ * A writer never runs a commit of the GROUP policy, and no thread waits for the delay.
+ * With a translog, a timer commits the logged operations once the commit interval has elapsed,
+ * even if the index does not receive any other write.
+ */
+class CommitScheduler implements Closeable {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(CommitScheduler.class);
+
+    private final WriterAndSearcher writerAndSearcher;
+    private final Translog translog;
+    private final ExecutorService executorService;
+    private final ScheduledExecutorService scheduler;
+    private final IndexSettingsDefinition.CommitPolicy commitPolicy;
+    private final IndexSettingsDefinition.CommitWait defaultCommitWait;
+    private final long delayMs;
+    private final int maxPending;
+
+    private final ReentrantLock commitLock;
+    private final AtomicBoolean backgroundCommit;
+    private final ScheduledFuture<?> translogTimer;
+
+    private CompletableFuture<Void> nextCommit;
+    private ScheduledFuture<?> nextCommitTimer;
+    private int pendingWrites;
+    private volatile boolean closed;
+
+    CommitScheduler(final WriterAndSearcher writerAndSearcher, final Translog translog,
+            final ExecutorService executorService, final ScheduledExecutorService scheduler,
+            final IndexSettingsDefinition settings) {
+        this.writerAndSearcher = writerAndSearcher;
+        this.translog = translog;
+        this.executorService = executorService;
+        this.scheduler = scheduler;
+        this.commitPolicy = settings == null || settings.commitPolicy == null ?
+                IndexSettingsDefinition.CommitPolicy.IMMEDIATE :
+                settings.commitPolicy;
+        this.defaultCommitWait = settings == null || settings.commitWait == null ?
+                IndexSettingsDefinition.CommitWait.DURABLE :
+                settings.commitWait;
+        this.delayMs = settings == null || settings.groupCommitDelayMs == null ?
+                IndexSettingsDefinition.DEFAULT_GROUP_COMMIT_DELAY_MS :
+                settings.groupCommitDelayMs;
+        this.maxPending = settings == null || settings.groupCommitMaxPending == null ?
+                IndexSettingsDefinition.DEFAULT_GROUP_COMMIT_MAX_PENDING :
+                settings.groupCommitMaxPending;
+        this.commitLock = new ReentrantLock(true);
+        this.backgroundCommit = new AtomicBoolean(false);
+        this.pendingWrites = 0;
+        this.closed = false;
+        this.translogTimer = translog == null || translog.getCommitIntervalMs() <= 0 ?
+                null :
+                scheduleWithFixedDelay(this::commitIfDue, translog.getCommitIntervalMs());
+    }
+
+    /**
+     * Commit and refresh now, whatever the policy is.
+     *
+     * @throws IOException if any I/O error occurs
+     */
+    void commitNow() throws IOException {
+        commitLock.lock();
+        try {
+            if (translog != null)
+                translog.commit(writerAndSearcher);
+            else
+                writerAndSearcher.commit();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Start a commit in the background, unless one is already running.
+     */
+    void commitInBackground() {
+        if (!backgroundCommit.compareAndSet(false, true))
+            return;
+        try {
+            executorService.execute(() -> {
+                try {
+                    commitNow();
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, e, () -> "Background commit failed: " + e.getMessage());
+                } finally {
+                    backgroundCommit.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The maintenance pool is saturated, the next write or the next timer will try again
+            backgroundCommit.set(false);
+            LOGGER.fine(() -> "Background commit postponed: " + e.getMessage());
+        }
+    }
+
+    private void commitIfDue() {
+        if (translog.isCommitDue())
+            commitInBackground();
+    }
+
+    /**
+     * Called, while the write semaphore is held, once a write has been applied to the IndexWriter.
+     * With the IMMEDIATE policy the commit is done before returning.
+     *
+     * @return the future completed when the changes are durable
+     * @throws IOException if any I/O error occurs
+     */
+    CompletableFuture<Void> afterWrite() throws IOException {
+        if (commitPolicy == IndexSettingsDefinition.CommitPolicy.IMMEDIATE || delayMs <= 0) {
+            commitNow();
+            return CompletableFuture.completedFuture(null);
+        }
+        return scheduleCommit();
+    }
+
+    /**
+     * Called, once the write semaphore has been released, to provide the guarantee expected by the caller.
+     * A commit which has already failed is reported whatever the guarantee is.
+     * A commit failing after the return is logged by the commit itself.
+     *
+     * @param commit     the future returned by {@link #afterWrite()}, or null if nothing was written
+     * @param commitWait the expected guarantee, or null to use the default of the index
+     * @throws IOException if any I/O error occurs
+     */
+    void await(final CompletableFuture<Void> commit, final IndexSettingsDefinition.CommitWait commitWait)
+            throws IOException {
+        if (commit == null)
+            return;
+        switch (commitWait == null ? defaultCommitWait : commitWait) {
+        case DURABLE:
+            waitFor(commit);
+            break;
+        case VISIBLE:
+            writerAndSearcher.waitForVisibility();
+            checkFailure(commit);
+            break;
+        default:
+        case NONE:
+            checkFailure(commit);
+            break;
+        }
+    }
+
+    private void checkFailure(final CompletableFuture<Void> commit) throws IOException {
+        if (commit.isCompletedExceptionally())
+            waitFor(commit);
+    }
+
+    /**
+     * Called, once the write semaphore has been released, after a write which has been logged in the translog.
+     * The Lucene commit is only triggered when the commit interval has elapsed.
+     * DURABLE only needs the log to be synced, VISIBLE waits for the reopen.
+     *
+     * @param commitWait the expected guarantee, or null to use the default of the index
+     * @throws IOException if any I/O error occurs
+     */
+    void afterLoggedWrite(final IndexSettingsDefinition.CommitWait commitWait) throws IOException {
+        if (translog.isCommitDue())
+            commitInBackground();
+        switch (commitWait == null ? defaultCommitWait : commitWait) {
+        case DURABLE:
+            translog.sync();
+            break;
+        case VISIBLE:
+            writerAndSearcher.waitForVisibility();
+            break;
+        default:
+        case NONE:
+            break;
+        }
+    }
+
+    /**
+     * Join the pending group commit, or open a new one and start its delay.
+     * The commit is started right away by the writer which fills the group.
+     */
+    private CompletableFuture<Void> scheduleCommit() {
+        final CompletableFuture<Void> commit;
+        final boolean full;
+        synchronized (this) {
+            if (nextCommit == null) {
+                nextCommit = new CompletableFuture<>();
+                pendingWrites = 0;
+                if (!closed)
+                    nextCommitTimer = schedule(this::startGroupCommit, delayMs);
+            }
+            commit = nextCommit;
+            full = closed || nextCommitTimer == null || ++pendingWrites >= maxPending;
+        }
+        if (full)
+            startGroupCommit();
+        return commit;
+    }
+
+    /**
+     * Close the pending group, and hand its commit over to the maintenance pool.
+     */
+    private void startGroupCommit() {
+        final CompletableFuture<Void> commit;
+        synchronized (this) {
+            commit = nextCommit;
+            if (commit == null)
+                return;
+            nextCommit = null;
+            pendingWrites = 0;
+            if (nextCommitTimer != null) {
+                nextCommitTimer.cancel(false);
+                nextCommitTimer = null;
+            }
+        }
+        submitCommit(commit);
+    }
+
+    /**
+     * When the maintenance pool is saturated, the commit is retried after the delay.
+     * Only a closing index runs its last commit in the calling thread.
+     */
+    private void submitCommit(final CompletableFuture<Void> commit) {
+        try {
+            executorService.execute(() -> runCommit(commit));
+        } catch (RejectedExecutionException e) {
+            if (closed || schedule(() -> submitCommit(commit), delayMs) == null)
+                runCommit(commit);
+        }
+    }
+
+    /**
+     * @return the scheduled task, or null if the scheduler is shut down
+     */
+    private ScheduledFuture<?> schedule(final Runnable task, final long delay) {
+        try {
+            return scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    private ScheduledFuture<?> scheduleWithFixedDelay(final Runnable task, final long delay) {
+        try {
+            return scheduler.scheduleWithFixedDelay(task, delay, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    private void runCommit(final CompletableFuture<Void> commit) {
+        try {
+            commitNow();
+            commit.complete(null);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Group commit failed: " + e.getMessage());
+            commit.completeExceptionally(e);
+        }
+    }
+
+    private void waitFor(final CompletableFuture<Void> commit) throws IOException {
+        try {
+            commit.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the group commit");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Flush the pending group commit, if any.
+     * With a translog, a last commit covers the logged operations.
+     */
+    @Override
+    public void close() {
+        if (translogTimer != null)
+            translogTimer.cancel(false);
+        final CompletableFuture<Void> commit;
+        synchronized (this) {
+            closed = true;
+            commit = nextCommit;
+        }
+        startGroupCommit();
+        if (commit != null) {
+            try {
+                commit.join();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, e, () -> "The last group commit failed: " + e.getMessage());
+            }
+        }
+        if (translog != null) {
+            try {
+                commitNow();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, e, () -> "The translog commit failed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -46,6 +46,19 @@ public class FacetDefinition {
 
 	final public Sort sort;
 
+	/**
+	 * When the query matches more documents, the counts are computed on a random sample of about this number of
+	 * documents, then extrapolated. Only for the sorted set and taxonomy facets.
+	 */
+	@JsonProperty("sample_size")
+	final public Integer sampleSize;
+
+	/**
+	 * If true, the labels returned by a sampled facet are counted exactly.
+	 */
+	@JsonProperty("sample_recount")
+	final public Boolean sampleRecount;
+
 	public enum Sort implements Comparator<LabelAndValue> {
 
 		value_descending(FacetBuilder.VALUE_DESCENDING),
@@ -81,23 +94,31 @@ public class FacetDefinition {
 		this(top, prefix, sort, null, null, null);
 	}
 
+	public FacetDefinition(Integer top, String prefix, Sort sort, LinkedHashMap<String, AbstractQuery> queries,
+			LinkedHashSet<String[]> specificValues, String genericFieldName) {
+		this(top, prefix, sort, queries, specificValues, genericFieldName, null, null);
+	}
+
 	@JsonCreator
 	public FacetDefinition(@JsonProperty("top") Integer top, @JsonProperty("prefix") String prefix,
 			@JsonProperty("sort") Sort sort, @JsonProperty("queries") LinkedHashMap<String, AbstractQuery> queries,
 			@JsonProperty("specific_values") LinkedHashSet<String[]> specificValues,
-			@JsonProperty("genericFieldName") String genericFieldName) {
+			@JsonProperty("genericFieldName") String genericFieldName,
+			@JsonProperty("sample_size") Integer sampleSize, @JsonProperty("sample_recount") Boolean sampleRecount) {
 		this.top = top;
 		this.prefix = prefix;
 		this.sort = sort;
 		this.queries = queries;
 		this.specificValues = specificValues;
 		this.genericFieldName = genericFieldName;
+		this.sampleSize = sampleSize;
+		this.sampleRecount = sampleRecount;
 	}
 
 	private FacetDefinition(final Builder builder) {
 		this(builder.top, builder.prefix, builder.sort, MapUtils.isEmpty(builder.queries) ? null : builder.queries,
 				CollectionUtils.isEmpty(builder.specificValues) ? null : builder.specificValues,
-				builder.genericFieldName);
+				builder.genericFieldName, builder.sampleSize, builder.sampleRecount);
 	}
 
 	@Override
@@ -114,7 +135,8 @@ public class FacetDefinition {
 		final FacetDefinition f = (FacetDefinition) o;
 		return Objects.equals(top, f.top) && CollectionsUtils.equals(queries, f.queries) &&
 				CollectionsUtils.equals(specificValues, f.specificValues) && Objects.equals(prefix, f.prefix) &&
-				Objects.equals(sort, f.sort) && Objects.equals(genericFieldName, f.genericFieldName);
+				Objects.equals(sort, f.sort) && Objects.equals(genericFieldName, f.genericFieldName) &&
+				Objects.equals(sampleSize, f.sampleSize) && Objects.equals(sampleRecount, f.sampleRecount);
 	}
 
 	public static Builder of() {
@@ -133,6 +155,8 @@ public class FacetDefinition {
 		public LinkedHashMap<String, AbstractQuery> queries;
 		public LinkedHashSet<String[]> specificValues;
 		public String genericFieldName;
+		public Integer sampleSize;
+		public Boolean sampleRecount;
 
 		public Builder top(Integer top) {
 			this.top = top;
@@ -168,6 +192,16 @@ public class FacetDefinition {
 			return this;
 		}
 
+		public Builder sampleSize(Integer sampleSize) {
+			this.sampleSize = sampleSize;
+			return this;
+		}
+
+		public Builder sampleRecount(Boolean sampleRecount) {
+			this.sampleRecount = sampleRecount;
+			return this;
+		}
+
 		public FacetDefinition build() {
 			return new FacetDefinition(this);
 		}
@@ -19,8 +19,6 @@ import com.qwazr.search.field.FieldDefinition;
 import com.qwazr.search.query.AbstractQuery;
 import com.qwazr.utils.StringUtils;
 import com.qwazr.utils.TimeTracker;
-import com.qwazr.utils.concurrent.BiConsumerEx;
-import com.qwazr.utils.concurrent.ConcurrentUtils;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.lucene.facet.DrillSideways;
@@ -29,19 +27,21 @@ import org.apache.lucene.facet.Facets;
 import org.apache.lucene.facet.FacetsCollector;
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.facet.LabelAndValue;
-import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
-import org.apache.lucene.facet.taxonomy.FastTaxonomyFacetCounts;
-import org.apache.lucene.facet.taxonomy.TaxonomyFacetSumFloatAssociations;
-import org.apache.lucene.facet.taxonomy.TaxonomyFacetSumIntAssociations;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -71,19 +71,24 @@ abstract class FacetsBuilder {
 	}
 
 	final FacetsBuilder build() throws Exception {
-		for (Map.Entry<String, FacetDefinition> entry : facetsDef.entrySet()) {
-			final String dimension = entry.getKey();
-			final String resolvedDimension = resolvedDimensions.get(dimension);
-			final FacetDefinition facet = entry.getValue();
-			final FacetBuilder facetBuilder = new FacetBuilder(facet);
-			final boolean isQueries = MapUtils.isNotEmpty(facet.queries);
-			final boolean isSpecificValues = CollectionUtils.isNotEmpty(facet.specificValues);
-			final Integer top = facet.top != null ? facet.top : (isQueries || isSpecificValues) ? null : DEFAULT_TOP;
-			if (isSpecificValues || top != null)
-				buildFacetState(resolvedDimension, top, facet.specificValues, facetBuilder);
-			if (isQueries)
-				buildFacetQueries(facet.queries, facetBuilder);
-			results.put(dimension, facetBuilder.build());
+		try {
+			for (Map.Entry<String, FacetDefinition> entry : facetsDef.entrySet()) {
+				final String dimension = entry.getKey();
+				final String resolvedDimension = resolvedDimensions.get(dimension);
+				final FacetDefinition facet = entry.getValue();
+				final FacetBuilder facetBuilder = new FacetBuilder(facet);
+				final boolean isQueries = MapUtils.isNotEmpty(facet.queries);
+				final boolean isSpecificValues = CollectionUtils.isNotEmpty(facet.specificValues);
+				final Integer top =
+						facet.top != null ? facet.top : (isQueries || isSpecificValues) ? null : DEFAULT_TOP;
+				if (isSpecificValues || top != null)
+					buildFacetState(resolvedDimension, facet, top, facetBuilder);
+				if (isQueries)
+					buildFacetQueries(facet.queries, facetBuilder);
+				results.put(dimension, facetBuilder.build());
+			}
+		} finally {
+			release();
 		}
 
 		if (timeTracker != null)
@@ -91,11 +96,18 @@ abstract class FacetsBuilder {
 		return this;
 	}
 
-	protected abstract Facets getFacets(final String dim) throws IOException;
+	protected abstract Facets getFacets(final String dim, final FacetDefinition facet) throws IOException;
+
+	/**
+	 * Called once the results are built, the facets are not read anymore
+	 */
+	protected void release() {
+	}
 
-	private void buildFacetState(final String resolvedDimension, final Integer top, final Set<String[]> specificValues,
+	private void buildFacetState(final String resolvedDimension, final FacetDefinition facet, final Integer top,
 			final FacetBuilder facetBuilder) throws IOException {
-		final Facets facets = getFacets(resolvedDimension);
+		final Set<String[]> specificValues = facet.specificValues;
+		final Facets facets = getFacets(resolvedDimension, facet);
 		if (facets == null)
 			return;
 		if (top != null && top > 0) {
@@ -115,13 +127,20 @@ abstract class FacetsBuilder {
 
 	private void buildFacetQueries(final LinkedHashMap<String, AbstractQuery> queries, final FacetBuilder facetBuilder)
 			throws Exception {
-		final BiConsumerEx<String, AbstractQuery, Exception> consumer = (name, facetQuery) -> {
-			final BooleanQuery.Builder builder = new BooleanQuery.Builder();
-			builder.add(searchQuery, BooleanClause.Occur.FILTER);
-			builder.add(facetQuery.getQuery(queryContext), BooleanClause.Occur.FILTER);
-			facetBuilder.put(new LabelAndValue(name, queryContext.indexSearcher.count(builder.build())));
-		};
-		ConcurrentUtils.forEachEx(queries, consumer);
+		for (Map.Entry<String, AbstractQuery> entry : queries.entrySet())
+			facetBuilder.put(new LabelAndValue(entry.getKey(),
+					countFacetQuery(queryContext.getQuery(entry.getValue()))));
+	}
+
+	/**
+	 * Count the documents matching both the search query and the facet query.
+	 * By default the search query is executed again, filtered by the facet query.
+	 */
+	protected int countFacetQuery(final Query facetQuery) throws IOException {
+		final BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		builder.add(searchQuery, BooleanClause.Occur.FILTER);
+		builder.add(facetQuery, BooleanClause.Occur.FILTER);
+		return queryContext.indexSearcher.count(builder.build());
 	}
 
 	static Map<String, String> getFields(LinkedHashMap<String, FacetDefinition> facets) {
@@ -138,86 +157,201 @@ abstract class FacetsBuilder {
 
 	static class WithCollectors extends FacetsBuilder {
 
-		private final SortedSetDocValuesFacetCounts sortedSetCounts;
-		private final FastTaxonomyFacetCounts taxonomyCounts;
-		private final TaxonomyFacetSumFloatAssociations floatTaxonomyCounts;
-		private final TaxonomyFacetSumIntAssociations intTaxonomyCounts;
+		private final Counts exactCounts;
+		private final Map<Integer, Counts> sampledCounts;
+		private final TaxonomySlicedFacets.FloatAssociations floatTaxonomyCounts;
+		private final TaxonomySlicedFacets.IntAssociations intTaxonomyCounts;
 		private final FacetsConfig facetsConfig;
+		private final FacetsCollector facetsCollector;
+		private final long totalHits;
+		private final List<SlicedFacets<?>> slicedFacets;
 
+		/**
+		 * The facet types are counted concurrently, each one by slices of segments.
+		 * The sampled dimensions are counted on the sample of their sample size.
+		 */
 		WithCollectors(final QueryContextImpl queryContext, final FacetsConfig facetsConfig,
 				final LinkedHashMap<String, FacetDefinition> facetsDef, final Query searchQuery,
 				final TimeTracker timeTracker, final FacetsCollector facetsCollector)
 				throws IOException, ParseException, ReflectiveOperationException, QueryNodeException {
 			super(queryContext, facetsDef, searchQuery, timeTracker);
 			this.facetsConfig = facetsConfig;
-			int facetFlag = checkFacetTypeFlags(facetsConfig, facetsDef);
-			this.sortedSetCounts = queryContext.docValueReaderState == null ?
-					null :
-					(facetFlag & FACET_IS_SORTED) == FACET_IS_SORTED ?
-							new SortedSetDocValuesFacetCounts(queryContext.docValueReaderState, facetsCollector) :
-							null;
-			this.taxonomyCounts = (facetFlag & FACET_IS_TAXO) == FACET_IS_TAXO ?
-					new FastTaxonomyFacetCounts(queryContext.taxonomyReader, facetsConfig, facetsCollector) :
-					null;
+			this.facetsCollector = facetsCollector;
+			long total = 0;
+			for (final FacetsCollector.MatchingDocs matchingDocs : facetsCollector.getMatchingDocs())
+				total += matchingDocs.totalHits;
+			this.totalHits = total;
+
+			int facetFlag = 0;
+			final Map<Integer, Integer> sampleFlags = new HashMap<>();
+			for (Map.Entry<String, FacetDefinition> entry : facetsDef.entrySet()) {
+				final String resolvedDimension = resolvedDimensions.get(entry.getKey());
+				if (resolvedDimension == null)
+					continue;
+				final int flag = getFacetTypeFlag(resolvedDimension);
+				final Integer sampleSize = getSampleSize(flag, entry.getValue());
+				if (sampleSize == null)
+					facetFlag |= flag;
+				else
+					sampleFlags.merge(sampleSize, flag, (flag1, flag2) -> flag1 | flag2);
+			}
+
+			final List<SlicedFacets<?>> slicedFacets = new ArrayList<>();
+			this.exactCounts = new Counts(facetFlag, facetsCollector, null, slicedFacets);
+			this.sampledCounts = new HashMap<>();
+			for (Map.Entry<Integer, Integer> entry : sampleFlags.entrySet()) {
+				final SampledFacets.Sample sample =
+						new SampledFacets.Sample(facetsCollector, totalHits, entry.getKey());
+				sampledCounts.put(entry.getKey(), new Counts(entry.getValue(), sample, sample, slicedFacets));
+			}
 			this.floatTaxonomyCounts = (facetFlag & FACET_IS_TAXO_FLOAT) == FACET_IS_TAXO_FLOAT ?
-					new TaxonomyFacetSumFloatAssociations(FieldDefinition.TAXONOMY_FLOAT_ASSOC_FACET_FIELD,
-							queryContext.taxonomyReader, facetsConfig, facetsCollector) :
+					add(slicedFacets,
+							new TaxonomySlicedFacets.FloatAssociations(queryContext.taxonomyReader, facetsConfig,
+									facetsCollector)) :
 					null;
 			this.intTaxonomyCounts = (facetFlag & FACET_IS_TAXO_INT) == FACET_IS_TAXO_INT ?
-					new TaxonomyFacetSumIntAssociations(FieldDefinition.TAXONOMY_INT_ASSOC_FACET_FIELD,
-							queryContext.taxonomyReader, facetsConfig, facetsCollector) :
+					add(slicedFacets,
+							new TaxonomySlicedFacets.IntAssociations(queryContext.taxonomyReader, facetsConfig,
+									queryContext.countsPool, facetsCollector)) :
 					null;
+			this.slicedFacets = slicedFacets;
+			if (!slicedFacets.isEmpty())
+				SlicedFacets.count(queryContext.executorService, slicedFacets);
 		}
 
-		private static int FACET_IS_SORTED = 1;
-		private static int FACET_IS_TAXO = 2;
-		private static int FACET_IS_TAXO_INT = 4;
-		private static int FACET_IS_TAXO_FLOAT = 8;
+		/**
+		 * The sorted set and taxonomy counts of the matching documents, or of a sample of them
+		 */
+		private class Counts {
 
-		private int checkFacetTypeFlags(final FacetsConfig facetsConfig,
-				final LinkedHashMap<String, FacetDefinition> facetsDef) {
-			int flag = 0;
-			for (String dimName : facetsDef.keySet()) {
-				final String resolvedDimension = resolvedDimensions.get(dimName);
-				if (resolvedDimension == null)
+			private final SortedSetFacetCounts sortedSetCounts;
+			private final TaxonomySlicedFacets.Counts taxonomyCounts;
+			private final SampledFacets.Sample sample;
+
+			private Counts(final int facetFlag, final FacetsCollector hits, final SampledFacets.Sample sample,
+					final List<SlicedFacets<?>> slicedFacets) throws IOException {
+				this.sortedSetCounts = queryContext.docValueReaderState == null ?
+						null :
+						(facetFlag & FACET_IS_SORTED) == FACET_IS_SORTED ?
+								add(slicedFacets, new SortedSetFacetCounts(queryContext.docValueReaderState,
+										queryContext.countsPool, hits)) :
+								null;
+				this.taxonomyCounts = (facetFlag & FACET_IS_TAXO) == FACET_IS_TAXO ?
+						add(slicedFacets, new TaxonomySlicedFacets.Counts(queryContext.taxonomyReader, facetsConfig,
+								queryContext.countsPool, hits)) :
+						null;
+				this.sample = sample;
+			}
+
+			private Facets getFacets(final Facets facets, final FacetDefinition facet) {
+				if (facets == null || sample == null)
+					return facets;
+				return new SampledFacets(facets, sample, facetsConfig, queryContext.indexReader,
+						Boolean.TRUE.equals(facet.sampleRecount) ? WithCollectors.this::countFacetQuery : null);
+			}
+		}
+
+		/**
+		 * Only the counts of large result sets are sampled
+		 */
+		private Integer getSampleSize(final int facetFlag, final FacetDefinition facet) {
+			if (facet.sampleSize == null || facet.sampleSize <= 0 || totalHits <= facet.sampleSize)
+				return null;
+			return facetFlag == FACET_IS_SORTED || facetFlag == FACET_IS_TAXO ? facet.sampleSize : null;
+		}
+
+		private Counts getCounts(final String dimension, final FacetDefinition facet) {
+			final Integer sampleSize = getSampleSize(getFacetTypeFlag(dimension), facet);
+			return sampleSize == null ? exactCounts : sampledCounts.get(sampleSize);
+		}
+
+		/**
+		 * The counts go back to the pool of the searcher
+		 */
+		@Override
+		protected void release() {
+			slicedFacets.forEach(SlicedFacets::release);
+		}
+
+		private static <T extends SlicedFacets<?>> T add(final List<SlicedFacets<?>> slicedFacets, final T facets) {
+			slicedFacets.add(facets);
+			return facets;
+		}
+
+		/**
+		 * The facet query is intersected with the documents already matched by the search query,
+		 * leaping from one to the other in each segment. The search query is not executed again.
+		 */
+		@Override
+		final protected int countFacetQuery(final Query facetQuery) throws IOException {
+			final Weight weight = queryContext.indexSearcher.createNormalizedWeight(facetQuery, false);
+			int count = 0;
+			for (final FacetsCollector.MatchingDocs matchingDocs : facetsCollector.getMatchingDocs()) {
+				if (matchingDocs.totalHits == 0)
 					continue;
-				final String indexField = facetsConfig.getDimConfig(resolvedDimension).indexFieldName;
-				if (indexField == null)
+				final Scorer scorer = weight.scorer(matchingDocs.context);
+				if (scorer == null)
 					continue;
-				if (indexField.equals(sortedSetFacetField)) {
-					flag = flag | FACET_IS_SORTED;
-				} else {
-					switch (indexField) {
-					case FieldDefinition.TAXONOMY_FACET_FIELD:
-						flag = flag | FACET_IS_TAXO;
-						break;
-					case FieldDefinition.TAXONOMY_INT_ASSOC_FACET_FIELD:
-						flag = flag | FACET_IS_TAXO_INT;
-						break;
-					case FieldDefinition.TAXONOMY_FLOAT_ASSOC_FACET_FIELD:
-						flag = flag | FACET_IS_TAXO_FLOAT;
-						break;
-					default:
+				final DocIdSetIterator hits = matchingDocs.bits.iterator();
+				if (hits == null)
+					continue;
+				final TwoPhaseIterator twoPhase = scorer.twoPhaseIterator();
+				final DocIdSetIterator approximation = twoPhase == null ? scorer.iterator() : twoPhase.approximation();
+				int doc = hits.nextDoc();
+				while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+					final int facetDoc = approximation.docID() < doc ? approximation.advance(doc) : approximation.docID();
+					if (facetDoc == doc) {
+						if (twoPhase == null || twoPhase.matches())
+							count++;
+						doc = hits.nextDoc();
+					} else if (facetDoc == DocIdSetIterator.NO_MORE_DOCS)
 						break;
-					}
+					else
+						doc = hits.advance(facetDoc);
 				}
 			}
-			return flag;
+			return count;
+		}
+
+		private static int FACET_IS_SORTED = 1;
+		private static int FACET_IS_TAXO = 2;
+		private static int FACET_IS_TAXO_INT = 4;
+		private static int FACET_IS_TAXO_FLOAT = 8;
+
+		private int getFacetTypeFlag(final String resolvedDimension) {
+			final String indexField = facetsConfig.getDimConfig(resolvedDimension).indexFieldName;
+			if (indexField == null)
+				return 0;
+			if (indexField.equals(sortedSetFacetField))
+				return FACET_IS_SORTED;
+			switch (indexField) {
+			case FieldDefinition.TAXONOMY_FACET_FIELD:
+				return FACET_IS_TAXO;
+			case FieldDefinition.TAXONOMY_INT_ASSOC_FACET_FIELD:
+				return FACET_IS_TAXO_INT;
+			case FieldDefinition.TAXONOMY_FLOAT_ASSOC_FACET_FIELD:
+				return FACET_IS_TAXO_FLOAT;
+			default:
+				return 0;
+			}
 		}
 
 		@Override
-		final protected Facets getFacets(final String dimension) throws IOException {
+		final protected Facets getFacets(final String dimension, final FacetDefinition facet) throws IOException {
 			final String indexFieldName = facetsConfig.getDimConfig(dimension).indexFieldName;
 			if (indexFieldName == null)
 				return null;
 			if (indexFieldName.equals(sortedSetFacetField)) {
 				if (queryContext.docValueReaderState != null)
-					if (queryContext.docValueReaderState.getOrdRange(dimension) != null)
-						return sortedSetCounts;
+					if (queryContext.docValueReaderState.getOrdRange(dimension) != null) {
+						final Counts counts = getCounts(dimension, facet);
+						return counts.getFacets(counts.sortedSetCounts, facet);
+					}
 			} else {
 				switch (indexFieldName) {
 				case FieldDefinition.TAXONOMY_FACET_FIELD:
-					return taxonomyCounts;
+					final Counts counts = getCounts(dimension, facet);
+					return counts.getFacets(counts.taxonomyCounts, facet);
 				case FieldDefinition.TAXONOMY_INT_ASSOC_FACET_FIELD:
 					return intTaxonomyCounts;
 				case FieldDefinition.TAXONOMY_FLOAT_ASSOC_FACET_FIELD:
@@ -245,7 +379,7 @@ abstract class FacetsBuilder {
 		}
 
 		@Override
-		final protected Facets getFacets(final String dimension) throws IOException {
+		final protected Facets getFacets(final String dimension, final FacetDefinition facet) throws IOException {
 			if (sortedSetFacetField.equals(facetsConfig.getDimConfig(dimension).indexFieldName)) {
 				if (queryContext.docValueReaderState == null)
 					return null;
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import org.apache.lucene.facet.FacetsConfig;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A read-only FacetsConfig built once per FieldMap, shared by the writers and the queries without locking.
+ * <p>
+ * The dimensions of the declared fields are computed when the FieldMap is built.
+ * The dimensions of the fields matched by a wildcard are computed the first time the concrete field name is seen,
+ * and never change afterwards.
+ */
+final class FieldFacetsConfig extends FacetsConfig {
+
+    @FunctionalInterface
+    interface Configurator {
+        void config(String genericFieldName, String concreteFieldName, FacetsConfig facetsConfig);
+    }
+
+    private final Configurator configurator;
+    private final Set<String> staticFieldNames;
+    private final Map<String, DimConfig> staticDimConfigs;
+    private final Set<String> wildcardFieldNames;
+    private final ConcurrentHashMap<String, DimConfig> wildcardDimConfigs;
+
+    FieldFacetsConfig(final Collection<String> fieldNames, final Configurator configurator) {
+        this.configurator = configurator;
+        final FacetsConfig builder = new FacetsConfig();
+        for (final String fieldName : fieldNames)
+            configurator.config(fieldName, fieldName, builder);
+        staticFieldNames = Collections.unmodifiableSet(new HashSet<>(fieldNames));
+        staticDimConfigs = Collections.unmodifiableMap(new HashMap<>(builder.getDimConfigs()));
+        wildcardFieldNames = ConcurrentHashMap.newKeySet();
+        wildcardDimConfigs = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Make sure the dimensions of the given field are known
+     */
+    void check(final String genericFieldName, final String concreteFieldName) {
+        if (staticFieldNames.contains(concreteFieldName) || wildcardFieldNames.contains(concreteFieldName))
+            return;
+        final FacetsConfig builder = new FacetsConfig();
+        configurator.config(genericFieldName, concreteFieldName, builder);
+        builder.getDimConfigs().forEach(wildcardDimConfigs::putIfAbsent);
+        wildcardFieldNames.add(concreteFieldName);
+    }
+
+    @Override
+    public DimConfig getDimConfig(final String dimName) {
+        DimConfig dimConfig = staticDimConfigs.get(dimName);
+        if (dimConfig != null)
+            return dimConfig;
+        dimConfig = wildcardDimConfigs.get(dimName);
+        return dimConfig != null ? dimConfig : getDefaultDimConfig();
+    }
+
+    @Override
+    public Map<String, DimConfig> getDimConfigs() {
+        if (wildcardDimConfigs.isEmpty())
+            return staticDimConfigs;
+        final Map<String, DimConfig> dimConfigs = new HashMap<>(wildcardDimConfigs);
+        dimConfigs.putAll(staticDimConfigs);
+        return Collections.unmodifiableMap(dimConfigs);
+    }
+
+    @Override
+    public void setHierarchical(final String dimName, final boolean v) {
+        throw new UnsupportedOperationException("The facets configuration is read-only");
+    }
+
+    @Override
+    public void setMultiValued(final String dimName, final boolean v) {
+        throw new UnsupportedOperationException("The facets configuration is read-only");
+    }
+
+    @Override
+    public void setRequireDimCount(final String dimName, final boolean v) {
+        throw new UnsupportedOperationException("The facets configuration is read-only");
+    }
+
+    @Override
+    public void setIndexFieldName(final String dimName, final String indexFieldName) {
+        throw new UnsupportedOperationException("The facets configuration is read-only");
+    }
+}
@@ -20,25 +20,37 @@ import com.qwazr.search.field.CustomFieldDefinition;
 import com.qwazr.search.field.FieldDefinition;
 import com.qwazr.search.field.FieldTypeInterface;
 import com.qwazr.utils.WildcardMatcher;
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+import org.apache.lucene.util.automaton.Operations;
+import org.apache.lucene.util.automaton.TooComplexToDeterminizeException;
 
 import javax.validation.constraints.NotNull;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
 public class FieldMap {
 
+    /**
+     * The maximum number of concrete field names resolved through a wildcard which are kept in cache
+     */
+    final static int MAX_RESOLVED_FIELDS = 16384;
+
     private final LinkedHashMap<String, FieldDefinition> fieldDefinitionMap;
     private final HashMap<String, FieldTypeInterface> nameDefMap;
-    private final Collection<Pair<WildcardMatcher, FieldTypeInterface>> wildcardMap;
-    private final FacetsConfig facetsConfig;
+    private final WildcardResolver wildcardResolver;
+    private final ConcurrentHashMap<String, FieldTypeInterface> resolvedFields;
+    private final FieldFacetsConfig facetsConfig;
     public final String sortedSetFacetField;
 
     FieldMap(final LinkedHashMap<String, FieldDefinition> fieldDefinitionMap, final String sortedSetFacetField) {
@@ -47,14 +59,16 @@ public class FieldMap {
                 sortedSetFacetField == null ? FieldDefinition.DEFAULT_SORTEDSET_FACET_FIELD : sortedSetFacetField;
 
         nameDefMap = new HashMap<>();
-        wildcardMap = new ArrayList<>();
+        final List<String> wildcardPatterns = new ArrayList<>();
+        final List<FieldTypeInterface> wildcardTypes = new ArrayList<>();
 
         fieldDefinitionMap.forEach((name, definition) -> {
             final FieldTypeInterface fieldType;
             if (name.indexOf('*') != -1 || name.indexOf('?') != -1) {
                 final WildcardMatcher wildcardMatcher = new WildcardMatcher(name);
                 fieldType = definition.newFieldType(name, wildcardMatcher);
-                wildcardMap.add(Pair.of(wildcardMatcher, fieldType));
+                wildcardPatterns.add(name);
+                wildcardTypes.add(fieldType);
             } else {
                 fieldType = definition.newFieldType(name, null);
             }
@@ -78,9 +92,12 @@ public class FieldMap {
         });
         nameDefMap.putAll(newFields);
 
+        wildcardResolver = wildcardPatterns.isEmpty() ? null : new WildcardResolver(wildcardPatterns, wildcardTypes);
+        resolvedFields = new ConcurrentHashMap<>();
+
         this.fieldDefinitionMap = fieldDefinitionMap;
 
-        facetsConfig = new FacetsConfig();
+        facetsConfig = new FieldFacetsConfig(nameDefMap.keySet(), this::configFacet);
 
     }
 
@@ -94,6 +111,17 @@ public class FieldMap {
 
     @NotNull
     final public FieldTypeInterface getFieldType(final String genericFieldName, final String concreteFieldName) {
+        final FieldTypeInterface fieldType = findFieldType(genericFieldName, concreteFieldName);
+        if (fieldType != null)
+            return fieldType;
+        throw new IllegalArgumentException(
+                "The field has not been found: " + genericFieldName + " / " + concreteFieldName);
+    }
+
+    /**
+     * @return the type of the field, or null if the field is not defined
+     */
+    final public FieldTypeInterface findFieldType(final String genericFieldName, final String concreteFieldName) {
         if (genericFieldName == null && concreteFieldName == null)
             throw new IllegalArgumentException("The field name is missing");
         // Annotated can find wildcarded fields directly using genericFieldName
@@ -107,22 +135,29 @@ public class FieldMap {
             if (fieldType != null)
                 return fieldType;
         }
-        //Second chance, using the wildcard collection
+        //Second chance, using the wildcard patterns
         final String searchField = concreteFieldName != null ? concreteFieldName : genericFieldName;
-        for (Pair<WildcardMatcher, FieldTypeInterface> entry : wildcardMap)
-            if (entry.getLeft().match(searchField))
-                return entry.getRight();
-        throw new IllegalArgumentException(
-                "The field has not been found: " + genericFieldName + " / " + concreteFieldName);
+        return resolveWildcard(searchField);
+    }
+
+    private FieldTypeInterface resolveWildcard(final String fieldName) {
+        if (wildcardResolver == null)
+            return null;
+        FieldTypeInterface fieldType = resolvedFields.get(fieldName);
+        if (fieldType != null)
+            return fieldType;
+        fieldType = wildcardResolver.resolve(fieldName);
+        if (fieldType != null && resolvedFields.size() < MAX_RESOLVED_FIELDS)
+            resolvedFields.putIfAbsent(fieldName, fieldType);
+        return fieldType;
     }
 
     final LinkedHashMap<String, FieldDefinition> getFieldDefinitionMap() {
         return fieldDefinitionMap;
     }
 
-    private void checkFacetConfig(final String genericFieldName, final String concreteFieldName) {
-        if (facetsConfig.getDimConfigs().containsKey(concreteFieldName))
-            return;
+    private void configFacet(final String genericFieldName, final String concreteFieldName,
+                             final FacetsConfig facetsConfig) {
         final FieldTypeInterface fieldType = getFieldType(genericFieldName, concreteFieldName);
         if (fieldType == null)
             return;
@@ -194,12 +229,12 @@ public class FieldMap {
      */
     final public FacetsConfig getFacetsConfig(final Map<String, String> fieldNames) {
         fieldNames.forEach(
-                (concreteFieldName, genericFieldName) -> checkFacetConfig(genericFieldName, concreteFieldName));
+                (concreteFieldName, genericFieldName) -> facetsConfig.check(genericFieldName, concreteFieldName));
         return facetsConfig;
     }
 
     final public FacetsConfig getFacetsConfig(final String genericFieldName, final String concreteFieldName) {
-        checkFacetConfig(genericFieldName, concreteFieldName);
+        facetsConfig.check(genericFieldName, concreteFieldName);
         return facetsConfig;
     }
 
@@ -211,4 +246,43 @@ public class FieldMap {
         return nameDefMap.keySet();
     }
 
+    /**
+     * The wildcard patterns compiled as automata. The union of every pattern rejects a field name in one pass,
+     * the individual automata keep the declaration order: the first matching pattern wins.
+     */
+    private final static class WildcardResolver {
+
+        private final CharacterRunAutomaton union;
+        private final CharacterRunAutomaton[] automata;
+        private final FieldTypeInterface[] fieldTypes;
+
+        private WildcardResolver(final List<String> patterns, final List<FieldTypeInterface> types) {
+            final List<Automaton> automatonList = new ArrayList<>(patterns.size());
+            automata = new CharacterRunAutomaton[patterns.size()];
+            fieldTypes = types.toArray(new FieldTypeInterface[types.size()]);
+            int i = 0;
+            for (final String pattern : patterns) {
+                final Automaton automaton = WildcardQuery.toAutomaton(new Term(pattern, pattern));
+                automatonList.add(automaton);
+                automata[i++] = new CharacterRunAutomaton(automaton);
+            }
+            CharacterRunAutomaton unionAutomaton;
+            try {
+                unionAutomaton = automata.length == 1 ? null : new CharacterRunAutomaton(Operations.union(automatonList));
+            } catch (TooComplexToDeterminizeException e) {
+                unionAutomaton = null;
+            }
+            union = unionAutomaton;
+        }
+
+        private FieldTypeInterface resolve(final String fieldName) {
+            if (union != null && !union.run(fieldName))
+                return null;
+            for (int i = 0; i < automata.length; i++)
+                if (automata[i].run(fieldName))
+                    return fieldTypes[i];
+            return null;
+        }
+    }
+
 }
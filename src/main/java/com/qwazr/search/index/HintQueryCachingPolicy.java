@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.search.query.lucene.CachingHintQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.UsageTrackingQueryCachingPolicy;
+
+import java.io.IOException;
+
+/**
+ * The caching policy of an index.
+ * The queries wrapped in a CachingHintQuery are (or are not) cached as requested,
+ * the other queries follow the policy set in the index settings.
+ */
+final class HintQueryCachingPolicy implements QueryCachingPolicy {
+
+    private final QueryCachingPolicy policy;
+
+    private HintQueryCachingPolicy(final QueryCachingPolicy policy) {
+        this.policy = policy;
+    }
+
+    static HintQueryCachingPolicy of(final IndexSettingsDefinition.QueryCachePolicy policy) {
+        if (policy == null)
+            return new HintQueryCachingPolicy(new UsageTrackingQueryCachingPolicy());
+        switch (policy) {
+            case ALWAYS:
+                return new HintQueryCachingPolicy(Fixed.ALWAYS);
+            case NEVER:
+                return new HintQueryCachingPolicy(Fixed.NEVER);
+            default:
+            case USAGE_TRACKING:
+                return new HintQueryCachingPolicy(new UsageTrackingQueryCachingPolicy());
+        }
+    }
+
+    @Override
+    public void onUse(final Query query) {
+        if (!(query instanceof CachingHintQuery))
+            policy.onUse(query);
+    }
+
+    @Override
+    public boolean shouldCache(final Query query) throws IOException {
+        if (query instanceof CachingHintQuery)
+            return ((CachingHintQuery) query).cache;
+        return policy.shouldCache(query);
+    }
+
+    private enum Fixed implements QueryCachingPolicy {
+
+        ALWAYS(true), NEVER(false);
+
+        private final boolean cache;
+
+        Fixed(final boolean cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public void onUse(final Query query) {
+        }
+
+        @Override
+        public boolean shouldCache(final Query query) {
+            return cache;
+        }
+    }
+}
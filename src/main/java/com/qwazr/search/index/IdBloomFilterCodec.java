@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.search.field.FieldDefinition;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.bloom.BloomFilteringPostingsFormat;
+import org.apache.lucene.codecs.lucene62.Lucene62Codec;
+
+/**
+ * The default codec, with a bloom filter in front of the postings of the primary key field.
+ * A segment which does not contain the id is skipped without seeking its terms dictionary,
+ * which is what an update (delete by term) or a lookup by id does on every segment.
+ * <p>
+ * The codec name is unchanged: the segments are read back with the default codec,
+ * the per-field postings format is resolved by its own name.
+ */
+final class IdBloomFilterCodec extends Lucene62Codec {
+
+    private final PostingsFormat idPostingsFormat;
+
+    IdBloomFilterCodec() {
+        idPostingsFormat = new BloomFilteringPostingsFormat(PostingsFormat.forName("Lucene50"));
+    }
+
+    @Override
+    public PostingsFormat getPostingsFormatForField(final String field) {
+        return FieldDefinition.ID_FIELD.equals(field) ? idPostingsFormat : super.getPostingsFormatForField(field);
+    }
+}
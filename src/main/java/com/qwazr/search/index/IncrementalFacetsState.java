@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A SortedSetDocValuesReaderState which is cheap to create for each new searcher.
+ * <p>
+ * The global ordinals (the OrdinalMap across the segments, and the ordinal range of each dimension)
+ * are only built when a facet is requested. They are shared with the states of the next readers
+ * as long as the segments are the same: a reopen which only applies deletions, or which does not
+ * change the segments, does not rebuild them.
+ */
+final class IncrementalFacetsState extends SortedSetDocValuesReaderState {
+
+    private final IndexReader reader;
+    private final String field;
+    private final Ordinals ordinals;
+    final Shared shared;
+
+    private IncrementalFacetsState(final IndexReader reader, final Shared shared) {
+        this.reader = reader;
+        this.field = shared.field;
+        this.ordinals = shared.ordinals;
+        this.shared = shared;
+    }
+
+    /**
+     * @param reader   the new reader
+     * @param field    the sorted set doc values field of the facets
+     * @param previous what the state of the previous reader can share, or null
+     * @return a new state, or null if no segment has the facet field
+     */
+    static IncrementalFacetsState of(final IndexReader reader, final String field, final Shared previous) {
+        final List<LeafReaderContext> leaves = reader.leaves();
+        final Object[] coreKeys = new Object[leaves.size()];
+        boolean hasField = false;
+        int i = 0;
+        for (final LeafReaderContext leaf : leaves) {
+            final LeafReader leafReader = leaf.reader();
+            coreKeys[i++] = leafReader.getCoreCacheKey();
+            final FieldInfo fieldInfo = leafReader.getFieldInfos().fieldInfo(field);
+            if (fieldInfo != null && fieldInfo.getDocValuesType() == DocValuesType.SORTED_SET)
+                hasField = true;
+        }
+        if (!hasField)
+            return null;
+        final Ordinals ordinals = previous != null && previous.field.equals(field) &&
+                Arrays.equals(previous.coreKeys, coreKeys) ? previous.ordinals : new Ordinals();
+        return new IncrementalFacetsState(reader, new Shared(field, coreKeys, ordinals));
+    }
+
+    @Override
+    public String getField() {
+        return field;
+    }
+
+    @Override
+    public IndexReader getOrigReader() {
+        return reader;
+    }
+
+    @Override
+    public int getSize() {
+        return ordinals.get(reader, field).valueCount;
+    }
+
+    @Override
+    public OrdRange getOrdRange(final String dim) {
+        return ordinals.get(reader, field).prefixToOrdRange.get(dim);
+    }
+
+    @Override
+    public Map<String, OrdRange> getPrefixToOrdRange() {
+        return ordinals.get(reader, field).prefixToOrdRange;
+    }
+
+    /**
+     * The doc values of the current segments, mapped to the shared global ordinals
+     */
+    @Override
+    public SortedSetDocValues getDocValues() throws IOException {
+        final Global global = ordinals.get(reader, field);
+        if (global.ordinalMap == null)
+            return MultiDocValues.getSortedSetValues(reader, field);
+        final List<LeafReaderContext> leaves = reader.leaves();
+        final int size = leaves.size();
+        final SortedSetDocValues[] values = new SortedSetDocValues[size];
+        final int[] starts = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            final LeafReaderContext leaf = leaves.get(i);
+            final SortedSetDocValues docValues = leaf.reader().getSortedSetDocValues(field);
+            values[i] = docValues == null ? DocValues.emptySortedSet() : docValues;
+            starts[i] = leaf.docBase;
+        }
+        starts[size] = reader.maxDoc();
+        return new MultiDocValues.MultiSortedSetDocValues(values, starts, global.ordinalMap);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        final Global global = ordinals.global;
+        return global == null || global.ordinalMap == null ? 0 : global.ordinalMap.ramBytesUsed();
+    }
+
+    /**
+     * What the state of the next reader may reuse. It does not reference the reader,
+     * which can be closed while the next state is not created yet.
+     */
+    final static class Shared {
+
+        private final String field;
+        private final Object[] coreKeys;
+        private final Ordinals ordinals;
+
+        private Shared(final String field, final Object[] coreKeys, final Ordinals ordinals) {
+            this.field = field;
+            this.coreKeys = coreKeys;
+            this.ordinals = ordinals;
+        }
+    }
+
+    /**
+     * The lazily built global ordinals, shared by the states of the readers having the same segments
+     */
+    private final static class Ordinals {
+
+        private volatile Global global;
+
+        private Global get(final IndexReader reader, final String field) {
+            Global g = global;
+            if (g != null)
+                return g;
+            synchronized (this) {
+                g = global;
+                if (g == null)
+                    global = g = new Global(reader, field);
+                return g;
+            }
+        }
+    }
+
+    private final static class Global {
+
+        private final MultiDocValues.OrdinalMap ordinalMap;
+        private final int valueCount;
+        private final Map<String, OrdRange> prefixToOrdRange;
+
+        /**
+         * Same ordinal ranges as the DefaultSortedSetDocValuesReaderState: the dimensions are sorted,
+         * so the values of a dimension are a contiguous range of ordinals.
+         */
+        private Global(final IndexReader reader, final String field) {
+            try {
+                final SortedSetDocValues docValues = MultiDocValues.getSortedSetValues(reader, field);
+                if (docValues == null) {
+                    ordinalMap = null;
+                    valueCount = 0;
+                    prefixToOrdRange = Collections.emptyMap();
+                    return;
+                }
+                ordinalMap = docValues instanceof MultiDocValues.MultiSortedSetDocValues ?
+                        ((MultiDocValues.MultiSortedSetDocValues) docValues).mapping :
+                        null;
+                if (docValues.getValueCount() > Integer.MAX_VALUE)
+                    throw new IllegalArgumentException(
+                            "Too many facet values: " + docValues.getValueCount() + " - Field: " + field);
+                valueCount = (int) docValues.getValueCount();
+                final Map<String, OrdRange> ranges = new HashMap<>();
+                String lastDim = null;
+                int startOrd = -1;
+                for (int ord = 0; ord < valueCount; ord++) {
+                    final BytesRef term = docValues.lookupOrd(ord);
+                    final String[] components = FacetsConfig.stringToPath(term.utf8ToString());
+                    if (components.length != 2)
+                        throw new IllegalArgumentException(
+                                "Only dim/value facets are supported: " + Arrays.toString(components));
+                    if (!components[0].equals(lastDim)) {
+                        if (lastDim != null)
+                            ranges.put(lastDim, new OrdRange(startOrd, ord - 1));
+                        startOrd = ord;
+                        lastDim = components[0];
+                    }
+                }
+                if (lastDim != null)
+                    ranges.put(lastDim, new OrdRange(startOrd, valueCount - 1));
+                prefixToOrdRange = Collections.unmodifiableMap(ranges);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot build the facet ordinals - Field: " + field, e);
+            }
+        }
+    }
+}
@@ -46,7 +46,7 @@ class IndexContextImpl implements IndexContext, Closeable {
 	}
 
 	@Override
-	final public IndexInstance getIndex(final String indexName) {
+	public IndexInstance getIndex(final String indexName) {
 		return indexProvider == null ? null : indexProvider.getIndex(indexName);
 	}
 
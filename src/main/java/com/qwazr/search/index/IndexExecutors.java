@@ -0,0 +1,257 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.qwazr.utils.LoggerUtils;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * The bounded thread pools used by the indexes, one per workload, so that a burst on one workload
+ * cannot starve the others.
+ * <ul>
+ * <li>search: the segment slices of the IndexSearchers. When saturated, a slice runs in the calling thread.</li>
+ * <li>facet: the concurrent drill sideways. When saturated, a task runs in the calling thread.</li>
+ * <li>indexing: the workers of the streaming ingest. When saturated, the ingest uses less workers.</li>
+ * <li>maintenance: the group and background commits. When saturated, a task is rejected, the caller retries it
+ * later. A writer never runs a commit.</li>
+ * </ul>
+ * The timers (group commit delays, translog commits, lease expirations) are run by one scheduler thread,
+ * which only hands the work over to the pools: no task ever blocks a pool thread while waiting.
+ * <p>
+ * Each pool is sized by the system property (or the environment variable) QWAZR_EXECUTOR_{NAME}_THREADS,
+ * its queue by QWAZR_EXECUTOR_{NAME}_QUEUE.
+ */
+public class IndexExecutors implements Closeable {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(IndexExecutors.class);
+
+    public final static String SEARCH = "search";
+    public final static String FACET = "facet";
+    public final static String INDEXING = "indexing";
+    public final static String MAINTENANCE = "maintenance";
+    public final static String SCHEDULER = "scheduler";
+
+    private final static int PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+    final Pool search;
+    final Pool facet;
+    final Pool indexing;
+    final Pool maintenance;
+    final Scheduler scheduler;
+
+    private IndexExecutors(final Builder builder) {
+        search = builder.build(SEARCH, PROCESSORS * 2, 1000, true);
+        facet = builder.build(FACET, PROCESSORS, 1000, true);
+        indexing = builder.build(INDEXING, PROCESSORS, PROCESSORS, false);
+        maintenance = builder.build(MAINTENANCE, Math.max(2, PROCESSORS / 2), 1000, false);
+        scheduler = new Scheduler();
+    }
+
+    public static IndexExecutors of() {
+        return new Builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the metrics of each pool
+     */
+    public Map<String, ExecutorStatus> getStatus() {
+        final Map<String, ExecutorStatus> status = new LinkedHashMap<>();
+        status.put(SEARCH, search.getStatus());
+        status.put(FACET, facet.getStatus());
+        status.put(INDEXING, indexing.getStatus());
+        status.put(MAINTENANCE, maintenance.getStatus());
+        status.put(SCHEDULER, scheduler.getStatus());
+        return status;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        search.shutdown();
+        facet.shutdown();
+        indexing.shutdown();
+        maintenance.shutdown();
+    }
+
+    final static class Pool extends ThreadPoolExecutor {
+
+        private final AtomicLong rejectedCount;
+
+        private Pool(final String name, final int threads, final int queueSize, final boolean callerRuns) {
+            super(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
+                    new NamedThreadFactory(name));
+            allowCoreThreadTimeOut(true);
+            rejectedCount = new AtomicLong();
+            final RejectedExecutionHandler handler =
+                    callerRuns ? new ThreadPoolExecutor.CallerRunsPolicy() : new ThreadPoolExecutor.AbortPolicy();
+            setRejectedExecutionHandler((runnable, executor) -> {
+                rejectedCount.incrementAndGet();
+                handler.rejectedExecution(runnable, executor);
+            });
+        }
+
+        ExecutorStatus getStatus() {
+            return new ExecutorStatus(getActiveCount(), getPoolSize(), getMaximumPoolSize(), getQueue().size(),
+                    getQueue().size() + getQueue().remainingCapacity(), getCompletedTaskCount(), rejectedCount.get());
+        }
+    }
+
+    final static class Scheduler extends ScheduledThreadPoolExecutor {
+
+        private Scheduler() {
+            super(1, new NamedThreadFactory(SCHEDULER));
+            setRemoveOnCancelPolicy(true);
+            setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        }
+
+        ExecutorStatus getStatus() {
+            return new ExecutorStatus(getActiveCount(), getPoolSize(), getMaximumPoolSize(), getQueue().size(), null,
+                    getCompletedTaskCount(), null);
+        }
+    }
+
+    private final static class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count;
+
+        private NamedThreadFactory(final String name) {
+            prefix = "qwazr-index-" + name + '-';
+            count = new AtomicInteger();
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    public static class Builder {
+
+        private final Map<String, Integer> threads;
+        private final Map<String, Integer> queueSizes;
+
+        private Builder() {
+            threads = new LinkedHashMap<>();
+            queueSizes = new LinkedHashMap<>();
+        }
+
+        public Builder threads(final String name, final int count) {
+            threads.put(name, count);
+            return this;
+        }
+
+        public Builder queueSize(final String name, final int size) {
+            queueSizes.put(name, size);
+            return this;
+        }
+
+        private static Integer getProperty(final String key) {
+            String value = System.getProperty(key);
+            if (value == null)
+                value = System.getenv(key);
+            if (value == null || value.isEmpty())
+                return null;
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                LOGGER.warning(() -> "Invalid value for " + key + ": " + value);
+                return null;
+            }
+        }
+
+        private static int getValue(final Map<String, Integer> values, final String name, final String suffix,
+                final int defaultValue) {
+            Integer value = values.get(name);
+            if (value == null)
+                value = getProperty("QWAZR_EXECUTOR_" + name.toUpperCase() + suffix);
+            return value == null || value <= 0 ? defaultValue : value;
+        }
+
+        private Pool build(final String name, final int defaultThreads, final int defaultQueueSize,
+                final boolean callerRuns) {
+            return new Pool(name, getValue(threads, name, "_THREADS", defaultThreads),
+                    getValue(queueSizes, name, "_QUEUE", defaultQueueSize), callerRuns);
+        }
+
+        public IndexExecutors build() {
+            return new IndexExecutors(this);
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class ExecutorStatus {
+
+        @JsonProperty("active_count")
+        public final Integer activeCount;
+
+        @JsonProperty("pool_size")
+        public final Integer poolSize;
+
+        @JsonProperty("max_pool_size")
+        public final Integer maxPoolSize;
+
+        @JsonProperty("queue_size")
+        public final Integer queueSize;
+
+        @JsonProperty("queue_capacity")
+        public final Integer queueCapacity;
+
+        @JsonProperty("completed_count")
+        public final Long completedCount;
+
+        @JsonProperty("rejected_count")
+        public final Long rejectedCount;
+
+        @JsonCreator
+        ExecutorStatus(@JsonProperty("active_count") final Integer activeCount,
+                @JsonProperty("pool_size") final Integer poolSize,
+                @JsonProperty("max_pool_size") final Integer maxPoolSize,
+                @JsonProperty("queue_size") final Integer queueSize,
+                @JsonProperty("queue_capacity") final Integer queueCapacity,
+                @JsonProperty("completed_count") final Long completedCount,
+                @JsonProperty("rejected_count") final Long rejectedCount) {
+            this.activeCount = activeCount;
+            this.poolSize = poolSize;
+            this.maxPoolSize = maxPoolSize;
+            this.queueSize = queueSize;
+            this.queueCapacity = queueCapacity;
+            this.completedCount = completedCount;
+            this.rejectedCount = rejectedCount;
+        }
+    }
+}
@@ -35,6 +35,7 @@ class IndexFileSet {
 	final static String INDEX_DATA = "data";
 	final static String INDEX_TAXONOMY = "taxonomy";
 	final static String REPL_WORK = "repl_work";
+	final static String TRANSLOG = "translog";
 	final static String UUID_FILE = "uuid";
 	final static String UUID_MASTER_FILE = "uuid.master";
 	final static String SETTINGS_FILE = "settings.json";
@@ -52,6 +53,7 @@ class IndexFileSet {
 	final Path resourcesDirectoryPath;
 	final private File fieldMapFile;
 	final Path replWorkPath;
+	final Path translogDirectory;
 
 	IndexFileSet(final Path mainDirectory) {
 		this.uuidFile = mainDirectory.resolve(UUID_FILE).toFile();
@@ -64,6 +66,7 @@ class IndexFileSet {
 		this.fieldMapFile = mainDirectory.resolve(FIELDS_FILE).toFile();
 		this.settingsFile = mainDirectory.resolve(SETTINGS_FILE).toFile();
 		this.replWorkPath = mainDirectory.resolve(REPL_WORK);
+		this.translogDirectory = mainDirectory.resolve(TRANSLOG);
 	}
 
 	String checkIndexDirectory() throws IOException {
@@ -31,6 +31,7 @@ import com.qwazr.utils.FileUtils;
 import com.qwazr.utils.IOUtils;
 import com.qwazr.utils.LoggerUtils;
 import com.qwazr.utils.StringUtils;
+import com.qwazr.utils.concurrent.ConsumerEx;
 import com.qwazr.utils.concurrent.FunctionEx;
 import com.qwazr.utils.concurrent.ReadWriteSemaphores;
 import com.qwazr.utils.reflection.ConstructorParametersImpl;
@@ -62,13 +63,15 @@ import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -92,14 +95,20 @@ final public class IndexInstance implements Closeable {
     private final Directory taxonomyDirectory;
     private final WriterAndSearcher writerAndSearcher;
 
-    private final ExecutorService executorService;
+    private final IndexExecutors executors;
     private final IndexSettingsDefinition settings;
     private final ConstructorParametersImpl instanceFactory;
     private final FileResourceLoader fileResourceLoader;
     private final Provider indexProvider;
 
     private final ReentrantLock replicationLock;
-    private final ReentrantLock commitLock;
+    private final Translog translog;
+    private final CommitScheduler commitScheduler;
+    private final AdmissionController queryAdmission;
+    private final AdmissionController writeAdmission;
+    private final ResultCache resultCache;
+    private final ParsedQueryCache parsedQueryCache;
+    private final SearcherLeases searcherLeases;
     private final ReentrantLock backupLock;
 
     private final UpdatableAnalyzers indexAnalyzers;
@@ -132,11 +141,21 @@ final public class IndexInstance implements Closeable {
         this.indexAnalyzers = builder.indexAnalyzers;
         this.queryAnalyzers = builder.queryAnalyzers;
         this.settings = builder.settings;
-        this.executorService = builder.executorService;
+        this.executors = builder.executors;
         this.instanceFactory = builder.instanceFactory;
         this.fileResourceLoader = builder.fileResourceLoader;
         this.replicationLock = new ReentrantLock(true);
-        this.commitLock = new ReentrantLock(true);
+        this.translog = builder.translog;
+        this.commitScheduler =
+                new CommitScheduler(writerAndSearcher, translog, executors.maintenance, executors.scheduler, settings);
+        this.queryAdmission = new AdmissionController(indexName, settings.maxConcurrentQueries,
+                settings.maxQueuedRequests, settings.admissionTimeoutMs);
+        this.writeAdmission = new AdmissionController(indexName, settings.maxConcurrentWrites,
+                settings.maxQueuedRequests, settings.admissionTimeoutMs);
+        this.resultCache = ResultCache.of(settings.resultCacheMaxMb);
+        this.parsedQueryCache = ParsedQueryCache.of(settings.parsedQueryCacheSize);
+        this.searcherLeases =
+                new SearcherLeases(indexName, writerAndSearcher, executors.scheduler, settings.maxLeases);
         this.backupLock = new ReentrantLock(true);
         this.replicationMaster = builder.replicationMaster;
         this.replicationSlave = builder.replicationSlave;
@@ -149,7 +168,7 @@ final public class IndexInstance implements Closeable {
 
     @Override
     public void close() {
-        IOUtils.closeQuietly(writerAndSearcher, replicationMaster, indexAnalyzers, queryAnalyzers);
+        IOUtils.closeQuietly(searcherLeases, commitScheduler, writerAndSearcher, translog, replicationMaster, indexAnalyzers, queryAnalyzers);
 
         if (taxonomyDirectory != null)
             IOUtils.closeQuietly(taxonomyDirectory);
@@ -163,7 +182,9 @@ final public class IndexInstance implements Closeable {
                 replicationSlave == null ? null : replicationSlave.getClientMasterUuid(), dataDirectory, indexSearcher,
                 writerAndSearcher.getIndexWriter(), settings, localAnalyzerFactoryMap.keySet(),
                 fieldMap.getFieldDefinitionMap().keySet(), indexAnalyzers.getActiveAnalyzers(),
-                queryAnalyzers.getActiveAnalyzers()));
+                queryAnalyzers.getActiveAnalyzers(), queryAdmission.getStatus(), writeAdmission.getStatus(),
+                resultCache == null ? null : resultCache.getStats(), searcherLeases.getStats(),
+                executors.getStatus()));
     }
 
     LinkedHashMap<String, FieldDefinition> getFields() {
@@ -171,7 +192,8 @@ final public class IndexInstance implements Closeable {
     }
 
     FieldStats getFieldStats(String fieldName) throws IOException {
-        try (final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireReadSemaphore()) {
+        try (final AdmissionController.Ticket ticket = queryAdmission.acquire(AdmissionController.Priority.INTERACTIVE);
+                final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireReadSemaphore()) {
             return writerAndSearcher.search((indexSearcher, taxonomyReader) -> {
                 final Terms terms = MultiFields.getFields(indexSearcher.getIndexReader()).terms(fieldName);
                 return terms == null ? new FieldStats() : new FieldStats(terms, fieldMap.getFieldType(null, fieldName));
@@ -204,6 +226,8 @@ final public class IndexInstance implements Closeable {
                         localAnalyzerFactoryMap);
         indexAnalyzers.update(analyzerContext.indexAnalyzerMap);
         queryAnalyzers.update(analyzerContext.queryAnalyzerMap);
+        if (parsedQueryCache != null)
+            parsedQueryCache.invalidate();
     }
 
     void setFields(final LinkedHashMap<String, FieldDefinition> fields) throws ServerException, IOException {
@@ -326,12 +350,7 @@ final public class IndexInstance implements Closeable {
     }
 
     private void nrtCommit() throws IOException {
-        commitLock.lock();
-        try {
-            writerAndSearcher.commit();
-        } finally {
-            commitLock.unlock();
-        }
+        commitScheduler.commitNow();
     }
 
     final BackupStatus backup(final Path backupIndexDirectory) throws IOException {
@@ -344,7 +363,8 @@ final public class IndexInstance implements Closeable {
                 throw new IOException(
                         "The backup path is not a directory: " + backupIndexDirectory.toAbsolutePath() + " " +
                                 Thread.currentThread().getId());
-            try (final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireReadSemaphore()) {
+            try (final AdmissionController.Ticket ticket = queryAdmission.acquire(AdmissionController.Priority.EXPORT);
+                    final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireReadSemaphore()) {
                 return new ReplicationBackup(this, backupIndexDirectory, taxonomyDirectory != null).backup();
             } catch (IOException e) {
                 // If any error occurred, we delete the backup directory
@@ -436,7 +456,8 @@ final public class IndexInstance implements Closeable {
 
     final void deleteAll(Map<String, String> commitUserData) throws IOException {
         checkIsMaster();
-        try (final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireWriteSemaphore()) {
+        try (final AdmissionController.Ticket ticket = writeAdmission.acquire(AdmissionController.Priority.BULK);
+                final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireWriteSemaphore()) {
             writerAndSearcher.write((indexWriter, taxonomyWriter) -> {
                 indexWriter.deleteAll();
                 if (commitUserData != null)
@@ -450,7 +471,8 @@ final public class IndexInstance implements Closeable {
     final IndexStatus merge(final IndexInstance mergedIndex, final Map<String, String> commitUserData)
             throws IOException {
         checkIsMaster();
-        try (final ReadWriteSemaphores.Lock writeLock = readWriteSemaphores.acquireWriteSemaphore()) {
+        try (final AdmissionController.Ticket ticket = writeAdmission.acquire(AdmissionController.Priority.BULK);
+                final ReadWriteSemaphores.Lock writeLock = readWriteSemaphores.acquireWriteSemaphore()) {
             writerAndSearcher.write((indexWriter, taxonomyWriter) -> {
                 try (final ReadWriteSemaphores.Lock readLock = mergedIndex.readWriteSemaphores.acquireReadSemaphore()) {
                     indexWriter.addIndexes(mergedIndex.dataDirectory);
@@ -465,12 +487,18 @@ final public class IndexInstance implements Closeable {
     }
 
     private WriteContextImpl buildWriteContext(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) {
-        return new WriteContextImpl(indexProvider, fileResourceLoader, executorService, indexAnalyzers, queryAnalyzers,
-                fieldMap, indexWriter, taxonomyWriter);
+        return new WriteContextImpl(indexProvider, fileResourceLoader, executors.indexing, indexAnalyzers,
+                queryAnalyzers, fieldMap, indexWriter, taxonomyWriter);
     }
 
     final <T> T write(final IndexServiceInterface.WriteActions<T> writeActions) throws IOException {
-        try (final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireWriteSemaphore()) {
+        return write(AdmissionController.Priority.BULK, writeActions);
+    }
+
+    private <T> T write(final AdmissionController.Priority priority,
+            final IndexServiceInterface.WriteActions<T> writeActions) throws IOException {
+        try (final AdmissionController.Ticket ticket = writeAdmission.acquire(priority);
+                final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireWriteSemaphore()) {
             return writerAndSearcher.write(((indexWriter, taxonomyWriter) -> {
                 try (final WriteContext context = buildWriteContext(indexWriter, taxonomyWriter)) {
                     return writeActions.apply(context);
@@ -479,68 +507,146 @@ final public class IndexInstance implements Closeable {
         }
     }
 
-    private int checkCommit(final int results, final Map<String, String> commitUserData) throws IOException {
-        if (results > 0 || (commitUserData != null && !commitUserData.isEmpty()))
-            nrtCommit();
+    private int writeAndCommit(final AdmissionController.Priority priority,
+            final IndexServiceInterface.WriteActions<Integer> writeActions, final Map<String, String> commitUserData,
+            final IndexSettingsDefinition.CommitWait commitWait) throws IOException {
+        final AtomicReference<CompletableFuture<Void>> commit = new AtomicReference<>();
+        final int results = write(priority, context -> {
+            final int res = writeActions.apply(context);
+            if (res > 0 || (commitUserData != null && !commitUserData.isEmpty()))
+                commit.set(commitScheduler.afterWrite());
+            return res;
+        });
+        commitScheduler.await(commit.get(), commitWait);
         return results;
     }
 
-    private int checkCommit(final int results, final PostDefinition post) throws IOException {
-        return checkCommit(results, post == null ? null : post.commitUserData);
+    private int writeAndCommit(final AdmissionController.Priority priority,
+            final IndexServiceInterface.WriteActions<Integer> writeActions, final PostDefinition post)
+            throws IOException {
+        return writeAndCommit(priority, writeActions, post == null ? null : post.commitUserData,
+                post == null ? null : post.commitWait);
+    }
+
+    /**
+     * With a translog, the write is acknowledged once logged, the Lucene commit is done in the background.
+     * The operations carrying commit user data are still committed.
+     */
+    private int writeAndLog(final AdmissionController.Priority priority,
+            final IndexServiceInterface.WriteActions<Integer> writeActions, final Translog.Operation operation,
+            final PostDefinition post) throws IOException {
+        if (translog == null || (post.commitUserData != null && !post.commitUserData.isEmpty()))
+            return writeAndCommit(priority, writeActions, post);
+        final int results = write(priority, context -> translog.apply(operation, writeActions, context));
+        if (results > 0)
+            commitScheduler.afterLoggedWrite(post.commitWait);
+        return results;
     }
 
     final <T> int postDocument(final Map<String, Field> fields, final T document,
             final Map<String, String> commitUserData, boolean update) throws IOException {
         checkIsMaster();
-        return write(
-                context -> checkCommit(context.postDocument(fields, document, commitUserData, update), commitUserData));
+        return writeAndCommit(AdmissionController.Priority.INTERACTIVE,
+                context -> context.postDocument(fields, document, commitUserData, update), commitUserData, null);
     }
 
     final <T> int postDocuments(final Map<String, Field> fields, final Collection<T> documents,
             final Map<String, String> commitUserData, final boolean update) throws IOException {
         checkIsMaster();
-        return write(context -> checkCommit(context.postDocuments(fields, documents, commitUserData, update),
-                commitUserData));
+        return writeAndCommit(AdmissionController.Priority.BULK,
+                context -> context.postDocuments(fields, documents, commitUserData, update), commitUserData, null);
     }
 
     final int postMappedDocument(final PostDefinition.Document post) throws IOException {
         checkIsMaster();
-        return write(context -> checkCommit(context.postMappedDocument(post), post));
+        if (post == null)
+            return 0;
+        return writeAndLog(AdmissionController.Priority.INTERACTIVE, context -> context.postMappedDocument(post),
+                Translog.Operation.post(Collections.singletonList(post.document), post.update), post);
     }
 
     final int postMappedDocuments(final PostDefinition.Documents post) throws IOException {
         checkIsMaster();
-        return write(context -> checkCommit(context.postMappedDocuments(post), post));
+        if (post == null)
+            return 0;
+        return writeAndLog(AdmissionController.Priority.BULK, context -> context.postMappedDocuments(post),
+                Translog.Operation.post(post.documents, post.update), post);
+    }
+
+    /**
+     * The documents are indexed while the stream is read, the stream is not atomic.
+     * If the stream is malformed, the documents already indexed are not rolled back: they are committed
+     * like the ones of a complete stream, then the error is thrown.
+     */
+    final int postMappedDocumentsStream(final Iterator<? extends Map<String, ?>> documents, final boolean update,
+            final IndexSettingsDefinition.CommitWait commitWait) throws IOException {
+        checkIsMaster();
+        final AtomicReference<CompletableFuture<Void>> commit = new AtomicReference<>();
+        final int results;
+        try {
+            results = write(AdmissionController.Priority.BULK, context -> {
+                final int res;
+                try {
+                    res = context.postMappedDocumentsStream(documents, update, ParallelRecordsPoster.DEFAULT_WORKERS);
+                } catch (IOException | RuntimeException e) {
+                    try {
+                        commit.set(commitScheduler.afterWrite());
+                    } catch (IOException | RuntimeException commitError) {
+                        e.addSuppressed(commitError);
+                    }
+                    throw e;
+                }
+                commit.set(commitScheduler.afterWrite());
+                return res;
+            });
+        } catch (IOException | RuntimeException e) {
+            try {
+                commitScheduler.await(commit.get(), commitWait);
+            } catch (IOException | RuntimeException commitError) {
+                e.addSuppressed(commitError);
+            }
+            throw e;
+        }
+        commitScheduler.await(commit.get(), commitWait);
+        return results;
     }
 
     final <T> int updateDocValues(final Map<String, Field> fields, final T document,
             final Map<String, String> commitUserData) throws IOException {
         checkIsMaster();
-        return write(context -> checkCommit(context.updateDocValues(fields, document, commitUserData), commitUserData));
+        return writeAndCommit(AdmissionController.Priority.INTERACTIVE,
+                context -> context.updateDocValues(fields, document, commitUserData), commitUserData, null);
     }
 
     final <T> int updateDocsValues(final Map<String, Field> fields, final Collection<T> documents,
             final Map<String, String> commitUserData) throws IOException {
         checkIsMaster();
-        return write(
-                context -> checkCommit(context.updateDocsValues(fields, documents, commitUserData), commitUserData));
+        return writeAndCommit(AdmissionController.Priority.BULK,
+                context -> context.updateDocsValues(fields, documents, commitUserData), commitUserData, null);
     }
 
     final int updateMappedDocValues(final PostDefinition.Document post) throws IOException {
         checkIsMaster();
-        return write(context -> checkCommit(context.updateMappedDocValues(post), post));
+        if (post == null)
+            return 0;
+        return writeAndLog(AdmissionController.Priority.INTERACTIVE, context -> context.updateMappedDocValues(post),
+                Translog.Operation.updateDocValues(Collections.singletonList(post.document)), post);
     }
 
     final int updateMappedDocsValues(final PostDefinition.Documents post) throws IOException {
         checkIsMaster();
-        return write(context -> checkCommit(context.updateMappedDocsValues(post), post));
+        if (post == null)
+            return 0;
+        return writeAndLog(AdmissionController.Priority.BULK, context -> context.updateMappedDocsValues(post),
+                Translog.Operation.updateDocValues(post.documents), post);
     }
 
     final ResultDefinition.WithMap deleteByQuery(final QueryDefinition queryDefinition) throws IOException {
         checkIsMaster();
         Objects.requireNonNull(queryDefinition, "The queryDefinition is missing - Index: " + indexName);
         Objects.requireNonNull(queryDefinition.query, "The query is missing - Index: " + indexName);
-        try (final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireWriteSemaphore()) {
+        try (final AdmissionController.Ticket ticket = writeAdmission.acquire(AdmissionController.Priority.BULK);
+                final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireWriteSemaphore()) {
             return writerAndSearcher.search((indexSearcher, taxonomyReader) -> {
                 try (final QueryContext queryContext = buildQueryContext(indexSearcher, taxonomyReader, null)) {
                     final Query query = queryDefinition.query.getQuery(queryContext);
@@ -562,7 +668,8 @@ final public class IndexInstance implements Closeable {
     final List<TermEnumDefinition> getTermsEnum(final String fieldName, final String prefix, final Integer start,
             final Integer rows) throws InterruptedException, IOException {
         Objects.requireNonNull(fieldName, "The field name is missing - Index: " + indexName);
-        try (final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireReadSemaphore()) {
+        try (final AdmissionController.Ticket ticket = queryAdmission.acquire(AdmissionController.Priority.INTERACTIVE);
+                final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireReadSemaphore()) {
             return writerAndSearcher.search((indexSearcher, taxonomyReader) -> {
                 final FieldTypeInterface fieldType = fieldMap.getFieldType(null, fieldName);
                 if (fieldType == null)
@@ -577,16 +684,41 @@ final public class IndexInstance implements Closeable {
         }
     }
 
+    private <T> T search(final String leaseId, final WriterAndSearcher.SearchAction<T> action) throws IOException {
+        if (leaseId != null)
+            return searcherLeases.search(leaseId, action);
+        return writerAndSearcher.search(action);
+    }
+
+    final LeaseDefinition acquireLease(final Long ttlMs) throws IOException {
+        try (final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireReadSemaphore()) {
+            return searcherLeases.acquire(ttlMs);
+        }
+    }
+
+    final boolean releaseLease(final String leaseId) {
+        return searcherLeases.release(leaseId);
+    }
+
     private QueryContextImpl buildQueryContext(final IndexSearcher indexSearcher, final TaxonomyReader taxonomyReader,
             final FieldMapWrapper.Cache fieldMapWrappers) throws IOException {
-        return new QueryContextImpl(indexProvider, fileResourceLoader, executorService, indexAnalyzers, queryAnalyzers,
-                fieldMap, fieldMapWrappers, indexSearcher, taxonomyReader);
+        return new QueryContextImpl(indexProvider, fileResourceLoader, executors.facet, indexAnalyzers, queryAnalyzers,
+                fieldMap, fieldMapWrappers, indexSearcher, taxonomyReader, resultCache, parsedQueryCache);
     }
 
     final <T> T query(final FieldMapWrapper.Cache fieldMapWrappers,
             final IndexServiceInterface.QueryActions<T> queryActions) throws IOException {
-        try (final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireReadSemaphore()) {
-            return writerAndSearcher.search((indexSearcher, taxonomyReader) -> {
+        return query(null, fieldMapWrappers, queryActions);
+    }
+
+    /**
+     * @param leaseId the point-in-time lease to search, or null to use the current searcher
+     */
+    final <T> T query(final String leaseId, final FieldMapWrapper.Cache fieldMapWrappers,
+            final IndexServiceInterface.QueryActions<T> queryActions) throws IOException {
+        try (final AdmissionController.Ticket ticket = queryAdmission.acquire(AdmissionController.Priority.INTERACTIVE);
+                final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireReadSemaphore()) {
+            return search(leaseId, (indexSearcher, taxonomyReader) -> {
                 try (final QueryContextImpl context = buildQueryContext(indexSearcher, taxonomyReader,
                         fieldMapWrappers)) {
                     return queryActions.apply(context);
@@ -595,9 +727,22 @@ final public class IndexInstance implements Closeable {
         }
     }
 
+    /**
+     * Run a lookup by primary key. With realtime, the operations already applied by the writer
+     * are made visible first, even if the searcher would not have been refreshed yet.
+     * The searcher is only refreshed if the writer has changes it does not see.
+     */
+    final <T> T getDocuments(final boolean realtime, final IndexServiceInterface.QueryActions<T> queryActions)
+            throws IOException {
+        if (realtime && !writerAndSearcher.isSearcherCurrent())
+            writerAndSearcher.waitForVisibility();
+        return query(null, queryActions);
+    }
+
     final Explanation explain(final QueryDefinition queryDefinition, final int docId) throws IOException {
-        try (final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireReadSemaphore()) {
-            return writerAndSearcher.search((indexSearcher, taxonomyReader) -> {
+        try (final AdmissionController.Ticket ticket = queryAdmission.acquire(AdmissionController.Priority.INTERACTIVE);
+                final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireReadSemaphore()) {
+            return search(queryDefinition.lease, (indexSearcher, taxonomyReader) -> {
                 try (final QueryContextImpl context = buildQueryContext(indexSearcher, taxonomyReader, null)) {
                     return new QueryExecution<>(context, queryDefinition).explain(docId);
                 } catch (ReflectiveOperationException | ParseException | QueryNodeException e) {
@@ -607,6 +752,37 @@ final public class IndexInstance implements Closeable {
         }
     }
 
+    /**
+     * Check the export of every document matching the query, so the errors are thrown before any document
+     * is written. Nothing is held by the returned export: the admission, the searcher and the context
+     * are only acquired while it is executed.
+     */
+    final QueryExport.Checked export(final QueryDefinition queryDefinition) throws IOException {
+        QueryExport.checkReturnedFields(queryDefinition);
+        search(queryDefinition.lease, (indexSearcher, taxonomyReader) -> {
+            try (final QueryContextImpl context = buildQueryContext(indexSearcher, taxonomyReader, null)) {
+                return QueryExport.getQuery(context, queryDefinition);
+            } catch (ReflectiveOperationException | ParseException | QueryNodeException e) {
+                throw ServerException.of(e);
+            }
+        });
+        return consumer -> export(queryDefinition, consumer);
+    }
+
+    private long export(final QueryDefinition queryDefinition,
+            final ConsumerEx<Map<String, Object>, IOException> consumer) throws IOException {
+        try (final AdmissionController.Ticket ticket = queryAdmission.acquire(AdmissionController.Priority.EXPORT);
+                final ReadWriteSemaphores.Lock lock = readWriteSemaphores.acquireReadSemaphore()) {
+            return search(queryDefinition.lease, (indexSearcher, taxonomyReader) -> {
+                try (final QueryContextImpl context = buildQueryContext(indexSearcher, taxonomyReader, null)) {
+                    return new QueryExport(context, queryDefinition).execute(consumer);
+                } catch (ReflectiveOperationException | ParseException | QueryNodeException e) {
+                    throw ServerException.of(e);
+                }
+            });
+        }
+    }
+
     Directory getDataDirectory() {
         return dataDirectory;
     }
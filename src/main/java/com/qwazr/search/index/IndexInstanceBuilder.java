@@ -20,6 +20,7 @@ import com.qwazr.search.analysis.AnalyzerFactory;
 import com.qwazr.search.analysis.CustomAnalyzer;
 import com.qwazr.search.analysis.UpdatableAnalyzers;
 import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.field.SortUtils;
 import com.qwazr.server.ServerException;
 import com.qwazr.utils.IOUtils;
 import com.qwazr.utils.concurrent.ReadWriteSemaphores;
@@ -49,12 +50,12 @@ import java.nio.file.Path;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 class IndexInstanceBuilder {
 
     final IndexFileSet fileSet;
-    final ExecutorService executorService;
+    final IndexExecutors executors;
     final ReadWriteSemaphores readWriteSemaphores;
     final IndexInstance.Provider indexProvider;
 
@@ -83,16 +84,17 @@ class IndexInstanceBuilder {
     ReplicationMaster replicationMaster;
     ReplicationSlave replicationSlave;
     WriterAndSearcher writerAndSearcher = null;
+    Translog translog = null;
 
     private Similarity similarity;
     private SearcherFactory searcherFactory;
 
     IndexInstanceBuilder(final IndexInstance.Provider indexProvider, final ConstructorParametersImpl instanceFactory,
             final Map<String, AnalyzerFactory> globalAnalyzerFactoryMap, final ReadWriteSemaphores readWriteSemaphores,
-            final ExecutorService executorService, final IndexServiceInterface indexService, final IndexFileSet fileSet,
+            final IndexExecutors executors, final IndexServiceInterface indexService, final IndexFileSet fileSet,
             final IndexSettingsDefinition settings, final UUID indexUuid, final String indexName) {
         this.fileSet = fileSet;
-        this.executorService = executorService;
+        this.executors = executors;
         this.readWriteSemaphores = readWriteSemaphores;
         this.indexProvider = indexProvider;
         this.instanceFactory = instanceFactory;
@@ -109,9 +111,9 @@ class IndexInstanceBuilder {
         if (settings.similarityClass != null && !settings.similarityClass.isEmpty())
             similarity = IndexUtils.findSimilarity(instanceFactory, settings.similarityClass);
 
-        searcherFactory = MultiThreadSearcherFactory.of(executorService,
+        searcherFactory = MultiThreadSearcherFactory.of(executors.search,
                 settings.indexReaderWarmer == null ? true : settings.indexReaderWarmer, similarity,
-                settings.sortedSetFacetField);
+                settings.sortedSetFacetField, settings);
 
         localAnalyzerFactoryMap = fileSet.loadAnalyzerDefinitionMap();
         final LinkedHashMap<String, FieldDefinition> fieldMapDefinition = fileSet.loadFieldMap();
@@ -163,6 +165,13 @@ class IndexInstanceBuilder {
                 indexWriterConfig.setUseCompoundFile(settings.useCompoundFile);
             if(settings.useSimpleTextCodec != null && settings.useSimpleTextCodec)
                 indexWriterConfig.setCodec(new SimpleTextCodec());
+            else if (settings.idBloomFilter != null && settings.idBloomFilter)
+                indexWriterConfig.setCodec(new IdBloomFilterCodec());
+            if (settings.indexSort != null && !settings.indexSort.isEmpty()) {
+                if (fieldMap == null)
+                    throw new IllegalArgumentException("The fields must be defined before the index sort");
+                indexWriterConfig.setIndexSort(SortUtils.buildSort(fieldMap, settings.indexSort));
+            }
 
             final TieredMergePolicy mergePolicy = new TieredMergePolicy();
             if (settings.maxMergeAtOnce != null)
@@ -231,11 +240,12 @@ class IndexInstanceBuilder {
             replicationSlave = ReplicationSlave.withIndexAndTaxo(fileSet, indexService, settings.master, dataDirectory,
                     taxonomyDirectory);
             writerAndSearcher = new WriterAndSearcher.WithIndexAndTaxo(null, null,
-                    () -> new SearcherTaxonomyManager(dataDirectory, taxonomyDirectory, searcherFactory));
+                    () -> new SearcherTaxonomyManager(dataDirectory, taxonomyDirectory, searcherFactory), 0, 0);
         } else {
             replicationSlave = ReplicationSlave.withIndex(fileSet, indexService, settings.master, dataDirectory);
             writerAndSearcher =
-                    new WriterAndSearcher.WithIndex(null, () -> new SearcherManager(dataDirectory, searcherFactory));
+                    new WriterAndSearcher.WithIndex(null, () -> new SearcherManager(dataDirectory, searcherFactory), 0,
+                            0);
         }
 
     }
@@ -244,21 +254,60 @@ class IndexInstanceBuilder {
 
         openOrCreateDataIndex(false);
 
+        final double nrtTargetMaxStaleSec = settings == null || settings.nrtTargetMaxStaleSec == null ?
+                IndexSettingsDefinition.DEFAULT_NRT_TARGET_MAX_STALE_SEC :
+                settings.nrtTargetMaxStaleSec;
+        final double nrtTargetMinStaleSec = settings == null || settings.nrtTargetMinStaleSec == null ?
+                IndexSettingsDefinition.DEFAULT_NRT_TARGET_MIN_STALE_SEC :
+                settings.nrtTargetMinStaleSec;
+
         if (IndexSettingsDefinition.useTaxonomyIndex(settings)) {
             openOrCreateTaxonomyIndex(false);
             replicationMaster =
                     new ReplicationMaster.WithIndexAndTaxo(indexUuid.toString(), fileSet, indexWriter, taxonomyWriter);
             writerAndSearcher = new WriterAndSearcher.WithIndexAndTaxo(indexWriter, taxonomyWriter,
-                    () -> new SearcherTaxonomyManager(indexWriter, true, searcherFactory, taxonomyWriter));
+                    () -> new SearcherTaxonomyManager(indexWriter, true, searcherFactory, taxonomyWriter),
+                    nrtTargetMaxStaleSec, nrtTargetMinStaleSec);
         } else {
             replicationMaster = new ReplicationMaster.WithIndex(indexUuid.toString(), fileSet, indexWriter);
             writerAndSearcher = new WriterAndSearcher.WithIndex(indexWriter,
-                    () -> new SearcherManager(indexWriter, searcherFactory));
+                    () -> new SearcherManager(indexWriter, searcherFactory), nrtTargetMaxStaleSec,
+                    nrtTargetMinStaleSec);
         }
+
+        if (settings != null && settings.translog != null && settings.translog)
+            openTranslog();
+    }
+
+    private void openTranslog() throws IOException {
+        final int commitIntervalSec = settings.translogCommitIntervalSec == null ?
+                IndexSettingsDefinition.DEFAULT_TRANSLOG_COMMIT_INTERVAL_SEC :
+                settings.translogCommitIntervalSec;
+        translog = Translog.open(fileSet.translogDirectory, indexWriter, TimeUnit.SECONDS.toMillis(commitIntervalSec));
+        // Replay the operations which were acknowledged after the last commit
+        if (translog.replay(this::replay) > 0)
+            translog.commit(writerAndSearcher);
+    }
+
+    /**
+     * The index does not open if the operations can't be replayed. The translog is kept until it can be.
+     */
+    private void replay(final Translog.Operation operation) throws IOException {
+        if (operation.documents == null)
+            return;
+        if (fieldMap == null)
+            throw new IOException(
+                    "The translog can't be replayed without the field definitions - Index: " + indexName);
+        final RecordsPoster.MapDocument poster = operation.type == Translog.Operation.Type.UPDATE_DOC_VALUES ?
+                new RecordsPoster.UpdateMapDocValues(fieldMap, indexWriter, taxonomyWriter) :
+                RecordsPoster.create(fieldMap, indexWriter, taxonomyWriter,
+                        operation.update == null || operation.update);
+        for (final Map<String, Object> document : operation.documents)
+            poster.accept(document);
     }
 
     private void abort() {
-        IOUtils.closeQuietly(writerAndSearcher, replicationMaster, indexAnalyzers, queryAnalyzers);
+        IOUtils.closeQuietly(translog, writerAndSearcher, replicationMaster, indexAnalyzers, queryAnalyzers);
 
         if (taxonomyWriter != null) {
             IOUtils.closeQuietly(taxonomyWriter);
@@ -33,7 +33,6 @@ import java.nio.file.Path;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
 
 class IndexInstanceManager implements Closeable {
 
@@ -41,7 +40,7 @@ class IndexInstanceManager implements Closeable {
 
     private final IndexInstance.Provider indexProvider;
     private final ConstructorParametersImpl instanceFactory;
-    private final ExecutorService executorService;
+    private final IndexExecutors executors;
     private final IndexServiceInterface indexServiceInterface;
     private final IndexFileSet fileSet;
     private final Map<String, AnalyzerFactory> analyzerFactoryMap;
@@ -54,14 +53,14 @@ class IndexInstanceManager implements Closeable {
 
     IndexInstanceManager(final IndexInstance.Provider indexProvider, final ConstructorParametersImpl instanceFactory,
             final Map<String, AnalyzerFactory> analyzerFactoryMap, final ReadWriteSemaphores readWriteSemaphores,
-            final ExecutorService executorService, final IndexServiceInterface indexServiceInterface,
+            final IndexExecutors executors, final IndexServiceInterface indexServiceInterface,
             final Path indexDirectory) {
 
         try {
             rwl = ReadWriteLock.stamped();
             this.indexProvider = indexProvider;
             this.instanceFactory = instanceFactory;
-            this.executorService = executorService;
+            this.executors = executors;
             this.indexServiceInterface = indexServiceInterface;
             this.fileSet = new IndexFileSet(indexDirectory);
             this.analyzerFactoryMap = analyzerFactoryMap;
@@ -80,7 +79,7 @@ class IndexInstanceManager implements Closeable {
         if (indexInstance == null)
             indexInstance =
                     new IndexInstanceBuilder(indexProvider, instanceFactory, analyzerFactoryMap, readWriteSemaphores,
-                            executorService, indexServiceInterface, fileSet, settings, indexUuid, indexName).build();
+                            executors, indexServiceInterface, fileSet, settings, indexUuid, indexName).build();
         return indexInstance;
     }
 
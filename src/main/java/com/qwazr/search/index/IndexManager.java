@@ -64,13 +64,22 @@ public class IndexManager extends ConstructorParametersImpl implements Closeable
 
     private final ConcurrentHashMap<String, AnalyzerFactory> analyzerFactoryMap;
 
-    private final ExecutorService executorService;
+    private final IndexExecutors executors;
 
+    private final boolean ownExecutors;
+
+    /**
+     * @param indexesDirectory      the root directory of the schemas
+     * @param executorService       the executor of the service layer
+     * @param constructorParameters the parameters available to the instantiated classes
+     * @param executors             the pools used by the indexes. If null, they are created (and closed) by the manager.
+     */
     public IndexManager(final Path indexesDirectory, final ExecutorService executorService,
-                        final ConstructorParameters constructorParameters) {
+                        final ConstructorParameters constructorParameters, final IndexExecutors executors) {
         super(constructorParameters == null ? new ConcurrentHashMap<>() : constructorParameters.getMap());
         this.rootDirectory = indexesDirectory.toFile();
-        this.executorService = executorService;
+        this.ownExecutors = executors == null;
+        this.executors = executors == null ? IndexExecutors.of() : executors;
 
         service = new IndexServiceImpl(executorService, this);
         schemaMap = new ConcurrentHashMap<>();
@@ -83,15 +92,20 @@ public class IndexManager extends ConstructorParametersImpl implements Closeable
         for (File schemaDirectory : directories) {
             try {
                 schemaMap.put(schemaDirectory.getName(),
-                        new SchemaInstance(this, analyzerFactoryMap, service, schemaDirectory, executorService));
+                        new SchemaInstance(this, analyzerFactoryMap, service, schemaDirectory, this.executors));
             } catch (ServerException | IOException e) {
                 LOGGER.log(Level.SEVERE, e, e::getMessage);
             }
         }
     }
 
+    public IndexManager(final Path indexesDirectory, final ExecutorService executorService,
+                        final ConstructorParameters constructorParameters) {
+        this(indexesDirectory, executorService, constructorParameters, null);
+    }
+
     public IndexManager(final Path indexesDirectory, final ExecutorService executorService) {
-        this(indexesDirectory, executorService, null);
+        this(indexesDirectory, executorService, null, null);
     }
 
     public static Path checkIndexesDirectory(final Path dataDirectory) throws IOException {
@@ -124,6 +138,15 @@ public class IndexManager extends ConstructorParametersImpl implements Closeable
         } finally {
             shemaLock.unlock();
         }
+        if (ownExecutors)
+            executors.close();
+    }
+
+    /**
+     * @return the metrics of the search, facet, indexing and maintenance pools
+     */
+    public Map<String, IndexExecutors.ExecutorStatus> getExecutorsStatus() {
+        return executors.getStatus();
     }
 
     SchemaSettingsDefinition createUpdate(final String schemaName, final SchemaSettingsDefinition settings)
@@ -132,7 +155,7 @@ public class IndexManager extends ConstructorParametersImpl implements Closeable
         try {
             final SchemaInstance schemaInstance = schemaMap.computeIfAbsent(schemaName, sc -> ExceptionUtils.bypass(
                     () -> new SchemaInstance(this, analyzerFactoryMap, service, new File(rootDirectory, schemaName),
-                            executorService)));
+                            executors)));
             if (settings != null)
                 schemaInstance.setSettings(settings);
             return schemaInstance.getSettings();
@@ -15,17 +15,23 @@
  */
 package com.qwazr.search.index;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
 import com.qwazr.binder.FieldMapWrapper;
 import com.qwazr.search.analysis.AnalyzerDefinition;
 import com.qwazr.search.field.FieldDefinition;
-import com.qwazr.search.query.TermQuery;
 import com.qwazr.search.replication.ReplicationProcess;
 import com.qwazr.search.replication.ReplicationSession;
 import com.qwazr.server.AbstractServiceImpl;
 import com.qwazr.server.ServerException;
 import com.qwazr.utils.LoggerUtils;
+import com.qwazr.utils.ObjectMappers;
 import com.qwazr.utils.concurrent.FunctionEx;
 import org.apache.commons.io.input.AutoCloseInputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.search.MatchAllDocsQuery;
 
@@ -33,12 +39,14 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -465,6 +473,28 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
         }
     }
 
+    @Override
+    final public Integer postMappedDocumentsStream(final String schemaName, final String indexName,
+                                                   final Boolean update,
+                                                   final IndexSettingsDefinition.CommitWait commitWait,
+                                                   final String contentType, final InputStream inputStream) {
+        try {
+            checkRight(schemaName);
+            final ObjectMapper mapper =
+                    contentType != null && contentType.startsWith(SmileMediaTypes.APPLICATION_JACKSON_SMILE) ?
+                            ObjectMappers.SMILE :
+                            ObjectMappers.JSON;
+            try (final MappingIterator<Map<String, Object>> documents = mapper.readerFor(Map.class)
+                    .readValues(inputStream)) {
+                return indexManager.get(schemaName)
+                        .get(indexName, true)
+                        .postMappedDocumentsStream(documents, update == null ? true : update, commitWait);
+            }
+        } catch (Exception e) {
+            throw ServerException.getJsonException(LOGGER, e);
+        }
+    }
+
     @Override
     final public <T> int postDocument(final String schemaName, final String indexName, final Map<String, Field> fields,
                                       final T document, final Map<String, String> commitUserData) throws IOException {
@@ -676,16 +706,13 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
         }
     }
 
-    private QueryDefinition getDocumentQuery(final Object id) {
-        final QueryBuilder builder = QueryDefinition.of(new TermQuery(FieldDefinition.ID_FIELD, id));
-        builder.rows(1);
-        builder.returnedField("*");
-        return builder.build();
-    }
-
     private QueryDefinition getMatchAllDocQuery(final Integer start, final Integer rows,
                                                 final FieldMapWrapper<?> wrapper) {
-        final QueryBuilder builder = QueryDefinition.of(new MatchAllDocsQuery()).start(start).rows(rows);
+        // In index order, the offset is translated into a cursor (see QueryExecution)
+        final QueryBuilder builder = QueryDefinition.of(new MatchAllDocsQuery())
+                .start(start)
+                .rows(rows)
+                .sort(FieldDefinition.DOC_FIELD, QueryDefinition.SortEnum.ascending);
         if (wrapper == null)
             builder.returnedField("*");
         else
@@ -696,7 +723,9 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
     private ResultDefinition doSearchMap(final String schemaName, final String indexName, final QueryDefinition query)
             throws IOException {
         checkRight(schemaName);
-        return indexManager.get(schemaName).get(indexName, false).query(null, context -> context.searchMap(query));
+        return indexManager.get(schemaName)
+                .get(indexName, false)
+                .query(query.lease, null, context -> context.searchMap(query));
     }
 
     private ResultDefinition doSearchObject(final String schemaName, final String indexName,
@@ -704,7 +733,13 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
         checkRight(schemaName);
         return indexManager.get(schemaName)
                 .get(indexName, false)
-                .query(null, context -> context.searchObject(query, wrapper));
+                .query(query.lease, null, context -> context.searchObject(query, wrapper));
+    }
+
+    private <T> T doGetDocuments(final String schemaName, final String indexName, final boolean realtime,
+                                 final QueryActions<T> actions) throws IOException {
+        checkRight(schemaName);
+        return indexManager.get(schemaName).get(indexName, false).getDocuments(realtime, actions);
     }
 
     @Override
@@ -712,12 +747,10 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
                                                            final String id) {
         try {
             if (id != null) {
-                final ResultDefinition result = doSearchMap(schemaName, indexName, getDocumentQuery(id));
-                if (result != null) {
-                    final List<ResultDocumentMap> docs = result.getDocuments();
-                    if (docs != null && !docs.isEmpty())
-                        return docs.get(0).getFields();
-                }
+                final List<ResultDocumentMap> docs = doGetDocuments(schemaName, indexName, false,
+                        context -> context.getDocumentsById(Collections.singleton(id)));
+                if (docs != null && !docs.isEmpty())
+                    return docs.get(0).getFields();
             }
             throw new ServerException(Response.Status.NOT_FOUND,
                     "Document not found: " + id + " - Schema/index: " + schemaName + '/' + indexName);
@@ -727,6 +760,22 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
         }
     }
 
+    @Override
+    final public List<Map<String, Object>> getDocumentsById(final String schemaName, final String indexName,
+                                                            final Boolean realtime, final List<String> ids) {
+        try {
+            if (ids == null || ids.isEmpty())
+                return Collections.emptyList();
+            final List<ResultDocumentMap> docs = doGetDocuments(schemaName, indexName,
+                    realtime != null && realtime, context -> context.getDocumentsById(ids));
+            final List<Map<String, Object>> documents = new ArrayList<>(docs.size());
+            docs.forEach(resultDocument -> documents.add(resultDocument.fields));
+            return documents;
+        } catch (Exception e) {
+            throw ServerException.getJsonException(LOGGER, e);
+        }
+    }
+
     @Override
     final public List<Map<String, Object>> getDocuments(final String schemaName, final String indexName,
                                                         final Integer start, final Integer rows) {
@@ -749,10 +798,10 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
     final public <T> T getDocument(final String schemaName, final String indexName, final Object id,
                                    final FieldMapWrapper<T> wrapper) {
         try {
-            final ResultDefinition result = doSearchObject(schemaName, indexName, getDocumentQuery(id), wrapper);
-            if (result == null)
+            if (id == null)
                 return null;
-            final List<ResultDocumentObject<T>> docs = result.getDocuments();
+            final List<ResultDocumentObject<T>> docs = doGetDocuments(schemaName, indexName, false,
+                    context -> context.getDocumentsById(Collections.singleton(id), wrapper));
             if (docs == null || docs.isEmpty())
                 return null;
             return docs.get(0).record;
@@ -789,7 +838,7 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
             if (delete != null && delete)
                 return index.deleteByQuery(query);
             else
-                return index.query(null, context -> context.searchMap(query));
+                return index.query(query.lease, null, context -> context.searchMap(query));
         } catch (Exception e) {
             throw ServerException.getJsonException(LOGGER, e);
         }
@@ -802,7 +851,7 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
             checkRight(schemaName);
             return indexManager.get(schemaName)
                     .get(indexName, false)
-                    .query(null, context -> context.searchObject(query, wrapper));
+                    .query(query.lease, null, context -> context.searchObject(query, wrapper));
         } catch (Exception e) {
             throw ServerException.getJsonException(LOGGER, e);
         }
@@ -815,7 +864,7 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
             checkRight(schemaName);
             return indexManager.get(schemaName)
                     .get(indexName, false)
-                    .query(null, context -> context.searchInterface(query, resultDocuments));
+                    .query(query.lease, null, context -> context.searchInterface(query, resultDocuments));
         } catch (Exception e) {
             throw ServerException.getJsonException(LOGGER, e);
         }
@@ -856,6 +905,58 @@ final class IndexServiceImpl extends AbstractServiceImpl implements IndexService
         }
     }
 
+    @Override
+    public LeaseDefinition acquireLease(final String schemaName, final String indexName, final Long ttlMs) {
+        try {
+            checkRight(schemaName);
+            return indexManager.get(schemaName).get(indexName, false).acquireLease(ttlMs);
+        } catch (Exception e) {
+            throw ServerException.getJsonException(LOGGER, e);
+        }
+    }
+
+    @Override
+    public boolean releaseLease(final String schemaName, final String indexName, final String leaseId) {
+        try {
+            checkRight(schemaName);
+            if (!indexManager.get(schemaName).get(indexName, false).releaseLease(leaseId))
+                throw new ServerException(Response.Status.NOT_FOUND,
+                        "Lease not found: " + leaseId + " - Index: " + indexName);
+            return true;
+        } catch (Exception e) {
+            throw ServerException.getJsonException(LOGGER, e);
+        }
+    }
+
+    @Override
+    public StreamingOutput exportQuery(final String schemaName, final String indexName, final String accept,
+                                       final QueryDefinition query) {
+        try {
+            checkRight(schemaName);
+            final boolean smile = accept != null && accept.startsWith(SmileMediaTypes.APPLICATION_JACKSON_SMILE);
+            // Any error occurs now, before the response status is sent
+            final QueryExport.Checked export = indexManager.get(schemaName).get(indexName, false).export(query);
+            // The resources are only acquired when the output is written
+            return output -> {
+                final long count;
+                try (final SequenceWriter writer = smile ?
+                        ObjectMappers.SMILE.writer()
+                                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                                .writeValues(new CloseShieldOutputStream(output)) :
+                        ObjectMappers.JSON.writer()
+                                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                                .withRootValueSeparator("\n")
+                                .writeValues(new CloseShieldOutputStream(output))) {
+                    count = export.execute(writer::write);
+                }
+                if (count > 0 && !smile)
+                    output.write('\n');
+            };
+        } catch (Exception e) {
+            throw ServerException.getJsonException(LOGGER, e);
+        }
+    }
+
     @Override
     public <T> T query(final String schemaName, final String indexName, final FieldMapWrapper.Cache fieldMapWrappers,
                        final QueryActions<T> actions) throws IOException {
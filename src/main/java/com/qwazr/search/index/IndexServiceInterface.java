@@ -31,14 +31,17 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.HEAD;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -57,6 +60,7 @@ public interface IndexServiceInterface extends ServiceInterface {
     String PATH = "indexes";
 
     String MEDIATYPE_TEXT_GRAPHVIZ = "text/vnd.graphviz";
+    String MEDIATYPE_APPLICATION_NDJSON = "application/x-ndjson";
 
     @POST
     @Path("/{schema_name}")
@@ -260,6 +264,14 @@ public interface IndexServiceInterface extends ServiceInterface {
     Map<String, Object> getDocument(@PathParam("schema_name") String schema_name,
                                     @PathParam("index_name") String index_name, @PathParam("id") String doc_id);
 
+    @POST
+    @Path("/{schema_name}/{index_name}/docs/get")
+    @Consumes({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    List<Map<String, Object>> getDocumentsById(@PathParam("schema_name") String schema_name,
+                                               @PathParam("index_name") String index_name,
+                                               @QueryParam("realtime") Boolean realtime, List<String> ids);
+
     @POST
     @Path("/{schema_name}/{index_name}/doc")
     @Consumes({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
@@ -274,6 +286,21 @@ public interface IndexServiceInterface extends ServiceInterface {
     Integer postMappedDocuments(@PathParam("schema_name") String schema_name,
                                 @PathParam("index_name") String index_name, PostDefinition.Documents documents);
 
+    /**
+     * Index the documents while the stream is read, without loading the whole body in memory.
+     * The stream is not atomic: on a malformed stream, the documents already indexed are committed
+     * (not rolled back) and the request fails.
+     */
+    @POST
+    @Path("/{schema_name}/{index_name}/docs/stream")
+    @Consumes({MEDIATYPE_APPLICATION_NDJSON, ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    Integer postMappedDocumentsStream(@PathParam("schema_name") String schema_name,
+                                      @PathParam("index_name") String index_name, @QueryParam("update") Boolean update,
+                                      @QueryParam("commit_wait") IndexSettingsDefinition.CommitWait commit_wait,
+                                      @HeaderParam(HttpHeaders.CONTENT_TYPE) String content_type,
+                                      InputStream inputStream);
+
     @POST
     @Path("/{schema_name}/{index_name}/doc/values")
     @Consumes({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
@@ -367,6 +394,38 @@ public interface IndexServiceInterface extends ServiceInterface {
     ResultDefinition.WithMap searchQuery(@PathParam("schema_name") String schema_name,
                                          @PathParam("index_name") String index_name, QueryDefinition query, @QueryParam("delete") Boolean delete);
 
+    /**
+     * Acquire a point-in-time lease on the current searcher of the index.
+     * The queries which set the returned lease id see the same version of the index.
+     * The lease is extended each time it is used, and expires if it is not used during its TTL.
+     */
+    @POST
+    @Path("/{schema_name}/{index_name}/leases")
+    @Produces({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    LeaseDefinition acquireLease(@PathParam("schema_name") String schema_name,
+                                 @PathParam("index_name") String index_name, @QueryParam("ttl_ms") Long ttl_ms);
+
+    @DELETE
+    @Path("/{schema_name}/{index_name}/leases/{lease_id}")
+    @Produces({ServiceInterface.APPLICATION_JSON_UTF8, MediaType.TEXT_PLAIN})
+    boolean releaseLease(@PathParam("schema_name") String schema_name, @PathParam("index_name") String index_name,
+                         @PathParam("lease_id") String lease_id);
+
+    /**
+     * Stream all the documents matching the query, one JSON object per line (or a sequence of SMILE objects
+     * if SMILE is accepted). The documents are written in index order, as they are collected.
+     * There is no scoring, no sorting, no paging and no facets: only the returned fields are used.
+     * The query is checked before the output is returned. The searcher is only acquired while the output
+     * is written: nothing is held by an output which is never written.
+     */
+    @POST
+    @Path("/{schema_name}/{index_name}/search/export")
+    @Consumes({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MEDIATYPE_APPLICATION_NDJSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    StreamingOutput exportQuery(@PathParam("schema_name") String schema_name,
+                                @PathParam("index_name") String index_name,
+                                @HeaderParam(HttpHeaders.ACCEPT) String accept, QueryDefinition query);
+
     @POST
     @Path("/{schema_name}/{index_name}/search/explain/{doc}")
     @Consumes({ServiceInterface.APPLICATION_JSON_UTF8, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
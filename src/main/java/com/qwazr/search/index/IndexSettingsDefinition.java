@@ -28,6 +28,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
+import java.util.LinkedHashMap;
 import java.util.Objects;
 import java.util.function.Supplier;
 
@@ -45,11 +46,42 @@ public class IndexSettingsDefinition {
         NO, CONCURRENT, SERIAL
     }
 
+    public enum CommitPolicy {
+        IMMEDIATE, GROUP
+    }
+
+    public enum QueryCachePolicy {
+        USAGE_TRACKING, ALWAYS, NEVER
+    }
+
+    /**
+     * EAGER: the ordinals of the sorted set facets are rebuilt for each new searcher.
+     * INCREMENTAL: the ordinals are built on the first facet request, and reused by the next searchers
+     * as long as their segments are unchanged (only deletions, or no change on the facet field).
+     */
+    public enum SortedSetFacetState {
+        EAGER, INCREMENTAL
+    }
+
+    public enum CommitWait {
+        DURABLE, VISIBLE, NONE
+    }
+
     public static final int DEFAULT_MAX_MERGE_AT_ONCE = 10;
     public static final int DEFAULT_SEGMENTS_PER_TIER = 10;
     public static final double DEFAULT_MAX_MERGED_SEGMENT_MB = 5 * 1024 * 1024;
     public static final double DEFAULT_NRT_CACHING_DIRECTORY_MERGE_SIZE_MB = 5;
     public static final double DEFAULT_NRT_CACHING_DIRECTORY_MAX_CACHED_MB = 60;
+    public static final int DEFAULT_GROUP_COMMIT_DELAY_MS = 100;
+    public static final int DEFAULT_GROUP_COMMIT_MAX_PENDING = 1000;
+    public static final double DEFAULT_NRT_TARGET_MAX_STALE_SEC = 0;
+    public static final double DEFAULT_NRT_TARGET_MIN_STALE_SEC = 0.025;
+    public static final int DEFAULT_TRANSLOG_COMMIT_INTERVAL_SEC = 60;
+    public static final int DEFAULT_MAX_QUEUED_REQUESTS = 64;
+    public static final int DEFAULT_ADMISSION_TIMEOUT_MS = 10000;
+    public static final int DEFAULT_QUERY_CACHE_MAX_SIZE = 1000;
+    public static final int DEFAULT_QUERY_CACHE_MIN_LEAF_SIZE = 10000;
+    public static final int DEFAULT_MAX_LEASES = 100;
 
     @JsonProperty("similarity_class")
     final public String similarityClass;
@@ -98,6 +130,72 @@ public class IndexSettingsDefinition {
     @JsonProperty("nrt_caching_directory_max_cached_mb")
     final public Double nrtCachingDirectoryMaxCachedMB;
 
+    @JsonProperty("commit_policy")
+    final public CommitPolicy commitPolicy;
+
+    @JsonProperty("commit_wait")
+    final public CommitWait commitWait;
+
+    @JsonProperty("group_commit_delay_ms")
+    final public Integer groupCommitDelayMs;
+
+    @JsonProperty("group_commit_max_pending")
+    final public Integer groupCommitMaxPending;
+
+    @JsonProperty("nrt_target_max_stale_sec")
+    final public Double nrtTargetMaxStaleSec;
+
+    @JsonProperty("nrt_target_min_stale_sec")
+    final public Double nrtTargetMinStaleSec;
+
+    @JsonProperty("translog")
+    final public Boolean translog;
+
+    @JsonProperty("translog_commit_interval_sec")
+    final public Integer translogCommitIntervalSec;
+
+    @JsonProperty("index_sort")
+    final public LinkedHashMap<String, QueryDefinition.SortEnum> indexSort;
+
+    @JsonProperty("id_bloom_filter")
+    final public Boolean idBloomFilter;
+
+    @JsonProperty("max_concurrent_queries")
+    final public Integer maxConcurrentQueries;
+
+    @JsonProperty("max_concurrent_writes")
+    final public Integer maxConcurrentWrites;
+
+    @JsonProperty("max_queued_requests")
+    final public Integer maxQueuedRequests;
+
+    @JsonProperty("admission_timeout_ms")
+    final public Integer admissionTimeoutMs;
+
+    @JsonProperty("result_cache_max_mb")
+    final public Double resultCacheMaxMb;
+
+    @JsonProperty("query_cache_max_mb")
+    final public Double queryCacheMaxMb;
+
+    @JsonProperty("query_cache_max_size")
+    final public Integer queryCacheMaxSize;
+
+    @JsonProperty("query_cache_min_leaf_size")
+    final public Integer queryCacheMinLeafSize;
+
+    @JsonProperty("query_cache_policy")
+    final public QueryCachePolicy queryCachePolicy;
+
+    @JsonProperty("parsed_query_cache_size")
+    final public Integer parsedQueryCacheSize;
+
+    @JsonProperty("sorted_set_facet_state")
+    final public SortedSetFacetState sortedSetFacetState;
+
+    @JsonProperty("max_leases")
+    final public Integer maxLeases;
+
     private IndexSettingsDefinition() {
         this.directoryType = null;
         this.mergeScheduler = null;
@@ -115,6 +213,28 @@ public class IndexSettingsDefinition {
         this.mergedSegmentWarmer = null;
         this.nrtCachingDirectoryMaxMergeSizeMB = null;
         this.nrtCachingDirectoryMaxCachedMB = null;
+        this.commitPolicy = null;
+        this.commitWait = null;
+        this.groupCommitDelayMs = null;
+        this.groupCommitMaxPending = null;
+        this.nrtTargetMaxStaleSec = null;
+        this.nrtTargetMinStaleSec = null;
+        this.translog = null;
+        this.translogCommitIntervalSec = null;
+        this.indexSort = null;
+        this.idBloomFilter = null;
+        this.maxConcurrentQueries = null;
+        this.maxConcurrentWrites = null;
+        this.maxQueuedRequests = null;
+        this.admissionTimeoutMs = null;
+        this.resultCacheMaxMb = null;
+        this.queryCacheMaxMb = null;
+        this.queryCacheMaxSize = null;
+        this.queryCacheMinLeafSize = null;
+        this.queryCachePolicy = null;
+        this.parsedQueryCacheSize = null;
+        this.sortedSetFacetState = null;
+        this.maxLeases = null;
     }
 
     @JsonCreator
@@ -133,7 +253,29 @@ public class IndexSettingsDefinition {
                                     @JsonProperty("index_reader_warmer") final Boolean indexReaderWarmer,
                                     @JsonProperty("merged_segment_warmer") final Boolean mergedSegmentWarmer,
                                     @JsonProperty("nrt_caching_directory_max_merge_size_mb") final Double nrtCachingDirectoryMaxMergeSizeMB,
-                                    @JsonProperty("nrt_caching_directory_max_cached_mb") final Double nrtCachingDirectoryMaxCachedMB) {
+                                    @JsonProperty("nrt_caching_directory_max_cached_mb") final Double nrtCachingDirectoryMaxCachedMB,
+                                    @JsonProperty("commit_policy") final CommitPolicy commitPolicy,
+                                    @JsonProperty("commit_wait") final CommitWait commitWait,
+                                    @JsonProperty("group_commit_delay_ms") final Integer groupCommitDelayMs,
+                                    @JsonProperty("group_commit_max_pending") final Integer groupCommitMaxPending,
+                                    @JsonProperty("nrt_target_max_stale_sec") final Double nrtTargetMaxStaleSec,
+                                    @JsonProperty("nrt_target_min_stale_sec") final Double nrtTargetMinStaleSec,
+                                    @JsonProperty("translog") final Boolean translog,
+                                    @JsonProperty("translog_commit_interval_sec") final Integer translogCommitIntervalSec,
+                                    @JsonProperty("index_sort") final LinkedHashMap<String, QueryDefinition.SortEnum> indexSort,
+                                    @JsonProperty("id_bloom_filter") final Boolean idBloomFilter,
+                                    @JsonProperty("max_concurrent_queries") final Integer maxConcurrentQueries,
+                                    @JsonProperty("max_concurrent_writes") final Integer maxConcurrentWrites,
+                                    @JsonProperty("max_queued_requests") final Integer maxQueuedRequests,
+                                    @JsonProperty("admission_timeout_ms") final Integer admissionTimeoutMs,
+                                    @JsonProperty("result_cache_max_mb") final Double resultCacheMaxMb,
+                                    @JsonProperty("query_cache_max_mb") final Double queryCacheMaxMb,
+                                    @JsonProperty("query_cache_max_size") final Integer queryCacheMaxSize,
+                                    @JsonProperty("query_cache_min_leaf_size") final Integer queryCacheMinLeafSize,
+                                    @JsonProperty("query_cache_policy") final QueryCachePolicy queryCachePolicy,
+                                    @JsonProperty("parsed_query_cache_size") final Integer parsedQueryCacheSize,
+                                    @JsonProperty("sorted_set_facet_state") final SortedSetFacetState sortedSetFacetState,
+                                    @JsonProperty("max_leases") final Integer maxLeases) {
         this.directoryType = directoryType;
         this.mergeScheduler = mergeScheduler;
         this.similarityClass = similarityClass;
@@ -150,6 +292,28 @@ public class IndexSettingsDefinition {
         this.mergedSegmentWarmer = mergedSegmentWarmer;
         this.nrtCachingDirectoryMaxMergeSizeMB = nrtCachingDirectoryMaxMergeSizeMB;
         this.nrtCachingDirectoryMaxCachedMB = nrtCachingDirectoryMaxCachedMB;
+        this.commitPolicy = commitPolicy;
+        this.commitWait = commitWait;
+        this.groupCommitDelayMs = groupCommitDelayMs;
+        this.groupCommitMaxPending = groupCommitMaxPending;
+        this.nrtTargetMaxStaleSec = nrtTargetMaxStaleSec;
+        this.nrtTargetMinStaleSec = nrtTargetMinStaleSec;
+        this.translog = translog;
+        this.translogCommitIntervalSec = translogCommitIntervalSec;
+        this.indexSort = indexSort;
+        this.idBloomFilter = idBloomFilter;
+        this.maxConcurrentQueries = maxConcurrentQueries;
+        this.maxConcurrentWrites = maxConcurrentWrites;
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.admissionTimeoutMs = admissionTimeoutMs;
+        this.resultCacheMaxMb = resultCacheMaxMb;
+        this.queryCacheMaxMb = queryCacheMaxMb;
+        this.queryCacheMaxSize = queryCacheMaxSize;
+        this.queryCacheMinLeafSize = queryCacheMinLeafSize;
+        this.queryCachePolicy = queryCachePolicy;
+        this.parsedQueryCacheSize = parsedQueryCacheSize;
+        this.sortedSetFacetState = sortedSetFacetState;
+        this.maxLeases = maxLeases;
     }
 
     private IndexSettingsDefinition(final Builder builder) {
@@ -169,6 +333,28 @@ public class IndexSettingsDefinition {
         this.mergedSegmentWarmer = builder.mergedSegmentWarmer;
         this.nrtCachingDirectoryMaxMergeSizeMB = builder.nrtCachingDirectoryMaxMergeSizeMB;
         this.nrtCachingDirectoryMaxCachedMB = builder.nrtCachingDirectoryMaxCachedMB;
+        this.commitPolicy = builder.commitPolicy;
+        this.commitWait = builder.commitWait;
+        this.groupCommitDelayMs = builder.groupCommitDelayMs;
+        this.groupCommitMaxPending = builder.groupCommitMaxPending;
+        this.nrtTargetMaxStaleSec = builder.nrtTargetMaxStaleSec;
+        this.nrtTargetMinStaleSec = builder.nrtTargetMinStaleSec;
+        this.translog = builder.translog;
+        this.translogCommitIntervalSec = builder.translogCommitIntervalSec;
+        this.indexSort = builder.indexSort;
+        this.idBloomFilter = builder.idBloomFilter;
+        this.maxConcurrentQueries = builder.maxConcurrentQueries;
+        this.maxConcurrentWrites = builder.maxConcurrentWrites;
+        this.maxQueuedRequests = builder.maxQueuedRequests;
+        this.admissionTimeoutMs = builder.admissionTimeoutMs;
+        this.resultCacheMaxMb = builder.resultCacheMaxMb;
+        this.queryCacheMaxMb = builder.queryCacheMaxMb;
+        this.queryCacheMaxSize = builder.queryCacheMaxSize;
+        this.queryCacheMinLeafSize = builder.queryCacheMinLeafSize;
+        this.queryCachePolicy = builder.queryCachePolicy;
+        this.parsedQueryCacheSize = builder.parsedQueryCacheSize;
+        this.sortedSetFacetState = builder.sortedSetFacetState;
+        this.maxLeases = builder.maxLeases;
     }
 
     final static IndexSettingsDefinition EMPTY = new IndexSettingsDefinition();
@@ -225,6 +411,50 @@ public class IndexSettingsDefinition {
             return false;
         if (!Objects.equals(nrtCachingDirectoryMaxCachedMB, s.nrtCachingDirectoryMaxCachedMB))
             return false;
+        if (!Objects.equals(commitPolicy, s.commitPolicy))
+            return false;
+        if (!Objects.equals(commitWait, s.commitWait))
+            return false;
+        if (!Objects.equals(groupCommitDelayMs, s.groupCommitDelayMs))
+            return false;
+        if (!Objects.equals(groupCommitMaxPending, s.groupCommitMaxPending))
+            return false;
+        if (!Objects.equals(nrtTargetMaxStaleSec, s.nrtTargetMaxStaleSec))
+            return false;
+        if (!Objects.equals(nrtTargetMinStaleSec, s.nrtTargetMinStaleSec))
+            return false;
+        if (!Objects.equals(translog, s.translog))
+            return false;
+        if (!Objects.equals(translogCommitIntervalSec, s.translogCommitIntervalSec))
+            return false;
+        if (!Objects.equals(indexSort, s.indexSort))
+            return false;
+        if (!Objects.equals(idBloomFilter, s.idBloomFilter))
+            return false;
+        if (!Objects.equals(maxConcurrentQueries, s.maxConcurrentQueries))
+            return false;
+        if (!Objects.equals(maxConcurrentWrites, s.maxConcurrentWrites))
+            return false;
+        if (!Objects.equals(maxQueuedRequests, s.maxQueuedRequests))
+            return false;
+        if (!Objects.equals(admissionTimeoutMs, s.admissionTimeoutMs))
+            return false;
+        if (!Objects.equals(resultCacheMaxMb, s.resultCacheMaxMb))
+            return false;
+        if (!Objects.equals(queryCacheMaxMb, s.queryCacheMaxMb))
+            return false;
+        if (!Objects.equals(queryCacheMaxSize, s.queryCacheMaxSize))
+            return false;
+        if (!Objects.equals(queryCacheMinLeafSize, s.queryCacheMinLeafSize))
+            return false;
+        if (!Objects.equals(queryCachePolicy, s.queryCachePolicy))
+            return false;
+        if (!Objects.equals(parsedQueryCacheSize, s.parsedQueryCacheSize))
+            return false;
+        if (!Objects.equals(sortedSetFacetState, s.sortedSetFacetState))
+            return false;
+        if (!Objects.equals(maxLeases, s.maxLeases))
+            return false;
         return true;
     }
 
@@ -258,6 +488,28 @@ public class IndexSettingsDefinition {
         private Boolean mergedSegmentWarmer;
         private Double nrtCachingDirectoryMaxMergeSizeMB;
         private Double nrtCachingDirectoryMaxCachedMB;
+        private CommitPolicy commitPolicy;
+        private CommitWait commitWait;
+        private Integer groupCommitDelayMs;
+        private Integer groupCommitMaxPending;
+        private Double nrtTargetMaxStaleSec;
+        private Double nrtTargetMinStaleSec;
+        private Boolean translog;
+        private Integer translogCommitIntervalSec;
+        private LinkedHashMap<String, QueryDefinition.SortEnum> indexSort;
+        private Boolean idBloomFilter;
+        private Integer maxConcurrentQueries;
+        private Integer maxConcurrentWrites;
+        private Integer maxQueuedRequests;
+        private Integer admissionTimeoutMs;
+        private Double resultCacheMaxMb;
+        private Double queryCacheMaxMb;
+        private Integer queryCacheMaxSize;
+        private Integer queryCacheMinLeafSize;
+        private QueryCachePolicy queryCachePolicy;
+        private Integer parsedQueryCacheSize;
+        private SortedSetFacetState sortedSetFacetState;
+        private Integer maxLeases;
 
         private Builder() {
         }
@@ -279,6 +531,16 @@ public class IndexSettingsDefinition {
             mergedSegmentWarmer = annotatedIndex.mergedSegmentWarmer();
             nrtCachingDirectoryMaxMergeSizeMB = annotatedIndex.nrtCachingDirectoryMaxMergeSizeMB();
             nrtCachingDirectoryMaxCachedMB = annotatedIndex.nrtCachingDirectoryMaxCachedMB();
+            commitPolicy = annotatedIndex.commitPolicy();
+            commitWait = annotatedIndex.commitWait();
+            groupCommitDelayMs = annotatedIndex.groupCommitDelayMs();
+            groupCommitMaxPending = annotatedIndex.groupCommitMaxPending();
+            nrtTargetMaxStaleSec = annotatedIndex.nrtTargetMaxStaleSec();
+            nrtTargetMinStaleSec = annotatedIndex.nrtTargetMinStaleSec();
+            translog = annotatedIndex.translog();
+            translogCommitIntervalSec = annotatedIndex.translogCommitIntervalSec();
+            idBloomFilter = annotatedIndex.idBloomFilter();
+            maxLeases = annotatedIndex.maxLeases();
         }
 
         private Builder(final IndexSettingsDefinition settings) {
@@ -298,6 +560,28 @@ public class IndexSettingsDefinition {
             this.mergedSegmentWarmer = settings.mergedSegmentWarmer;
             this.nrtCachingDirectoryMaxMergeSizeMB = settings.nrtCachingDirectoryMaxMergeSizeMB;
             this.nrtCachingDirectoryMaxCachedMB = settings.nrtCachingDirectoryMaxCachedMB;
+            this.commitPolicy = settings.commitPolicy;
+            this.commitWait = settings.commitWait;
+            this.groupCommitDelayMs = settings.groupCommitDelayMs;
+            this.groupCommitMaxPending = settings.groupCommitMaxPending;
+            this.nrtTargetMaxStaleSec = settings.nrtTargetMaxStaleSec;
+            this.nrtTargetMinStaleSec = settings.nrtTargetMinStaleSec;
+            this.translog = settings.translog;
+            this.translogCommitIntervalSec = settings.translogCommitIntervalSec;
+            this.indexSort = settings.indexSort;
+            this.idBloomFilter = settings.idBloomFilter;
+            this.maxConcurrentQueries = settings.maxConcurrentQueries;
+            this.maxConcurrentWrites = settings.maxConcurrentWrites;
+            this.maxQueuedRequests = settings.maxQueuedRequests;
+            this.admissionTimeoutMs = settings.admissionTimeoutMs;
+            this.resultCacheMaxMb = settings.resultCacheMaxMb;
+            this.queryCacheMaxMb = settings.queryCacheMaxMb;
+            this.queryCacheMaxSize = settings.queryCacheMaxSize;
+            this.queryCacheMinLeafSize = settings.queryCacheMinLeafSize;
+            this.queryCachePolicy = settings.queryCachePolicy;
+            this.parsedQueryCacheSize = settings.parsedQueryCacheSize;
+            this.sortedSetFacetState = settings.sortedSetFacetState;
+            this.maxLeases = settings.maxLeases;
         }
 
         public Builder type(final Type directoryType) {
@@ -393,6 +677,123 @@ public class IndexSettingsDefinition {
             return this;
         }
 
+        public Builder commitPolicy(final CommitPolicy commitPolicy) {
+            this.commitPolicy = commitPolicy;
+            return this;
+        }
+
+        public Builder commitWait(final CommitWait commitWait) {
+            this.commitWait = commitWait;
+            return this;
+        }
+
+        public Builder groupCommitDelayMs(final Integer groupCommitDelayMs) {
+            this.groupCommitDelayMs = groupCommitDelayMs;
+            return this;
+        }
+
+        public Builder groupCommitMaxPending(final Integer groupCommitMaxPending) {
+            this.groupCommitMaxPending = groupCommitMaxPending;
+            return this;
+        }
+
+        public Builder nrtTargetMaxStaleSec(final Double nrtTargetMaxStaleSec) {
+            this.nrtTargetMaxStaleSec = nrtTargetMaxStaleSec;
+            return this;
+        }
+
+        public Builder nrtTargetMinStaleSec(final Double nrtTargetMinStaleSec) {
+            this.nrtTargetMinStaleSec = nrtTargetMinStaleSec;
+            return this;
+        }
+
+        public Builder translog(final Boolean translog) {
+            this.translog = translog;
+            return this;
+        }
+
+        public Builder translogCommitIntervalSec(final Integer translogCommitIntervalSec) {
+            this.translogCommitIntervalSec = translogCommitIntervalSec;
+            return this;
+        }
+
+        public Builder indexSort(final LinkedHashMap<String, QueryDefinition.SortEnum> indexSort) {
+            this.indexSort = indexSort;
+            return this;
+        }
+
+        public Builder indexSort(final String fieldName, final QueryDefinition.SortEnum sortEnum) {
+            if (indexSort == null)
+                indexSort = new LinkedHashMap<>();
+            indexSort.put(fieldName, sortEnum);
+            return this;
+        }
+
+        public Builder idBloomFilter(final Boolean idBloomFilter) {
+            this.idBloomFilter = idBloomFilter;
+            return this;
+        }
+
+        public Builder maxConcurrentQueries(final Integer maxConcurrentQueries) {
+            this.maxConcurrentQueries = maxConcurrentQueries;
+            return this;
+        }
+
+        public Builder maxConcurrentWrites(final Integer maxConcurrentWrites) {
+            this.maxConcurrentWrites = maxConcurrentWrites;
+            return this;
+        }
+
+        public Builder maxQueuedRequests(final Integer maxQueuedRequests) {
+            this.maxQueuedRequests = maxQueuedRequests;
+            return this;
+        }
+
+        public Builder admissionTimeoutMs(final Integer admissionTimeoutMs) {
+            this.admissionTimeoutMs = admissionTimeoutMs;
+            return this;
+        }
+
+        public Builder resultCacheMaxMb(final Double resultCacheMaxMb) {
+            this.resultCacheMaxMb = resultCacheMaxMb;
+            return this;
+        }
+
+        public Builder queryCacheMaxMb(final Double queryCacheMaxMb) {
+            this.queryCacheMaxMb = queryCacheMaxMb;
+            return this;
+        }
+
+        public Builder queryCacheMaxSize(final Integer queryCacheMaxSize) {
+            this.queryCacheMaxSize = queryCacheMaxSize;
+            return this;
+        }
+
+        public Builder queryCacheMinLeafSize(final Integer queryCacheMinLeafSize) {
+            this.queryCacheMinLeafSize = queryCacheMinLeafSize;
+            return this;
+        }
+
+        public Builder queryCachePolicy(final QueryCachePolicy queryCachePolicy) {
+            this.queryCachePolicy = queryCachePolicy;
+            return this;
+        }
+
+        public Builder parsedQueryCacheSize(final Integer parsedQueryCacheSize) {
+            this.parsedQueryCacheSize = parsedQueryCacheSize;
+            return this;
+        }
+
+        public Builder sortedSetFacetState(final SortedSetFacetState sortedSetFacetState) {
+            this.sortedSetFacetState = sortedSetFacetState;
+            return this;
+        }
+
+        public Builder maxLeases(final Integer maxLeases) {
+            this.maxLeases = maxLeases;
+            return this;
+        }
+
         public IndexSettingsDefinition build() {
             return new IndexSettingsDefinition(this);
         }
@@ -22,6 +22,7 @@ import com.qwazr.search.replication.ReplicationSession;
 import com.qwazr.server.RemoteService;
 import com.qwazr.server.ServerException;
 import com.qwazr.server.client.JsonClient;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.AutoCloseInputStream;
 import org.apache.commons.lang3.StringUtils;
 
@@ -30,6 +31,7 @@ import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.InputStream;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -622,6 +624,24 @@ public class IndexSingleClient extends JsonClient implements IndexServiceInterfa
         }
     }
 
+    @Override
+    public Integer postMappedDocumentsStream(final String schemaName, final String indexName, final Boolean update,
+                                             final IndexSettingsDefinition.CommitWait commitWait,
+                                             final String contentType, final InputStream inputStream) {
+        try {
+            WebTarget target = indexTarget.path(schemaName).path(indexName).path("docs").path("stream");
+            if (update != null)
+                target = target.queryParam("update", update);
+            if (commitWait != null)
+                target = target.queryParam("commit_wait", commitWait);
+            return target.request(preferedSerializedMediaType)
+                    .post(Entity.entity(inputStream, contentType == null ? MEDIATYPE_APPLICATION_NDJSON : contentType),
+                            Integer.class);
+        } catch (WebApplicationException e) {
+            throw ServerException.from(e);
+        }
+    }
+
     @Override
     public Integer updateMappedDocValues(final String schemaName, final String indexName,
                                          final PostDefinition.Document post) {
@@ -680,6 +700,20 @@ public class IndexSingleClient extends JsonClient implements IndexServiceInterfa
         }
     }
 
+    @Override
+    public List<Map<String, Object>> getDocumentsById(final String schemaName, final String indexName,
+                                                      final Boolean realtime, final List<String> ids) {
+        try {
+            WebTarget target = indexTarget.path(schemaName).path(indexName).path("docs").path("get");
+            if (realtime != null)
+                target = target.queryParam("realtime", realtime);
+            return target.request(preferedSerializedMediaType)
+                    .post(Entity.entity(ids, preferedSerializedMediaType), listMapStringObjectType);
+        } catch (WebApplicationException e) {
+            throw ServerException.from(e);
+        }
+    }
+
     @Override
     public List<Map<String, Object>> getDocuments(final String schemaName, final String indexName, final Integer start,
                                                   final Integer rows) {
@@ -740,6 +774,51 @@ public class IndexSingleClient extends JsonClient implements IndexServiceInterfa
         }
     }
 
+    @Override
+    public LeaseDefinition acquireLease(final String schemaName, final String indexName, final Long ttlMs) {
+        try {
+            WebTarget target = indexTarget.path(schemaName).path(indexName).path("leases");
+            if (ttlMs != null)
+                target = target.queryParam("ttl_ms", ttlMs);
+            return target.request(preferedSerializedMediaType)
+                    .post(Entity.entity(null, preferedSerializedMediaType), LeaseDefinition.class);
+        } catch (WebApplicationException e) {
+            throw ServerException.from(e);
+        }
+    }
+
+    @Override
+    public boolean releaseLease(final String schemaName, final String indexName, final String leaseId) {
+        try {
+            return indexTarget.path(schemaName)
+                    .path(indexName)
+                    .path("leases")
+                    .path(leaseId)
+                    .request(MediaType.TEXT_PLAIN)
+                    .delete(boolean.class);
+        } catch (WebApplicationException e) {
+            throw ServerException.from(e);
+        }
+    }
+
+    @Override
+    public StreamingOutput exportQuery(final String schemaName, final String indexName, final String accept,
+                                       final QueryDefinition query) {
+        // The request is sent when the output is written: nothing is left open if it is never written
+        return output -> {
+            try (final InputStream input = indexTarget.path(schemaName)
+                    .path(indexName)
+                    .path("search")
+                    .path("export")
+                    .request(accept == null ? MEDIATYPE_APPLICATION_NDJSON : accept)
+                    .post(Entity.entity(query, preferedSerializedMediaType), InputStream.class)) {
+                IOUtils.copy(input, output);
+            } catch (WebApplicationException e) {
+                throw ServerException.from(e);
+            }
+        };
+    }
+
     @Override
     public String explainQueryDot(String schemaName, String indexName, QueryDefinition query, int docId,
                                   Integer descriptionWrapSize) {
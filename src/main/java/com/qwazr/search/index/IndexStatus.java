@@ -120,6 +120,9 @@ public class IndexStatus {
     @JsonProperty("query_cache")
     final public QueryCacheStats queryCache;
 
+    @JsonProperty("result_cache")
+    final public ResultCacheStats resultCache;
+
     @JsonProperty("commit_user_data")
     final public Map<String, String> commitUserData;
 
@@ -138,6 +141,19 @@ public class IndexStatus {
     @JsonProperty("active_query_analyzers")
     final public Integer activeQueryAnalyzers;
 
+    @JsonProperty("query_admission")
+    final public AdmissionStatus queryAdmission;
+
+    @JsonProperty("write_admission")
+    final public AdmissionStatus writeAdmission;
+
+    final public LeaseStats leases;
+
+    /**
+     * The metrics of the thread pools shared by the indexes
+     */
+    final public Map<String, IndexExecutors.ExecutorStatus> executors;
+
     @JsonCreator
     IndexStatus(@JsonProperty("num_docs") Long numDocs, @JsonProperty("num_deleted_docs") Long numDeletedDocs,
         @JsonProperty("has_pending_merges") Boolean hasPendingMerges,
@@ -153,12 +169,17 @@ public class IndexStatus {
         @JsonProperty("commit_generation") Long commitGeneration,
         @JsonProperty("merge_policy") MergePolicyStatus mergePolicy,
         @JsonProperty("query_cache") QueryCacheStats queryCache,
+        @JsonProperty("result_cache") ResultCacheStats resultCache,
         @JsonProperty("commit_user_data") Map<String, String> commitUserData,
         @JsonProperty("directory_class") String directoryClass,
         @JsonProperty("directory_cached_files") String[] directoryCachedFiles,
         @JsonProperty("directory_cached_ram_used") String directoryCachedRamUsed,
         @JsonProperty("active_index_analyzers") Integer activeIndexAnalyzers,
-        @JsonProperty("active_query_analyzers") Integer activeQueryAnalyzers) {
+        @JsonProperty("active_query_analyzers") Integer activeQueryAnalyzers,
+        @JsonProperty("query_admission") AdmissionStatus queryAdmission,
+        @JsonProperty("write_admission") AdmissionStatus writeAdmission,
+        @JsonProperty("leases") LeaseStats leases,
+        @JsonProperty("executors") Map<String, IndexExecutors.ExecutorStatus> executors) {
         this.numDocs = numDocs;
         this.numDeletedDocs = numDeletedDocs;
         this.mergePolicy = mergePolicy;
@@ -179,18 +200,25 @@ public class IndexStatus {
         this.commitFilenames = commitFilenames;
         this.commitGeneration = commitGeneration;
         this.queryCache = queryCache;
+        this.resultCache = resultCache;
         this.commitUserData = commitUserData;
         this.directoryClass = directoryClass;
         this.directoryCachedFiles = directoryCachedFiles;
         this.directoryCachedRamUsed = directoryCachedRamUsed;
         this.activeIndexAnalyzers = activeIndexAnalyzers;
         this.activeQueryAnalyzers = activeQueryAnalyzers;
+        this.queryAdmission = queryAdmission;
+        this.writeAdmission = writeAdmission;
+        this.leases = leases;
+        this.executors = executors;
     }
 
     public IndexStatus(final UUID indexUuid, final UUID masterUuid, final Directory directory,
         final IndexSearcher indexSearcher, final IndexWriter indexWriter, final IndexSettingsDefinition settings,
         final Set<String> analyzers, final Set<String> fields, final int activeIndexAnalyzers,
-        final int activeQueryAnalyzers) throws IOException {
+        final int activeQueryAnalyzers, final AdmissionStatus queryAdmission, final AdmissionStatus writeAdmission,
+        final ResultCacheStats resultCache, final LeaseStats leases,
+        final Map<String, IndexExecutors.ExecutorStatus> executors) throws IOException {
         final IndexReader indexReader = indexSearcher.getIndexReader();
         this.numDocs = (long) indexReader.numDocs();
         this.numDeletedDocs = (long) indexReader.numDeletedDocs();
@@ -262,9 +290,14 @@ public class IndexStatus {
         this.activeIndexAnalyzers = activeIndexAnalyzers;
         this.activeQueryAnalyzers = activeQueryAnalyzers;
         this.fields = fields;
+        this.queryAdmission = queryAdmission;
+        this.writeAdmission = writeAdmission;
 
         final QueryCache queryCache = indexSearcher.getQueryCache();
         this.queryCache = queryCache instanceof LRUQueryCache ? new QueryCacheStats((LRUQueryCache) queryCache) : null;
+        this.resultCache = resultCache;
+        this.leases = leases;
+        this.executors = executors;
 
         if (directory != null) {
             if (directory instanceof NRTCachingDirectory) {
@@ -585,4 +618,125 @@ public class IndexStatus {
             return true;
         }
     }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY)
+    public static class AdmissionStatus {
+
+        @JsonProperty("max_concurrent")
+        public final Integer maxConcurrent;
+
+        public final Integer running;
+
+        public final Integer queued;
+
+        @JsonProperty("max_queued")
+        public final Integer maxQueued;
+
+        @JsonProperty("average_latency_ms")
+        public final Long averageLatencyMs;
+
+        @JsonProperty("admitted_count")
+        public final Long admittedCount;
+
+        @JsonProperty("rejected_count")
+        public final Long rejectedCount;
+
+        @JsonProperty("timed_out_count")
+        public final Long timedOutCount;
+
+        @JsonCreator
+        AdmissionStatus(@JsonProperty("max_concurrent") Integer maxConcurrent,
+            @JsonProperty("running") Integer running, @JsonProperty("queued") Integer queued,
+            @JsonProperty("max_queued") Integer maxQueued, @JsonProperty("average_latency_ms") Long averageLatencyMs,
+            @JsonProperty("admitted_count") Long admittedCount, @JsonProperty("rejected_count") Long rejectedCount,
+            @JsonProperty("timed_out_count") Long timedOutCount) {
+            this.maxConcurrent = maxConcurrent;
+            this.running = running;
+            this.queued = queued;
+            this.maxQueued = maxQueued;
+            this.averageLatencyMs = averageLatencyMs;
+            this.admittedCount = admittedCount;
+            this.rejectedCount = rejectedCount;
+            this.timedOutCount = timedOutCount;
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY)
+    public static class ResultCacheStats {
+
+        @JsonProperty("cache_count")
+        public final Long cacheCount;
+
+        @JsonProperty("size_bytes")
+        public final Long sizeBytes;
+
+        @JsonProperty("max_size_bytes")
+        public final Long maxSizeBytes;
+
+        @JsonProperty("hit_count")
+        public final Long hitCount;
+
+        @JsonProperty("miss_count")
+        public final Long missCount;
+
+        @JsonProperty("eviction_count")
+        public final Long evictionCount;
+
+        @JsonCreator
+        ResultCacheStats(@JsonProperty("cache_count") Long cacheCount, @JsonProperty("size_bytes") Long sizeBytes,
+            @JsonProperty("max_size_bytes") Long maxSizeBytes, @JsonProperty("hit_count") Long hitCount,
+            @JsonProperty("miss_count") Long missCount, @JsonProperty("eviction_count") Long evictionCount) {
+            this.cacheCount = cacheCount;
+            this.sizeBytes = sizeBytes;
+            this.maxSizeBytes = maxSizeBytes;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY)
+    public static class LeaseStats {
+
+        @JsonProperty("active_count")
+        public final Integer activeCount;
+
+        @JsonProperty("acquired_count")
+        public final Long acquiredCount;
+
+        @JsonProperty("released_count")
+        public final Long releasedCount;
+
+        @JsonProperty("expired_count")
+        public final Long expiredCount;
+
+        @JsonProperty("oldest_version")
+        public final Long oldestVersion;
+
+        @JsonCreator
+        LeaseStats(@JsonProperty("active_count") Integer activeCount,
+            @JsonProperty("acquired_count") Long acquiredCount, @JsonProperty("released_count") Long releasedCount,
+            @JsonProperty("expired_count") Long expiredCount, @JsonProperty("oldest_version") Long oldestVersion) {
+            this.activeCount = activeCount;
+            this.acquiredCount = acquiredCount;
+            this.releasedCount = releasedCount;
+            this.expiredCount = expiredCount;
+            this.oldestVersion = oldestVersion;
+        }
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+/**
+ * A point-in-time lease on a searcher.
+ * The queries which set this lease id all see the same version of the index,
+ * until the lease is released or expires.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LeaseDefinition {
+
+    @JsonProperty("lease_id")
+    final public String leaseId;
+
+    /**
+     * The lease expires if it is not used during this period
+     */
+    @JsonProperty("ttl_ms")
+    final public Long ttlMs;
+
+    /**
+     * The version of the leased index reader
+     */
+    final public Long version;
+
+    @JsonCreator
+    LeaseDefinition(@JsonProperty("lease_id") final String leaseId, @JsonProperty("ttl_ms") final Long ttlMs,
+                    @JsonProperty("version") final Long version) {
+        this.leaseId = leaseId;
+        this.ttlMs = ttlMs;
+        this.version = version;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(leaseId);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof LeaseDefinition))
+            return false;
+        if (o == this)
+            return true;
+        final LeaseDefinition l = (LeaseDefinition) o;
+        return Objects.equals(leaseId, l.leaseId) && Objects.equals(ttlMs, l.ttlMs) &&
+                Objects.equals(version, l.version);
+    }
+}
@@ -30,18 +30,24 @@ import java.util.Map;
 
 class MixedDrillSideways extends DrillSideways {
 
+    private final QueryExecution queryExecution;
     private final String stateIndexField;
 
     MixedDrillSideways(QueryExecution queryExecution) {
         super(queryExecution.queryContext.indexSearcher, queryExecution.facetsConfig,
                 queryExecution.queryContext.taxonomyReader, queryExecution.queryContext.docValueReaderState,
                 queryExecution.queryContext.executorService);
+        this.queryExecution = queryExecution;
         this.stateIndexField = state == null ? null : state.getField();
     }
 
     protected Facets buildFacetsResult(final FacetsCollector drillDowns, final FacetsCollector[] drillSideways,
                                        final String[] drillSidewaysDims) throws IOException {
 
+        // The time budget is elapsed: the facets are not counted
+        if (queryExecution.isExpired())
+            return null;
+
         final Map<String, Facets> drillSidewaysFacets = new HashMap<>();
 
         final FastTaxonomyFacetCounts fastTaxonomyFacets = taxoReader == null ? null : new FastTaxonomyFacetCounts(
@@ -15,12 +15,17 @@
  */
 package com.qwazr.search.index;
 
+import com.qwazr.search.field.FieldDefinition;
 import com.qwazr.utils.concurrent.ConsumerEx;
 import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.SimpleMergedSegmentWarmer;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.QueryCache;
+import org.apache.lucene.search.QueryCachingPolicy;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.util.InfoStream;
@@ -36,21 +41,82 @@ class MultiThreadSearcherFactory extends SearcherFactory {
     private final static ConsumerEx<IndexReader, IOException> WITH_WARM = MultiThreadSearcherFactory::warmReader;
 
     static MultiThreadSearcherFactory of(final ExecutorService executorService, final boolean useWarmer,
-                                         final Similarity similarity, final String stateFacetField) {
+                                         final Similarity similarity, final String stateFacetField,
+                                         final IndexSettingsDefinition settings) {
+        final QueryCache queryCache = queryCache(settings);
+        final QueryCachingPolicy queryCachingPolicy = HintQueryCachingPolicy.of(settings.queryCachePolicy);
+        final boolean incrementalFacetsState =
+                settings.sortedSetFacetState == IndexSettingsDefinition.SortedSetFacetState.INCREMENTAL;
         return similarity == null ?
-                new MultiThreadSearcherFactory(executorService, stateFacetField, useWarmer ? WITH_WARM : WITHOUT_WARM) :
-                new WithSimilarity(executorService, similarity, stateFacetField, useWarmer ? WITH_WARM : WITHOUT_WARM);
+                new MultiThreadSearcherFactory(executorService, stateFacetField, useWarmer ? WITH_WARM : WITHOUT_WARM,
+                        queryCache, queryCachingPolicy, incrementalFacetsState) :
+                new WithSimilarity(executorService, similarity, stateFacetField, useWarmer ? WITH_WARM : WITHOUT_WARM,
+                        queryCache, queryCachingPolicy, incrementalFacetsState);
+    }
+
+    /**
+     * Without budget, the searchers share the default query cache of the JVM.
+     * A budget of zero disables the query cache. Otherwise the index has its own cache.
+     */
+    private static QueryCache queryCache(final IndexSettingsDefinition settings) {
+        if (settings.queryCacheMaxMb == null)
+            return IndexSearcher.getDefaultQueryCache();
+        if (settings.queryCacheMaxMb <= 0)
+            return null;
+        final int maxSize = settings.queryCacheMaxSize == null ?
+                IndexSettingsDefinition.DEFAULT_QUERY_CACHE_MAX_SIZE :
+                settings.queryCacheMaxSize;
+        final int minLeafSize = settings.queryCacheMinLeafSize == null ?
+                IndexSettingsDefinition.DEFAULT_QUERY_CACHE_MIN_LEAF_SIZE :
+                settings.queryCacheMinLeafSize;
+        return new LRUQueryCache(maxSize, (long) (settings.queryCacheMaxMb * 1024 * 1024),
+                context -> isLeafCacheable(context, minLeafSize));
+    }
+
+    /**
+     * Like Lucene's default, the small segments (or small parts of the index) are not worth caching
+     */
+    private static boolean isLeafCacheable(final LeafReaderContext context, final int minLeafSize) {
+        final int maxDoc = context.reader().maxDoc();
+        if (maxDoc < minLeafSize)
+            return false;
+        final int topLevelMaxDoc = ReaderUtil.getTopLevelContext(context).reader().maxDoc();
+        return maxDoc >= 0.03f * topLevelMaxDoc;
     }
 
     protected final ExecutorService executorService;
     private final String stateFacetField;
     private final ConsumerEx<IndexReader, IOException> readerWarmer;
+    private final QueryCache queryCache;
+    private final QueryCachingPolicy queryCachingPolicy;
+    private final boolean incrementalFacetsState;
+    private volatile IncrementalFacetsState.Shared lastFacetsState;
 
     private MultiThreadSearcherFactory(final ExecutorService executorService, final String stateFacetField,
-                                       final ConsumerEx<IndexReader, IOException> readerWarmer) {
+                                       final ConsumerEx<IndexReader, IOException> readerWarmer,
+                                       final QueryCache queryCache, final QueryCachingPolicy queryCachingPolicy,
+                                       final boolean incrementalFacetsState) {
         this.executorService = executorService;
         this.stateFacetField = stateFacetField;
         this.readerWarmer = readerWarmer;
+        this.queryCache = queryCache;
+        this.queryCachingPolicy = queryCachingPolicy;
+        this.incrementalFacetsState = incrementalFacetsState;
+    }
+
+    /**
+     * The incremental state shares its ordinals with the state of the previous searcher
+     * when the segments did not change.
+     */
+    private SortedSetDocValuesReaderState newFacetsState(final IndexReader reader) throws IOException {
+        if (!incrementalFacetsState)
+            return IndexUtils.getNewFacetsState(reader, stateFacetField);
+        final IncrementalFacetsState state = IncrementalFacetsState.of(reader,
+                stateFacetField == null ? FieldDefinition.DEFAULT_SORTEDSET_FACET_FIELD : stateFacetField,
+                lastFacetsState);
+        // Nothing to share with the next reader when the facet field is gone
+        lastFacetsState = state == null ? null : state.shared;
+        return state;
     }
 
     final protected StateIndexSearcher warm(final IndexReader indexReader, final StateIndexSearcher indexSearcher)
@@ -69,8 +135,11 @@ class MultiThreadSearcherFactory extends SearcherFactory {
         private final Similarity similarity;
 
         private WithSimilarity(final ExecutorService executorService, final Similarity similarity,
-                               final String stateFacetField, final ConsumerEx<IndexReader, IOException> readerWarmer) {
-            super(executorService, stateFacetField, readerWarmer);
+                               final String stateFacetField, final ConsumerEx<IndexReader, IOException> readerWarmer,
+                               final QueryCache queryCache, final QueryCachingPolicy queryCachingPolicy,
+                               final boolean incrementalFacetsState) {
+            super(executorService, stateFacetField, readerWarmer, queryCache, queryCachingPolicy,
+                    incrementalFacetsState);
             this.similarity = similarity;
         }
 
@@ -85,10 +154,13 @@ class MultiThreadSearcherFactory extends SearcherFactory {
     class StateIndexSearcher extends IndexSearcher {
 
         final SortedSetDocValuesReaderState state;
+        final OrdinalCountsPool countsPool = new OrdinalCountsPool();
 
         StateIndexSearcher(IndexReader reader) throws IOException {
             super(reader, executorService);
-            state = IndexUtils.getNewFacetsState(reader, stateFacetField);
+            setQueryCache(queryCache);
+            setQueryCachingPolicy(queryCachingPolicy);
+            state = newFacetsState(reader);
         }
 
     }
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import org.apache.lucene.facet.TopOrdAndIntQueue;
+import org.apache.lucene.util.ArrayUtil;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * The facet counts by ordinal.
+ * A dense array borrowed from the pool of the searcher, or a hash table when the hits are few compared
+ * to the number of ordinals.
+ */
+abstract class OrdinalCounts {
+
+    abstract void increment(final int ord);
+
+    abstract void add(final int ord, final int count);
+
+    abstract int get(final int ord);
+
+    /**
+     * @return true if visiting the counted ordinals is cheaper than a scan of the ordinals
+     */
+    abstract boolean isSparse();
+
+    /**
+     * Visit each ordinal having a count, in no particular order
+     */
+    abstract void forEach(final OrdConsumer consumer);
+
+    void merge(final OrdinalCounts counts) {
+        counts.forEach(this::add);
+    }
+
+    /**
+     * @param filter selects the ordinals
+     * @return the selected ordinals having a count, in ascending order
+     */
+    final int[] sortedOrds(final IntPredicate filter) {
+        final int[][] ords = { new int[16] };
+        final int[] size = { 0 };
+        forEach((ord, count) -> {
+            if (!filter.test(ord))
+                return;
+            ords[0] = ArrayUtil.grow(ords[0], size[0] + 1);
+            ords[0][size[0]++] = ord;
+        });
+        final int[] sorted = Arrays.copyOf(ords[0], size[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Give the memory back. The counts must not be used anymore.
+     */
+    abstract void release();
+
+    @FunctionalInterface
+    interface OrdConsumer {
+        void accept(final int ord, final int count);
+    }
+
+    static final class Dense extends OrdinalCounts {
+
+        private final int[] counts;
+        private final OrdinalCountsPool pool;
+
+        Dense(final int[] counts, final OrdinalCountsPool pool) {
+            this.counts = counts;
+            this.pool = pool;
+        }
+
+        @Override
+        final void increment(final int ord) {
+            counts[ord]++;
+        }
+
+        @Override
+        final void add(final int ord, final int count) {
+            counts[ord] += count;
+        }
+
+        @Override
+        final int get(final int ord) {
+            return counts[ord];
+        }
+
+        @Override
+        final boolean isSparse() {
+            return false;
+        }
+
+        @Override
+        final void forEach(final OrdConsumer consumer) {
+            for (int ord = 0; ord < counts.length; ord++)
+                if (counts[ord] != 0)
+                    consumer.accept(ord, counts[ord]);
+        }
+
+        @Override
+        final void merge(final OrdinalCounts counts) {
+            if (!(counts instanceof Dense)) {
+                super.merge(counts);
+                return;
+            }
+            final int[] other = ((Dense) counts).counts;
+            for (int ord = 0; ord < other.length; ord++)
+                this.counts[ord] += other[ord];
+        }
+
+        @Override
+        final void release() {
+            pool.release(counts);
+        }
+    }
+
+    /**
+     * Open addressing hash table, with linear probing. The keys are stored as ordinal + 1, zero is an empty slot.
+     */
+    static final class Sparse extends OrdinalCounts {
+
+        private int[] keys;
+        private int[] counts;
+        private int mask;
+        private int shift;
+        private int size;
+
+        Sparse(final int expectedSize) {
+            final int capacity = Integer.highestOneBit(Math.max(16, expectedSize) * 2 - 1) << 1;
+            keys = new int[capacity];
+            counts = new int[capacity];
+            setCapacity(capacity);
+        }
+
+        private void setCapacity(final int capacity) {
+            mask = capacity - 1;
+            // 32 - log2(capacity)
+            shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        }
+
+        /**
+         * Fibonacci hashing: the high bits of the product are the best mixed ones
+         */
+        private int slot(final int key) {
+            int slot = (key * 0x9E3779B9) >>> shift;
+            while (keys[slot] != 0 && keys[slot] != key)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        @Override
+        final void increment(final int ord) {
+            add(ord, 1);
+        }
+
+        @Override
+        final void add(final int ord, final int count) {
+            final int key = ord + 1;
+            final int slot = slot(key);
+            if (keys[slot] == 0) {
+                keys[slot] = key;
+                counts[slot] = count;
+                if (++size * 2 > keys.length)
+                    grow();
+            } else
+                counts[slot] += count;
+        }
+
+        private void grow() {
+            final int[] oldKeys = keys;
+            final int[] oldCounts = counts;
+            keys = new int[oldKeys.length << 1];
+            counts = new int[oldKeys.length << 1];
+            setCapacity(keys.length);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0)
+                    continue;
+                final int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+
+        @Override
+        final int get(final int ord) {
+            final int key = ord + 1;
+            final int slot = slot(key);
+            return keys[slot] == key ? counts[slot] : 0;
+        }
+
+        @Override
+        final boolean isSparse() {
+            return true;
+        }
+
+        @Override
+        final void forEach(final OrdConsumer consumer) {
+            for (int i = 0; i < keys.length; i++)
+                if (keys[i] != 0 && counts[i] != 0)
+                    consumer.accept(keys[i] - 1, counts[i]);
+        }
+
+        @Override
+        final void release() {
+        }
+    }
+
+    /**
+     * Collects the top ordinals of a dimension, like the loops of Lucene's facets: once the queue is full,
+     * only a count greater than its bottom enters it. The ties at the boundary are therefore decided
+     * by the order of the visit, the ordinals must be visited in the same order as Lucene does.
+     */
+    static final class Top {
+
+        private final int topN;
+        private TopOrdAndIntQueue queue;
+        private TopOrdAndIntQueue.OrdAndValue reuse;
+        private int bottomCount;
+        int totalCount;
+        int childCount;
+
+        Top(final int topN) {
+            this.topN = topN;
+        }
+
+        void accept(final int ord, final int count) {
+            if (count <= 0)
+                return;
+            totalCount += count;
+            childCount++;
+            if (count <= bottomCount)
+                return;
+            if (reuse == null)
+                reuse = new TopOrdAndIntQueue.OrdAndValue();
+            reuse.ord = ord;
+            reuse.value = count;
+            if (queue == null)
+                queue = new TopOrdAndIntQueue(topN);
+            reuse = queue.insertWithOverflow(reuse);
+            if (queue.size() == topN)
+                bottomCount = queue.top().value;
+        }
+
+        /**
+         * @return the queue of the top ordinals, or null if no ordinal was counted
+         */
+        TopOrdAndIntQueue queue() {
+            return queue;
+        }
+    }
+}
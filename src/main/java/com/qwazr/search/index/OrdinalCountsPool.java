@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The count arrays of the facets, reused by the queries of the same searcher.
+ * The number of ordinals is stable for a given reader, the arrays are grouped by length.
+ * They go back to the pool zeroed, as long as the pooled arrays stay below a total size.
+ */
+final class OrdinalCountsPool {
+
+    /**
+     * Below this number of ordinals, a dense array is always cheap enough
+     */
+    final static int MIN_SPARSE_ORDINALS = 1024;
+
+    /**
+     * The counts are sparse when the hits are less than 10% of the ordinals
+     */
+    final static int SPARSE_RATIO = 10;
+
+    /**
+     * The hash tables start small, the distinct ordinals are usually much fewer than the hits
+     */
+    private final static int SPARSE_INITIAL_SIZE = 4096;
+
+    private final static int MAX_ARRAYS_PER_LENGTH = Runtime.getRuntime().availableProcessors() + 1;
+
+    /**
+     * The pool of each searcher keeps at most 16 MB of arrays
+     */
+    final static long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    private final ConcurrentHashMap<Integer, ArrayBlockingQueue<int[]>> arrays;
+    private final long maxBytes;
+    private final AtomicLong pooledBytes;
+
+    OrdinalCountsPool(final long maxBytes) {
+        this.arrays = new ConcurrentHashMap<>();
+        this.maxBytes = maxBytes;
+        this.pooledBytes = new AtomicLong();
+    }
+
+    OrdinalCountsPool() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    private static long bytes(final int[] array) {
+        return (long) array.length * Integer.BYTES;
+    }
+
+    /**
+     * @param length the number of ordinals
+     * @return a zeroed array, pooled or new
+     */
+    int[] acquire(final int length) {
+        final ArrayBlockingQueue<int[]> queue = arrays.get(length);
+        final int[] array = queue == null ? null : queue.poll();
+        if (array == null)
+            return new int[length];
+        pooledBytes.addAndGet(-bytes(array));
+        return array;
+    }
+
+    /**
+     * The array is zeroed, and kept if the pool is not full
+     */
+    void release(final int[] array) {
+        final long bytes = bytes(array);
+        if (pooledBytes.addAndGet(bytes) > maxBytes) {
+            pooledBytes.addAndGet(-bytes);
+            return;
+        }
+        Arrays.fill(array, 0);
+        if (!arrays.computeIfAbsent(array.length, length -> new ArrayBlockingQueue<>(MAX_ARRAYS_PER_LENGTH))
+                .offer(array))
+            pooledBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * @return the total size of the pooled arrays in bytes
+     */
+    long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * @param size      the number of ordinals
+     * @param totalHits the number of documents to count
+     * @return sparse counts if the hits are few compared to the ordinals, pooled dense counts otherwise
+     */
+    OrdinalCounts newCounts(final int size, final long totalHits) {
+        if (size >= MIN_SPARSE_ORDINALS && totalHits < size / SPARSE_RATIO)
+            return new OrdinalCounts.Sparse((int) Math.min(totalHits, SPARSE_INITIAL_SIZE));
+        return new OrdinalCounts.Dense(acquire(size), this);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.search.field.FieldDefinition;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index a stream of documents using a bounded number of workers.
+ * The caller's thread reads the documents and feeds one bounded queue per worker,
+ * each worker builds the Lucene documents with its own RecordsPoster
+ * and adds them to the (thread-safe) IndexWriter.
+ * <p>
+ * The documents are routed to the workers by the hash of their id: the versions of one document
+ * are applied by the same worker, in the order of the stream, so the last one wins.
+ */
+final class ParallelRecordsPoster {
+
+    final static int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors();
+
+    private final static int QUEUE_SIZE_PER_WORKER = 128;
+    private final static long OFFER_TIMEOUT_MS = 100;
+
+    private final static Map<String, ?> END_OF_STREAM = new HashMap<>();
+
+    private final ExecutorService executorService;
+    private final PosterFactory posterFactory;
+    private final int workers;
+    private final List<BlockingQueue<Map<String, ?>>> queues;
+    private int nextWorker;
+
+    ParallelRecordsPoster(final ExecutorService executorService,
+            final PosterFactory posterFactory, final int workers) {
+        this.executorService = executorService;
+        this.posterFactory = posterFactory;
+        this.workers = workers <= 0 ? 1 : workers;
+        this.queues = new ArrayList<>(this.workers);
+        for (int i = 0; i < this.workers; i++)
+            queues.add(new ArrayBlockingQueue<>(QUEUE_SIZE_PER_WORKER));
+    }
+
+    /**
+     * @param documents the documents to index, read lazily from the caller's thread
+     * @return the number of indexed documents
+     * @throws IOException if any I/O error occurs
+     */
+    int post(final Iterator<? extends Map<String, ?>> documents) throws IOException {
+        final List<Future<Integer>> futures = new ArrayList<>(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                final BlockingQueue<Map<String, ?>> queue = queues.get(i);
+                futures.add(executorService.submit(() -> work(queue)));
+            }
+        } catch (RejectedExecutionException e) {
+            // The indexing pool is saturated: go on with the workers we got
+            if (futures.isEmpty())
+                return postInline(documents);
+        }
+        try {
+            boolean failed = false;
+            while (!failed && documents.hasNext()) {
+                final Map<String, ?> document = documents.next();
+                failed = !offer(queues.get(route(document, futures.size())), document, futures);
+            }
+            for (int i = 0; i < futures.size() && !failed; i++)
+                failed = !offer(queues.get(i), END_OF_STREAM, futures);
+            if (failed)
+                abort();
+        } catch (IOException | RuntimeException e) {
+            abort();
+            try {
+                collect(futures);
+            } catch (IOException | RuntimeException workerError) {
+                e.addSuppressed(workerError);
+            }
+            throw e;
+        }
+        return collect(futures);
+    }
+
+    private int postInline(final Iterator<? extends Map<String, ?>> documents) throws IOException {
+        final RecordsPoster.MapDocument poster = posterFactory.create();
+        while (documents.hasNext())
+            poster.accept(documents.next());
+        return poster.getCount();
+    }
+
+    /**
+     * @return the worker of the document: chosen by its id, or in turn when it has no id
+     */
+    private int route(final Map<String, ?> document, final int started) {
+        final Object id = document == null ? null : document.get(FieldDefinition.ID_FIELD);
+        if (id != null)
+            return Math.floorMod(id.toString().hashCode(), started);
+        nextWorker = (nextWorker + 1) % started;
+        return nextWorker;
+    }
+
+    private Integer work(final BlockingQueue<Map<String, ?>> queue) throws IOException, InterruptedException {
+        final RecordsPoster.MapDocument poster = posterFactory.create();
+        for (; ; ) {
+            final Map<String, ?> document = queue.take();
+            if (document == END_OF_STREAM)
+                return poster.getCount();
+            poster.accept(document);
+        }
+    }
+
+    /**
+     * Wait for room in the queue of the worker, as long as every worker is still alive
+     *
+     * @return false if a worker has stopped on error
+     */
+    private boolean offer(final BlockingQueue<Map<String, ?>> queue, final Map<String, ?> document,
+            final List<Future<Integer>> futures)
+            throws InterruptedIOException {
+        try {
+            while (!queue.offer(document, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                for (final Future<Integer> future : futures)
+                    if (future.isDone())
+                        return false;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while posting documents");
+        }
+    }
+
+    /**
+     * Drop the pending documents and stop the workers.
+     * The workers are not interrupted, as interrupting a thread using the IndexWriter may close it.
+     */
+    private void abort() {
+        for (final BlockingQueue<Map<String, ?>> queue : queues) {
+            queue.clear();
+            queue.offer(END_OF_STREAM);
+        }
+    }
+
+    private int collect(final List<Future<Integer>> futures) throws IOException {
+        int count = 0;
+        Throwable error = null;
+        for (final Future<Integer> future : futures) {
+            try {
+                count += future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = e;
+            } catch (ExecutionException e) {
+                if (error == null)
+                    error = e.getCause();
+            }
+        }
+        if (error == null)
+            return count;
+        if (error instanceof IOException)
+            throw (IOException) error;
+        if (error instanceof RuntimeException)
+            throw (RuntimeException) error;
+        throw new IOException(error);
+    }
+
+    @FunctionalInterface
+    interface PosterFactory {
+        RecordsPoster.MapDocument create() throws IOException;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.qwazr.binder.FieldMapWrapper;
+import com.qwazr.search.query.AbstractQuery;
+import com.qwazr.utils.LoggerUtils;
+import com.qwazr.utils.ObjectMappers;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded LRU cache of the Lucene queries built from the AbstractQuery of the search requests.
+ * <p>
+ * The key is the JSON form of the AbstractQuery and the FieldMap it was resolved with.
+ * The cache is invalidated when the fields or the analyzers of the index are updated.
+ * A query whose construction reads the index (term statistics, more like this) is only reused with the same reader.
+ * A query which uses another index (join) or runs a search is never cached.
+ */
+final class ParsedQueryCache {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(ParsedQueryCache.class);
+
+    private final static long NO_READER = -1;
+
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private long generation;
+
+    private ParsedQueryCache(final int maxSize) {
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param maxSize the maximum number of queries
+     * @return a new cache, or null if the size is not set
+     */
+    static ParsedQueryCache of(final Integer maxSize) {
+        return maxSize == null || maxSize <= 0 ? null : new ParsedQueryCache(maxSize);
+    }
+
+    /**
+     * Drop all the queries. Must be called when the fields or the analyzers are changed.
+     */
+    synchronized void invalidate() {
+        entries.clear();
+        generation++;
+    }
+
+    private static long getVersion(final IndexReader indexReader) {
+        return indexReader instanceof DirectoryReader ? ((DirectoryReader) indexReader).getVersion() : NO_READER;
+    }
+
+    Query getQuery(final AbstractQuery<?> abstractQuery, final QueryContextImpl queryContext)
+            throws IOException, ParseException, QueryNodeException, ReflectiveOperationException {
+        final Key key;
+        try {
+            key = new Key(ObjectMappers.JSON.writeValueAsString(abstractQuery), abstractQuery, queryContext.fieldMap);
+        } catch (JsonProcessingException e) {
+            LOGGER.log(Level.FINE, e, e::getMessage);
+            return abstractQuery.getQuery(queryContext);
+        }
+        final long readerVersion = getVersion(queryContext.indexReader);
+        final long currentGeneration;
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null && (entry.readerVersion == NO_READER || entry.readerVersion == readerVersion))
+                return entry.query;
+            currentGeneration = generation;
+        }
+        final TrackingContext trackingContext = new TrackingContext(queryContext);
+        final Query query = abstractQuery.getQuery(trackingContext);
+        if (trackingContext.uncacheable || (trackingContext.usesReader && readerVersion == NO_READER))
+            return query;
+        final Entry entry = new Entry(query, trackingContext.usesReader ? readerVersion : NO_READER);
+        synchronized (this) {
+            // The fields or the analyzers may have changed while the query was built
+            if (currentGeneration == generation)
+                entries.put(key, entry);
+        }
+        return query;
+    }
+
+    final static class Key {
+
+        private final String json;
+        private final AbstractQuery<?> query;
+        private final FieldMap fieldMap;
+        private final int hashCode;
+
+        private Key(final String json, final AbstractQuery<?> query, final FieldMap fieldMap) {
+            this.json = json;
+            this.query = query;
+            this.fieldMap = fieldMap;
+            this.hashCode = json.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key))
+                return false;
+            final Key key = (Key) o;
+            // The JSON form does not include the Java only properties (like a custom analyzer)
+            return fieldMap == key.fieldMap && json.equals(key.json) && query.equals(key.query);
+        }
+    }
+
+    private final static class Entry {
+
+        private final Query query;
+        private final long readerVersion;
+
+        private Entry(final Query query, final long readerVersion) {
+            this.query = query;
+            this.readerVersion = readerVersion;
+        }
+    }
+
+    /**
+     * Records how the query is built: with or without the reader, or with another index.
+     */
+    private final static class TrackingContext implements QueryContext {
+
+        private final QueryContextImpl queryContext;
+        private boolean usesReader;
+        private boolean uncacheable;
+
+        private TrackingContext(final QueryContextImpl queryContext) {
+            this.queryContext = queryContext;
+        }
+
+        @Override
+        public IndexInstance getIndex(final String indexName) {
+            uncacheable = true;
+            return queryContext.getIndex(indexName);
+        }
+
+        @Override
+        public Analyzer getIndexAnalyzer() {
+            return queryContext.getIndexAnalyzer();
+        }
+
+        @Override
+        public Analyzer getQueryAnalyzer() {
+            return queryContext.getQueryAnalyzer();
+        }
+
+        @Override
+        public FacetsConfig getFacetsConfig(final String genericFieldName, final String concreteFieldName) {
+            return queryContext.getFacetsConfig(genericFieldName, concreteFieldName);
+        }
+
+        @Override
+        public FacetsConfig getFacetsConfig(final Map<String, String> fieldNames) {
+            return queryContext.getFacetsConfig(fieldNames);
+        }
+
+        @Override
+        public IndexReader getIndexReader() {
+            usesReader = true;
+            return queryContext.getIndexReader();
+        }
+
+        @Override
+        public IndexSearcher getIndexSearcher() {
+            usesReader = true;
+            return queryContext.getIndexSearcher();
+        }
+
+        @Override
+        public FieldMap getFieldMap() {
+            return queryContext.getFieldMap();
+        }
+
+        @Override
+        public ResultDefinition.WithMap searchMap(final QueryDefinition queryDefinition) throws IOException {
+            uncacheable = true;
+            return queryContext.searchMap(queryDefinition);
+        }
+
+        @Override
+        public <T> ResultDefinition.WithObject<T> searchObject(final QueryDefinition queryDefinition,
+                final FieldMapWrapper<T> wrapper) throws IOException {
+            uncacheable = true;
+            return queryContext.searchObject(queryDefinition, wrapper);
+        }
+
+        @Override
+        public <T> ResultDefinition.WithObject<T> searchObject(final QueryDefinition queryDefinition,
+                final Class<T> objectClass) throws IOException {
+            uncacheable = true;
+            return queryContext.searchObject(queryDefinition, objectClass);
+        }
+
+        @Override
+        public ResultDefinition.Empty searchInterface(final QueryDefinition queryDefinition,
+                final ResultDocumentsInterface resultDocuments) throws IOException {
+            uncacheable = true;
+            return queryContext.searchInterface(queryDefinition, resultDocuments);
+        }
+
+        @Override
+        public List<ResultDocumentMap> getDocumentsById(final Collection<?> ids) throws IOException {
+            uncacheable = true;
+            return queryContext.getDocumentsById(ids);
+        }
+
+        @Override
+        public <T> List<ResultDocumentObject<T>> getDocumentsById(final Collection<?> ids,
+                final FieldMapWrapper<T> wrapper) throws IOException {
+            uncacheable = true;
+            return queryContext.getDocumentsById(ids, wrapper);
+        }
+
+        @Override
+        public void close() {
+            // The wrapped context is closed by its owner
+        }
+    }
+}
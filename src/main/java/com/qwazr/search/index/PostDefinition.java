@@ -30,9 +30,13 @@ public abstract class PostDefinition {
 
 	final public Boolean update;
 
-	PostDefinition(Map<String, String> commitUserData, Boolean update) {
+	@JsonProperty("commit_wait")
+	final public IndexSettingsDefinition.CommitWait commitWait;
+
+	PostDefinition(Map<String, String> commitUserData, Boolean update, IndexSettingsDefinition.CommitWait commitWait) {
 		this.commitUserData = commitUserData;
 		this.update = update;
+		this.commitWait = commitWait;
 	}
 
 	@JsonInclude(JsonInclude.Include.NON_EMPTY)
@@ -43,8 +47,9 @@ public abstract class PostDefinition {
 		@JsonCreator
 		Document(@JsonProperty("document") final Map<String, Object> document,
 				@JsonProperty("commit_user_data") final Map<String, String> commitUserData,
-				@JsonProperty("update") final Boolean update) {
-			super(commitUserData, update);
+				@JsonProperty("update") final Boolean update,
+				@JsonProperty("commit_wait") final IndexSettingsDefinition.CommitWait commitWait) {
+			super(commitUserData, update, commitWait);
 			this.document = document;
 		}
 	}
@@ -57,24 +62,35 @@ public abstract class PostDefinition {
 		@JsonCreator
 		Documents(@JsonProperty("documents") final List<Map<String, Object>> documents,
 				@JsonProperty("commit_user_data") final Map<String, String> commitUserData,
-				@JsonProperty("update") final Boolean update) {
-			super(commitUserData, update);
+				@JsonProperty("update") final Boolean update,
+				@JsonProperty("commit_wait") final IndexSettingsDefinition.CommitWait commitWait) {
+			super(commitUserData, update, commitWait);
 			this.documents = documents;
 		}
 	}
 
+	public static Document of(final Map<String, Object> document, final Map<String, String> commitUserData,
+			final Boolean update, final IndexSettingsDefinition.CommitWait commitWait) {
+		return new PostDefinition.Document(document, commitUserData, update, commitWait);
+	}
+
 	public static Document of(final Map<String, Object> document, final Map<String, String> commitUserData,
 			final Boolean update) {
-		return new PostDefinition.Document(document, commitUserData, update);
+		return of(document, commitUserData, update, null);
 	}
 
 	public static Document of(final Map<String, Object> document, final Map<String, String> commitUserData) {
 		return of(document, commitUserData, null);
 	}
 
+	public static Documents of(final List<Map<String, Object>> documents, final Map<String, String> commitUserData,
+			final Boolean update, final IndexSettingsDefinition.CommitWait commitWait) {
+		return new PostDefinition.Documents(documents, commitUserData, update, commitWait);
+	}
+
 	public static Documents of(final List<Map<String, Object>> documents, final Map<String, String> commitUserData,
 			final Boolean update) {
-		return new PostDefinition.Documents(documents, commitUserData, update);
+		return of(documents, commitUserData, update, null);
 	}
 
 	public static Documents of(final List<Map<String, Object>> documents, final Map<String, String> commitUserData) {
@@ -45,6 +45,14 @@ public class QueryBuilder {
 
 	Map<String, String> commitUserData;
 
+	Long timeoutMs;
+
+	SearchAfter searchAfter;
+
+	String lease;
+
+	Integer totalHitsThreshold;
+
 	public QueryBuilder() {
 	}
 
@@ -63,6 +71,10 @@ public class QueryBuilder {
 		query = queryDef.query;
 		luceneQuery = queryDef.luceneQuery;
 		commitUserData = queryDef.commitUserData;
+		timeoutMs = queryDef.timeoutMs;
+		searchAfter = queryDef.searchAfter;
+		lease = queryDef.lease;
+		totalHitsThreshold = queryDef.totalHitsThreshold;
 	}
 
 	public QueryBuilder(final Query query) {
@@ -222,6 +234,41 @@ public class QueryBuilder {
 		return this;
 	}
 
+	/**
+	 * @param timeoutMs the time budget of the query in milliseconds. Once elapsed, the partial results are returned.
+	 * @return the current builder
+	 */
+	public QueryBuilder timeoutMs(final Long timeoutMs) {
+		this.timeoutMs = timeoutMs;
+		return this;
+	}
+
+	public QueryBuilder searchAfter(final SearchAfter searchAfter) {
+		this.searchAfter = searchAfter;
+		return this;
+	}
+
+	/**
+	 * @param lease the id of a point-in-time lease returned by acquireLease
+	 * @return the current builder
+	 */
+	public QueryBuilder lease(final String lease) {
+		this.lease = lease;
+		return this;
+	}
+
+	/**
+	 * Without a threshold, the total hits are always exact. With a threshold, the counting may stop once
+	 * the threshold is reached (a count, the index order, or a sort matching the index sort).
+	 *
+	 * @param totalHitsThreshold the total hits are exact up to this number, and may be a lower bound beyond
+	 * @return the current builder
+	 */
+	public QueryBuilder totalHitsThreshold(final Integer totalHitsThreshold) {
+		this.totalHitsThreshold = totalHitsThreshold;
+		return this;
+	}
+
 	public QueryDefinition build() {
 		return new QueryDefinition(this);
 	}
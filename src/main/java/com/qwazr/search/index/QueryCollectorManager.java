@@ -52,15 +52,17 @@ class QueryCollectorManager extends QueryCollectors implements CollectorManager<
 			final DrillSideways.ConcurrentDrillSidewaysResult<QueryCollectors> drillSidewaysResult =
 					new MixedDrillSideways(queryExecution).search(
 							(org.apache.lucene.facet.DrillDownQuery) queryExecution.query, this);
-			facetsBuilder = new FacetsBuilder.WithSideways(queryExecution.queryContext, queryExecution.facetsConfig,
-					queryExecution.queryDef.facets, queryExecution.query, queryExecution.timeTracker,
-					drillSidewaysResult).build();
+			facetsBuilder = queryExecution.isExpired() ?
+					null :
+					new FacetsBuilder.WithSideways(queryExecution.queryContext, queryExecution.facetsConfig,
+							queryExecution.queryDef.facets, queryExecution.query, queryExecution.timeTracker,
+							drillSidewaysResult).build();
 
 		} else {
 
 			queryExecution.queryContext.indexSearcher.search(queryExecution.query, this);
 			facetsCollector = getFacetsCollector();
-			facetsBuilder = facetsCollector == null ?
+			facetsBuilder = facetsCollector == null || queryExecution.isExpired() ?
 					null :
 					new FacetsBuilder.WithCollectors(queryExecution.queryContext, queryExecution.facetsConfig,
 							queryExecution.queryDef.facets, queryExecution.query, queryExecution.timeTracker,
@@ -101,6 +103,14 @@ class QueryCollectorManager extends QueryCollectors implements CollectorManager<
 		return totalHits;
 	}
 
+	@Override
+	public final boolean isTotalHitsApproximate() {
+		for (QueryCollectorsClassic queryCollectors : queryCollectorsList)
+			if (queryCollectors.isTotalHitsApproximate())
+				return true;
+		return false;
+	}
+
 	@Override
 	public final TopDocs getTopDocs() throws IOException {
 		if (queryCollectorsList == null || queryCollectorsList.isEmpty())
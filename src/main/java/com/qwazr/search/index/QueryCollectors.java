@@ -38,6 +38,11 @@ abstract class QueryCollectors {
 
 	abstract Integer getTotalHits();
 
+	/**
+	 * @return true if the collection stopped before the last hit, and the total hits is a lower bound
+	 */
+	abstract boolean isTotalHitsApproximate();
+
 	abstract TopDocs getTopDocs() throws IOException;
 
 	abstract FacetsCollector getFacetsCollector() throws IOException;
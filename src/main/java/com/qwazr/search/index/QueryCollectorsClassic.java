@@ -19,10 +19,18 @@ package com.qwazr.search.index;
 import com.qwazr.search.collector.BaseCollector;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.lucene.facet.DrillSideways;
+import org.apache.lucene.facet.Facets;
 import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.CollectionTerminatedException;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.EarlyTerminatingSortingCollector;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopDocs;
@@ -51,6 +59,10 @@ class QueryCollectorsClassic extends QueryCollectors {
 
 	final TopDocsCollector topDocsCollector;
 
+	private EarlyTerminatingSortingCollector earlyTerminatingCollector;
+
+	private TotalHitsLimit totalHitsLimit;
+
 	final Collector finalCollector;
 
 	QueryCollectorsClassic(final QueryExecution<?> queryExecution) throws IOException, ReflectiveOperationException {
@@ -58,7 +70,8 @@ class QueryCollectorsClassic extends QueryCollectors {
 		collectors = new ArrayList<>();
 		facetsCollector = queryExecution.useDrillSideways ? null : buildFacetsCollector(queryExecution.queryDef.facets);
 		totalHitCountCollector = buildTotalHitsCollector(queryExecution.end);
-		topDocsCollector = buildTopDocCollector(queryExecution.sort, queryExecution.end, queryExecution.bNeedScore);
+		topDocsCollector = buildTopDocCollector(queryExecution.sort, queryExecution.end, queryExecution.bNeedScore,
+				queryExecution.earlyTerminate);
 		if (queryExecution.collectorConstructors != null) {
 			userCollectors = new ArrayList<>();
 			for (Pair<Constructor, Object[]> item : queryExecution.collectorConstructors)
@@ -74,34 +87,67 @@ class QueryCollectorsClassic extends QueryCollectors {
 	}
 
 	private Collector getFinalCollector() {
+		Collector collector;
 		switch (collectors.size()) {
 		case 0:
 			return null;
 		case 1:
-			return collectors.get(0);
+			collector = collectors.get(0);
+			break;
 		default:
-			return MultiCollector.wrap(collectors);
+			collector = MultiCollector.wrap(collectors);
+			break;
 		}
+		final int limit = getTotalHitsLimit();
+		if (limit >= 0)
+			collector = totalHitsLimit = new TotalHitsLimit(collector, limit,
+					queryExecution.searchAfter == null ? -1 : queryExecution.searchAfter.doc);
+		return queryExecution.deadline == null ? collector : queryExecution.deadline.wrap(collector);
+	}
+
+	/**
+	 * Past the total hits threshold, the collection can stop if the remaining hits are only counted:
+	 * for a count without top docs, or for the top docs in index order, as the next hits are never competitive.
+	 * Any other collector (facets, user collectors, relevance or field sort) needs every hit.
+	 *
+	 * @return the number of hits to collect, or -1 if every hit must be collected
+	 */
+	private int getTotalHitsLimit() {
+		final Integer threshold = queryExecution.queryDef.totalHitsThreshold;
+		if (threshold == null || threshold < 0 || queryExecution.useDrillSideways || facetsCollector != null ||
+				userCollectors != null)
+			return -1;
+		if (totalHitCountCollector != null)
+			return threshold;
+		if (topDocsCollector != null && QueryExecution.isIndexOrder(queryExecution.sort))
+			return Math.max(threshold, queryExecution.end);
+		return -1;
 	}
 
 	private FacetsCollector buildFacetsCollector(final LinkedHashMap<String, FacetDefinition> facets) {
 		if (facets == null || facets.isEmpty())
 			return null;
-		for (FacetDefinition facet : facets.values())
-			if (facet.queries == null || facet.queries.isEmpty())
-				return add(new FacetsCollector());
-		return null;
+		// The facet queries are also counted on the documents matched by this collector
+		return add(new FacetsCollector());
 	}
 
-	private TopDocsCollector buildTopDocCollector(final Sort sort, final int numHits, final boolean bNeedScore)
-			throws IOException {
+	private TopDocsCollector buildTopDocCollector(final Sort sort, final int numHits, final boolean bNeedScore,
+			final boolean earlyTerminate) throws IOException {
 		if (numHits == 0)
 			return null;
 		final TopDocsCollector topDocsCollector;
-		if (sort != null)
-			topDocsCollector = TopFieldCollector.create(sort, numHits, true, bNeedScore, bNeedScore);
-		else
-			topDocsCollector = TopScoreDocCollector.create(numHits);
+		if (sort != null) {
+			topDocsCollector = TopFieldCollector.create(sort, numHits, (FieldDoc) queryExecution.searchAfter, true,
+					bNeedScore, bNeedScore);
+			// The segments sorted by the index sort are collected up to the requested number of hits,
+			// and at least up to the total hits threshold: the total is exact below the threshold
+			if (earlyTerminate) {
+				earlyTerminatingCollector = add(new EarlyTerminatingSortingCollector(topDocsCollector, sort,
+						Math.max(numHits, queryExecution.queryDef.totalHitsThreshold)));
+				return topDocsCollector;
+			}
+		} else
+			topDocsCollector = TopScoreDocCollector.create(numHits, queryExecution.searchAfter);
 		return add(topDocsCollector);
 	}
 
@@ -120,16 +166,28 @@ class QueryCollectorsClassic extends QueryCollectors {
 
 			final DrillSideways.DrillSidewaysResult drillSidewaysResult =
 					new DrillSideways(queryExecution.queryContext.indexSearcher, queryExecution.facetsConfig,
-							queryExecution.queryContext.taxonomyReader, queryExecution.queryContext.docValueReaderState)
-							.search((org.apache.lucene.facet.DrillDownQuery) queryExecution.query, finalCollector);
-			facetsBuilder = new FacetsBuilder.WithSideways(queryExecution.queryContext, queryExecution.facetsConfig,
-					queryExecution.queryDef.facets, queryExecution.query, queryExecution.timeTracker,
-					drillSidewaysResult).build();
+							queryExecution.queryContext.taxonomyReader, queryExecution.queryContext.docValueReaderState) {
+
+						@Override
+						protected Facets buildFacetsResult(final FacetsCollector drillDowns,
+								final FacetsCollector[] drillSideways, final String[] drillSidewaysDims)
+								throws IOException {
+							// The time budget is elapsed: the facets are not counted
+							return queryExecution.isExpired() ?
+									null :
+									super.buildFacetsResult(drillDowns, drillSideways, drillSidewaysDims);
+						}
+					}.search((org.apache.lucene.facet.DrillDownQuery) queryExecution.query, finalCollector);
+			facetsBuilder = queryExecution.isExpired() ?
+					null :
+					new FacetsBuilder.WithSideways(queryExecution.queryContext, queryExecution.facetsConfig,
+							queryExecution.queryDef.facets, queryExecution.query, queryExecution.timeTracker,
+							drillSidewaysResult).build();
 
 		} else {
 
 			queryExecution.queryContext.indexSearcher.search(queryExecution.query, finalCollector);
-			facetsBuilder = facetsCollector == null ?
+			facetsBuilder = facetsCollector == null || queryExecution.isExpired() ?
 					null :
 					new FacetsBuilder.WithCollectors(queryExecution.queryContext, queryExecution.facetsConfig,
 							queryExecution.queryDef.facets, queryExecution.query, queryExecution.timeTracker,
@@ -149,6 +207,12 @@ class QueryCollectorsClassic extends QueryCollectors {
 		return 0;
 	}
 
+	@Override
+	public final boolean isTotalHitsApproximate() {
+		return (totalHitsLimit != null && totalHitsLimit.terminated) ||
+				(earlyTerminatingCollector != null && earlyTerminatingCollector.terminatedEarly());
+	}
+
 	@Override
 	public final TopDocs getTopDocs() {
 		return topDocsCollector == null ? null : topDocsCollector.topDocs(queryExecution.start, queryExecution.rows);
@@ -169,4 +233,44 @@ class QueryCollectorsClassic extends QueryCollectors {
 			results.put(name, userCollectors.get(i++).getResult());
 		return results;
 	}
+
+	/**
+	 * Stops the collection once the given number of hits has been collected.
+	 * The hits before the search_after cursor are not competitive, and are not counted.
+	 */
+	private static class TotalHitsLimit extends FilterCollector {
+
+		private final int limit;
+		private final int afterDoc;
+		private int count;
+		private boolean terminated;
+
+		private TotalHitsLimit(final Collector collector, final int limit, final int afterDoc) {
+			super(collector);
+			this.limit = limit;
+			this.afterDoc = afterDoc;
+		}
+
+		@Override
+		public LeafCollector getLeafCollector(final LeafReaderContext context) throws IOException {
+			if (count >= limit) {
+				terminated = true;
+				throw new CollectionTerminatedException();
+			}
+			final int docBase = context.docBase;
+			return new FilterLeafCollector(super.getLeafCollector(context)) {
+
+				@Override
+				public void collect(final int doc) throws IOException {
+					if (count >= limit) {
+						terminated = true;
+						throw new CollectionTerminatedException();
+					}
+					if (docBase + doc > afterDoc)
+						count++;
+					super.collect(doc);
+				}
+			};
+		}
+	}
 }
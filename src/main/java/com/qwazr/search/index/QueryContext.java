@@ -21,6 +21,8 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 
 public interface QueryContext extends IndexContext {
 
@@ -55,6 +57,22 @@ public interface QueryContext extends IndexContext {
 		throw new NotImplementedException("Not available");
 	}
 
+	/**
+	 * Load documents by their primary key, without executing a query.
+	 *
+	 * @param ids the primary keys
+	 * @return the documents found, in the order of the given keys
+	 * @throws IOException if any I/O error occurs
+	 */
+	default List<ResultDocumentMap> getDocumentsById(Collection<?> ids) throws IOException {
+		throw new NotImplementedException("Not available");
+	}
+
+	default <T> List<ResultDocumentObject<T>> getDocumentsById(Collection<?> ids, FieldMapWrapper<T> wrapper)
+			throws IOException {
+		throw new NotImplementedException("Not available");
+	}
+
 	QueryContext DEFAULT = () -> {
 	};
 
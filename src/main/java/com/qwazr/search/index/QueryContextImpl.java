@@ -17,15 +17,33 @@ package com.qwazr.search.index;
 
 import com.qwazr.binder.FieldMapWrapper;
 import com.qwazr.search.analysis.UpdatableAnalyzers;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.field.FieldTypeInterface;
+import com.qwazr.search.query.AbstractQuery;
 import com.qwazr.server.ServerException;
+import com.qwazr.utils.TimeTracker;
 import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.facet.taxonomy.TaxonomyReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.Bits;
 
+import javax.ws.rs.core.Response;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 
@@ -35,21 +53,50 @@ final class QueryContextImpl extends IndexContextImpl implements QueryContext, C
 	final IndexReader indexReader;
 	final TaxonomyReader taxonomyReader;
 	final SortedSetDocValuesReaderState docValueReaderState;
+	final OrdinalCountsPool countsPool;
 	final FieldMapWrapper.Cache fieldMapWrappers;
 	final FieldMap fieldMap;
+	final ResultCache resultCache;
+	final ParsedQueryCache parsedQueryCache;
+
+	/**
+	 * Set once a query has read another index (a join): the results depend on a reader which is not versioned
+	 * by the result cache
+	 */
+	private volatile boolean otherIndexUsed;
 
 	QueryContextImpl(final IndexInstance.Provider indexProvider, final ResourceLoader resourceLoader,
 			final ExecutorService executorService, final UpdatableAnalyzers indexAnalyzers,
 			final UpdatableAnalyzers queryAnalyzers, final FieldMap fieldMap,
 			final FieldMapWrapper.Cache fieldMapWrappers, final IndexSearcher indexSearcher,
-			final TaxonomyReader taxonomyReader) {
+			final TaxonomyReader taxonomyReader, final ResultCache resultCache,
+			final ParsedQueryCache parsedQueryCache) {
 		super(indexProvider, resourceLoader, executorService, indexAnalyzers, queryAnalyzers, fieldMap);
-		this.docValueReaderState = ((MultiThreadSearcherFactory.StateIndexSearcher) indexSearcher).state;
+		final MultiThreadSearcherFactory.StateIndexSearcher stateIndexSearcher =
+				(MultiThreadSearcherFactory.StateIndexSearcher) indexSearcher;
+		this.docValueReaderState = stateIndexSearcher.state;
+		this.countsPool = stateIndexSearcher.countsPool;
 		this.fieldMap = fieldMap;
 		this.fieldMapWrappers = fieldMapWrappers;
 		this.indexSearcher = indexSearcher;
 		this.indexReader = indexSearcher.getIndexReader();
 		this.taxonomyReader = taxonomyReader;
+		this.resultCache = resultCache;
+		this.parsedQueryCache = parsedQueryCache;
+	}
+
+	/**
+	 * Build the Lucene query, or reuse the one built by a previous request
+	 */
+	Query getQuery(final AbstractQuery<?> query)
+			throws IOException, ParseException, QueryNodeException, ReflectiveOperationException {
+		return parsedQueryCache == null ? query.getQuery(this) : parsedQueryCache.getQuery(query, this);
+	}
+
+	@Override
+	public IndexInstance getIndex(final String indexName) {
+		otherIndexUsed = true;
+		return super.getIndex(indexName);
 	}
 
 	@Override
@@ -82,8 +129,23 @@ final class QueryContextImpl extends IndexContextImpl implements QueryContext, C
 				queryDefinition.returned_fields != null && queryDefinition.returned_fields.contains("*") ?
 						fieldMap.getStaticFieldSet() :
 						queryDefinition.returned_fields;
+		final ResultCache.Key key =
+				resultCache == null ? null : ResultCache.key(queryDefinition, indexReader, fieldMap);
+		if (key != null) {
+			final TimeTracker timeTracker = new TimeTracker();
+			final ResultDefinition.WithMap result = resultCache.get(key);
+			if (result != null) {
+				timeTracker.next("result_cache");
+				return new ResultDefinition.WithMap(result, timeTracker);
+			}
+		}
 		final ResultDocumentsMap resultDocumentsMap = new ResultDocumentsMap(this, queryDefinition, returnedFields);
-		return (ResultDefinition.WithMap) search(queryDefinition, resultDocumentsMap);
+		final ResultDefinition.WithMap result =
+				(ResultDefinition.WithMap) search(queryDefinition, resultDocumentsMap);
+		// Partial results, and the results depending on another index, are not cached
+		if (key != null && !result.isTimedOut() && !otherIndexUsed)
+			resultCache.put(key, result);
+		return result;
 	}
 
 	@Override
@@ -111,4 +173,55 @@ final class QueryContextImpl extends IndexContextImpl implements QueryContext, C
 		return (ResultDefinition.Empty) search(queryDefinition, resultDocumentEmpty);
 	}
 
+	@Override
+	public List<ResultDocumentMap> getDocumentsById(final Collection<?> ids) throws IOException {
+		return getDocumentsById(ids, new ResultDocumentsMap(this, fieldMap.getStaticFieldSet()));
+	}
+
+	@Override
+	public <T> List<ResultDocumentObject<T>> getDocumentsById(final Collection<?> ids,
+			final FieldMapWrapper<T> wrapper) throws IOException {
+		return getDocumentsById(ids, new ResultDocumentsObject<>(this, wrapper.fieldMap.keySet(), wrapper));
+	}
+
+	private <T extends ResultDocumentAbstract> List<T> getDocumentsById(final Collection<?> ids,
+			final ResultDocumentsList<T> resultDocuments) throws IOException {
+		final FieldTypeInterface idFieldType = fieldMap.findFieldType(FieldDefinition.ID_FIELD, null);
+		if (idFieldType == null)
+			throw new ServerException(Response.Status.NOT_ACCEPTABLE,
+					"The documents cannot be retrieved by id: the index has no " + FieldDefinition.ID_FIELD +
+							" field");
+		int pos = 0;
+		for (final Object id : ids) {
+			if (id == null)
+				continue;
+			final int doc = findLiveDoc(idFieldType.term(FieldDefinition.ID_FIELD, id));
+			if (doc != -1)
+				resultDocuments.doc(indexSearcher, pos++, new ScoreDoc(doc, 1.0F));
+		}
+		return resultDocuments.getDocuments();
+	}
+
+	/**
+	 * Seek the term in each segment, the first live document is returned.
+	 *
+	 * @return the global document id, or -1 if not found
+	 */
+	private int findLiveDoc(final Term term) throws IOException {
+		for (final LeafReaderContext leaf : indexReader.leaves()) {
+			final Terms terms = leaf.reader().terms(term.field());
+			if (terms == null)
+				continue;
+			final TermsEnum termsEnum = terms.iterator();
+			if (!termsEnum.seekExact(term.bytes()))
+				continue;
+			final Bits liveDocs = leaf.reader().getLiveDocs();
+			final PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+			for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc())
+				if (liveDocs == null || liveDocs.get(doc))
+					return leaf.docBase + doc;
+		}
+		return -1;
+	}
+
 }
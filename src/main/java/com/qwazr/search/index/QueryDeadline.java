@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.LeafCollector;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time budget of a query.
+ * <p>
+ * The collection stops at the next segment, or after the next few hundred hits, once the budget is elapsed.
+ * The hits already collected are kept, so the query returns partial results.
+ */
+final class QueryDeadline {
+
+    /**
+     * The clock is read once every 256 collected documents
+     */
+    private final static int CHECK_MASK = 0xFF;
+
+    private final long deadline;
+    private volatile boolean timedOut;
+
+    private QueryDeadline(final long timeoutMs) {
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    }
+
+    /**
+     * @param timeoutMs the time budget in milliseconds
+     * @return a new deadline, or null if there is no time budget
+     */
+    static QueryDeadline of(final Long timeoutMs) {
+        return timeoutMs == null || timeoutMs <= 0 ? null : new QueryDeadline(timeoutMs);
+    }
+
+    /**
+     * @return true if the time budget is elapsed
+     */
+    boolean isExpired() {
+        if (timedOut)
+            return true;
+        if (System.nanoTime() - deadline < 0)
+            return false;
+        timedOut = true;
+        return true;
+    }
+
+    /**
+     * @return true if the time budget has been found elapsed by a previous check
+     */
+    boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @param collector the collector to limit
+     * @return a collector which stops the collection when the time budget is elapsed
+     */
+    Collector wrap(final Collector collector) {
+        if (collector == null)
+            return null;
+        return new FilterCollector(collector) {
+
+            @Override
+            public LeafCollector getLeafCollector(final LeafReaderContext context) throws IOException {
+                if (isExpired())
+                    throw new CollectionTerminatedException();
+                return new FilterLeafCollector(super.getLeafCollector(context)) {
+
+                    private int count;
+
+                    @Override
+                    public void collect(final int doc) throws IOException {
+                        if ((++count & CHECK_MASK) == 0 && isExpired())
+                            throw new CollectionTerminatedException();
+                        super.collect(doc);
+                    }
+                };
+            }
+        };
+    }
+}
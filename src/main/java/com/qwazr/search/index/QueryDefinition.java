@@ -61,6 +61,24 @@ public class QueryDefinition extends BaseQueryDefinition {
 	@JsonProperty("commit_user_data")
 	final public Map<String, String> commitUserData;
 
+	@JsonProperty("timeout_ms")
+	final public Long timeoutMs;
+
+	@JsonProperty("search_after")
+	final public SearchAfter searchAfter;
+
+	/**
+	 * The id of a point-in-time lease: the query uses the searcher held by this lease
+	 */
+	@JsonProperty("lease")
+	final public String lease;
+
+	/**
+	 * Past this number of hits, the total may be a lower bound if counting the remaining hits can be skipped
+	 */
+	@JsonProperty("total_hits_threshold")
+	final public Integer totalHitsThreshold;
+
 	@JsonIgnore
 	final Query luceneQuery;
 
@@ -105,7 +123,10 @@ public class QueryDefinition extends BaseQueryDefinition {
 			@JsonProperty("facets") LinkedHashMap<String, FacetDefinition> facets,
 			@JsonProperty("highlighters") LinkedHashMap<String, HighlighterDefinition> highlighters,
 			@JsonProperty("query") AbstractQuery query,
-			@JsonProperty("commit_user_data") Map<String, String> commitUserData) {
+			@JsonProperty("commit_user_data") Map<String, String> commitUserData,
+			@JsonProperty("timeout_ms") Long timeoutMs,
+			@JsonProperty("search_after") SearchAfter searchAfter, @JsonProperty("lease") String lease,
+			@JsonProperty("total_hits_threshold") Integer totalHitsThreshold) {
 		super(start, rows, returnedFields, queryDebug);
 		this.sorts = sorts;
 		this.collectors = collectors;
@@ -113,6 +134,10 @@ public class QueryDefinition extends BaseQueryDefinition {
 		this.highlighters = highlighters;
 		this.query = query;
 		this.commitUserData = commitUserData;
+		this.timeoutMs = timeoutMs;
+		this.searchAfter = searchAfter;
+		this.lease = lease;
+		this.totalHitsThreshold = totalHitsThreshold;
 		luceneQuery = null;
 	}
 
@@ -125,6 +150,10 @@ public class QueryDefinition extends BaseQueryDefinition {
 		query = builder.query;
 		luceneQuery = builder.luceneQuery;
 		commitUserData = builder.commitUserData;
+		timeoutMs = builder.timeoutMs;
+		searchAfter = builder.searchAfter;
+		lease = builder.lease;
+		totalHitsThreshold = builder.totalHitsThreshold;
 	}
 
 	@Override
@@ -142,7 +171,9 @@ public class QueryDefinition extends BaseQueryDefinition {
 		return Objects.equals(query, q.query) && CollectionsUtils.equals(sorts, q.sorts) &&
 				CollectionsUtils.equals(collectors, q.collectors) && CollectionsUtils.equals(facets, q.facets) &&
 				CollectionsUtils.equals(highlighters, q.highlighters) &&
-				CollectionsUtils.equals(commitUserData, q.commitUserData);
+				CollectionsUtils.equals(commitUserData, q.commitUserData) && Objects.equals(timeoutMs, q.timeoutMs) &&
+				Objects.equals(searchAfter, q.searchAfter) && Objects.equals(lease, q.lease) &&
+				Objects.equals(totalHitsThreshold, q.totalHitsThreshold);
 	}
 
 	public static QueryBuilder of(final QueryDefinition queryDefinition) {
@@ -53,7 +53,10 @@ public class QueryDocumentsIterator<T> implements Iterator<T> {
         count = result.total_hits;
         currentPos = 0;
         currentDocuments = result.documents;
-        queryBuilder.start(queryBuilder.start + queryBuilder.rows);
+        // The next page starts after the last document, the previous pages are not collected again
+        queryBuilder.searchAfter(result.search_after);
+        if (result.search_after == null) // Nothing more to fetch
+            count = pos;
         return currentDocuments != null && !currentDocuments.isEmpty();
     }
 
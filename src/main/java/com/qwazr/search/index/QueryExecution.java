@@ -25,12 +25,20 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.EarlyTerminatingSortingCollector;
 import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.Bits;
 
 import java.io.IOException;
 import java.lang.reflect.Constructor;
@@ -45,12 +53,15 @@ final class QueryExecution<T extends ResultDocumentAbstract> {
     final QueryContextImpl queryContext;
     final QueryDefinition queryDef;
     final TimeTracker timeTracker;
+    final QueryDeadline deadline;
     final Map<String, String> dimensions;
     final FacetsConfig facetsConfig;
     final int start;
     final int rows;
     final int end;
     final Sort sort;
+    final ScoreDoc searchAfter;
+    final boolean earlyTerminate;
     final boolean bNeedScore;
     final boolean useDrillSideways;
     final Query query;
@@ -62,23 +73,32 @@ final class QueryExecution<T extends ResultDocumentAbstract> {
             throws QueryNodeException, ReflectiveOperationException, ParseException, IOException {
 
         this.timeTracker = new TimeTracker();
+        this.deadline = QueryDeadline.of(queryDefinition.timeoutMs);
 
         this.queryContext = queryContext;
         this.queryDef = queryDefinition;
 
         this.query = queryDef.luceneQuery != null ?
                 queryDef.luceneQuery :
-                queryDef.query == null ? new MatchAllDocsQuery() : queryDef.query.getQuery(queryContext);
+                queryDef.query == null ? new MatchAllDocsQuery() : queryContext.getQuery(queryDef.query);
 
         this.sort = queryDef.sorts == null ? null : SortUtils.buildSort(queryContext.fieldMap, queryDef.sorts);
 
         this.dimensions = queryDef.facets == null ? null : FacetsBuilder.getFields(queryDef.facets);
         this.facetsConfig = dimensions == null ? null : queryContext.fieldMap.getFacetsConfig(dimensions);
 
-        this.start = queryDef.getStartValue();
+        this.searchAfter = queryDef.searchAfter != null ?
+                queryDef.searchAfter.toScoreDoc(sort) :
+                getAfterLiveDoc(query, sort, queryDef.getStartValue(), queryContext.indexReader);
+        // With a cursor, only the requested page is collected
+        this.start = searchAfter == null ? queryDef.getStartValue() : 0;
         this.rows = queryDef.getRowsValue();
         this.end = Math.min(start + rows, queryContext.indexReader.numDocs());
 
+        // The early termination makes the total hits a lower bound: the client must accept it with a threshold.
+        // It counts the documents before the cursor.
+        this.earlyTerminate = queryDef.totalHitsThreshold != null && queryDef.totalHitsThreshold >= 0 &&
+                searchAfter == null && canEarlyTerminate(sort, queryContext.indexReader);
         this.bNeedScore = sort == null || sort.needsScores();
         this.useDrillSideways =
                 queryDef.query instanceof DrillDownQuery && ((DrillDownQuery) queryDef.query).useDrillSideways &&
@@ -92,6 +112,71 @@ final class QueryExecution<T extends ResultDocumentAbstract> {
         }
     }
 
+    /**
+     * @return true if the time budget of the query is elapsed
+     */
+    boolean isExpired() {
+        return deadline != null && deadline.isExpired();
+    }
+
+    /**
+     * The collection of a segment can stop after the first hits if the query sort is a prefix of the index sort
+     */
+    private static boolean canEarlyTerminate(final Sort sort, final IndexReader indexReader) {
+        if (sort == null)
+            return false;
+        boolean sortedSegment = false;
+        for (final LeafReaderContext leaf : indexReader.leaves()) {
+            final Sort indexSort = leaf.reader().getIndexSort();
+            if (indexSort == null)
+                continue;
+            if (!EarlyTerminatingSortingCollector.canEarlyTerminate(sort, indexSort))
+                return false;
+            sortedSegment = true;
+        }
+        return sortedSegment;
+    }
+
+    /**
+     * @return true if the hits are sorted by ascending doc id: a hit is never more competitive than the previous ones
+     */
+    static boolean isIndexOrder(final Sort sort) {
+        if (sort == null)
+            return false;
+        final SortField[] sortFields = sort.getSort();
+        return sortFields.length == 1 && sortFields[0].getType() == SortField.Type.DOC && !sortFields[0].getReverse();
+    }
+
+    /**
+     * When all the documents are listed in index order, the offset is translated into a cursor
+     * on the last document of the previous page, by counting the live documents.
+     */
+    private static FieldDoc getAfterLiveDoc(final Query query, final Sort sort, final int start,
+                                            final IndexReader indexReader) {
+        if (start <= 0 || !(query instanceof MatchAllDocsQuery) || !isIndexOrder(sort))
+            return null;
+        int remaining = start;
+        for (final LeafReaderContext leaf : indexReader.leaves()) {
+            final LeafReader leafReader = leaf.reader();
+            final int numDocs = leafReader.numDocs();
+            if (remaining > numDocs) {
+                remaining -= numDocs;
+                continue;
+            }
+            final Bits liveDocs = leafReader.getLiveDocs();
+            final int maxDoc = leafReader.maxDoc();
+            for (int doc = 0; doc < maxDoc; doc++) {
+                if (liveDocs != null && !liveDocs.get(doc))
+                    continue;
+                if (--remaining == 0) {
+                    final int afterDoc = leaf.docBase + doc;
+                    return new FieldDoc(afterDoc, Float.NaN, new Object[]{afterDoc});
+                }
+            }
+        }
+        return null;
+    }
+
     private static boolean buildExternalCollectors(final Map<String, QueryDefinition.CollectorDefinition> collectors,
                                                    final List<Pair<Constructor, Object[]>> collectorConstructors) throws ReflectiveOperationException {
         if (collectors == null || collectors.isEmpty())
@@ -142,7 +227,7 @@ final class QueryExecution<T extends ResultDocumentAbstract> {
         final Integer totalHits = queryCollectors.getTotalHits();
 
         final Map<String, HighlighterImpl> highlighters;
-        if (queryDef.highlighters != null && topDocs != null) {
+        if (queryDef.highlighters != null && topDocs != null && !isExpired()) {
             highlighters = new LinkedHashMap<>();
             queryDef.highlighters.forEach((name, highlighterDefinition) -> highlighters.put(name,
                     new HighlighterImpl(name, highlighterDefinition, queryContext)));
@@ -154,7 +239,8 @@ final class QueryExecution<T extends ResultDocumentAbstract> {
         final ResultDocumentsBuilder resultBuilder =
                 new ResultDocumentsBuilder(queryDef, topDocs, queryContext.indexSearcher, query, highlighters,
                         queryCollectors.getExternalResults(), timeTracker, facetsBuilder,
-                        totalHits == null ? 0 : totalHits, resultDocumentsInterface);
+                        totalHits == null ? 0 : totalHits, queryCollectors.isTotalHitsApproximate(), deadline,
+                        resultDocumentsInterface);
 
         return resultDocuments.apply(resultBuilder);
     }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.search.field.Converters.MultiReader;
+import com.qwazr.utils.concurrent.ConsumerEx;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SimpleCollector;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Export every document matching a query.
+ * <p>
+ * The documents are collected segment by segment in index order, without scoring and without any top-N queue,
+ * and each document is handed to the consumer as soon as it is collected. The returned fields are read
+ * from the doc values and the stored fields of the current segment, which are read sequentially.
+ */
+final class QueryExport extends SimpleCollector {
+
+    private final QueryContextImpl context;
+    private final Query query;
+    private final Set<String> returnedFields;
+
+    private ConsumerEx<Map<String, Object>, IOException> consumer;
+    private LeafReader leafReader;
+    private ResultDocumentsMap leafDocuments;
+    private long count;
+
+    QueryExport(final QueryContextImpl context, final QueryDefinition queryDefinition)
+            throws IOException, ParseException, QueryNodeException, ReflectiveOperationException {
+        checkReturnedFields(queryDefinition);
+        this.context = context;
+        this.query = getQuery(context, queryDefinition);
+        this.returnedFields = queryDefinition.returned_fields.contains("*") ?
+                context.fieldMap.getStaticFieldSet() :
+                queryDefinition.returned_fields;
+    }
+
+    static void checkReturnedFields(final QueryDefinition queryDefinition) {
+        if (queryDefinition.returned_fields == null || queryDefinition.returned_fields.isEmpty())
+            throw new IllegalArgumentException("The export requires the returned fields");
+    }
+
+    static Query getQuery(final QueryContextImpl context, final QueryDefinition queryDefinition)
+            throws IOException, ParseException, QueryNodeException, ReflectiveOperationException {
+        return queryDefinition.luceneQuery != null ?
+                queryDefinition.luceneQuery :
+                queryDefinition.query == null ? new MatchAllDocsQuery() : context.getQuery(queryDefinition.query);
+    }
+
+    /**
+     * @param consumer receives each exported document
+     * @return the number of exported documents
+     * @throws IOException if any I/O error occurs, including the errors thrown by the consumer
+     */
+    long execute(final ConsumerEx<Map<String, Object>, IOException> consumer) throws IOException {
+        this.consumer = consumer;
+        context.indexSearcher.search(query, this);
+        return count;
+    }
+
+    /**
+     * The doc values of the segment are retrieved once, and reused for each collected document
+     */
+    @Override
+    protected void doSetNextReader(final LeafReaderContext leafContext) {
+        leafReader = leafContext.reader();
+        leafDocuments = new ResultDocumentsMap(context, new MultiReader.Leaf(leafReader), returnedFields);
+    }
+
+    @Override
+    public void collect(final int doc) throws IOException {
+        final ResultDocumentMap document =
+                leafDocuments.getDocument(leafReader, (int) count, new ScoreDoc(doc, Float.NaN));
+        if (document != null)
+            consumer.accept(document.fields);
+        count++;
+    }
+
+    @Override
+    public boolean needsScores() {
+        return false;
+    }
+
+    /**
+     * An export whose query has been checked. Nothing is held until it is executed:
+     * the admission, the searcher and the context are acquired and released by the execution.
+     */
+    @FunctionalInterface
+    interface Checked {
+
+        /**
+         * @param consumer receives each exported document
+         * @return the number of exported documents
+         * @throws IOException if any I/O error occurs, including the errors thrown by the consumer
+         */
+        long execute(final ConsumerEx<Map<String, Object>, IOException> consumer) throws IOException;
+    }
+}
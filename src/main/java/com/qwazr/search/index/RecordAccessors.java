@@ -0,0 +1,371 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.binder.FieldMapWrapper;
+import com.qwazr.binder.setter.FieldSetter;
+import com.qwazr.search.annotations.Copy;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.annotations.IndexMapping;
+import com.qwazr.search.annotations.SmartField;
+import com.qwazr.search.field.Converters.SingleDVConverter;
+import com.qwazr.search.field.Converters.ValueConverter;
+import com.qwazr.server.ServerException;
+import com.qwazr.utils.AnnotationsUtils;
+import com.qwazr.utils.StringUtils;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * The accessors of a record class, compiled once as MethodHandles
+ * instead of resolving the fields reflectively for each record.
+ */
+final class RecordAccessors {
+
+    private final static MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private final static MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private final static MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private final static Map<Constructor<?>, Supplier<?>> CONSTRUCTORS = new ConcurrentHashMap<>();
+
+    /**
+     * The accessors of every annotated field of the record class, the way AnnotatedIndexService maps them
+     */
+    private final static ClassValue<RecordAccessors> ACCESSORS = new ClassValue<RecordAccessors>() {
+        @Override
+        protected RecordAccessors computeValue(final Class<?> type) {
+            final Map<String, Field> fields = new LinkedHashMap<>();
+            AnnotationsUtils.browseFieldsRecursive(type, field -> {
+                if (field.isAnnotationPresent(IndexField.class))
+                    fields.putIfAbsent(getFieldName(field.getDeclaredAnnotation(IndexField.class).name(), field),
+                            field);
+                if (field.isAnnotationPresent(SmartField.class))
+                    fields.putIfAbsent(getFieldName(field.getDeclaredAnnotation(SmartField.class).name(), field),
+                            field);
+                if (field.isAnnotationPresent(Copy.class))
+                    fields.putIfAbsent(getFieldName(field.getDeclaredAnnotation(Copy.class).name(), field), field);
+            });
+            return new RecordAccessors(fields, Collections.emptyMap());
+        }
+    };
+
+    /**
+     * The compiled setters of the fields mapped by the result records, the key is the field name
+     */
+    private final static ClassValue<Map<String, Setter>> SETTERS = new ClassValue<Map<String, Setter>>() {
+        @Override
+        protected Map<String, Setter> computeValue(final Class<?> type) {
+            final Map<String, Setter> setters = new HashMap<>();
+            AnnotationsUtils.browseFieldsRecursive(type, field -> {
+                if (field.isAnnotationPresent(IndexField.class))
+                    setters.put(getFieldName(field.getDeclaredAnnotation(IndexField.class).name(), field),
+                            Setter.of(field));
+                if (field.isAnnotationPresent(SmartField.class))
+                    setters.put(getFieldName(field.getDeclaredAnnotation(SmartField.class).name(), field),
+                            Setter.of(field));
+                if (field.isAnnotationPresent(IndexMapping.class))
+                    setters.put(getFieldName(field.getDeclaredAnnotation(IndexMapping.class).value(), field),
+                            Setter.of(field));
+            });
+            return Collections.unmodifiableMap(setters);
+        }
+    };
+
+    private final String[] names;
+    private final Field[] fields;
+    private final MethodHandle[] getters;
+    private final Map<Field, MethodHandle> gettersByField;
+
+    /**
+     * @param compiled the getters already compiled, the other ones are compiled now
+     */
+    private RecordAccessors(final Map<String, Field> fields, final Map<Field, MethodHandle> compiled) {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        this.names = new String[fields.size()];
+        this.fields = new Field[fields.size()];
+        this.getters = new MethodHandle[fields.size()];
+        this.gettersByField = new HashMap<>();
+        int i = 0;
+        for (final Map.Entry<String, Field> entry : fields.entrySet()) {
+            final Field field = entry.getValue();
+            MethodHandle getter = compiled.get(field);
+            if (getter == null) {
+                field.setAccessible(true);
+                try {
+                    getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+                } catch (IllegalAccessException e) {
+                    throw ServerException.of(e);
+                }
+            }
+            gettersByField.put(field, getter);
+            getters[i] = getter;
+            this.fields[i] = field;
+            names[i++] = entry.getKey();
+        }
+    }
+
+    private boolean isSame(final Map<String, Field> fields) {
+        if (fields.size() != names.length)
+            return false;
+        for (int i = 0; i < names.length; i++)
+            if (!this.fields[i].equals(fields.get(names[i])))
+                return false;
+        return true;
+    }
+
+    /**
+     * The fields are collected from the hierarchy of one annotated class,
+     * the most derived class declaring one of them identifies that hierarchy.
+     *
+     * @param fields the record fields, the key is the field name
+     * @return the compiled accessors, shared by every record of the same class
+     */
+    static RecordAccessors of(final Map<String, Field> fields) {
+        Class<?> type = null;
+        for (final Field field : fields.values()) {
+            final Class<?> declaringClass = field.getDeclaringClass();
+            if (type == null || type.isAssignableFrom(declaringClass))
+                type = declaringClass;
+        }
+        if (type == null)
+            return new RecordAccessors(fields, Collections.emptyMap());
+        final RecordAccessors accessors = ACCESSORS.get(type);
+        // A subset of the annotated fields (a partial update) reuses the getters of the cached accessors
+        return accessors.isSame(fields) ? accessors : new RecordAccessors(fields, accessors.gettersByField);
+    }
+
+    /**
+     * Pass the name and the value of each field of the record to the consumer
+     */
+    void read(final Object record, final BiConsumer<String, Object> consumer) {
+        for (int i = 0; i < getters.length; i++) {
+            final Object value;
+            try {
+                value = (Object) getters[i].invokeExact(record);
+            } catch (Throwable e) {
+                throw propagate("Cannot read the field " + names[i] + " of " + record.getClass(), e);
+            }
+            consumer.accept(names[i], value);
+        }
+    }
+
+    /**
+     * @param constructor the no-argument constructor of the record
+     * @return a factory calling the constructor through a compiled MethodHandle
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Supplier<T> factory(final Constructor<T> constructor) {
+        return (Supplier<T>) CONSTRUCTORS.computeIfAbsent(constructor, c -> {
+            c.setAccessible(true);
+            final MethodHandle handle;
+            try {
+                handle = MethodHandles.lookup().unreflectConstructor(c).asType(CONSTRUCTOR_TYPE);
+            } catch (IllegalAccessException e) {
+                throw ServerException.of(e);
+            }
+            return () -> {
+                try {
+                    return (Object) handle.invokeExact();
+                } catch (Throwable e) {
+                    throw propagate("Cannot create a new instance of " + c.getDeclaringClass(), e);
+                }
+            };
+        });
+    }
+
+    /**
+     * @param wrapper the binding of the result records
+     * @return the writers of the result records, the key is the field name
+     */
+    static Map<String, Writer> writers(final FieldMapWrapper<?> wrapper) {
+        final Map<String, Setter> setters = SETTERS.get(wrapper.constructor.getDeclaringClass());
+        final Map<String, Writer> writers = new HashMap<>();
+        wrapper.fieldMap.forEach((name, fieldSetter) -> writers.put(name, new Writer(fieldSetter, setters.get(name))));
+        return writers;
+    }
+
+    private static String getFieldName(final String annotationName, final Field field) {
+        return StringUtils.isEmpty(annotationName) ? field.getName() : annotationName;
+    }
+
+    private static RuntimeException propagate(final String message, final Throwable e) {
+        if (e instanceof VirtualMachineError)
+            throw (VirtualMachineError) e;
+        if (e instanceof RuntimeException)
+            return (RuntimeException) e;
+        return ServerException.of(message, e instanceof Exception ? (Exception) e : new UndeclaredThrowableException(e));
+    }
+
+    /**
+     * A compiled setter, only used when the value has exactly the type of the field
+     */
+    private static final class Setter {
+
+        private final Field field;
+        private final Class<?> valueClass;
+        private final MethodHandle handle;
+
+        private Setter(final Field field, final Class<?> valueClass, final MethodHandle handle) {
+            this.field = field;
+            this.valueClass = valueClass;
+            this.handle = handle;
+        }
+
+        private static Setter of(final Field field) {
+            final Class<?> valueClass = valueClass(field.getType());
+            if (valueClass == null)
+                return null;
+            field.setAccessible(true);
+            try {
+                return new Setter(field, valueClass,
+                        MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE));
+            } catch (IllegalAccessException e) {
+                // Not writable through a MethodHandle: the FieldSetter does the job
+                return null;
+            }
+        }
+
+        /**
+         * @return the boxed type of the values assigned without any conversion, or null
+         */
+        private static Class<?> valueClass(final Class<?> type) {
+            if (type == String.class || type == Integer.class || type == Long.class || type == Float.class ||
+                    type == Double.class)
+                return type;
+            if (type == int.class)
+                return Integer.class;
+            if (type == long.class)
+                return Long.class;
+            if (type == float.class)
+                return Float.class;
+            if (type == double.class)
+                return Double.class;
+            return null;
+        }
+
+        private void set(final Object record, final Object value) {
+            try {
+                handle.invokeExact(record, value);
+            } catch (Throwable e) {
+                throw propagate("Cannot write the field " + field.getName() + " of " + record.getClass(), e);
+            }
+        }
+    }
+
+    /**
+     * Write the values of one field of a result record. A single value having the type of the field is written
+     * through the compiled setter, the other values go through the FieldSetter which does the conversions.
+     */
+    static final class Writer {
+
+        final FieldSetter fieldSetter;
+        private final Setter setter;
+
+        private Writer(final FieldSetter fieldSetter, final Setter setter) {
+            this.fieldSetter = fieldSetter;
+            this.setter =
+                    setter != null && fieldSetter != null && setter.field.getType() == fieldSetter.getType() ?
+                            setter :
+                            null;
+        }
+
+        boolean isCompiled(final Class<?> valueClass) {
+            return setter != null && setter.valueClass == valueClass;
+        }
+
+        void fromString(final List<String> values, final Object record) {
+            if (values.size() == 1 && isCompiled(String.class))
+                setter.set(record, values.get(0));
+            else
+                fieldSetter.fromCollection(String.class, values, record);
+        }
+
+        void fromInteger(final int[] values, final Object record) {
+            if (values.length == 1 && isCompiled(Integer.class))
+                setter.set(record, values[0]);
+            else
+                fieldSetter.fromInteger(values, record);
+        }
+
+        void fromLong(final long[] values, final Object record) {
+            if (values.length == 1 && isCompiled(Long.class))
+                setter.set(record, values[0]);
+            else
+                fieldSetter.fromLong(values, record);
+        }
+
+        void fromFloat(final float[] values, final Object record) {
+            if (values.length == 1 && isCompiled(Float.class))
+                setter.set(record, values[0]);
+            else
+                fieldSetter.fromFloat(values, record);
+        }
+
+        void fromDouble(final double[] values, final Object record) {
+            if (values.length == 1 && isCompiled(Double.class))
+                setter.set(record, values[0]);
+            else
+                fieldSetter.fromDouble(values, record);
+        }
+
+        /**
+         * Write the single doc value, the multivalued ones are filled by the converter
+         */
+        void fromDocValues(final ValueConverter<?> converter, final int docId, final Object record)
+                throws IOException {
+            if (setter != null && converter instanceof SingleDVConverter)
+                fromValue(converter.convert(docId), record);
+            else
+                converter.fill(record, fieldSetter, docId);
+        }
+
+        /**
+         * Write a single value the way the converters do
+         */
+        void fromValue(final Object value, final Object record) {
+            if (value == null)
+                fieldSetter.fromNull(record);
+            else if (isCompiled(value.getClass()))
+                setter.set(record, value);
+            else if (value instanceof String)
+                fieldSetter.fromString((String) value, record);
+            else if (value instanceof Integer)
+                fieldSetter.fromInteger((Integer) value, record);
+            else if (value instanceof Long)
+                fieldSetter.fromLong((Long) value, record);
+            else if (value instanceof Float)
+                fieldSetter.fromFloat((Float) value, record);
+            else if (value instanceof Double)
+                fieldSetter.fromDouble((Double) value, record);
+            else
+                fieldSetter.setValue(record, value);
+        }
+    }
+}
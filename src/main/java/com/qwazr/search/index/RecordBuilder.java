@@ -60,24 +60,4 @@ abstract class RecordBuilder {
 
 	}
 
-	final static class ForObject extends RecordBuilder implements BiConsumer<String, java.lang.reflect.Field> {
-
-		private final Object record;
-
-		ForObject(final FieldMap fieldMap, final FieldConsumer fieldConsumer, final Object record) {
-			super(fieldMap, fieldConsumer);
-			this.record = record;
-		}
-
-		@Override
-		final public void accept(final String fieldName, final java.lang.reflect.Field field) {
-			try {
-				addFieldValue(fieldName, field.get(record));
-			} catch (IllegalAccessException e) {
-				throw new RuntimeException(e);
-			}
-		}
-
-	}
-
 }
@@ -36,6 +36,7 @@ interface RecordsPoster {
 	abstract class CommonPoster implements RecordsPoster {
 
 		protected final Map<String, Field> fields;
+		protected final RecordAccessors accessors;
 		protected final FieldMap fieldMap;
 		final IndexWriter indexWriter;
 		final TaxonomyWriter taxonomyWriter;
@@ -44,6 +45,7 @@ interface RecordsPoster {
 		CommonPoster(final Map<String, Field> fields, final FieldMap fieldMap, final IndexWriter indexWriter,
 				final TaxonomyWriter taxonomyWriter) {
 			this.fields = fields;
+			this.accessors = fields == null ? null : RecordAccessors.of(fields);
 			this.fieldMap = fieldMap;
 			this.indexWriter = indexWriter;
 			this.taxonomyWriter = taxonomyWriter;
@@ -165,9 +167,8 @@ interface RecordsPoster {
 
 		@Override
 		final public void accept(final Object record) throws IOException {
-			final RecordBuilder.ForObject recordBuilder =
-					new RecordBuilder.ForObject(fieldMap, documentBuilder, record);
-			fields.forEach(recordBuilder);
+			final RecordBuilder.ForMap recordBuilder = new RecordBuilder.ForMap(fieldMap, documentBuilder);
+			accessors.read(record, recordBuilder);
 			updateDocument(recordBuilder.termId);
 		}
 	}
@@ -181,9 +182,8 @@ interface RecordsPoster {
 
 		@Override
 		final public void accept(final Object record) throws IOException {
-			final RecordBuilder.ForObject recordBuilder =
-					new RecordBuilder.ForObject(fieldMap, documentBuilder, record);
-			fields.forEach(recordBuilder);
+			final RecordBuilder.ForMap recordBuilder = new RecordBuilder.ForMap(fieldMap, documentBuilder);
+			accessors.read(record, recordBuilder);
 			addDocument();
 		}
 	}
@@ -220,9 +220,8 @@ interface RecordsPoster {
 
 		@Override
 		final public void accept(final Object record) throws IOException {
-			final RecordBuilder.ForObject recordBuilder =
-					new RecordBuilder.ForObject(fieldMap, documentBuilder, record);
-			fields.forEach(recordBuilder);
+			final RecordBuilder.ForMap recordBuilder = new RecordBuilder.ForMap(fieldMap, documentBuilder);
+			accessors.read(record, recordBuilder);
 			updateDocValues(recordBuilder.termId);
 		}
 	}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.qwazr.utils.LoggerUtils;
+import com.qwazr.utils.ObjectMappers;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A memory bounded LRU cache of the search results of one index.
+ * <p>
+ * The key is the JSON form of the QueryDefinition (without the lease), and the version of the reader which computed
+ * the result. The entries are dropped as soon as a more recent reader (or a new FieldMap) is seen,
+ * so a cached result is never served once the index has been refreshed.
+ * The results are kept in their JSON form: each hit returns its own copy.
+ */
+final class ResultCache {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(ResultCache.class);
+
+    /**
+     * The estimated overhead of an entry (key, entry, LinkedHashMap node)
+     */
+    private final static int ENTRY_OVERHEAD = 128;
+
+    private final long maxSizeBytes;
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private long version;
+    private FieldMap fieldMap;
+    private long sizeBytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    private ResultCache(final long maxSizeBytes) {
+        this.maxSizeBytes = maxSizeBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.version = -1;
+    }
+
+    /**
+     * @param maxSizeMb the size of the cache in megabytes
+     * @return a new cache, or null if the size is not set
+     */
+    static ResultCache of(final Double maxSizeMb) {
+        return maxSizeMb == null || maxSizeMb <= 0 ? null : new ResultCache((long) (maxSizeMb * 1024 * 1024));
+    }
+
+    /**
+     * @return the key of the query, or null if the query cannot be cached
+     */
+    static Key key(QueryDefinition queryDefinition, final IndexReader indexReader, final FieldMap fieldMap) {
+        // Lucene queries and user collectors have no stable canonical form
+        if (queryDefinition.luceneQuery != null || queryDefinition.collectors != null)
+            return null;
+        if (!(indexReader instanceof DirectoryReader))
+            return null;
+        // The reader version already identifies the searcher held by a lease
+        if (queryDefinition.lease != null)
+            queryDefinition = QueryDefinition.of(queryDefinition).lease(null).build();
+        try {
+            return new Key(ObjectMappers.JSON.writeValueAsString(queryDefinition),
+                    ((DirectoryReader) indexReader).getVersion(), fieldMap);
+        } catch (JsonProcessingException e) {
+            LOGGER.log(Level.FINE, e, e::getMessage);
+            return null;
+        }
+    }
+
+    /**
+     * Drop the entries computed by an older reader or with another FieldMap
+     *
+     * @return false if the key comes from an older reader
+     */
+    private boolean checkGeneration(final Key key) {
+        if (key.version < version)
+            return false;
+        if (key.version > version || key.fieldMap != fieldMap) {
+            entries.clear();
+            sizeBytes = 0;
+            version = key.version;
+            fieldMap = key.fieldMap;
+        }
+        return true;
+    }
+
+    private synchronized Entry getEntry(final Key key) {
+        final Entry entry = checkGeneration(key) ? entries.get(key) : null;
+        if (entry == null)
+            missCount++;
+        else
+            hitCount++;
+        return entry;
+    }
+
+    /**
+     * @return a new copy of the cached result, or null
+     */
+    ResultDefinition.WithMap get(final Key key) throws IOException {
+        final Entry entry = getEntry(key);
+        return entry == null ? null : ObjectMappers.JSON.readValue(entry.result, ResultDefinition.WithMap.class);
+    }
+
+    void put(final Key key, final ResultDefinition.WithMap result) {
+        final byte[] json;
+        try {
+            json = ObjectMappers.JSON.writeValueAsBytes(result);
+        } catch (JsonProcessingException e) {
+            LOGGER.log(Level.FINE, e, e::getMessage);
+            return;
+        }
+        final Entry entry = new Entry(json, key.query.length() * 2 + json.length + ENTRY_OVERHEAD);
+        if (entry.sizeBytes > maxSizeBytes)
+            return;
+        synchronized (this) {
+            if (!checkGeneration(key))
+                return;
+            final Entry previous = entries.put(key, entry);
+            if (previous != null)
+                sizeBytes -= previous.sizeBytes;
+            sizeBytes += entry.sizeBytes;
+            final Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+            while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+                sizeBytes -= iterator.next().getValue().sizeBytes;
+                iterator.remove();
+                evictionCount++;
+            }
+        }
+    }
+
+    synchronized IndexStatus.ResultCacheStats getStats() {
+        return new IndexStatus.ResultCacheStats((long) entries.size(), sizeBytes, maxSizeBytes, hitCount, missCount,
+                evictionCount);
+    }
+
+    final static class Key {
+
+        private final String query;
+        private final long version;
+        private final FieldMap fieldMap;
+        private final int hashCode;
+
+        private Key(final String query, final long version, final FieldMap fieldMap) {
+            this.query = query;
+            this.version = version;
+            this.fieldMap = fieldMap;
+            this.hashCode = query.hashCode() * 31 + Long.hashCode(version);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key))
+                return false;
+            final Key key = (Key) o;
+            return version == key.version && fieldMap == key.fieldMap && query.equals(key.query);
+        }
+    }
+
+    private final static class Entry {
+
+        private final byte[] result;
+        private final long sizeBytes;
+
+        private Entry(final byte[] result, final long sizeBytes) {
+            this.result = result;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+}
@@ -36,6 +36,12 @@ public abstract class ResultDefinition<T extends ResultDocumentAbstract> {
 	final public Map<String, Map<String, Number>> facets;
 	final public String query;
 	final public Map<String, Object> collectors;
+	@JsonInclude(Include.NON_NULL)
+	final public Boolean timed_out;
+	@JsonInclude(Include.NON_NULL)
+	final public SearchAfter search_after;
+	@JsonInclude(Include.NON_NULL)
+	final public Boolean total_hits_approximate;
 
 	public ResultDefinition() {
 		this.timer = null;
@@ -45,6 +51,9 @@ public abstract class ResultDefinition<T extends ResultDocumentAbstract> {
 		this.collectors = null;
 		this.max_score = null;
 		this.query = null;
+		this.timed_out = null;
+		this.search_after = null;
+		this.total_hits_approximate = null;
 	}
 
 	protected ResultDefinition(final ResultDocumentsBuilder builder, @NotNull final List<T> documents) {
@@ -55,16 +64,27 @@ public abstract class ResultDefinition<T extends ResultDocumentAbstract> {
 		this.documents = documents;
 		this.facets = builder.facets;
 		this.collectors = builder.collectors;
+		this.timed_out = builder.timedOut ? Boolean.TRUE : null;
+		this.search_after = builder.searchAfter;
+		this.total_hits_approximate = builder.totalHitsApproximate ? Boolean.TRUE : null;
 	}
 
 	protected ResultDefinition(final ResultDefinition<?> src, @NotNull final List<T> documents) {
+		this(src, documents, src.timer);
+	}
+
+	protected ResultDefinition(final ResultDefinition<?> src, final List<T> documents,
+			final TimeTracker.Status timer) {
 		this.query = src.query;
-		this.timer = src.timer;
+		this.timer = timer;
 		this.total_hits = src.total_hits;
 		this.max_score = src.max_score;
 		this.documents = documents;
 		this.facets = src.facets;
 		this.collectors = src.collectors;
+		this.timed_out = src.timed_out;
+		this.search_after = src.search_after;
+		this.total_hits_approximate = src.total_hits_approximate;
 	}
 
 	ResultDefinition(TimeTracker timeTracker) {
@@ -74,6 +94,9 @@ public abstract class ResultDefinition<T extends ResultDocumentAbstract> {
 		facets = null;
 		collectors = null;
 		max_score = null;
+		timed_out = null;
+		search_after = null;
+		total_hits_approximate = null;
 		this.timer = timeTracker != null ? timeTracker.getStatus() : null;
 	}
 
@@ -84,6 +107,9 @@ public abstract class ResultDefinition<T extends ResultDocumentAbstract> {
 		facets = null;
 		collectors = null;
 		max_score = null;
+		timed_out = null;
+		search_after = null;
+		total_hits_approximate = null;
 		this.timer = null;
 	}
 
@@ -138,6 +164,30 @@ public abstract class ResultDefinition<T extends ResultDocumentAbstract> {
 		return query;
 	}
 
+	/**
+	 * @return true if the time budget of the query elapsed, and the results are partial
+	 */
+	@JsonIgnore
+	public boolean isTimedOut() {
+		return timed_out != null && timed_out;
+	}
+
+	/**
+	 * @return true if the total hits is a lower bound: the counting stopped before the last hit
+	 */
+	@JsonIgnore
+	public boolean isTotalHitsApproximate() {
+		return total_hits_approximate != null && total_hits_approximate;
+	}
+
+	/**
+	 * @return the cursor of the next page, or null if no document was returned
+	 */
+	@JsonIgnore
+	public SearchAfter getSearchAfter() {
+		return search_after;
+	}
+
 	public <O> O getCollector(String name) {
 		return collectors == null ? null : (O) collectors.get(name);
 	}
@@ -161,6 +211,13 @@ public abstract class ResultDefinition<T extends ResultDocumentAbstract> {
 		public WithMap(int docs) {
 			super(docs);
 		}
+
+		/**
+		 * A copy of the result, with another timer
+		 */
+		WithMap(final WithMap src, final TimeTracker timeTracker) {
+			super(src, src.documents, timeTracker.getStatus());
+		}
 	}
 
 	public static class WithObject<T> extends ResultDefinition<ResultDocumentObject<T>> {
@@ -18,8 +18,8 @@ package com.qwazr.search.index;
 import com.qwazr.search.field.Converters.ValueConverter;
 import com.qwazr.utils.concurrent.ConcurrentUtils;
 import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.StoredFieldVisitor;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 
 import javax.validation.constraints.NotNull;
@@ -72,10 +72,10 @@ abstract class ResultDocumentBuilder<T extends ResultDocumentAbstract> {
 		ConcurrentUtils.forEachEx(returnedFields, this::setDocValuesField);
 	}
 
-	final void extractStoredReturnedFields(@NotNull final IndexSearcher searcher,
+	final void extractStoredReturnedFields(@NotNull final IndexReader reader,
 			@NotNull final Map<String, String> storedFields) throws IOException {
 		final Visitor visitor = new Visitor(storedFields);
-		searcher.doc(scoreDoc.doc, visitor);
+		reader.document(scoreDoc.doc, visitor);
 		visitor.extract();
 	}
 
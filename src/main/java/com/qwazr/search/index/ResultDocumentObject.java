@@ -15,7 +15,6 @@
  **/
 package com.qwazr.search.index;
 
-import com.qwazr.binder.FieldMapWrapper;
 import com.qwazr.binder.setter.FieldSetter;
 import com.qwazr.search.field.Converters.ValueConverter;
 import com.qwazr.server.ServerException;
@@ -48,16 +47,13 @@ public class ResultDocumentObject<T> extends ResultDocumentAbstract {
 	static class Builder<T> extends ResultDocumentBuilder<ResultDocumentObject<T>> {
 
 		private final T record;
-		private final Map<String, FieldSetter> fieldMap;
+		private final Map<String, RecordAccessors.Writer> writers;
 
-		Builder(final int pos, final ScoreDoc scoreDoc, final FieldMapWrapper<T> wrapper) {
+		Builder(final int pos, final ScoreDoc scoreDoc, final T record,
+				final Map<String, RecordAccessors.Writer> writers) {
 			super(pos, scoreDoc);
-			try {
-				this.record = wrapper.constructor.newInstance();
-			} catch (ReflectiveOperationException e) {
-				throw ServerException.of(e);
-			}
-			this.fieldMap = wrapper.fieldMap;
+			this.record = record;
+			this.writers = writers;
 		}
 
 		@Override
@@ -65,29 +61,26 @@ public class ResultDocumentObject<T> extends ResultDocumentAbstract {
 			return new ResultDocumentObject<>(this);
 		}
 
-		@Override
-		void setDocValuesField(final String fieldName, final ValueConverter converter) throws IOException {
-			final FieldSetter fieldSetter = fieldMap.get(fieldName);
-			if (fieldSetter == null)
+		private RecordAccessors.Writer checkWriter(final String fieldName) {
+			final RecordAccessors.Writer writer = writers.get(fieldName);
+			if (writer == null)
 				throw new ServerException("Unknown field " + fieldName + " for class " + record.getClass());
-			converter.fill(record, fieldSetter, scoreDoc.doc);
+			return writer;
 		}
 
-		private FieldSetter checkFieldSetter(final String fieldName) {
-			final FieldSetter fieldSetter = fieldMap.get(fieldName);
-			if (fieldSetter == null)
-				throw new ServerException("Unknown field " + fieldName + " for class " + record.getClass());
-			return fieldSetter;
+		@Override
+		void setDocValuesField(final String fieldName, final ValueConverter converter) throws IOException {
+			checkWriter(fieldName).fromDocValues(converter, scoreDoc.doc, record);
 		}
 
 		@Override
 		final void setStoredFieldString(String fieldName, List<String> values) {
-			checkFieldSetter(fieldName).fromCollection(String.class, values, record);
+			checkWriter(fieldName).fromString(values, record);
 		}
 
 		@Override
 		final void setStoredFieldBytes(String fieldName, List<byte[]> values) {
-			final FieldSetter fieldSetter = checkFieldSetter(fieldName);
+			final FieldSetter fieldSetter = checkWriter(fieldName).fieldSetter;
 			final Class<?> fieldType = fieldSetter.getType();
 			if (Serializable.class.isAssignableFrom(fieldType)) {
 				try {
@@ -103,22 +96,22 @@ public class ResultDocumentObject<T> extends ResultDocumentAbstract {
 
 		@Override
 		final void setStoredFieldInteger(String fieldName, int[] values) {
-			checkFieldSetter(fieldName).fromInteger(values, record);
+			checkWriter(fieldName).fromInteger(values, record);
 		}
 
 		@Override
 		final void setStoredFieldLong(String fieldName, long[] values) {
-			checkFieldSetter(fieldName).fromLong(values, record);
+			checkWriter(fieldName).fromLong(values, record);
 		}
 
 		@Override
 		final void setStoredFieldFloat(String fieldName, float[] values) {
-			checkFieldSetter(fieldName).fromFloat(values, record);
+			checkWriter(fieldName).fromFloat(values, record);
 		}
 
 		@Override
 		final void setStoredFieldDouble(String fieldName, double[] values) {
-			checkFieldSetter(fieldName).fromDouble(values, record);
+			checkWriter(fieldName).fromDouble(values, record);
 		}
 
 	}
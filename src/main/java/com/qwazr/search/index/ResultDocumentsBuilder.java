@@ -35,11 +35,16 @@ class ResultDocumentsBuilder {
 	final TimeTracker.Status timeTrackerStatus;
 	final float maxScore;
 	final long totalHits;
+	final boolean timedOut;
+	final boolean totalHitsApproximate;
+	final SearchAfter searchAfter;
 
 	ResultDocumentsBuilder(final QueryDefinition queryDefinition, final TopDocs topDocs,
 			final IndexSearcher indexSearcher, final Query luceneQuery, final Map<String, HighlighterImpl> highlighters,
 			final Map<String, Object> externalCollectorsResults, final TimeTracker timeTracker,
-			final FacetsBuilder facetsBuilder, long totalHits, @NotNull final ResultDocumentsInterface resultDocuments)
+			final FacetsBuilder facetsBuilder, long totalHits, final boolean totalHitsApproximate,
+			final QueryDeadline deadline,
+			@NotNull final ResultDocumentsInterface resultDocuments)
 			throws ReflectiveOperationException, IOException {
 
 		this.collectors = externalCollectorsResults;
@@ -48,13 +53,19 @@ class ResultDocumentsBuilder {
 
 			this.maxScore = topDocs.getMaxScore();
 			int pos = 0;
-			for (ScoreDoc scoreDoc : topDocs.scoreDocs)
+			for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+				// Once the time budget is elapsed, the remaining documents are not fetched
+				if (deadline != null && deadline.isExpired())
+					break;
 				resultDocuments.doc(indexSearcher, pos++, scoreDoc);
+			}
+			// The cursor of the next page
+			this.searchAfter = pos == 0 ? null : SearchAfter.of(topDocs.scoreDocs[pos - 1]);
 
 			if (timeTracker != null)
 				timeTracker.next("documents");
 
-			if (highlighters != null && topDocs.scoreDocs.length > 0) {
+			if (highlighters != null && topDocs.scoreDocs.length > 0 && (deadline == null || !deadline.isExpired())) {
 
 				highlighters.forEach((name, highlighter) -> {
 					try {
@@ -69,10 +80,14 @@ class ResultDocumentsBuilder {
 				if (timeTracker != null)
 					timeTracker.next("highlighting");
 			}
-		} else
+		} else {
 			this.maxScore = 0;
+			this.searchAfter = null;
+		}
 
 		this.totalHits = totalHits;
+		this.totalHitsApproximate = totalHitsApproximate;
+		this.timedOut = deadline != null && deadline.isTimedOut();
 
 		this.facets = facetsBuilder == null ? null : facetsBuilder.results;
 		this.queryDebug = queryDefinition.query_debug != null && queryDefinition.query_debug && luceneQuery != null ?
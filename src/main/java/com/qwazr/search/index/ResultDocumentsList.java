@@ -18,6 +18,7 @@ package com.qwazr.search.index;
 import com.qwazr.search.field.Converters.MultiReader;
 import com.qwazr.search.field.Converters.ValueConverter;
 import com.qwazr.search.field.FieldTypeInterface;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 
@@ -38,16 +39,27 @@ abstract class ResultDocumentsList<T extends ResultDocumentAbstract>
     protected final int start;
 
     ResultDocumentsList(final QueryContextImpl context, final QueryDefinition queryDefinition,
-                        Set<String> returnedFields) {
-        this.start = queryDefinition.getStartValue();
+                        final Set<String> returnedFields) {
+        this(context, queryDefinition.getStartValue(), returnedFields == null &&
+                queryDefinition.returned_fields != null && !queryDefinition.returned_fields.isEmpty() ?
+                queryDefinition.returned_fields :
+                returnedFields);
+    }
+
+    ResultDocumentsList(final QueryContextImpl context, final int start, final Set<String> returnedFields) {
+        this(context, new MultiReader(context.indexReader), start, returnedFields);
+    }
+
+    /**
+     * @param multiReader the reader of the doc values, the doc ids of the built documents are relative to it
+     */
+    ResultDocumentsList(final QueryContextImpl context, final MultiReader multiReader, final int start,
+                        final Set<String> returnedFields) {
+        this.start = start;
 
-        if (returnedFields == null)
-            if (queryDefinition.returned_fields != null && !queryDefinition.returned_fields.isEmpty())
-                returnedFields = queryDefinition.returned_fields;
         if (returnedFields != null) {
             this.storedFields = new HashMap<>();
             this.returnedFieldsConverter = new LinkedHashMap<>();
-            final MultiReader multiReader = new MultiReader(context.indexReader);
             for (final String fieldName : returnedFields) {
                 final FieldTypeInterface fieldType = context.fieldMap.getFieldType(null, fieldName);
                 if (fieldType == null)
@@ -72,16 +84,33 @@ abstract class ResultDocumentsList<T extends ResultDocumentAbstract>
     protected abstract ResultDefinition<T> newResultDefinition(ResultDocumentsBuilder resultDocumentsBuilder,
                                                                List<T> documents);
 
-    @Override
-    final public void doc(IndexSearcher searcher, int pos, ScoreDoc scoreDoc) throws IOException {
-        final ResultDocumentBuilder<T> builder = newResultDocumentBuilder(start + pos, scoreDoc);
+    private ResultDocumentBuilder<T> buildDocument(final IndexReader reader, final int absolutePos,
+                                                   final ScoreDoc scoreDoc) throws IOException {
+        final ResultDocumentBuilder<T> builder = newResultDocumentBuilder(absolutePos, scoreDoc);
         if (builder == null)
-            return;
+            return null;
         if (storedFields != null && !storedFields.isEmpty())
-            builder.extractStoredReturnedFields(searcher, storedFields);
+            builder.extractStoredReturnedFields(reader, storedFields);
         if (returnedFieldsConverter != null && !returnedFieldsConverter.isEmpty())
             builder.extractDocValuesReturnedFields(returnedFieldsConverter);
-        documentsBuilder.add(builder);
+        return builder;
+    }
+
+    @Override
+    final public void doc(IndexSearcher searcher, int pos, ScoreDoc scoreDoc) throws IOException {
+        final ResultDocumentBuilder<T> builder = buildDocument(searcher.getIndexReader(), start + pos, scoreDoc);
+        if (builder != null)
+            documentsBuilder.add(builder);
+    }
+
+    /**
+     * Build one document with its returned fields, without keeping it in the result list
+     *
+     * @param reader the reader of the stored fields, the doc id is relative to it
+     */
+    final T getDocument(final IndexReader reader, final int pos, final ScoreDoc scoreDoc) throws IOException {
+        final ResultDocumentBuilder<T> builder = buildDocument(reader, pos, scoreDoc);
+        return builder == null ? null : builder.build();
     }
 
     @Override
@@ -89,11 +118,15 @@ abstract class ResultDocumentsList<T extends ResultDocumentAbstract>
         documentsBuilder.get(pos).setHighlight(name, snippet);
     }
 
-    @Override
-    final public ResultDefinition<T> apply(ResultDocumentsBuilder resultDocumentsBuilder) {
+    final List<T> getDocuments() {
         final List<T> documents = new ArrayList<>(documentsBuilder.size());
         documentsBuilder.forEach(builder -> documents.add(builder.build()));
-        return newResultDefinition(resultDocumentsBuilder, documents);
+        return documents;
+    }
+
+    @Override
+    final public ResultDefinition<T> apply(ResultDocumentsBuilder resultDocumentsBuilder) {
+        return newResultDefinition(resultDocumentsBuilder, getDocuments());
     }
 
     @Override
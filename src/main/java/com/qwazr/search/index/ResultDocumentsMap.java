@@ -15,6 +15,7 @@
  **/
 package com.qwazr.search.index;
 
+import com.qwazr.search.field.Converters.MultiReader;
 import org.apache.lucene.search.ScoreDoc;
 
 import java.util.List;
@@ -27,6 +28,15 @@ final class ResultDocumentsMap extends ResultDocumentsList<ResultDocumentMap> {
 		super((QueryContextImpl) context, queryDefinition, returnedFields);
 	}
 
+	ResultDocumentsMap(final QueryContextImpl context, final Set<String> returnedFields) {
+		super(context, 0, returnedFields);
+	}
+
+	ResultDocumentsMap(final QueryContextImpl context, final MultiReader multiReader,
+			final Set<String> returnedFields) {
+		super(context, multiReader, 0, returnedFields);
+	}
+
 	@Override
 	protected ResultDocumentBuilder<ResultDocumentMap> newResultDocumentBuilder(int absolutePos, ScoreDoc scoreDoc) {
 		return new ResultDocumentMap.Builder(absolutePos, scoreDoc);
@@ -19,22 +19,33 @@ import com.qwazr.binder.FieldMapWrapper;
 import org.apache.lucene.search.ScoreDoc;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 final class ResultDocumentsObject<T> extends ResultDocumentsList<ResultDocumentObject<T>> {
 
-	private final FieldMapWrapper<T> wrapper;
+	private final Supplier<T> factory;
+	private final Map<String, RecordAccessors.Writer> writers;
 
 	ResultDocumentsObject(final QueryContext context, final QueryDefinition queryDefinition,
 			final Set<String> returnedFields, final FieldMapWrapper<T> wrapper) {
 		super((QueryContextImpl) context, queryDefinition, returnedFields);
-		this.wrapper = wrapper;
+		this.factory = RecordAccessors.factory(wrapper.constructor);
+		this.writers = RecordAccessors.writers(wrapper);
+	}
+
+	ResultDocumentsObject(final QueryContextImpl context, final Set<String> returnedFields,
+			final FieldMapWrapper<T> wrapper) {
+		super(context, 0, returnedFields);
+		this.factory = RecordAccessors.factory(wrapper.constructor);
+		this.writers = RecordAccessors.writers(wrapper);
 	}
 
 	@Override
 	protected ResultDocumentBuilder<ResultDocumentObject<T>> newResultDocumentBuilder(int absolutePos,
 			ScoreDoc scoreDoc) {
-		return new ResultDocumentObject.Builder<>(absolutePos, scoreDoc, wrapper);
+		return new ResultDocumentObject.Builder<>(absolutePos, scoreDoc, factory.get(), writers);
 	}
 
 	@Override
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import org.apache.lucene.facet.DrillDownQuery;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The counts of a sample of the matching documents, extrapolated to all of them.
+ * <p>
+ * The extrapolated count of a label never exceeds the number of documents having the label.
+ * With the recount option, the returned labels are counted exactly on all the matching documents,
+ * using their drill down terms. The choice of the top labels stays approximate.
+ */
+final class SampledFacets extends Facets {
+
+    /**
+     * The sample is the same for the same query, the counts do not change from one request to the next
+     */
+    private final static long SEED = 0x5DEECE66DL;
+
+    @FunctionalInterface
+    interface Counter {
+        int count(final Query query) throws IOException;
+    }
+
+    private final Facets sampledFacets;
+    private final double samplingRate;
+    private final FacetsConfig facetsConfig;
+    private final IndexReader indexReader;
+    private final Counter recounter;
+
+    /**
+     * @param sampledFacets the facets counted on the sample
+     * @param sample        the sample
+     * @param facetsConfig  the facets configuration
+     * @param indexReader   the reader of the index
+     * @param recounter     counts the matching documents having a label, or null to extrapolate
+     */
+    SampledFacets(final Facets sampledFacets, final Sample sample, final FacetsConfig facetsConfig,
+                  final IndexReader indexReader, final Counter recounter) {
+        this.sampledFacets = sampledFacets;
+        this.samplingRate = sample.samplingRate;
+        this.facetsConfig = facetsConfig;
+        this.indexReader = indexReader;
+        this.recounter = recounter;
+    }
+
+    private int extrapolate(final Number value) {
+        return (int) Math.round(value.doubleValue() / samplingRate);
+    }
+
+    private int getValue(final String dim, final String[] path, final Number sampledValue) throws IOException {
+        final Term term = DrillDownQuery.term(facetsConfig.getDimConfig(dim).indexFieldName, dim, path);
+        if (recounter != null)
+            return recounter.count(new TermQuery(term));
+        return Math.min(indexReader.docFreq(term), extrapolate(sampledValue));
+    }
+
+    @Override
+    public FacetResult getTopChildren(final int topN, final String dim, final String... path) throws IOException {
+        final FacetResult result = sampledFacets.getTopChildren(topN, dim, path);
+        if (result == null)
+            return null;
+        final String[] childPath = Arrays.copyOf(path, path.length + 1);
+        final LabelAndValue[] labelValues = new LabelAndValue[result.labelValues.length];
+        for (int i = 0; i < labelValues.length; i++) {
+            final LabelAndValue labelValue = result.labelValues[i];
+            childPath[path.length] = labelValue.label;
+            labelValues[i] = new LabelAndValue(labelValue.label, getValue(dim, childPath, labelValue.value));
+        }
+        if (recounter != null)
+            Arrays.sort(labelValues, FacetBuilder.VALUE_DESCENDING);
+        final Number value = result.value.intValue() < 0 ? result.value : extrapolate(result.value);
+        return new FacetResult(dim, path, value, labelValues, result.childCount);
+    }
+
+    @Override
+    public Number getSpecificValue(final String dim, final String... path) throws IOException {
+        final Number value = sampledFacets.getSpecificValue(dim, path);
+        if (value == null || (value.intValue() < 0 && recounter == null))
+            return value;
+        return getValue(dim, path, value);
+    }
+
+    @Override
+    public List<FacetResult> getAllDims(final int topN) throws IOException {
+        final List<FacetResult> results = new ArrayList<>();
+        for (final FacetResult result : sampledFacets.getAllDims(topN)) {
+            final FacetResult extrapolated = getTopChildren(topN, result.dim, result.path);
+            if (extrapolated != null)
+                results.add(extrapolated);
+        }
+        return results;
+    }
+
+    /**
+     * A random sample of the matching documents: one document out of each bin of documents.
+     */
+    static final class Sample extends FacetsCollector {
+
+        private final List<MatchingDocs> matchingDocs;
+        final double samplingRate;
+
+        /**
+         * @param hits       all the matching documents
+         * @param totalHits  the number of matching documents
+         * @param sampleSize the expected number of documents in the sample
+         */
+        Sample(final FacetsCollector hits, final long totalHits, final int sampleSize) throws IOException {
+            final int binSize = (int) Math.max(1, totalHits / sampleSize);
+            final Random random = new Random(SEED);
+            matchingDocs = new ArrayList<>();
+            long sampledHits = 0;
+            int counter = 0;
+            int randomIndex = random.nextInt(binSize);
+            for (final MatchingDocs docs : hits.getMatchingDocs()) {
+                if (docs.totalHits == 0)
+                    continue;
+                final DocIdSetIterator iterator = docs.bits.iterator();
+                if (iterator == null)
+                    continue;
+                final FixedBitSet sampleDocs = new FixedBitSet(docs.context.reader().maxDoc());
+                int sampleCount = 0;
+                for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+                    if (counter == randomIndex) {
+                        sampleDocs.set(doc);
+                        sampleCount++;
+                    }
+                    if (++counter == binSize) {
+                        counter = 0;
+                        randomIndex = random.nextInt(binSize);
+                    }
+                }
+                if (sampleCount == 0)
+                    continue;
+                matchingDocs.add(
+                        new MatchingDocs(docs.context, new BitDocIdSet(sampleDocs, sampleCount), sampleCount, null));
+                sampledHits += sampleCount;
+            }
+            samplingRate = totalHits == 0 || sampledHits == 0 ? 1 : (double) sampledHits / totalHits;
+        }
+
+        @Override
+        public List<MatchingDocs> getMatchingDocs() {
+            return matchingDocs;
+        }
+    }
+}
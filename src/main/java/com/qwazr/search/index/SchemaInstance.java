@@ -38,7 +38,6 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -55,7 +54,7 @@ class SchemaInstance implements IndexInstance.Provider, Closeable {
     private final ReadWriteSemaphores readWriteSemaphores;
     private final ConstructorParametersImpl instanceFactory;
     private final IndexServiceInterface service;
-    private final ExecutorService executorService;
+    private final IndexExecutors executors;
     private final String schemaName;
     private final Path schemaDirectory;
     private final File settingsFile;
@@ -66,12 +65,12 @@ class SchemaInstance implements IndexInstance.Provider, Closeable {
 
     SchemaInstance(final ConstructorParametersImpl instanceFactory,
             final ConcurrentHashMap<String, AnalyzerFactory> analyzerFactoryMap, final IndexServiceInterface service,
-            final File schemaDirectory, final ExecutorService executorService) throws IOException {
+            final File schemaDirectory, final IndexExecutors executors) throws IOException {
 
         this.readWriteSemaphores = new ReadWriteSemaphores(null, null);
         this.instanceFactory = instanceFactory;
         this.analyzerFactoryMap = analyzerFactoryMap;
-        this.executorService = executorService;
+        this.executors = executors;
         this.service = service;
         this.schemaName = schemaDirectory.getName();
         this.schemaDirectory = schemaDirectory.toPath();
@@ -90,7 +89,7 @@ class SchemaInstance implements IndexInstance.Provider, Closeable {
             stream.filter(path -> Files.isDirectory(path))
                     .forEach(indexPath -> indexMap.put(indexPath.toFile().getName(),
                             new IndexInstanceManager(this, instanceFactory, analyzerFactoryMap, readWriteSemaphores,
-                                    executorService, service, indexPath)));
+                                    executors, service, indexPath)));
         }
     }
 
@@ -103,7 +102,7 @@ class SchemaInstance implements IndexInstance.Provider, Closeable {
         Objects.requireNonNull(settings, "The settings cannot be null");
         return indexMap.computeIfAbsent(indexName,
                 name -> new IndexInstanceManager(this, instanceFactory, analyzerFactoryMap, readWriteSemaphores,
-                        executorService, service, schemaDirectory.resolve(name))).createUpdate(settings);
+                        executors, service, schemaDirectory.resolve(name))).createUpdate(settings);
     }
 
     private IndexInstanceManager checkIndexExists(final String indexName,
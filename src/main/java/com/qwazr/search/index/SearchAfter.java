@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.util.BytesRef;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A paging cursor: the sort values (or the score) of the last returned document, and its doc id as tiebreaker.
+ * The next page starts after this document, without collecting the previous pages again.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SearchAfter {
+
+	final public Integer doc;
+	final public Float score;
+	final public List<Object> values;
+
+	@JsonCreator
+	public SearchAfter(@JsonProperty("doc") final Integer doc, @JsonProperty("score") final Float score,
+			@JsonProperty("values") final List<Object> values) {
+		this.doc = doc;
+		this.score = score;
+		this.values = values;
+	}
+
+	static SearchAfter of(final ScoreDoc scoreDoc) {
+		final Float score = Float.isNaN(scoreDoc.score) ? null : scoreDoc.score;
+		if (!(scoreDoc instanceof FieldDoc) || ((FieldDoc) scoreDoc).fields == null)
+			return new SearchAfter(scoreDoc.doc, score, null);
+		final Object[] fields = ((FieldDoc) scoreDoc).fields;
+		final List<Object> values = new ArrayList<>(fields.length);
+		for (final Object field : fields)
+			values.add(field instanceof BytesRef ? ((BytesRef) field).utf8ToString() : field);
+		return new SearchAfter(scoreDoc.doc, score, values);
+	}
+
+	/**
+	 * Build the Lucene cursor. The JSON values are converted to the type expected by each sort field.
+	 *
+	 * @param sort the sort of the query, or null for a sort by relevance
+	 * @return a FieldDoc if there is a sort, a ScoreDoc otherwise
+	 */
+	ScoreDoc toScoreDoc(final Sort sort) {
+		if (doc == null)
+			throw new IllegalArgumentException("The search_after cursor requires the doc");
+		if (sort == null) {
+			if (score == null)
+				throw new IllegalArgumentException("The search_after cursor requires the score");
+			return new ScoreDoc(doc, score);
+		}
+		final SortField[] sortFields = sort.getSort();
+		if (values == null || values.size() != sortFields.length)
+			throw new IllegalArgumentException(
+					"The search_after cursor requires one value per sort field: " + sortFields.length);
+		final Object[] fields = new Object[sortFields.length];
+		int i = 0;
+		for (final SortField sortField : sortFields) {
+			fields[i] = toSortValue(sortField, values.get(i));
+			i++;
+		}
+		return new FieldDoc(doc, score == null ? Float.NaN : score, fields);
+	}
+
+	private static Object toSortValue(final SortField sortField, final Object value) {
+		if (value == null)
+			return null;
+		final SortField.Type type = sortField instanceof SortedNumericSortField ?
+				((SortedNumericSortField) sortField).getNumericType() :
+				sortField.getType();
+		switch (type) {
+		case STRING:
+		case STRING_VAL:
+			return new BytesRef(value.toString());
+		case INT:
+		case DOC:
+			return toNumber(sortField, value).intValue();
+		case LONG:
+			return toNumber(sortField, value).longValue();
+		case FLOAT:
+		case SCORE:
+			return toNumber(sortField, value).floatValue();
+		case DOUBLE:
+			return toNumber(sortField, value).doubleValue();
+		default:
+			return value;
+		}
+	}
+
+	private static Number toNumber(final SortField sortField, final Object value) {
+		if (value instanceof Number)
+			return (Number) value;
+		try {
+			return Double.parseDouble(value.toString());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Wrong search_after value for the sort field " + sortField, e);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(doc, score, values);
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof SearchAfter))
+			return false;
+		if (o == this)
+			return true;
+		final SearchAfter s = (SearchAfter) o;
+		return Objects.equals(doc, s.doc) && Objects.equals(score, s.score) && Objects.equals(values, s.values);
+	}
+
+	@Override
+	public String toString() {
+		return "doc: " + doc + " - score: " + score + " - values: " + values;
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.server.ServerException;
+import com.qwazr.utils.LoggerUtils;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+
+import javax.ws.rs.core.Response;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The point-in-time leases of an index.
+ * <p>
+ * A lease holds a reference on a searcher: the queries targeting the lease see the same reader version,
+ * and the caches keyed on that reader (query cache, parsed queries, results) stay valid.
+ * Each use extends the lease by its TTL. The leases which are not used during their TTL are released
+ * by a timer. The number of active leases is bounded, as each one may hold a reader open.
+ */
+final class SearcherLeases implements Closeable {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(SearcherLeases.class);
+
+    final static long DEFAULT_TTL_MS = 60_000;
+    final static long MAX_TTL_MS = 3_600_000;
+    final static long REAP_INTERVAL_MS = 1000;
+
+    private final String indexName;
+    private final WriterAndSearcher writerAndSearcher;
+    private final int maxLeases;
+    private final ConcurrentHashMap<String, Lease> leases;
+    private final ScheduledFuture<?> reaper;
+    private final LongAdder acquiredCount;
+    private final LongAdder releasedCount;
+    private final LongAdder expiredCount;
+
+    SearcherLeases(final String indexName, final WriterAndSearcher writerAndSearcher,
+                   final ScheduledExecutorService scheduler, final Integer maxLeases) {
+        this.indexName = indexName;
+        this.writerAndSearcher = writerAndSearcher;
+        this.maxLeases = maxLeases == null ? IndexSettingsDefinition.DEFAULT_MAX_LEASES : maxLeases;
+        this.leases = new ConcurrentHashMap<>();
+        this.acquiredCount = new LongAdder();
+        this.releasedCount = new LongAdder();
+        this.expiredCount = new LongAdder();
+        this.reaper = scheduleReaper(scheduler);
+    }
+
+    private ScheduledFuture<?> scheduleReaper(final ScheduledExecutorService scheduler) {
+        try {
+            return scheduler.scheduleWithFixedDelay(this::reap, REAP_INTERVAL_MS, REAP_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The scheduler is shut down: the leases are still reaped by acquire
+            return null;
+        }
+    }
+
+    private static Long getVersion(final IndexReader indexReader) {
+        return indexReader instanceof DirectoryReader ? ((DirectoryReader) indexReader).getVersion() : null;
+    }
+
+    /**
+     * @throws ServerException (SERVICE_UNAVAILABLE) if the maximum number of leases is reached
+     */
+    LeaseDefinition acquire(final Long ttlMs) throws IOException {
+        reap();
+        final long ttl = ttlMs == null || ttlMs <= 0 ? DEFAULT_TTL_MS : Math.min(ttlMs, MAX_TTL_MS);
+        final Lease lease;
+        synchronized (this) {
+            if (leases.size() >= maxLeases)
+                throw new ServerException(Response.Status.SERVICE_UNAVAILABLE,
+                        "Too many leases: " + maxLeases + " - Index: " + indexName);
+            final WriterAndSearcher.Reference reference = writerAndSearcher.acquire();
+            lease = new Lease(UUID.randomUUID().toString(), reference, ttl,
+                    reference.search((indexSearcher, taxonomyReader) -> getVersion(indexSearcher.getIndexReader())));
+            leases.put(lease.id, lease);
+        }
+        acquiredCount.increment();
+        return new LeaseDefinition(lease.id, lease.ttlMs, lease.version);
+    }
+
+    /**
+     * Run the action with the searcher of the lease, and extend the lease.
+     *
+     * @throws ServerException (NOT_FOUND) if the lease does not exist or has expired
+     */
+    <T> T search(final String leaseId, final WriterAndSearcher.SearchAction<T> action) throws IOException {
+        try (final WriterAndSearcher.Reference reference = use(leaseId)) {
+            return reference.search(action);
+        }
+    }
+
+    /**
+     * Use the searcher of the lease until the returned reference is closed, and extend the lease.
+     *
+     * @throws ServerException (NOT_FOUND) if the lease does not exist or has expired
+     */
+    WriterAndSearcher.Reference use(final String leaseId) {
+        final Lease lease = leases.get(leaseId);
+        if (lease == null || !lease.use(System.currentTimeMillis())) {
+            // An expired lease may not be reaped yet
+            if (lease != null)
+                expire(leaseId, lease);
+            throw new ServerException(Response.Status.NOT_FOUND,
+                    "Lease not found or expired: " + leaseId + " - Index: " + indexName);
+        }
+        return new WriterAndSearcher.Reference() {
+
+            @Override
+            public <T> T search(final WriterAndSearcher.SearchAction<T> action) throws IOException {
+                return lease.reference.search(action);
+            }
+
+            @Override
+            public void close() {
+                lease.unuse();
+            }
+        };
+    }
+
+    boolean release(final String leaseId) {
+        final Lease lease = leases.remove(leaseId);
+        if (lease == null)
+            return false;
+        lease.release();
+        releasedCount.increment();
+        return true;
+    }
+
+    /**
+     * Release the expired leases. Does nothing if there is no lease.
+     */
+    private void reap() {
+        if (leases.isEmpty())
+            return;
+        final long now = System.currentTimeMillis();
+        leases.forEach((id, lease) -> {
+            if (lease.isExpired(now))
+                expire(id, lease);
+        });
+    }
+
+    private void expire(final String leaseId, final Lease lease) {
+        if (leases.remove(leaseId, lease)) {
+            lease.release();
+            expiredCount.increment();
+        }
+    }
+
+    IndexStatus.LeaseStats getStats() {
+        Long oldestVersion = null;
+        for (final Lease lease : leases.values())
+            if (lease.version != null && (oldestVersion == null || lease.version < oldestVersion))
+                oldestVersion = lease.version;
+        return new IndexStatus.LeaseStats(leases.size(), acquiredCount.sum(), releasedCount.sum(), expiredCount.sum(),
+                oldestVersion);
+    }
+
+    @Override
+    public void close() {
+        if (reaper != null)
+            reaper.cancel(false);
+        leases.forEach((id, lease) -> {
+            if (leases.remove(id, lease))
+                lease.release();
+        });
+    }
+
+    private final static class Lease {
+
+        private final String id;
+        private final WriterAndSearcher.Reference reference;
+        private final long ttlMs;
+        private final Long version;
+
+        private long expiration;
+        private int users;
+        private boolean released;
+
+        private Lease(final String id, final WriterAndSearcher.Reference reference, final long ttlMs,
+                      final Long version) {
+            this.id = id;
+            this.reference = reference;
+            this.ttlMs = ttlMs;
+            this.version = version;
+            this.expiration = System.currentTimeMillis() + ttlMs;
+        }
+
+        private synchronized boolean use(final long now) {
+            if (released || isExpired(now))
+                return false;
+            users++;
+            expiration = System.currentTimeMillis() + ttlMs;
+            return true;
+        }
+
+        private synchronized void unuse() {
+            users--;
+            expiration = System.currentTimeMillis() + ttlMs;
+            if (released && users == 0)
+                closeReference();
+        }
+
+        private synchronized boolean isExpired(final long now) {
+            return users == 0 && now > expiration;
+        }
+
+        /**
+         * The searcher is released now, or by the last running query
+         */
+        private synchronized void release() {
+            if (released)
+                return;
+            released = true;
+            if (users == 0)
+                closeReference();
+        }
+
+        private void closeReference() {
+            try {
+                reference.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, e, () -> "Cannot release the lease " + id);
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Facets whose values are counted by slices of segments, concurrently, then summed.
+ *
+ * @param <T> the type of the values (usually an array indexed by ordinal)
+ */
+abstract class SlicedFacets<T> extends Facets {
+
+    /**
+     * Below this number of hits, a new slice is not worth a task (and a new array of values)
+     */
+    final static int MIN_HITS_PER_SLICE = 50_000;
+
+    private final static int MAX_SLICES = Runtime.getRuntime().availableProcessors();
+
+    private final List<FutureTask<T>> tasks;
+
+    /**
+     * The number of matching documents
+     */
+    protected final long totalHits;
+
+    protected T values;
+
+    protected SlicedFacets(final FacetsCollector hits) {
+        long total = 0;
+        for (final FacetsCollector.MatchingDocs matchingDocs : hits.getMatchingDocs())
+            total += matchingDocs.totalHits;
+        totalHits = total;
+        tasks = new ArrayList<>();
+        for (final List<FacetsCollector.MatchingDocs> slice : slices(hits.getMatchingDocs()))
+            tasks.add(new FutureTask<>(() -> countSlice(slice)));
+    }
+
+    /**
+     * @return a new zeroed set of values
+     */
+    protected abstract T newValues();
+
+    /**
+     * Count the matching documents of one segment
+     */
+    protected abstract void count(final FacetsCollector.MatchingDocs hits, final T values) throws IOException;
+
+    /**
+     * Add the values of a slice to the values
+     */
+    protected abstract void merge(final T values, final T sliceValues);
+
+    /**
+     * Called once the values of every slice are merged
+     */
+    protected void reduced() throws IOException {
+    }
+
+    /**
+     * Give back the memory of values which are not used anymore
+     */
+    protected void release(final T values) {
+    }
+
+    /**
+     * Release the values. The facets must not be read anymore.
+     */
+    final void release() {
+        if (values == null)
+            return;
+        release(values);
+        values = null;
+    }
+
+    private T countSlice(final List<FacetsCollector.MatchingDocs> slice) throws IOException {
+        final T sliceValues = newValues();
+        for (final FacetsCollector.MatchingDocs hits : slice)
+            count(hits, sliceValues);
+        return sliceValues;
+    }
+
+    private void reduce() throws IOException, InterruptedException, ExecutionException {
+        if (tasks.isEmpty()) {
+            values = newValues();
+        } else {
+            values = tasks.get(0).get();
+            for (int i = 1; i < tasks.size(); i++) {
+                final T sliceValues = tasks.get(i).get();
+                merge(values, sliceValues);
+                release(sliceValues);
+            }
+        }
+        reduced();
+    }
+
+    /**
+     * Groups the segments having hits in slices of similar number of hits.
+     */
+    static List<List<FacetsCollector.MatchingDocs>> slices(final List<FacetsCollector.MatchingDocs> matchingDocs) {
+        final List<FacetsCollector.MatchingDocs> leaves = new ArrayList<>(matchingDocs.size());
+        long totalHits = 0;
+        for (final FacetsCollector.MatchingDocs hits : matchingDocs) {
+            if (hits.totalHits == 0)
+                continue;
+            leaves.add(hits);
+            totalHits += hits.totalHits;
+        }
+        final int sliceCount = (int) Math.max(1, Math.min(Math.min(MAX_SLICES, leaves.size()),
+                totalHits / MIN_HITS_PER_SLICE));
+        final List<List<FacetsCollector.MatchingDocs>> slices = new ArrayList<>(sliceCount);
+        if (leaves.isEmpty())
+            return slices;
+        if (sliceCount == 1) {
+            slices.add(leaves);
+            return slices;
+        }
+        // The biggest segments first, each one in the slice having the fewest hits
+        leaves.sort((hits1, hits2) -> Integer.compare(hits2.totalHits, hits1.totalHits));
+        final long[] sliceHits = new long[sliceCount];
+        for (int i = 0; i < sliceCount; i++)
+            slices.add(new ArrayList<>());
+        for (final FacetsCollector.MatchingDocs hits : leaves) {
+            int smallest = 0;
+            for (int i = 1; i < sliceCount; i++)
+                if (sliceHits[i] < sliceHits[smallest])
+                    smallest = i;
+            slices.get(smallest).add(hits);
+            sliceHits[smallest] += hits.totalHits;
+        }
+        return slices;
+    }
+
+    /**
+     * Count all the slices of all the facets at once.
+     * The slices are submitted to the executor, and the calling thread also counts the slices
+     * which are not started yet. No task waits for another one, and the count progresses
+     * even when the executor is busy.
+     *
+     * @param executorService the executor of the searches, or null to count in the calling thread
+     * @param facetsList      the facets to count
+     * @throws IOException if the doc values cannot be read
+     */
+    static void count(final ExecutorService executorService, final Collection<SlicedFacets<?>> facetsList)
+            throws IOException {
+        final List<FutureTask<?>> allTasks = new ArrayList<>();
+        for (final SlicedFacets<?> facets : facetsList)
+            allTasks.addAll(facets.tasks);
+        if (executorService != null && allTasks.size() > 1) {
+            try {
+                for (int i = 1; i < allTasks.size(); i++)
+                    executorService.execute(allTasks.get(i));
+            } catch (RejectedExecutionException e) {
+                // The remaining slices are counted by the calling thread
+            }
+        }
+        for (final FutureTask<?> task : allTasks)
+            task.run();
+        try {
+            for (final SlicedFacets<?> facets : facetsList)
+                facets.reduce();
+        } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.TopOrdAndIntQueue;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The counts of the SortedSetDocValuesFacetField dimensions, by global ordinal.
+ * Same results as Lucene's SortedSetDocValuesFacetCounts, but the segments are counted by concurrent slices,
+ * into counts borrowed from the pool of the searcher.
+ */
+final class SortedSetFacetCounts extends SlicedFacets<OrdinalCounts> {
+
+    private final SortedSetDocValuesReaderState state;
+    private final String field;
+    private final MultiDocValues.OrdinalMap ordinalMap;
+    private final OrdinalCountsPool countsPool;
+
+    SortedSetFacetCounts(final SortedSetDocValuesReaderState state, final OrdinalCountsPool countsPool,
+                         final FacetsCollector hits) throws IOException {
+        super(hits);
+        this.state = state;
+        this.countsPool = countsPool;
+        this.field = state.getField();
+        final SortedSetDocValues docValues = state.getDocValues();
+        this.ordinalMap = docValues instanceof MultiDocValues.MultiSortedSetDocValues ?
+                ((MultiDocValues.MultiSortedSetDocValues) docValues).mapping :
+                null;
+        final IndexReader origReader = state.getOrigReader();
+        for (final FacetsCollector.MatchingDocs matchingDocs : hits.getMatchingDocs())
+            if (ReaderUtil.getTopLevelContext(matchingDocs.context).reader() != origReader)
+                throw new IllegalStateException(
+                        "The facets state does not match the reader being searched - Field: " + field);
+    }
+
+    @Override
+    protected OrdinalCounts newValues() {
+        return countsPool.newCounts(state.getSize(), totalHits);
+    }
+
+    /**
+     * Each thread reads its own doc values of the segment.
+     * Like Lucene, when the hits are numerous, the segment ordinals are counted first, then mapped
+     * to the global ordinals.
+     */
+    @Override
+    protected void count(final FacetsCollector.MatchingDocs hits, final OrdinalCounts counts) throws IOException {
+        final SortedSetDocValues segValues = hits.context.reader().getSortedSetDocValues(field);
+        if (segValues == null)
+            return;
+        final DocIdSetIterator docs = hits.bits.iterator();
+        if (docs == null)
+            return;
+        int doc;
+        if (ordinalMap == null) {
+            while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                segValues.setDocument(doc);
+                long ord;
+                while ((ord = segValues.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS)
+                    counts.increment((int) ord);
+            }
+            return;
+        }
+        final LongValues globalOrds = ordinalMap.getGlobalOrds(hits.context.ord);
+        final int numSegOrds = (int) segValues.getValueCount();
+        if (counts.isSparse() || hits.totalHits < numSegOrds / 10) {
+            while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                segValues.setDocument(doc);
+                long ord;
+                while ((ord = segValues.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS)
+                    counts.increment((int) globalOrds.get(ord));
+            }
+            return;
+        }
+        final int[] segCounts = countsPool.acquire(numSegOrds);
+        try {
+            while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                segValues.setDocument(doc);
+                long ord;
+                while ((ord = segValues.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS)
+                    segCounts[(int) ord]++;
+            }
+            for (int ord = 0; ord < numSegOrds; ord++) {
+                final int count = segCounts[ord];
+                if (count != 0)
+                    counts.add((int) globalOrds.get(ord), count);
+            }
+        } finally {
+            countsPool.release(segCounts);
+        }
+    }
+
+    @Override
+    protected void merge(final OrdinalCounts counts, final OrdinalCounts sliceCounts) {
+        counts.merge(sliceCounts);
+    }
+
+    @Override
+    protected void release(final OrdinalCounts counts) {
+        counts.release();
+    }
+
+    @Override
+    public FacetResult getTopChildren(final int topN, final String dim, final String... path) throws IOException {
+        if (topN <= 0)
+            throw new IllegalArgumentException("topN must be > 0 (got: " + topN + ")");
+        if (path.length > 0)
+            throw new IllegalArgumentException("path should be 0 length");
+        final SortedSetDocValuesReaderState.OrdRange ordRange = state.getOrdRange(dim);
+        if (ordRange == null)
+            throw new IllegalArgumentException("dimension \"" + dim + "\" was not indexed");
+        return getDim(dim, ordRange, topN);
+    }
+
+    private FacetResult getDim(final String dim, final SortedSetDocValuesReaderState.OrdRange ordRange,
+                               final int topN) throws IOException {
+        final OrdinalCounts.Top top = new OrdinalCounts.Top(topN);
+        // Like Lucene, the ordinals of the dimension are visited in ascending order
+        if (values.isSparse()) {
+            for (final int ord : values.sortedOrds(ord -> ord >= ordRange.start && ord <= ordRange.end))
+                top.accept(ord, values.get(ord));
+        } else {
+            for (int ord = ordRange.start; ord <= ordRange.end; ord++)
+                top.accept(ord, values.get(ord));
+        }
+        final TopOrdAndIntQueue queue = top.queue();
+        if (queue == null)
+            return null;
+        // The doc values are not thread safe, each call reads its own
+        final SortedSetDocValues docValues = state.getDocValues();
+        final LabelAndValue[] labelValues = new LabelAndValue[queue.size()];
+        for (int i = labelValues.length - 1; i >= 0; i--) {
+            final TopOrdAndIntQueue.OrdAndValue ordAndValue = queue.pop();
+            final BytesRef term = docValues.lookupOrd(ordAndValue.ord);
+            final String[] parts = FacetsConfig.stringToPath(term.utf8ToString());
+            labelValues[i] = new LabelAndValue(parts[1], ordAndValue.value);
+        }
+        return new FacetResult(dim, new String[0], top.totalCount, labelValues, top.childCount);
+    }
+
+    @Override
+    public Number getSpecificValue(final String dim, final String... path) throws IOException {
+        if (path.length != 1)
+            throw new IllegalArgumentException("path must be length=1");
+        final int ord = (int) state.getDocValues().lookupTerm(new BytesRef(FacetsConfig.pathToString(dim, path)));
+        return ord < 0 ? -1 : values.get(ord);
+    }
+
+    @Override
+    public List<FacetResult> getAllDims(final int topN) throws IOException {
+        final List<FacetResult> results = new ArrayList<>();
+        for (final Map.Entry<String, SortedSetDocValuesReaderState.OrdRange> entry : state.getPrefixToOrdRange()
+                .entrySet()) {
+            final FacetResult result = getDim(entry.getKey(), entry.getValue(), topN);
+            if (result != null)
+                results.add(result);
+        }
+        results.sort((result1, result2) -> {
+            final int cmp = Integer.compare(result2.value.intValue(), result1.value.intValue());
+            return cmp != 0 ? cmp : result1.dim.compareTo(result2.dim);
+        });
+        return results;
+    }
+}
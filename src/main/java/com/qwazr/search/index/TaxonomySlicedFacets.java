@@ -0,0 +1,366 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.search.field.FieldDefinition;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.TopOrdAndFloatQueue;
+import org.apache.lucene.facet.TopOrdAndIntQueue;
+import org.apache.lucene.facet.taxonomy.FacetLabel;
+import org.apache.lucene.facet.taxonomy.ParallelTaxonomyArrays;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The values of the taxonomy dimensions, by taxonomy ordinal.
+ * Same results as Lucene's FastTaxonomyFacetCounts and TaxonomyFacetSum*Associations,
+ * but the segments are counted by concurrent slices.
+ */
+abstract class TaxonomySlicedFacets<T> extends SlicedFacets<T> {
+
+    protected final String indexFieldName;
+    protected final TaxonomyReader taxoReader;
+    protected final FacetsConfig config;
+    protected final int size;
+    protected final int[] children;
+    protected final int[] siblings;
+    protected final int[] parents;
+
+    private TaxonomySlicedFacets(final String indexFieldName, final TaxonomyReader taxoReader,
+                                 final FacetsConfig config, final FacetsCollector hits) throws IOException {
+        super(hits);
+        this.indexFieldName = indexFieldName;
+        this.taxoReader = taxoReader;
+        this.config = config;
+        this.size = taxoReader.getSize();
+        final ParallelTaxonomyArrays arrays = taxoReader.getParallelTaxonomyArrays();
+        this.children = arrays.children();
+        this.siblings = arrays.siblings();
+        this.parents = arrays.parents();
+    }
+
+    /**
+     * Count or sum the ordinals stored in the binary doc values of the segment
+     */
+    @Override
+    protected void count(final FacetsCollector.MatchingDocs hits, final T values) throws IOException {
+        final BinaryDocValues docValues = hits.context.reader().getBinaryDocValues(indexFieldName);
+        if (docValues == null)
+            return;
+        final DocIdSetIterator docs = hits.bits.iterator();
+        if (docs == null)
+            return;
+        int doc;
+        while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS)
+            decode(docValues.get(doc), values);
+    }
+
+    protected abstract void decode(final BytesRef bytesRef, final T values);
+
+    protected FacetsConfig.DimConfig verifyDim(final String dim) {
+        final FacetsConfig.DimConfig dimConfig = config.getDimConfig(dim);
+        if (!dimConfig.indexFieldName.equals(indexFieldName))
+            throw new IllegalArgumentException(
+                    "dimension \"" + dim + "\" was not indexed into field \"" + indexFieldName + "\"");
+        return dimConfig;
+    }
+
+    @Override
+    public List<FacetResult> getAllDims(final int topN) throws IOException {
+        final List<FacetResult> results = new ArrayList<>();
+        int ord = children[TaxonomyReader.ROOT_ORDINAL];
+        while (ord != TaxonomyReader.INVALID_ORDINAL) {
+            final String dim = taxoReader.getPath(ord).components[0];
+            if (config.getDimConfig(dim).indexFieldName.equals(indexFieldName)) {
+                final FacetResult result = getTopChildren(topN, dim);
+                if (result != null)
+                    results.add(result);
+            }
+            ord = siblings[ord];
+        }
+        results.sort((result1, result2) -> {
+            final int cmp = Double.compare(result2.value.doubleValue(), result1.value.doubleValue());
+            return cmp != 0 ? cmp : result1.dim.compareTo(result2.dim);
+        });
+        return results;
+    }
+
+    private static int readInt(final byte[] bytes, final int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) |
+                ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    /**
+     * The int values are counted in counts borrowed from the pool of the searcher
+     */
+    static abstract class IntValues extends TaxonomySlicedFacets<OrdinalCounts> {
+
+        private final OrdinalCountsPool countsPool;
+
+        private IntValues(final String indexFieldName, final TaxonomyReader taxoReader, final FacetsConfig config,
+                          final OrdinalCountsPool countsPool, final FacetsCollector hits) throws IOException {
+            super(indexFieldName, taxoReader, config, hits);
+            this.countsPool = countsPool;
+        }
+
+        @Override
+        protected OrdinalCounts newValues() {
+            return countsPool.newCounts(size, totalHits);
+        }
+
+        @Override
+        protected void merge(final OrdinalCounts values, final OrdinalCounts sliceValues) {
+            values.merge(sliceValues);
+        }
+
+        @Override
+        protected void release(final OrdinalCounts values) {
+            values.release();
+        }
+
+        /**
+         * The values of the hierarchical dimensions are summed up to their root
+         */
+        protected void rollup() throws IOException {
+            for (final Map.Entry<String, FacetsConfig.DimConfig> entry : config.getDimConfigs().entrySet()) {
+                final FacetsConfig.DimConfig dimConfig = entry.getValue();
+                if (!dimConfig.hierarchical || dimConfig.multiValued ||
+                        !indexFieldName.equals(dimConfig.indexFieldName))
+                    continue;
+                final int dimRootOrd = taxoReader.getOrdinal(new FacetLabel(entry.getKey()));
+                if (dimRootOrd > 0)
+                    add(dimRootOrd, rollup(children[dimRootOrd]));
+            }
+        }
+
+        private int rollup(int ord) {
+            int sum = 0;
+            while (ord != TaxonomyReader.INVALID_ORDINAL) {
+                final int childrenValue = rollup(children[ord]);
+                add(ord, childrenValue);
+                sum += values.get(ord);
+                ord = siblings[ord];
+            }
+            return sum;
+        }
+
+        /**
+         * The zeros are not added, the sparse counts keep only the counted ordinals
+         */
+        private void add(final int ord, final int value) {
+            if (value != 0)
+                values.add(ord, value);
+        }
+
+        @Override
+        public Number getSpecificValue(final String dim, final String... path) throws IOException {
+            final FacetsConfig.DimConfig dimConfig = verifyDim(dim);
+            if (path.length == 0 && !(dimConfig.hierarchical && !dimConfig.multiValued) &&
+                    !(dimConfig.requireDimCount && dimConfig.multiValued))
+                throw new IllegalArgumentException(
+                        "cannot return dimension-level value alone; use getTopChildren instead");
+            final int ord = taxoReader.getOrdinal(new FacetLabel(dim, path));
+            return ord < 0 ? -1 : values.get(ord);
+        }
+
+        @Override
+        public FacetResult getTopChildren(final int topN, final String dim, final String... path)
+                throws IOException {
+            if (topN <= 0)
+                throw new IllegalArgumentException("topN must be > 0 (got: " + topN + ")");
+            final FacetsConfig.DimConfig dimConfig = verifyDim(dim);
+            final FacetLabel facetLabel = new FacetLabel(dim, path);
+            final int dimOrd = taxoReader.getOrdinal(facetLabel);
+            if (dimOrd == -1)
+                return null;
+            final OrdinalCounts.Top top = new OrdinalCounts.Top(Math.min(size, topN));
+            // Like Lucene, the children are visited in the order of the siblings: descending ordinals
+            if (values.isSparse()) {
+                final int[] ords = values.sortedOrds(ord -> parents[ord] == dimOrd);
+                for (int i = ords.length - 1; i >= 0; i--)
+                    top.accept(ords[i], values.get(ords[i]));
+            } else {
+                int ord = children[dimOrd];
+                while (ord != TaxonomyReader.INVALID_ORDINAL) {
+                    top.accept(ord, values.get(ord));
+                    ord = siblings[ord];
+                }
+            }
+            final TopOrdAndIntQueue queue = top.queue();
+            if (queue == null)
+                return null;
+            final int totValue =
+                    dimConfig.multiValued ? dimConfig.requireDimCount ? values.get(dimOrd) : -1 : top.totalCount;
+            final LabelAndValue[] labelValues = new LabelAndValue[queue.size()];
+            for (int i = labelValues.length - 1; i >= 0; i--) {
+                final TopOrdAndIntQueue.OrdAndValue ordAndValue = queue.pop();
+                final FacetLabel child = taxoReader.getPath(ordAndValue.ord);
+                labelValues[i] = new LabelAndValue(child.components[facetLabel.length], ordAndValue.value);
+            }
+            return new FacetResult(dim, path, totValue, labelValues, top.childCount);
+        }
+    }
+
+    /**
+     * The counts of the FacetField dimensions (the ordinals are delta and vInt encoded)
+     */
+    static final class Counts extends IntValues {
+
+        Counts(final TaxonomyReader taxoReader, final FacetsConfig config, final OrdinalCountsPool countsPool,
+               final FacetsCollector hits) throws IOException {
+            super(FieldDefinition.TAXONOMY_FACET_FIELD, taxoReader, config, countsPool, hits);
+        }
+
+        @Override
+        protected void decode(final BytesRef bytesRef, final OrdinalCounts values) {
+            final byte[] bytes = bytesRef.bytes;
+            final int end = bytesRef.offset + bytesRef.length;
+            int offset = bytesRef.offset;
+            int ord = 0;
+            int prev = 0;
+            while (offset < end) {
+                final byte b = bytes[offset++];
+                if (b >= 0) {
+                    prev = ord = ((ord << 7) | b) + prev;
+                    values.increment(ord);
+                    ord = 0;
+                } else
+                    ord = (ord << 7) | (b & 0x7F);
+            }
+        }
+
+        @Override
+        protected void reduced() throws IOException {
+            rollup();
+        }
+    }
+
+    /**
+     * The sums of the IntAssociationFacetField dimensions (pairs of ordinal and value)
+     */
+    static final class IntAssociations extends IntValues {
+
+        IntAssociations(final TaxonomyReader taxoReader, final FacetsConfig config,
+                        final OrdinalCountsPool countsPool, final FacetsCollector hits) throws IOException {
+            super(FieldDefinition.TAXONOMY_INT_ASSOC_FACET_FIELD, taxoReader, config, countsPool, hits);
+        }
+
+        @Override
+        protected void decode(final BytesRef bytesRef, final OrdinalCounts values) {
+            final byte[] bytes = bytesRef.bytes;
+            final int end = bytesRef.offset + bytesRef.length;
+            for (int offset = bytesRef.offset; offset < end; offset += 8)
+                values.add(readInt(bytes, offset), readInt(bytes, offset + 4));
+        }
+    }
+
+    /**
+     * The sums of the FloatAssociationFacetField dimensions (pairs of ordinal and value)
+     */
+    static final class FloatAssociations extends TaxonomySlicedFacets<float[]> {
+
+        FloatAssociations(final TaxonomyReader taxoReader, final FacetsConfig config, final FacetsCollector hits)
+                throws IOException {
+            super(FieldDefinition.TAXONOMY_FLOAT_ASSOC_FACET_FIELD, taxoReader, config, hits);
+        }
+
+        @Override
+        protected float[] newValues() {
+            return new float[size];
+        }
+
+        @Override
+        protected void merge(final float[] values, final float[] sliceValues) {
+            for (int ord = 0; ord < values.length; ord++)
+                values[ord] += sliceValues[ord];
+        }
+
+        @Override
+        protected void decode(final BytesRef bytesRef, final float[] values) {
+            final byte[] bytes = bytesRef.bytes;
+            final int end = bytesRef.offset + bytesRef.length;
+            for (int offset = bytesRef.offset; offset < end; offset += 8)
+                values[readInt(bytes, offset)] += Float.intBitsToFloat(readInt(bytes, offset + 4));
+        }
+
+        @Override
+        public Number getSpecificValue(final String dim, final String... path) throws IOException {
+            final FacetsConfig.DimConfig dimConfig = verifyDim(dim);
+            if (path.length == 0 && !(dimConfig.hierarchical && !dimConfig.multiValued) &&
+                    !(dimConfig.requireDimCount && dimConfig.multiValued))
+                throw new IllegalArgumentException(
+                        "cannot return dimension-level value alone; use getTopChildren instead");
+            final int ord = taxoReader.getOrdinal(new FacetLabel(dim, path));
+            return ord < 0 ? -1 : values[ord];
+        }
+
+        @Override
+        public FacetResult getTopChildren(final int topN, final String dim, final String... path)
+                throws IOException {
+            if (topN <= 0)
+                throw new IllegalArgumentException("topN must be > 0 (got: " + topN + ")");
+            final FacetsConfig.DimConfig dimConfig = verifyDim(dim);
+            final FacetLabel facetLabel = new FacetLabel(dim, path);
+            final int dimOrd = taxoReader.getOrdinal(facetLabel);
+            if (dimOrd == -1)
+                return null;
+            final TopOrdAndFloatQueue queue = new TopOrdAndFloatQueue(Math.min(size, topN));
+            float bottomValue = 0;
+            float sumValues = 0;
+            int childCount = 0;
+            TopOrdAndFloatQueue.OrdAndValue reuse = null;
+            int ord = children[dimOrd];
+            while (ord != TaxonomyReader.INVALID_ORDINAL) {
+                final float value = values[ord];
+                if (value > 0) {
+                    sumValues += value;
+                    childCount++;
+                    if (value > bottomValue) {
+                        if (reuse == null)
+                            reuse = new TopOrdAndFloatQueue.OrdAndValue();
+                        reuse.ord = ord;
+                        reuse.value = value;
+                        reuse = queue.insertWithOverflow(reuse);
+                        if (queue.size() == topN)
+                            bottomValue = queue.top().value;
+                    }
+                }
+                ord = siblings[ord];
+            }
+            if (sumValues == 0)
+                return null;
+            if (dimConfig.multiValued)
+                sumValues = dimConfig.requireDimCount ? values[dimOrd] : -1;
+            final LabelAndValue[] labelValues = new LabelAndValue[queue.size()];
+            for (int i = labelValues.length - 1; i >= 0; i--) {
+                final TopOrdAndFloatQueue.OrdAndValue ordAndValue = queue.pop();
+                final FacetLabel child = taxoReader.getPath(ordAndValue.ord);
+                labelValues[i] = new LabelAndValue(child.components[facetLabel.length], ordAndValue.value);
+            }
+            return new FacetResult(dim, path, sumValues, labelValues, childCount);
+        }
+    }
+}
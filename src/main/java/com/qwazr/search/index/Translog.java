@@ -0,0 +1,354 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.qwazr.utils.LoggerUtils;
+import com.qwazr.utils.ObjectMappers;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.utils.concurrent.ConsumerEx;
+import org.apache.lucene.index.IndexWriter;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only and checksummed log of the write operations applied to an index.
+ * <p>
+ * An operation is logged once it has been applied to the IndexWriter, and it is acknowledged once the log has been
+ * synced. The operations on the same document are applied and logged in the same order: the replay gives the same
+ * final document. Each Lucene commit starts a new generation of the log, the generation is stored in the commit user data,
+ * and the older generations are deleted. On open, the generations which are not covered by the last commit are
+ * replayed.
+ */
+final class Translog implements Closeable {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(Translog.class);
+
+    final static String GENERATION_KEY = "qwazr.translog.generation";
+
+    private final static String FILE_PREFIX = "translog-";
+    private final static String FILE_SUFFIX = ".tlog";
+
+    /**
+     * The number of locks shared by the document ids. A long is used as the set of the locks of an operation.
+     */
+    private final static int ID_LOCKS = Long.SIZE;
+
+    private final Path directory;
+    private final long commitIntervalMs;
+    private final TreeMap<Long, Path> pendingGenerations;
+
+    private final ReentrantReadWriteLock rwl;
+    private final ReentrantLock[] idLocks;
+    private final Object syncLock;
+
+    private volatile long generation;
+    private volatile FileChannel channel;
+    private volatile long writtenBytes;
+    private long syncedBytes;
+    private volatile long committedBytes;
+    private volatile long lastCommit;
+
+    private Translog(final Path directory, final long commitIntervalMs, final long committedGeneration)
+            throws IOException {
+        this.directory = directory;
+        this.commitIntervalMs = commitIntervalMs;
+        this.pendingGenerations = new TreeMap<>();
+        this.rwl = new ReentrantReadWriteLock(true);
+        this.idLocks = new ReentrantLock[ID_LOCKS];
+        for (int i = 0; i < ID_LOCKS; i++)
+            idLocks[i] = new ReentrantLock();
+        this.syncLock = new Object();
+        long maxGeneration = committedGeneration - 1;
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                FILE_PREFIX + '*' + FILE_SUFFIX)) {
+            for (final Path file : files) {
+                final long gen = getGeneration(file);
+                if (gen < committedGeneration)
+                    Files.deleteIfExists(file);
+                else
+                    pendingGenerations.put(gen, file);
+                maxGeneration = Math.max(maxGeneration, gen);
+            }
+        }
+        this.generation = maxGeneration + 1;
+        this.channel = openChannel(generation);
+        this.writtenBytes = 0;
+        this.syncedBytes = 0;
+        this.committedBytes = 0;
+        this.lastCommit = System.currentTimeMillis();
+    }
+
+    /**
+     * Open the log of an index. The generation already committed is read from the last commit user data.
+     */
+    static Translog open(final Path directory, final IndexWriter indexWriter, final long commitIntervalMs)
+            throws IOException {
+        if (!Files.exists(directory))
+            Files.createDirectory(directory);
+        long committedGeneration = 0;
+        final Iterable<Map.Entry<String, String>> commitData = indexWriter.getLiveCommitData();
+        if (commitData != null)
+            for (final Map.Entry<String, String> entry : commitData)
+                if (GENERATION_KEY.equals(entry.getKey()))
+                    committedGeneration = Long.parseLong(entry.getValue());
+        return new Translog(directory, commitIntervalMs, committedGeneration);
+    }
+
+    private static long getGeneration(final Path file) {
+        final String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+    }
+
+    private Path getPath(final long gen) {
+        return directory.resolve(FILE_PREFIX + gen + FILE_SUFFIX);
+    }
+
+    private FileChannel openChannel(final long gen) throws IOException {
+        return FileChannel.open(getPath(gen), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Replay the operations which are not covered by the last commit.
+     * A truncated or corrupted entry ends the replay of its generation: it has never been acknowledged.
+     *
+     * @return the number of replayed operations
+     */
+    int replay(final ConsumerEx<Operation, IOException> consumer) throws IOException {
+        int count = 0;
+        for (final Path file : pendingGenerations.values()) {
+            try (final InputStream input = Files.newInputStream(file);
+                 final DataInputStream dataInput = new DataInputStream(new BufferedInputStream(input))) {
+                for (; ; ) {
+                    final Operation operation = readEntry(dataInput, file);
+                    if (operation == null)
+                        break;
+                    consumer.accept(operation);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static Operation readEntry(final DataInputStream input, final Path file) throws IOException {
+        final int length;
+        final long checksum;
+        final byte[] payload;
+        try {
+            length = input.readInt();
+            checksum = input.readLong();
+            if (length < 0)
+                throw new EOFException();
+            payload = new byte[length];
+            input.readFully(payload);
+        } catch (EOFException e) {
+            return null;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        if (crc.getValue() != checksum) {
+            LOGGER.warning(() -> "Corrupted translog entry ignored: " + file);
+            return null;
+        }
+        return ObjectMappers.SMILE.readValue(payload, Operation.class);
+    }
+
+    /**
+     * Apply an operation and log it. Must be called while the write semaphore is held.
+     * The concurrent writers are only serialized when they share a document id (or a lock of the ids),
+     * so that the order of the log is the order applied by the IndexWriter.
+     *
+     * @return the number of documents written by the action
+     */
+    int apply(final Operation operation, final IndexServiceInterface.WriteActions<Integer> action,
+            final WriteContext context) throws IOException {
+        final long locks = operation.getIdLocks();
+        rwl.readLock().lock();
+        try {
+            // Always acquired in the same order
+            for (int i = 0; i < ID_LOCKS; i++)
+                if ((locks & (1L << i)) != 0)
+                    idLocks[i].lock();
+            try {
+                final int results = action.apply(context);
+                if (results > 0)
+                    append(operation);
+                return results;
+            } finally {
+                for (int i = ID_LOCKS - 1; i >= 0; i--)
+                    if ((locks & (1L << i)) != 0)
+                        idLocks[i].unlock();
+            }
+        } finally {
+            rwl.readLock().unlock();
+        }
+    }
+
+    private synchronized void append(final Operation operation) throws IOException {
+        final byte[] payload = ObjectMappers.SMILE.writeValueAsBytes(operation);
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putLong(crc.getValue());
+        buffer.put(payload);
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        writtenBytes += Integer.BYTES + Long.BYTES + payload.length;
+    }
+
+    /**
+     * Make the operations already logged durable. Concurrent callers share the same fsync.
+     */
+    void sync() throws IOException {
+        final long target = writtenBytes;
+        synchronized (syncLock) {
+            if (syncedBytes >= target)
+                return;
+            final long written = writtenBytes;
+            channel.force(false);
+            syncedBytes = written;
+        }
+    }
+
+    long getCommitIntervalMs() {
+        return commitIntervalMs;
+    }
+
+    /**
+     * @return true if operations have been logged since the last commit, and the commit interval has elapsed
+     */
+    boolean isCommitDue() {
+        return writtenBytes > committedBytes && System.currentTimeMillis() - lastCommit >= commitIntervalMs;
+    }
+
+    /**
+     * Commit the index and start a new generation. The writers are blocked during the commit,
+     * every operation of the previous generations is then covered by the commit.
+     */
+    void commit(final WriterAndSearcher writerAndSearcher) throws IOException {
+        rwl.writeLock().lock();
+        try {
+            final long newGeneration = roll();
+            final IndexWriter indexWriter = writerAndSearcher.getIndexWriter();
+            final Map<String, String> commitData = new HashMap<>();
+            final Iterable<Map.Entry<String, String>> liveCommitData = indexWriter.getLiveCommitData();
+            if (liveCommitData != null)
+                liveCommitData.forEach(entry -> commitData.put(entry.getKey(), entry.getValue()));
+            commitData.put(GENERATION_KEY, Long.toString(newGeneration));
+            indexWriter.setLiveCommitData(commitData.entrySet());
+            writerAndSearcher.commit();
+            for (final Path file : pendingGenerations.values())
+                Files.deleteIfExists(file);
+            pendingGenerations.clear();
+            lastCommit = System.currentTimeMillis();
+        } finally {
+            rwl.writeLock().unlock();
+        }
+    }
+
+    private long roll() throws IOException {
+        synchronized (syncLock) {
+            channel.force(false);
+            channel.close();
+            pendingGenerations.put(generation, getPath(generation));
+            generation++;
+            channel = openChannel(generation);
+            syncedBytes = writtenBytes;
+            committedBytes = writtenBytes;
+            return generation;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            channel.close();
+        }
+    }
+
+    final static class Operation {
+
+        enum Type {
+            POST, UPDATE_DOC_VALUES
+        }
+
+        @JsonProperty("type")
+        final Type type;
+
+        @JsonProperty("update")
+        final Boolean update;
+
+        @JsonProperty("documents")
+        final List<Map<String, Object>> documents;
+
+        @JsonCreator
+        Operation(@JsonProperty("type") final Type type, @JsonProperty("update") final Boolean update,
+                @JsonProperty("documents") final List<Map<String, Object>> documents) {
+            this.type = type;
+            this.update = update;
+            this.documents = documents;
+        }
+
+        static Operation post(final List<Map<String, Object>> documents, final Boolean update) {
+            return new Operation(Type.POST, update == null ? true : update, documents);
+        }
+
+        static Operation updateDocValues(final List<Map<String, Object>> documents) {
+            return new Operation(Type.UPDATE_DOC_VALUES, null, documents);
+        }
+
+        /**
+         * @return the set of the locks of the document ids, as a bit set
+         */
+        long getIdLocks() {
+            if (documents == null)
+                return 0;
+            long locks = 0;
+            for (final Map<String, Object> document : documents) {
+                final Object id = document == null ? null : document.get(FieldDefinition.ID_FIELD);
+                if (id != null)
+                    locks |= 1L << ((Objects.toString(id).hashCode() & Integer.MAX_VALUE) % ID_LOCKS);
+            }
+            return locks;
+        }
+    }
+}
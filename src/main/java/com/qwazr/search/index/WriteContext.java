@@ -21,6 +21,7 @@ import org.apache.lucene.index.IndexWriter;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
 
 public interface WriteContext extends IndexContext {
@@ -45,6 +46,9 @@ public interface WriteContext extends IndexContext {
 
 	int postMappedDocuments(final PostDefinition.Documents post) throws IOException;
 
+	int postMappedDocumentsStream(final Iterator<? extends Map<String, ?>> documents, final boolean update,
+			final int workers) throws IOException;
+
 	<T> int updateDocValues(final Map<String, Field> fields, final T document, final Map<String, String> commitUserData)
 			throws IOException;
 
@@ -24,6 +24,7 @@ import org.apache.lucene.index.IndexWriter;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
@@ -131,6 +132,15 @@ final class WriteContextImpl extends IndexContextImpl implements WriteContext {
 		return postMappedDocs(poster, post);
 	}
 
+	@Override
+	public final int postMappedDocumentsStream(final Iterator<? extends Map<String, ?>> documents,
+			final boolean update, final int workers) throws IOException {
+		if (documents == null)
+			return 0;
+		return new ParallelRecordsPoster(executorService,
+				() -> RecordsPoster.create(fieldMap, indexWriter, taxonomyWriter, update), workers).post(documents);
+	}
+
 	@Override
 	public final <T> int updateDocValues(final Map<String, Field> fields, final T document,
 			final Map<String, String> commitUserData) throws IOException {
@@ -18,22 +18,50 @@ package com.qwazr.search.index;
 import com.qwazr.utils.IOUtils;
 import org.apache.lucene.facet.taxonomy.SearcherTaxonomyManager;
 import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ReferenceManager;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Objects;
 
 interface WriterAndSearcher extends Closeable {
 
 	void refresh() throws IOException;
 
+	void refreshBlocking() throws IOException;
+
+	/**
+	 * Wait until every operation already completed by the IndexWriter is visible to the searchers.
+	 * When a reopen thread is running, concurrent callers share the same reopen.
+	 *
+	 * @throws IOException if any I/O error occurs
+	 */
+	void waitForVisibility() throws IOException;
+
+	/**
+	 * @return true if the current searcher already sees every change of the IndexWriter
+	 * @throws IOException if any I/O error occurs
+	 */
+	boolean isSearcherCurrent() throws IOException;
+
 	void reload() throws IOException;
 
 	<T> T search(final SearchAction<T> action) throws IOException;
 
+	/**
+	 * Acquire the current searcher. It stays usable, even after a refresh or a reload, until the reference is closed.
+	 *
+	 * @return a reference on the current searcher
+	 * @throws IOException if any I/O error occurs
+	 */
+	Reference acquire() throws IOException;
+
 	<T> T write(final WriteAction<T> action) throws IOException;
 
 	void commit() throws IOException;
@@ -43,9 +71,15 @@ interface WriterAndSearcher extends Closeable {
 	abstract class Common implements WriterAndSearcher {
 
 		final IndexWriter indexWriter;
+		private final double targetMaxStaleSec;
+		private final double targetMinStaleSec;
+		private volatile ControlledRealTimeReopenThread<?> reopenThread;
 
-		protected Common(final IndexWriter indexWriter) {
+		protected Common(final IndexWriter indexWriter, final double targetMaxStaleSec,
+				final double targetMinStaleSec) {
 			this.indexWriter = indexWriter;
+			this.targetMaxStaleSec = targetMaxStaleSec;
+			this.targetMinStaleSec = Math.min(targetMinStaleSec, targetMaxStaleSec);
 		}
 
 		@Override
@@ -53,6 +87,64 @@ interface WriterAndSearcher extends Closeable {
 			return indexWriter;
 		}
 
+		/**
+		 * (Re)start the background reopen thread on the given manager.
+		 * Nothing is started without IndexWriter (slave) or without max staleness.
+		 */
+		final synchronized <T> void startReopenThread(final ReferenceManager<T> referenceManager) {
+			stopReopenThread();
+			if (indexWriter == null || targetMaxStaleSec <= 0)
+				return;
+			final ControlledRealTimeReopenThread<T> thread =
+					new ControlledRealTimeReopenThread<>(indexWriter, referenceManager, targetMaxStaleSec,
+							targetMinStaleSec);
+			thread.setName("NRT reopen " + indexWriter.getDirectory());
+			thread.setDaemon(true);
+			thread.start();
+			reopenThread = thread;
+		}
+
+		final synchronized void stopReopenThread() {
+			if (reopenThread == null)
+				return;
+			IOUtils.closeQuietly(reopenThread);
+			reopenThread = null;
+		}
+
+		@Override
+		final public void waitForVisibility() throws IOException {
+			final ControlledRealTimeReopenThread<?> thread = reopenThread;
+			if (thread == null) {
+				refreshBlocking();
+				return;
+			}
+			try {
+				thread.waitForGeneration(indexWriter.getMaxCompletedSequenceNumber());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the NRT reopen");
+			}
+		}
+
+		@Override
+		final public boolean isSearcherCurrent() throws IOException {
+			return search((searcher, taxonomyReader) -> {
+				final IndexReader reader = searcher.getIndexReader();
+				return reader instanceof DirectoryReader && ((DirectoryReader) reader).isCurrent();
+			});
+		}
+
+		/**
+		 * The commit triggers a refresh, unless one is already running, but never waits for it:
+		 * the commit is usually done while the locks of the writers are held.
+		 * The callers asking for visibility call {@link #waitForVisibility()} once the locks are released.
+		 *
+		 * @throws IOException if any I/O error occurs
+		 */
+		final void afterCommit() throws IOException {
+			refresh();
+		}
+
 	}
 
 	@FunctionalInterface
@@ -65,12 +157,13 @@ interface WriterAndSearcher extends Closeable {
 		private final SearcherManagerFactory searcherManagerFactory;
 		private volatile ReferenceManager<IndexSearcher> searcherManager;
 
-		WithIndex(final IndexWriter indexWriter, final SearcherManagerFactory searcherManagerFactory)
-				throws IOException {
-			super(indexWriter);
+		WithIndex(final IndexWriter indexWriter, final SearcherManagerFactory searcherManagerFactory,
+				final double targetMaxStaleSec, final double targetMinStaleSec) throws IOException {
+			super(indexWriter, targetMaxStaleSec, targetMinStaleSec);
 			this.searcherManagerFactory = searcherManagerFactory;
 			this.searcherManager = searcherManagerFactory.supply();
 			refresh();
+			startReopenThread(searcherManager);
 		}
 
 		@Override
@@ -78,10 +171,16 @@ interface WriterAndSearcher extends Closeable {
 			searcherManager.maybeRefresh();
 		}
 
+		@Override
+		final public void refreshBlocking() throws IOException {
+			searcherManager.maybeRefreshBlocking();
+		}
+
 		@Override
 		final synchronized public void reload() throws IOException {
 			final ReferenceManager<IndexSearcher> oldSearcherManager = searcherManager;
 			searcherManager = searcherManagerFactory.supply();
+			startReopenThread(searcherManager);
 			oldSearcherManager.close();
 		}
 
@@ -97,6 +196,25 @@ interface WriterAndSearcher extends Closeable {
 			}
 		}
 
+		@Override
+		final public Reference acquire() throws IOException {
+			final ReferenceManager<IndexSearcher> sm =
+					Objects.requireNonNull(searcherManager, "No SearchManager available");
+			final IndexSearcher searcher = sm.acquire();
+			return new Reference() {
+
+				@Override
+				public <T> T search(final SearchAction<T> action) throws IOException {
+					return action.apply(searcher, null);
+				}
+
+				@Override
+				public void close() throws IOException {
+					sm.release(searcher);
+				}
+			};
+		}
+
 		@Override
 		final public <T> T write(final WriteAction<T> action) throws IOException {
 			return action.apply(indexWriter, null);
@@ -106,11 +224,12 @@ interface WriterAndSearcher extends Closeable {
 		public void commit() throws IOException {
 			indexWriter.flush();
 			indexWriter.commit();
-			refresh();
+			afterCommit();
 		}
 
 		@Override
 		public synchronized void close() {
+			stopReopenThread();
 			if (searcherManager != null) {
 				IOUtils.closeQuietly(searcherManager);
 				searcherManager = null;
@@ -133,12 +252,14 @@ interface WriterAndSearcher extends Closeable {
 		private volatile SearcherTaxonomyManager searcherTaxonomyManager;
 
 		WithIndexAndTaxo(final IndexWriter indexWriter, final SnapshotDirectoryTaxonomyWriter taxonomyWriter,
-				final SearcherTaxonomyManagerFactory searcherTaxonomyManagerFactory) throws IOException {
-			super(indexWriter);
+				final SearcherTaxonomyManagerFactory searcherTaxonomyManagerFactory, final double targetMaxStaleSec,
+				final double targetMinStaleSec) throws IOException {
+			super(indexWriter, targetMaxStaleSec, targetMinStaleSec);
 			this.taxonomyWriter = taxonomyWriter;
 			this.searcherTaxonomyManagerFactory = searcherTaxonomyManagerFactory;
 			this.searcherTaxonomyManager = searcherTaxonomyManagerFactory.supply();
 			refresh();
+			startReopenThread(searcherTaxonomyManager);
 		}
 
 		@Override
@@ -146,10 +267,16 @@ interface WriterAndSearcher extends Closeable {
 			searcherTaxonomyManager.maybeRefresh();
 		}
 
+		@Override
+		final public void refreshBlocking() throws IOException {
+			searcherTaxonomyManager.maybeRefreshBlocking();
+		}
+
 		@Override
 		final synchronized public void reload() throws IOException {
 			final SearcherTaxonomyManager oldSearcherManager = searcherTaxonomyManager;
 			searcherTaxonomyManager = searcherTaxonomyManagerFactory.supply();
+			startReopenThread(searcherTaxonomyManager);
 			oldSearcherManager.close();
 		}
 
@@ -165,6 +292,25 @@ interface WriterAndSearcher extends Closeable {
 			}
 		}
 
+		@Override
+		final public Reference acquire() throws IOException {
+			final SearcherTaxonomyManager sm =
+					Objects.requireNonNull(searcherTaxonomyManager, "No SearcherTaxonomyManager available");
+			final SearcherTaxonomyManager.SearcherAndTaxonomy reference = sm.acquire();
+			return new Reference() {
+
+				@Override
+				public <T> T search(final SearchAction<T> action) throws IOException {
+					return action.apply(reference.searcher, reference.taxonomyReader);
+				}
+
+				@Override
+				public void close() throws IOException {
+					sm.release(reference);
+				}
+			};
+		}
+
 		@Override
 		final public <T> T write(final WriteAction<T> action) throws IOException {
 			return action.apply(indexWriter, taxonomyWriter);
@@ -176,11 +322,12 @@ interface WriterAndSearcher extends Closeable {
 			taxonomyWriter.commit();
 			indexWriter.flush();
 			indexWriter.commit();
-			refresh();
+			afterCommit();
 		}
 
 		@Override
 		public synchronized void close() {
+			stopReopenThread();
 			if (searcherTaxonomyManager != null) {
 				IOUtils.closeQuietly(searcherTaxonomyManager);
 				searcherTaxonomyManager = null;
@@ -194,6 +341,11 @@ interface WriterAndSearcher extends Closeable {
 		}
 	}
 
+	interface Reference extends Closeable {
+
+		<T> T search(final SearchAction<T> action) throws IOException;
+	}
+
 	@FunctionalInterface
 	interface SearchAction<T> {
 		T apply(final IndexSearcher indexSearcher, final TaxonomyReader taxonomyReader) throws IOException;
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.query;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.qwazr.search.index.QueryContext;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.Query;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Force (cache = true) or forbid (cache = false) the caching of a filter clause by the query cache of the index.
+ */
+public class CachingHintQuery extends AbstractQuery<CachingHintQuery> {
+
+	public final AbstractQuery query;
+
+	public final Boolean cache;
+
+	@JsonCreator
+	public CachingHintQuery(@JsonProperty("query") final AbstractQuery query,
+			@JsonProperty("cache") final Boolean cache) {
+		super(CachingHintQuery.class);
+		this.query = Objects.requireNonNull(query, "The embedded query is missing");
+		this.cache = cache == null ? Boolean.TRUE : cache;
+	}
+
+	@Override
+	final public Query getQuery(final QueryContext queryContext)
+			throws IOException, ParseException, QueryNodeException, ReflectiveOperationException {
+		return new com.qwazr.search.query.lucene.CachingHintQuery(query.getQuery(queryContext), cache);
+	}
+
+	@Override
+	protected boolean isEqual(final CachingHintQuery q) {
+		return Objects.equals(query, q.query) && Objects.equals(cache, q.cache);
+	}
+}
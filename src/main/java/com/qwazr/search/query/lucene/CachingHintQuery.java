@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.query.lucene;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Wrap a query to force (or forbid) the caching of its matches by the query cache.
+ * The hint is honored by the caching policy of the index. As usual, only the non-scoring clauses are cached.
+ */
+public final class CachingHintQuery extends Query {
+
+	public final Query query;
+	public final boolean cache;
+
+	public CachingHintQuery(final Query query, final boolean cache) {
+		this.query = Objects.requireNonNull(query, "The embedded query is missing");
+		this.cache = cache;
+	}
+
+	@Override
+	public Query rewrite(final IndexReader reader) throws IOException {
+		final Query rewritten = query.rewrite(reader);
+		return rewritten == query ? super.rewrite(reader) : new CachingHintQuery(rewritten, cache);
+	}
+
+	@Override
+	public Weight createWeight(final IndexSearcher searcher, final boolean needsScores) throws IOException {
+		final Weight weight = query.createWeight(searcher, needsScores);
+		// The weight must return this query, as the query cache checks the caching policy with it
+		return new Weight(this) {
+
+			@Override
+			public void extractTerms(final Set<Term> terms) {
+				weight.extractTerms(terms);
+			}
+
+			@Override
+			public Explanation explain(final LeafReaderContext context, final int doc) throws IOException {
+				return weight.explain(context, doc);
+			}
+
+			@Override
+			public float getValueForNormalization() throws IOException {
+				return weight.getValueForNormalization();
+			}
+
+			@Override
+			public void normalize(final float norm, final float boost) {
+				weight.normalize(norm, boost);
+			}
+
+			@Override
+			public Scorer scorer(final LeafReaderContext context) throws IOException {
+				return weight.scorer(context);
+			}
+
+			@Override
+			public BulkScorer bulkScorer(final LeafReaderContext context) throws IOException {
+				return weight.bulkScorer(context);
+			}
+		};
+	}
+
+	@Override
+	public String toString(final String field) {
+		return (cache ? "cache(" : "nocache(") + query.toString(field) + ')';
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!sameClassAs(o))
+			return false;
+		final CachingHintQuery q = (CachingHintQuery) o;
+		return cache == q.cache && query.equals(q.query);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * classHash() + query.hashCode()) + Boolean.hashCode(cache);
+	}
+}
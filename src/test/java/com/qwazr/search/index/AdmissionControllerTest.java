@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.server.ServerException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AdmissionControllerTest {
+
+    @Test
+    public void unboundedByDefault() {
+        final AdmissionController admission = new AdmissionController("test", null, null, null);
+        final List<AdmissionController.Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            tickets.add(admission.acquire(AdmissionController.Priority.BULK));
+        Assert.assertEquals(Integer.valueOf(1000), admission.getStatus().running);
+        tickets.forEach(AdmissionController.Ticket::close);
+        Assert.assertEquals(Integer.valueOf(0), admission.getStatus().running);
+        Assert.assertNull(admission.getStatus().maxConcurrent);
+    }
+
+    @Test
+    public void timeout() {
+        final AdmissionController admission = new AdmissionController("test", 1, 10, 50);
+        try (final AdmissionController.Ticket ticket = admission.acquire(AdmissionController.Priority.INTERACTIVE)) {
+            admission.acquire(AdmissionController.Priority.INTERACTIVE);
+            Assert.fail("ServerException expected");
+        } catch (ServerException e) {
+            Assert.assertEquals(503, e.getStatusCode());
+        }
+        Assert.assertEquals(Long.valueOf(1), admission.getStatus().timedOutCount);
+        Assert.assertEquals(Integer.valueOf(0), admission.getStatus().queued);
+    }
+
+    @Test
+    public void lowPrioritiesAreShedFirst() throws InterruptedException {
+        final AdmissionController admission = new AdmissionController("test", 1, 2, 10000);
+        final AdmissionController.Ticket ticket = admission.acquire(AdmissionController.Priority.INTERACTIVE);
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread waiter = new Thread(() -> {
+            admission.acquire(AdmissionController.Priority.BULK).close();
+            done.countDown();
+        });
+        waiter.start();
+        while (admission.getStatus().queued < 1)
+            Thread.sleep(10);
+        // BULK may use half of the queue, which is already used
+        try {
+            admission.acquire(AdmissionController.Priority.BULK);
+            Assert.fail("ServerException expected");
+        } catch (ServerException e) {
+            Assert.assertEquals(503, e.getStatusCode());
+        }
+        Assert.assertEquals(Long.valueOf(1), admission.getStatus().rejectedCount);
+        ticket.close();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void latencyPerPriority() throws InterruptedException {
+        final AdmissionController admission = new AdmissionController("test", 1, 10, 200);
+        // One export running longer than the timeout
+        try (final AdmissionController.Ticket export = admission.acquire(AdmissionController.Priority.EXPORT)) {
+            Thread.sleep(500);
+        }
+        final AdmissionController.Ticket ticket = admission.acquire(AdmissionController.Priority.INTERACTIVE);
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread waiter = new Thread(() -> {
+            // Not shed: the interactive latency is not the one of the export
+            admission.acquire(AdmissionController.Priority.INTERACTIVE).close();
+            done.countDown();
+        });
+        waiter.start();
+        while (admission.getStatus().queued < 1)
+            Thread.sleep(10);
+        // The exports are still shed on their own latency
+        try {
+            admission.acquire(AdmissionController.Priority.EXPORT);
+            Assert.fail("ServerException expected");
+        } catch (ServerException e) {
+            Assert.assertEquals(503, e.getStatusCode());
+        }
+        ticket.close();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Long.valueOf(1), admission.getStatus().rejectedCount);
+        Assert.assertEquals(Long.valueOf(0), admission.getStatus().timedOutCount);
+    }
+
+    @Test
+    public void interactiveFirst() throws InterruptedException {
+        final AdmissionController admission = new AdmissionController("test", 1, 10, 10000);
+        final AdmissionController.Ticket ticket = admission.acquire(AdmissionController.Priority.INTERACTIVE);
+        final List<AdmissionController.Priority> order = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = new ArrayList<>();
+        for (AdmissionController.Priority priority : new AdmissionController.Priority[] {
+                AdmissionController.Priority.BULK, AdmissionController.Priority.INTERACTIVE }) {
+            final Thread thread = new Thread(() -> {
+                try (final AdmissionController.Ticket t = admission.acquire(priority)) {
+                    order.add(priority);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            while (admission.getStatus().queued < threads.size())
+                Thread.sleep(10);
+        }
+        ticket.close();
+        for (Thread thread : threads)
+            thread.join();
+        Assert.assertEquals(AdmissionController.Priority.INTERACTIVE, order.get(0));
+        Assert.assertEquals(AdmissionController.Priority.BULK, order.get(1));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.search.field.CustomFieldDefinition;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.field.SmartFieldDefinition;
+import org.apache.lucene.facet.FacetsConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+public class FieldMapTest {
+
+    private static FieldMap getFieldMap() {
+        final LinkedHashMap<String, FieldDefinition> fields = new LinkedHashMap<>();
+        fields.put("name", SmartFieldDefinition.of().build());
+        fields.put("*_txt", SmartFieldDefinition.of().build());
+        fields.put("attr_?", SmartFieldDefinition.of().build());
+        fields.put("attr_*", SmartFieldDefinition.of().build());
+        return new FieldMap(fields, null);
+    }
+
+    @Test
+    public void wildcardResolution() {
+        final FieldMap fieldMap = getFieldMap();
+        final FieldDefinition txt = fieldMap.getFieldType(null, "*_txt").getDefinition();
+        final FieldDefinition attrOne = fieldMap.getFieldType(null, "attr_?").getDefinition();
+        final FieldDefinition attrAll = fieldMap.getFieldType(null, "attr_*").getDefinition();
+        Assert.assertSame(txt, fieldMap.getFieldType(null, "title_txt").getDefinition());
+        // The first declared pattern wins
+        Assert.assertSame(attrOne, fieldMap.getFieldType(null, "attr_a").getDefinition());
+        Assert.assertSame(attrAll, fieldMap.getFieldType(null, "attr_ab").getDefinition());
+        // Second call served by the cache
+        Assert.assertSame(attrOne, fieldMap.getFieldType(null, "attr_a").getDefinition());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownField() {
+        getFieldMap().getFieldType(null, "unknown");
+    }
+
+    @Test
+    public void facetsConfig() {
+        final LinkedHashMap<String, FieldDefinition> fields = new LinkedHashMap<>();
+        fields.put("category", CustomFieldDefinition.of()
+                .template(FieldDefinition.Template.SortedSetDocValuesFacetField)
+                .build());
+        fields.put("facet_*", CustomFieldDefinition.of()
+                .template(FieldDefinition.Template.SortedSetDocValuesFacetField)
+                .build());
+        final FieldMap fieldMap = new FieldMap(fields, null);
+        final FacetsConfig facetsConfig = fieldMap.getFacetsConfig(Collections.emptyMap());
+        // Declared fields are configured when the FieldMap is built
+        Assert.assertEquals(fieldMap.sortedSetFacetField, facetsConfig.getDimConfig("category").indexFieldName);
+        // Wildcard fields are configured on first use
+        Assert.assertSame(facetsConfig, fieldMap.getFacetsConfig("facet_*", "facet_color"));
+        Assert.assertEquals(fieldMap.sortedSetFacetField, facetsConfig.getDimConfig("facet_color").indexFieldName);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void facetsConfigIsReadOnly() {
+        getFieldMap().getFacetsConfig(Collections.emptyMap()).setMultiValued("name", true);
+    }
+}
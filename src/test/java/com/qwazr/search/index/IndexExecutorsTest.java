@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class IndexExecutorsTest {
+
+    private static IndexExecutors getSingleThreadExecutors() {
+        final IndexExecutors.Builder builder = IndexExecutors.builder();
+        for (String name : new String[] { IndexExecutors.SEARCH, IndexExecutors.FACET, IndexExecutors.INDEXING,
+                IndexExecutors.MAINTENANCE })
+            builder.threads(name, 1).queueSize(name, 1);
+        return builder.build();
+    }
+
+    @Test
+    public void callerRunsWhenSaturated() throws InterruptedException {
+        try (final IndexExecutors executors = getSingleThreadExecutors()) {
+            final CountDownLatch latch = new CountDownLatch(1);
+            executors.search.execute(() -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            executors.search.execute(() -> {
+            });
+            // The thread and the queue are busy: the task runs in the calling thread
+            final AtomicReference<Thread> thread = new AtomicReference<>();
+            executors.search.execute(() -> thread.set(Thread.currentThread()));
+            Assert.assertSame(Thread.currentThread(), thread.get());
+            latch.countDown();
+
+            final Map<String, IndexExecutors.ExecutorStatus> status = executors.getStatus();
+            Assert.assertEquals(Long.valueOf(1), status.get(IndexExecutors.SEARCH).rejectedCount);
+            Assert.assertEquals(Integer.valueOf(1), status.get(IndexExecutors.SEARCH).maxPoolSize);
+            Assert.assertEquals(Integer.valueOf(1), status.get(IndexExecutors.SEARCH).queueCapacity);
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void maintenanceAbortsWhenSaturated() {
+        try (final IndexExecutors executors = getSingleThreadExecutors()) {
+            final CountDownLatch latch = new CountDownLatch(1);
+            try {
+                // A commit never runs in the thread of a writer
+                for (int i = 0; i < 3; i++)
+                    executors.maintenance.execute(() -> {
+                        try {
+                            latch.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+            } finally {
+                latch.countDown();
+            }
+        }
+    }
+
+    @Test
+    public void schedulerStatus() throws InterruptedException {
+        try (final IndexExecutors executors = getSingleThreadExecutors()) {
+            final CountDownLatch latch = new CountDownLatch(1);
+            executors.scheduler.schedule(latch::countDown, 10, TimeUnit.MILLISECONDS);
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            final IndexExecutors.ExecutorStatus status = executors.getStatus().get(IndexExecutors.SCHEDULER);
+            Assert.assertNotNull(status);
+            Assert.assertEquals(Integer.valueOf(1), status.maxPoolSize);
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void indexingAbortsWhenSaturated() {
+        try (final IndexExecutors executors = getSingleThreadExecutors()) {
+            final CountDownLatch latch = new CountDownLatch(1);
+            try {
+                for (int i = 0; i < 3; i++)
+                    executors.indexing.execute(() -> {
+                        try {
+                            latch.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+            } finally {
+                latch.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class OrdinalCountsPoolTest {
+
+    @Test
+    public void pooledArraysAreZeroed() {
+        final OrdinalCountsPool pool = new OrdinalCountsPool();
+        final int[] array = pool.acquire(100);
+        array[10] = 5;
+        pool.release(array);
+        final int[] pooled = pool.acquire(100);
+        Assert.assertSame(array, pooled);
+        for (final int count : pooled)
+            Assert.assertEquals(0, count);
+    }
+
+    @Test
+    public void cappedByBytes() {
+        // Room for two arrays of 100 integers
+        final OrdinalCountsPool pool = new OrdinalCountsPool(1000);
+        final int[] first = new int[100];
+        final int[] second = new int[100];
+        final int[] third = new int[100];
+        pool.release(first);
+        pool.release(second);
+        Assert.assertEquals(800, pool.getPooledBytes());
+        pool.release(third);
+        Assert.assertEquals(800, pool.getPooledBytes());
+
+        final int[] acquired = pool.acquire(100);
+        Assert.assertNotSame(third, acquired);
+        Assert.assertEquals(400, pool.getPooledBytes());
+        pool.acquire(100);
+        Assert.assertEquals(0, pool.getPooledBytes());
+        Assert.assertNotSame(third, pool.acquire(100));
+    }
+
+    private static void checkSparse(final int[] ords) {
+        final OrdinalCounts.Sparse sparse = new OrdinalCounts.Sparse(16);
+        final Map<Integer, Integer> expected = new HashMap<>();
+        final Random random = new Random(0);
+        for (final int ord : ords) {
+            final int count = random.nextInt(10) + 1;
+            sparse.add(ord, count);
+            expected.merge(ord, count, Integer::sum);
+        }
+        for (final Map.Entry<Integer, Integer> entry : expected.entrySet())
+            Assert.assertEquals(entry.getValue().intValue(), sparse.get(entry.getKey()));
+        Assert.assertEquals(0, sparse.get(Integer.MAX_VALUE - 1));
+        final Map<Integer, Integer> visited = new HashMap<>();
+        sparse.forEach(visited::put);
+        Assert.assertEquals(expected, visited);
+    }
+
+    @Test
+    public void sparseCounts() {
+        // Ordinals sharing their low bits, then random ordinals, both growing the table several times
+        final int[] strided = new int[5000];
+        for (int i = 0; i < strided.length; i++)
+            strided[i] = (i % 2500) << 12;
+        checkSparse(strided);
+        final int[] randoms = new int[5000];
+        final Random random = new Random(1);
+        for (int i = 0; i < randoms.length; i++)
+            randoms[i] = random.nextInt(1_000_000);
+        checkSparse(randoms);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class QueryDeadlineTest {
+
+    private static Directory directory;
+    private static DirectoryReader reader;
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        directory = new RAMDirectory();
+        try (final IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer()))) {
+            for (int i = 0; i < 1000; i++) {
+                final Document document = new Document();
+                document.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+                writer.addDocument(document);
+            }
+        }
+        reader = DirectoryReader.open(directory);
+    }
+
+    @AfterClass
+    public static void cleanup() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    @Test
+    public void noTimeout() {
+        Assert.assertNull(QueryDeadline.of(null));
+        Assert.assertNull(QueryDeadline.of(0L));
+    }
+
+    @Test
+    public void withinBudget() throws IOException {
+        final QueryDeadline deadline = QueryDeadline.of(60000L);
+        final TotalHitCountCollector collector = new TotalHitCountCollector();
+        new IndexSearcher(reader).search(new MatchAllDocsQuery(), deadline.wrap(collector));
+        Assert.assertEquals(1000, collector.getTotalHits());
+        Assert.assertFalse(deadline.isTimedOut());
+    }
+
+    @Test
+    public void budgetElapsed() throws IOException, InterruptedException {
+        final QueryDeadline deadline = QueryDeadline.of(1L);
+        Thread.sleep(10);
+        final TotalHitCountCollector collector = new TotalHitCountCollector();
+        new IndexSearcher(reader).search(new MatchAllDocsQuery(), deadline.wrap(collector));
+        Assert.assertEquals(0, collector.getTotalHits());
+        Assert.assertTrue(deadline.isTimedOut());
+    }
+}
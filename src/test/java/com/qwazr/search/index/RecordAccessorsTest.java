@@ -0,0 +1,297 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.binder.FieldMapWrapper;
+import com.qwazr.binder.setter.FieldSetter;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.server.ServerException;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * The compiled accessors must behave exactly like the reflective path they replace.
+ */
+public class RecordAccessorsTest {
+
+    private static Map<String, Field> fields;
+    private static Map<String, FieldSetter> fieldSetters;
+    private static Map<String, RecordAccessors.Writer> writers;
+
+    @BeforeClass
+    public static void setup() throws ReflectiveOperationException {
+        fields = new LinkedHashMap<>();
+        fieldSetters = new HashMap<>();
+        for (final Field field : Record.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()))
+                continue;
+            field.setAccessible(true);
+            fields.put(field.getName(), field);
+            fieldSetters.put(field.getName(), FieldSetter.of(field));
+        }
+        writers = RecordAccessors.writers(new FieldMapWrapper<>(fieldSetters, Record.class));
+    }
+
+    private static Record newRecord() {
+        final Record record = new Record();
+        record.integerList = new ArrayList<>();
+        return record;
+    }
+
+    /**
+     * @return the values of the fields, or the class of the exception thrown while writing
+     */
+    private static Object write(final String fieldName, final BiConsumer<String, Record> writer)
+            throws IllegalAccessException {
+        final Record record = newRecord();
+        try {
+            writer.accept(fieldName, record);
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+        final Object[] values = new Object[fields.size()];
+        int i = 0;
+        for (final Field field : fields.values())
+            values[i++] = field.get(record);
+        return values;
+    }
+
+    private static void check(final BiConsumer<String, Record> compiled, final BiConsumer<String, Record> reflective)
+            throws IllegalAccessException {
+        for (final String fieldName : fields.keySet()) {
+            final Object expected = write(fieldName, reflective);
+            final Object actual = write(fieldName, compiled);
+            if (expected instanceof Object[] && actual instanceof Object[])
+                Assert.assertArrayEquals(fieldName, (Object[]) expected, (Object[]) actual);
+            else
+                Assert.assertEquals(fieldName, expected, actual);
+        }
+    }
+
+    @Test
+    public void compiledFields() {
+        for (final String fieldName : Arrays.asList("stringValue", "finalString"))
+            Assert.assertTrue(fieldName, writers.get(fieldName).isCompiled(String.class));
+        Assert.assertTrue(writers.get("intValue").isCompiled(Integer.class));
+        Assert.assertTrue(writers.get("integerValue").isCompiled(Integer.class));
+        Assert.assertTrue(writers.get("longValue").isCompiled(Long.class));
+        Assert.assertTrue(writers.get("longObject").isCompiled(Long.class));
+        Assert.assertTrue(writers.get("floatValue").isCompiled(Float.class));
+        Assert.assertTrue(writers.get("floatObject").isCompiled(Float.class));
+        Assert.assertTrue(writers.get("doubleValue").isCompiled(Double.class));
+        Assert.assertTrue(writers.get("doubleObject").isCompiled(Double.class));
+        // No compiled conversion: the FieldSetter does it
+        Assert.assertFalse(writers.get("intValue").isCompiled(Long.class));
+        Assert.assertFalse(writers.get("stringList").isCompiled(String.class));
+        Assert.assertFalse(writers.get("integerList").isCompiled(Integer.class));
+        Assert.assertFalse(writers.get("stringArray").isCompiled(String.class));
+    }
+
+    @Test
+    public void strings() throws IllegalAccessException {
+        for (final List<String> values : Arrays.asList(Collections.<String>emptyList(),
+                Collections.singletonList("12"), Arrays.asList("12", "34")))
+            check((name, record) -> writers.get(name).fromString(values, record),
+                    (name, record) -> fieldSetters.get(name).fromCollection(String.class, values, record));
+    }
+
+    @Test
+    public void integers() throws IllegalAccessException {
+        for (final int[] values : new int[][] { {}, { 12 }, { 12, 34 } })
+            check((name, record) -> writers.get(name).fromInteger(values, record),
+                    (name, record) -> fieldSetters.get(name).fromInteger(values, record));
+    }
+
+    @Test
+    public void longs() throws IllegalAccessException {
+        for (final long[] values : new long[][] { {}, { 12L }, { 12L, 34L } })
+            check((name, record) -> writers.get(name).fromLong(values, record),
+                    (name, record) -> fieldSetters.get(name).fromLong(values, record));
+    }
+
+    @Test
+    public void floats() throws IllegalAccessException {
+        for (final float[] values : new float[][] { {}, { 1.5F }, { 1.5F, 2.5F } })
+            check((name, record) -> writers.get(name).fromFloat(values, record),
+                    (name, record) -> fieldSetters.get(name).fromFloat(values, record));
+    }
+
+    @Test
+    public void doubles() throws IllegalAccessException {
+        for (final double[] values : new double[][] { {}, { 1.5D }, { 1.5D, 2.5D } })
+            check((name, record) -> writers.get(name).fromDouble(values, record),
+                    (name, record) -> fieldSetters.get(name).fromDouble(values, record));
+    }
+
+    @Test
+    public void singleValues() throws IllegalAccessException {
+        // The single valued doc values converters
+        check((name, record) -> writers.get(name).fromValue("12", record),
+                (name, record) -> fieldSetters.get(name).fromString("12", record));
+        check((name, record) -> writers.get(name).fromValue(12, record),
+                (name, record) -> fieldSetters.get(name).fromInteger(Integer.valueOf(12), record));
+        check((name, record) -> writers.get(name).fromValue(12L, record),
+                (name, record) -> fieldSetters.get(name).fromLong(Long.valueOf(12L), record));
+        check((name, record) -> writers.get(name).fromValue(1.5F, record),
+                (name, record) -> fieldSetters.get(name).fromFloat(Float.valueOf(1.5F), record));
+        check((name, record) -> writers.get(name).fromValue(1.5D, record),
+                (name, record) -> fieldSetters.get(name).fromDouble(Double.valueOf(1.5D), record));
+        check((name, record) -> writers.get(name).fromValue(null, record),
+                (name, record) -> fieldSetters.get(name).fromNull(record));
+    }
+
+    @Test
+    public void read() throws IllegalAccessException {
+        final Record record = newRecord();
+        record.stringValue = "text";
+        record.intValue = 1;
+        record.integerValue = 2;
+        record.longValue = 3L;
+        record.longObject = 4L;
+        record.floatValue = 5.5F;
+        record.floatObject = 6.5F;
+        record.doubleValue = 7.5D;
+        record.doubleObject = 8.5D;
+        record.stringList = Arrays.asList("a", "b");
+        record.integerList.add(9);
+        record.stringArray = new String[] { "c" };
+
+        final Map<String, Object> expected = new LinkedHashMap<>();
+        for (final Map.Entry<String, Field> entry : fields.entrySet())
+            expected.put(entry.getKey(), entry.getValue().get(record));
+        final Map<String, Object> compiled = new LinkedHashMap<>();
+        RecordAccessors.of(fields).read(record, compiled::put);
+        Assert.assertEquals(expected, compiled);
+    }
+
+    @Test
+    public void cachedByClass() {
+        final RecordAccessors accessors = RecordAccessors.of(fields);
+        Assert.assertSame(accessors, RecordAccessors.of(new LinkedHashMap<>(fields)));
+
+        // A subset of the fields is not served by the cached accessors
+        final Map<String, Field> subset = Collections.singletonMap("stringValue", fields.get("stringValue"));
+        final Map<String, Object> values = new HashMap<>();
+        RecordAccessors.of(subset).read(newRecord(), values::put);
+        Assert.assertEquals(Collections.singleton("stringValue"), values.keySet());
+    }
+
+    @Test
+    public void subsetFirst() throws ReflectiveOperationException {
+        // A partial update comes first: the full records are still served by the cached accessors
+        final Field name = PartialRecord.class.getDeclaredField("name");
+        final Field count = PartialRecord.class.getDeclaredField("count");
+        final Map<String, Field> subset = Collections.singletonMap("name", name);
+        final Map<String, Field> full = new LinkedHashMap<>();
+        full.put("name", name);
+        full.put("count", count);
+        final RecordAccessors partial = RecordAccessors.of(subset);
+        final RecordAccessors accessors = RecordAccessors.of(full);
+        Assert.assertNotSame(partial, accessors);
+        Assert.assertSame(accessors, RecordAccessors.of(new LinkedHashMap<>(full)));
+
+        final PartialRecord record = new PartialRecord();
+        record.name = "partial";
+        record.count = 3;
+        final Map<String, Object> values = new HashMap<>();
+        partial.read(record, values::put);
+        Assert.assertEquals(Collections.singletonMap("name", "partial"), values);
+        values.clear();
+        accessors.read(record, values::put);
+        Assert.assertEquals(3, values.get("count"));
+    }
+
+    @Test
+    public void factory() throws ReflectiveOperationException {
+        Assert.assertNotNull(RecordAccessors.factory(Record.class.getConstructor()).get());
+        for (final Class<?> failingClass : Arrays.asList(FailingWithError.class, FailingWithThrowable.class)) {
+            try {
+                RecordAccessors.factory(failingClass.getConstructor()).get();
+                Assert.fail("Exception not thrown");
+            } catch (ServerException e) {
+                // Wrapped, whatever the type of the throwable
+            }
+        }
+    }
+
+    static public class Record {
+
+        @IndexField
+        public String stringValue;
+        @IndexField
+        public final String finalString;
+        @IndexField
+        public int intValue;
+        @IndexField
+        public Integer integerValue;
+        @IndexField
+        public long longValue;
+        @IndexField
+        public Long longObject;
+        @IndexField
+        public float floatValue;
+        @IndexField
+        public Float floatObject;
+        @IndexField
+        public double doubleValue;
+        @IndexField
+        public Double doubleObject;
+        @IndexField
+        public List<String> stringList;
+        @IndexField
+        public List<Integer> integerList;
+        @IndexField
+        public String[] stringArray;
+
+        public Record() {
+            finalString = null;
+        }
+    }
+
+    static public class PartialRecord {
+
+        @IndexField
+        public String name;
+        @IndexField
+        public int count;
+    }
+
+    static public class FailingWithError {
+
+        public FailingWithError() {
+            throw new AssertionError("Failing constructor");
+        }
+    }
+
+    static public class FailingWithThrowable {
+
+        public FailingWithThrowable() throws Throwable {
+            throw new Throwable("Failing constructor");
+        }
+    }
+}
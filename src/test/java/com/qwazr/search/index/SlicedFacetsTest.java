@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.search.field.FieldDefinition;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.facet.FacetField;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.facet.taxonomy.FastTaxonomyFacetCounts;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyReader;
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The sliced facets must return exactly what Lucene's facets return, ties included.
+ */
+public class SlicedFacetsTest {
+
+    private final static int COUNT = SlicedFacets.MIN_HITS_PER_SLICE * 3;
+    private final static int SEGMENT_SIZE = 10_000;
+
+    private final static String SORTED_SET = "sortedSet";
+    private final static String TAXONOMY = "taxonomy";
+
+    private final static String TIES = "ties";
+    private final static String MIXED = "mixed";
+    private final static String SPARSE = "sparse";
+
+    private static Directory directory;
+    private static Directory taxoDirectory;
+    private static DirectoryReader reader;
+    private static TaxonomyReader taxoReader;
+    private static FacetsConfig config;
+    private static SortedSetDocValuesReaderState state;
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        directory = new RAMDirectory();
+        taxoDirectory = new RAMDirectory();
+        config = new FacetsConfig();
+        for (final String dim : new String[] { TIES, MIXED, SPARSE })
+            config.setIndexFieldName(SORTED_SET + dim, FieldDefinition.DEFAULT_SORTEDSET_FACET_FIELD);
+        try (final IndexWriter writer = new IndexWriter(directory,
+                new IndexWriterConfig(new KeywordAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE));
+             final DirectoryTaxonomyWriter taxoWriter = new DirectoryTaxonomyWriter(taxoDirectory)) {
+            for (int i = 0; i < COUNT; i++) {
+                // ties: 20 labels having the same count
+                final String ties = "t" + (i % 20);
+                final String mixed = "m" + (i % 7 == 0 ? 0 : i % 3 + 1);
+                // sparse: 5000 labels, the small subset hits 10 of them, 30 times each
+                final String sparse = "s" + (i % 5000);
+                final Document document = new Document();
+                if (i % 500 == 0)
+                    document.add(new StringField("small", "yes", Field.Store.NO));
+                document.add(new SortedSetDocValuesFacetField(SORTED_SET + TIES, ties));
+                document.add(new SortedSetDocValuesFacetField(SORTED_SET + MIXED, mixed));
+                document.add(new SortedSetDocValuesFacetField(SORTED_SET + SPARSE, sparse));
+                document.add(new FacetField(TAXONOMY + TIES, ties));
+                document.add(new FacetField(TAXONOMY + MIXED, mixed));
+                document.add(new FacetField(TAXONOMY + SPARSE, sparse));
+                writer.addDocument(config.build(taxoWriter, document));
+                if ((i + 1) % SEGMENT_SIZE == 0)
+                    writer.commit();
+            }
+        }
+        reader = DirectoryReader.open(directory);
+        taxoReader = new DirectoryTaxonomyReader(taxoDirectory);
+        state = new DefaultSortedSetDocValuesReaderState(reader, FieldDefinition.DEFAULT_SORTEDSET_FACET_FIELD);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void cleanup() throws IOException {
+        executor.shutdown();
+        taxoReader.close();
+        reader.close();
+        taxoDirectory.close();
+        directory.close();
+    }
+
+    private static FacetsCollector search(final Query query) throws IOException {
+        final FacetsCollector facetsCollector = new FacetsCollector();
+        FacetsCollector.search(new IndexSearcher(reader), query, 10, facetsCollector);
+        return facetsCollector;
+    }
+
+    private static void assertSameFacets(final Facets expected, final Facets actual, final String prefix)
+            throws IOException {
+        for (final int topN : new int[] { 1, 3, 5, 10, 100 }) {
+            for (final String dim : new String[] { TIES, MIXED, SPARSE })
+                Assert.assertEquals(expected.getTopChildren(topN, prefix + dim),
+                        actual.getTopChildren(topN, prefix + dim));
+            Assert.assertEquals(expected.getAllDims(topN), actual.getAllDims(topN));
+        }
+        Assert.assertEquals(expected.getSpecificValue(prefix + TIES, "t7"),
+                actual.getSpecificValue(prefix + TIES, "t7"));
+        Assert.assertEquals(expected.getSpecificValue(prefix + SPARSE, "s500"),
+                actual.getSpecificValue(prefix + SPARSE, "s500"));
+    }
+
+    private static void checkSortedSet(final FacetsCollector hits, final boolean sparse) throws IOException {
+        final OrdinalCountsPool countsPool = new OrdinalCountsPool();
+        final SortedSetFacetCounts facets = new SortedSetFacetCounts(state, countsPool, hits);
+        SlicedFacets.count(executor, Arrays.asList(facets));
+        try {
+            Assert.assertEquals(sparse, facets.values.isSparse());
+            assertSameFacets(new SortedSetDocValuesFacetCounts(state, hits), facets, SORTED_SET);
+        } finally {
+            facets.release();
+        }
+    }
+
+    private static void checkTaxonomy(final FacetsCollector hits, final boolean sparse) throws IOException {
+        final OrdinalCountsPool countsPool = new OrdinalCountsPool();
+        final TaxonomySlicedFacets.Counts facets =
+                new TaxonomySlicedFacets.Counts(taxoReader, config, countsPool, hits);
+        SlicedFacets.count(executor, Arrays.asList(facets));
+        try {
+            Assert.assertEquals(sparse, facets.values.isSparse());
+            assertSameFacets(new FastTaxonomyFacetCounts(taxoReader, config, hits), facets, TAXONOMY);
+        } finally {
+            facets.release();
+        }
+    }
+
+    @Test
+    public void multipleSlices() throws IOException {
+        // One slice per processor at most
+        Assume.assumeTrue(Runtime.getRuntime().availableProcessors() > 1);
+        final FacetsCollector hits = search(new MatchAllDocsQuery());
+        Assert.assertTrue(SlicedFacets.slices(hits.getMatchingDocs()).size() > 1);
+    }
+
+    @Test
+    public void sortedSetDense() throws IOException {
+        checkSortedSet(search(new MatchAllDocsQuery()), false);
+    }
+
+    @Test
+    public void sortedSetSparse() throws IOException {
+        checkSortedSet(search(new TermQuery(new Term("small", "yes"))), true);
+    }
+
+    @Test
+    public void taxonomyDense() throws IOException {
+        checkTaxonomy(search(new MatchAllDocsQuery()), false);
+    }
+
+    @Test
+    public void taxonomySparse() throws IOException {
+        checkTaxonomy(search(new TermQuery(new Term("small", "yes"))), true);
+    }
+}
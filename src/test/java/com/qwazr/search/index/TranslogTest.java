@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.index;
+
+import com.qwazr.search.field.FieldDefinition;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TranslogTest {
+
+    private Path directory;
+    private IndexWriter indexWriter;
+
+    @Before
+    public void before() throws IOException {
+        directory = Files.createTempDirectory("translog");
+        indexWriter = new IndexWriter(new RAMDirectory(), new IndexWriterConfig());
+    }
+
+    @After
+    public void after() throws IOException {
+        indexWriter.close();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    private Translog open() throws IOException {
+        return Translog.open(directory, indexWriter, 60000);
+    }
+
+    private void log(final Translog translog, final String id) throws IOException {
+        final Map<String, Object> document = new HashMap<>();
+        document.put(FieldDefinition.ID_FIELD, id);
+        translog.apply(Translog.Operation.post(Collections.singletonList(document), true), context -> 1, null);
+    }
+
+    private List<Translog.Operation> replay(final Translog translog) throws IOException {
+        final List<Translog.Operation> operations = new ArrayList<>();
+        translog.replay(operations::add);
+        return operations;
+    }
+
+    @Test
+    public void replayAfterCrash() throws IOException {
+        try (final Translog translog = open()) {
+            log(translog, "1");
+            log(translog, "2");
+            translog.sync();
+        }
+        try (final Translog translog = open()) {
+            final List<Translog.Operation> operations = replay(translog);
+            Assert.assertEquals(2, operations.size());
+            final Map<String, Object> document = operations.get(1).documents.get(0);
+            Assert.assertEquals("2", document.get(FieldDefinition.ID_FIELD));
+            Assert.assertEquals(Translog.Operation.Type.POST, operations.get(1).type);
+        }
+    }
+
+    @Test
+    public void ignoreTruncatedEntry() throws IOException {
+        try (final Translog translog = open()) {
+            log(translog, "1");
+            translog.sync();
+        }
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files)
+                Files.write(file, new byte[] { 0, 0, 1, 0, 1, 2 }, StandardOpenOption.APPEND);
+        }
+        try (final Translog translog = open()) {
+            Assert.assertEquals(1, replay(translog).size());
+        }
+    }
+
+    @Test
+    public void sameIdOrder() throws IOException, InterruptedException, ExecutionException {
+        final List<Integer> applied = Collections.synchronizedList(new ArrayList<>());
+        try (final Translog translog = open()) {
+            final ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                final List<Future<Integer>> futures = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    final int version = i;
+                    final Map<String, Object> document = new HashMap<>();
+                    document.put(FieldDefinition.ID_FIELD, "1");
+                    document.put("version", version);
+                    futures.add(executor.submit(
+                            () -> translog.apply(Translog.Operation.post(Collections.singletonList(document), true),
+                                    context -> {
+                                        applied.add(version);
+                                        return 1;
+                                    }, null)));
+                }
+                for (Future<Integer> future : futures)
+                    future.get();
+            } finally {
+                executor.shutdown();
+            }
+            translog.sync();
+        }
+        // The updates of the same document are replayed in the order they have been applied
+        try (final Translog translog = open()) {
+            final List<Object> replayed = new ArrayList<>();
+            for (Translog.Operation operation : replay(translog))
+                replayed.add(operation.documents.get(0).get("version"));
+            Assert.assertEquals(applied, replayed);
+        }
+    }
+
+    @Test
+    public void commitDueOnlyWithOperations() throws IOException {
+        try (final Translog translog = Translog.open(directory, indexWriter, 0)) {
+            Assert.assertFalse(translog.isCommitDue());
+            log(translog, "1");
+            Assert.assertTrue(translog.isCommitDue());
+        }
+    }
+
+    @Test
+    public void noReplayAfterCommit() throws IOException {
+        try (final Translog translog = open()) {
+            log(translog, "1");
+            translog.sync();
+            final WriterAndSearcher writerAndSearcher =
+                    new WriterAndSearcher.WithIndex(indexWriter, () -> new SearcherManager(indexWriter, null), 0, 0);
+            translog.commit(writerAndSearcher);
+        }
+        try (final Translog translog = open()) {
+            Assert.assertEquals(0, replay(translog).size());
+        }
+    }
+
+}
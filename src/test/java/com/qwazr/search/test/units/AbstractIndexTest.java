@@ -35,7 +35,7 @@ import java.util.logging.Logger;
 
 public abstract class AbstractIndexTest {
 
-    private static Path rootDirectory;
+    protected static Path rootDirectory;
     protected static IndexManager indexManager;
     private static ExecutorService executor;
 
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.query.MatchAllDocsQuery;
+import com.qwazr.search.query.TermQuery;
+import com.qwazr.utils.ObjectMappers;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ExportTest extends AbstractIndexTest {
+
+    private final static int COUNT = 250;
+
+    private static AnnotatedIndexService<Record> indexService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException, IOException, InterruptedException {
+        indexService = initIndexService(Record.class);
+        final List<Record> records = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++)
+            records.add(new Record(Integer.toString(i), (i & 1) == 0 ? "even" : "odd"));
+        indexService.postDocuments(records);
+    }
+
+    private static List<Map<String, Object>> export(final QueryDefinition query) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        indexManager.getService()
+                .exportQuery(indexService.getSchemaName(), indexService.getIndexName(), null, query)
+                .write(output);
+        final List<Map<String, Object>> documents = new ArrayList<>();
+        for (final String line : new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n"))
+            if (!line.isEmpty())
+                documents.add(ObjectMappers.JSON.readValue(line, Map.class));
+        return documents;
+    }
+
+    @Test
+    public void exportAll() throws IOException {
+        final List<Map<String, Object>> documents =
+                export(QueryDefinition.of(new MatchAllDocsQuery()).returnedField("*").build());
+        Assert.assertEquals(COUNT, documents.size());
+        final Set<Object> ids = new HashSet<>();
+        for (final Map<String, Object> document : documents) {
+            Assert.assertTrue(ids.add(document.get(FieldDefinition.ID_FIELD)));
+            Assert.assertNotNull(document.get("category"));
+        }
+    }
+
+    @Test
+    public void exportFiltered() throws IOException {
+        final List<Map<String, Object>> documents = export(
+                QueryDefinition.of(new TermQuery("category", "odd")).returnedField(FieldDefinition.ID_FIELD).build());
+        Assert.assertEquals(COUNT / 2, documents.size());
+        for (final Map<String, Object> document : documents) {
+            Assert.assertEquals(1, document.size());
+            Assert.assertEquals(1, Integer.parseInt(document.get(FieldDefinition.ID_FIELD).toString()) & 1);
+        }
+    }
+
+    @Test
+    public void exportEmpty() throws IOException {
+        Assert.assertTrue(export(
+                QueryDefinition.of(new TermQuery("category", "none")).returnedField("*").build()).isEmpty());
+    }
+
+    @Test
+    public void exportSmile() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        indexManager.getService()
+                .exportQuery(indexService.getSchemaName(), indexService.getIndexName(),
+                        SmileMediaTypes.APPLICATION_JACKSON_SMILE,
+                        QueryDefinition.of(new MatchAllDocsQuery()).returnedField("*").build())
+                .write(output);
+        final List<Map<String, Object>> documents = new ArrayList<>();
+        try (final MappingIterator<Map<String, Object>> iterator = ObjectMappers.SMILE.readerFor(Map.class)
+                .readValues(output.toByteArray())) {
+            iterator.forEachRemaining(documents::add);
+        }
+        Assert.assertEquals(COUNT, documents.size());
+    }
+
+    @Test
+    public void errorBeforeOutput() {
+        // The query is checked when the output is returned, not while it is written
+        try {
+            indexManager.getService()
+                    .exportQuery(indexService.getSchemaName(), indexService.getIndexName(), null,
+                            QueryDefinition.of(new MatchAllDocsQuery()).build());
+            Assert.fail("WebApplicationException expected");
+        } catch (WebApplicationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void neverWritten() throws IOException {
+        // The outputs are dropped: nothing must be held by them
+        for (int i = 0; i < 100; i++)
+            indexManager.getService()
+                    .exportQuery(indexService.getSchemaName(), indexService.getIndexName(), null,
+                            QueryDefinition.of(new MatchAllDocsQuery()).returnedField("*").build());
+        Assert.assertEquals(Integer.valueOf(0), indexService.getIndexStatus().queryAdmission.running);
+        Assert.assertEquals(COUNT,
+                export(QueryDefinition.of(new MatchAllDocsQuery()).returnedField("*").build()).size());
+        Assert.assertEquals(Integer.valueOf(0), indexService.getIndexStatus().queryAdmission.running);
+    }
+
+    @Test
+    public void docValuesPerSegment() throws IOException {
+        final List<Map<String, Object>> documents = export(
+                QueryDefinition.of(new MatchAllDocsQuery()).returnedField("value").build());
+        Assert.assertEquals(COUNT, documents.size());
+        final Set<Object> values = new HashSet<>();
+        for (final Map<String, Object> document : documents)
+            values.add(((Number) document.get("value")).intValue());
+        Assert.assertEquals(COUNT, values.size());
+    }
+
+    @Index(name = "Export", schema = "TestQueries")
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        @IndexField(template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String category;
+
+        @IndexField(template = FieldDefinition.Template.IntDocValuesField)
+        final public Integer value;
+
+        Record(final String id, final String category) {
+            this.id = id;
+            this.category = category;
+            this.value = id == null ? null : Integer.parseInt(id);
+        }
+
+        public Record() {
+            this(null, null);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.FacetDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.index.ResultDefinition;
+import com.qwazr.search.query.BooleanQuery;
+import com.qwazr.search.query.MatchAllDocsQuery;
+import com.qwazr.search.query.TermQuery;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class FacetQueriesTest extends AbstractIndexTest {
+
+    private static AnnotatedIndexService<Record> indexService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException, IOException, InterruptedException {
+        indexService = initIndexService(Record.class);
+        final List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 90; i++)
+            records.add(new Record(Integer.toString(i), "abc".substring(i % 3, i % 3 + 1),
+                    i % 2 == 0 ? "even" : "odd"));
+        indexService.postDocuments(records);
+    }
+
+    @Test
+    public void facetQueriesOnMatchingDocs() {
+        final ResultDefinition.WithObject<Record> result = indexService.searchQuery(QueryDefinition.of(
+                BooleanQuery.of()
+                        .should(new TermQuery("category", "a"))
+                        .should(new TermQuery("category", "b"))
+                        .build())
+                .rows(0)
+                .facet("queries", new FacetDefinition.Builder().query("all", new MatchAllDocsQuery())
+                        .query("a", new TermQuery("category", "a"))
+                        .query("c", new TermQuery("category", "c"))
+                        .query("even", new TermQuery("parity", "even"))
+                        .build())
+                .build());
+        Assert.assertEquals(Long.valueOf(60), result.total_hits);
+        final Map<String, Number> facet = result.getFacet("queries");
+        Assert.assertNotNull(facet);
+        Assert.assertEquals(60, facet.get("all").intValue());
+        Assert.assertEquals(30, facet.get("a").intValue());
+        Assert.assertEquals(0, facet.get("c").intValue());
+        Assert.assertEquals(30, facet.get("even").intValue());
+    }
+
+    @Index(name = "FacetQueries", schema = "TestQueries")
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        @IndexField(template = FieldDefinition.Template.StringField)
+        final public String category;
+
+        @IndexField(template = FieldDefinition.Template.StringField)
+        final public String parity;
+
+        Record(final String id, final String category, final String parity) {
+            this.id = id;
+            this.category = category;
+            this.parity = parity;
+        }
+
+        public Record() {
+            this(null, null, null);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.IndexServiceInterface;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class GetDocumentsByIdTest extends AbstractIndexTest.WithIndexRecord.NoTaxonomy {
+
+    private static IndexServiceInterface service;
+
+    @BeforeClass
+    public static void setup() throws IOException, URISyntaxException, InterruptedException {
+        initIndexService();
+        service = indexManager.getService();
+        indexService.postDocument(new IndexRecord.NoTaxonomy("1").storedField("one"));
+        indexService.postDocument(new IndexRecord.NoTaxonomy("2").storedField("two"));
+        indexService.postDocument(new IndexRecord.NoTaxonomy("2").storedField("two-updated"));
+    }
+
+    private List<Map<String, Object>> get(final Boolean realtime, final String... ids) {
+        return service.getDocumentsById(indexService.getSchemaName(), indexService.getIndexName(), realtime,
+                Arrays.asList(ids));
+    }
+
+    @Test
+    public void multiGet() {
+        final List<Map<String, Object>> documents = get(null, "2", "unknown", "1");
+        Assert.assertEquals(2, documents.size());
+        Assert.assertEquals("2", documents.get(0).get(FieldDefinition.ID_FIELD));
+        Assert.assertEquals("two-updated", documents.get(0).get("storedField"));
+        Assert.assertEquals("1", documents.get(1).get(FieldDefinition.ID_FIELD));
+    }
+
+    @Test
+    public void realtimeGet() throws IOException, InterruptedException {
+        indexService.postDocument(new IndexRecord.NoTaxonomy("3").storedField("three"));
+        final List<Map<String, Object>> documents = get(true, "3");
+        Assert.assertEquals(1, documents.size());
+        Assert.assertEquals("three", documents.get(0).get("storedField"));
+    }
+
+    @Test
+    public void realtimeGetWithoutChanges() {
+        // Nothing pending in the writer: the current searcher answers directly
+        final List<Map<String, Object>> documents = get(true, "1", "2");
+        Assert.assertEquals(2, documents.size());
+        Assert.assertEquals("one", documents.get(0).get("storedField"));
+        Assert.assertEquals("two-updated", documents.get(1).get("storedField"));
+    }
+
+    @Test
+    public void singleGet() {
+        Assert.assertEquals("one",
+                service.getDocument(indexService.getSchemaName(), indexService.getIndexName(), "1")
+                        .get("storedField"));
+    }
+}
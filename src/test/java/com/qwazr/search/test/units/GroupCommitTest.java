@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.IndexExecutors;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.IndexStatus;
+import com.qwazr.utils.RandomUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+public class GroupCommitTest extends AbstractIndexTest {
+
+    private final static int LONG_DELAY_MS = 3000;
+
+    private static AnnotatedIndexService<Record> indexService;
+    private static AnnotatedIndexService<VisibleRecord> visibleService;
+    private static AnnotatedIndexService<NoWaitRecord> noWaitService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException {
+        indexService = initIndexService(Record.class);
+        visibleService = initIndexService(VisibleRecord.class);
+        noWaitService = initIndexService(NoWaitRecord.class);
+    }
+
+    @Before
+    public void beforeTest() {
+        indexService.deleteAll();
+        visibleService.deleteAll();
+        noWaitService.deleteAll();
+    }
+
+    private static long getLastCommitGeneration(final AnnotatedIndexService<?> service) throws IOException {
+        return service.write(context -> context.getIndexWriter().getLastCommitGeneration());
+    }
+
+    private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+        final long timeout = System.currentTimeMillis() + LONG_DELAY_MS * 3;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Timeout", System.currentTimeMillis() < timeout);
+            Thread.sleep(50);
+        }
+    }
+
+    private static boolean isCommitted(final AnnotatedIndexService<?> service, final long generation) {
+        try {
+            return getLastCommitGeneration(service) > generation;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void durableSingleWrite() throws IOException, InterruptedException {
+        final long generation = getLastCommitGeneration(indexService);
+        indexService.postDocument(new Record(RandomUtils.alphanumeric(10)));
+        // DURABLE: the commit is done when the write returns
+        Assert.assertEquals(generation + 1, getLastCommitGeneration(indexService));
+        final IndexStatus status = indexService.getIndexStatus();
+        Assert.assertEquals(1L, status.numDocs, 0);
+        Assert.assertNotNull(status.executors);
+        Assert.assertNotNull(status.executors.get(IndexExecutors.MAINTENANCE));
+        Assert.assertNotNull(status.executors.get(IndexExecutors.SCHEDULER));
+    }
+
+    @Test
+    public void concurrentDurableWrites() throws InterruptedException, ExecutionException, IOException {
+        final int threads = 8;
+        final int docsPerThread = 20;
+        final long generation = getLastCommitGeneration(indexService);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++)
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < docsPerThread; j++)
+                        indexService.postDocument(new Record(RandomUtils.alphanumeric(10)));
+                    return null;
+                }));
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(threads * docsPerThread, indexService.getIndexStatus().numDocs, 0);
+        // The concurrent writes have been coalesced
+        final long commits = getLastCommitGeneration(indexService) - generation;
+        Assert.assertTrue("Commits: " + commits, commits >= 1);
+        Assert.assertTrue("Commits: " + commits, commits < threads * docsPerThread);
+    }
+
+    @Test
+    public void visibleWrite() throws IOException, InterruptedException {
+        final long generation = getLastCommitGeneration(visibleService);
+        visibleService.postDocument(new VisibleRecord(RandomUtils.alphanumeric(10)));
+        // VISIBLE: searchable right away, while the group commit is still pending
+        Assert.assertEquals(1L, visibleService.getIndexStatus().numDocs, 0);
+        Assert.assertEquals(generation, getLastCommitGeneration(visibleService));
+        waitFor(() -> isCommitted(visibleService, generation));
+    }
+
+    @Test
+    public void noWaitWrite() throws IOException, InterruptedException {
+        final long generation = getLastCommitGeneration(noWaitService);
+        final long start = System.nanoTime();
+        noWaitService.postDocument(new NoWaitRecord(RandomUtils.alphanumeric(10)));
+        // NONE: the write returns without waiting for the group commit
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < LONG_DELAY_MS);
+        Assert.assertEquals(generation, getLastCommitGeneration(noWaitService));
+        // The commit occurs once the delay has elapsed, and makes the document visible
+        waitFor(() -> isCommitted(noWaitService, generation));
+        waitFor(() -> noWaitService.getIndexStatus().numDocs == 1);
+    }
+
+    @Index(name = "GroupCommit",
+            schema = "TestQueries",
+            commitPolicy = IndexSettingsDefinition.CommitPolicy.GROUP,
+            groupCommitDelayMs = 50,
+            groupCommitMaxPending = 16)
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        Record(final String id) {
+            this.id = id;
+        }
+
+        public Record() {
+            this(null);
+        }
+    }
+
+    @Index(name = "GroupCommitVisible",
+            schema = "TestQueries",
+            commitPolicy = IndexSettingsDefinition.CommitPolicy.GROUP,
+            commitWait = IndexSettingsDefinition.CommitWait.VISIBLE,
+            groupCommitDelayMs = LONG_DELAY_MS,
+            groupCommitMaxPending = 1000)
+    static public class VisibleRecord {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        VisibleRecord(final String id) {
+            this.id = id;
+        }
+
+        public VisibleRecord() {
+            this(null);
+        }
+    }
+
+    @Index(name = "GroupCommitNoWait",
+            schema = "TestQueries",
+            commitPolicy = IndexSettingsDefinition.CommitPolicy.GROUP,
+            commitWait = IndexSettingsDefinition.CommitWait.NONE,
+            groupCommitDelayMs = LONG_DELAY_MS,
+            groupCommitMaxPending = 1000)
+    static public class NoWaitRecord {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        NoWaitRecord(final String id) {
+            this.id = id;
+        }
+
+        public NoWaitRecord() {
+            this(null);
+        }
+    }
+}
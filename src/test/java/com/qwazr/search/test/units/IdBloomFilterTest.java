@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import org.apache.lucene.codecs.bloom.BloomFilteringPostingsFormat;
+import org.apache.lucene.codecs.perfield.PerFieldPostingsFormat;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.Collections;
+
+public class IdBloomFilterTest extends AbstractIndexTest {
+
+    private static AnnotatedIndexService<Record> indexService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException {
+        indexService = initIndexService(Record.class);
+    }
+
+    @Test
+    public void upsert() throws IOException, InterruptedException, ReflectiveOperationException {
+        for (int i = 0; i < 10; i++)
+            indexService.postDocument(new Record(Integer.toString(i), "first"));
+        for (int i = 0; i < 10; i++)
+            indexService.postDocument(new Record(Integer.toString(i), "second"));
+        Assert.assertEquals(10L, indexService.getIndexStatus().numDocs, 0);
+        Assert.assertEquals("second", indexService.getDocument("5").value);
+    }
+
+    @Test
+    public void bloomPostingsFormat() throws IOException, InterruptedException {
+        // The commit user data makes the document committed, the id is one of the upsert test
+        indexService.postDocument(new Record("0", "first"), Collections.singletonMap("test", "bloom"));
+        final Path dataDirectory = rootDirectory.resolve(indexService.getSchemaName())
+                .resolve(indexService.getIndexName())
+                .resolve("data");
+        try (final Directory directory = FSDirectory.open(dataDirectory)) {
+            final long end = System.currentTimeMillis() + 10_000;
+            while (!hasSegments(directory) && System.currentTimeMillis() < end)
+                Thread.sleep(50);
+            try (final DirectoryReader reader = DirectoryReader.open(directory)) {
+                Assert.assertFalse(reader.leaves().isEmpty());
+                // Each segment serves the id field with the bloom filter postings format
+                for (final LeafReaderContext leaf : reader.leaves()) {
+                    final FieldInfo fieldInfo = leaf.reader().getFieldInfos().fieldInfo(FieldDefinition.ID_FIELD);
+                    Assert.assertNotNull(fieldInfo);
+                    Assert.assertEquals(BloomFilteringPostingsFormat.BLOOM_CODEC_NAME,
+                            fieldInfo.getAttribute(PerFieldPostingsFormat.PER_FIELD_FORMAT_KEY));
+                }
+            }
+        }
+    }
+
+    private static boolean hasSegments(final Directory directory) throws IOException {
+        if (!DirectoryReader.indexExists(directory))
+            return false;
+        try (final DirectoryReader reader = DirectoryReader.open(directory)) {
+            return !reader.leaves().isEmpty();
+        }
+    }
+
+    @Index(name = "IdBloomFilter", schema = "TestQueries", idBloomFilter = true)
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        @IndexField(template = FieldDefinition.Template.StoredField)
+        final public String value;
+
+        Record(final String id, final String value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        public Record() {
+            this(null, null);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.FacetDefinition;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.query.MatchAllDocsQuery;
+import com.qwazr.search.query.TermQuery;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Map;
+
+public class IncrementalFacetsStateTest extends AbstractIndexTest {
+
+    private static AnnotatedIndexService<Record> indexService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException, IOException, InterruptedException {
+        indexService = initIndexService(Record.class);
+        indexManager.getService()
+                .createUpdateIndex(indexService.getSchemaName(), indexService.getIndexName(),
+                        IndexSettingsDefinition.of()
+                                .sortedSetFacetState(IndexSettingsDefinition.SortedSetFacetState.INCREMENTAL)
+                                .build());
+        indexService.postDocument(new Record("1", "red"));
+        indexService.postDocument(new Record("2", "blue"));
+        indexService.postDocument(new Record("3", "red"));
+    }
+
+    private static Map<String, Number> facet() {
+        return indexService.searchQuery(QueryDefinition.of(new MatchAllDocsQuery())
+                .facet("color", new FacetDefinition())
+                .build()).getFacet("color");
+    }
+
+    @Test
+    public void countsAcrossReopens() throws IOException, InterruptedException {
+        Map<String, Number> facet = facet();
+        Assert.assertEquals(2, facet.get("red").intValue());
+        Assert.assertEquals(1, facet.get("blue").intValue());
+
+        // Deletions only: the ordinals are reused
+        indexService.deleteByQuery(QueryDefinition.of(new TermQuery(FieldDefinition.ID_FIELD, "3")).build());
+        facet = facet();
+        Assert.assertEquals(1, facet.get("red").intValue());
+        Assert.assertEquals(1, facet.get("blue").intValue());
+
+        // A new segment with a new value: the ordinals are built again
+        indexService.postDocument(new Record("4", "green"));
+        facet = facet();
+        Assert.assertEquals(1, facet.get("red").intValue());
+        Assert.assertEquals(1, facet.get("blue").intValue());
+        Assert.assertEquals(1, facet.get("green").intValue());
+    }
+
+    @Index(name = "IncrementalFacetsState", schema = "TestQueries")
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        @IndexField(template = FieldDefinition.Template.SortedSetDocValuesFacetField, facetMultivalued = false)
+        final public String color;
+
+        Record(final String id, final String color) {
+            this.id = id;
+            this.color = color;
+        }
+
+        public Record() {
+            this(null, null);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.index.ResultDefinition;
+import com.qwazr.search.query.MatchAllDocsQuery;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class IndexSortTest extends AbstractIndexTest {
+
+    private final static int COUNT = 1000;
+
+    private static AnnotatedIndexService<Record> indexService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException, IOException, InterruptedException {
+        indexService = initIndexService(Record.class);
+        indexManager.getService()
+                .createUpdateIndex(indexService.getSchemaName(), indexService.getIndexName(),
+                        IndexSettingsDefinition.of()
+                                .indexSort("timestamp", QueryDefinition.SortEnum.descending)
+                                .build());
+        final List<Record> records = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++)
+            records.add(new Record(Integer.toString(i), (long) i));
+        indexService.postDocuments(records);
+    }
+
+    private static ResultDefinition.WithObject<Record> latest(final Integer totalHitsThreshold) {
+        final ResultDefinition.WithObject<Record> result = indexService.searchQuery(
+                QueryDefinition.of(new MatchAllDocsQuery())
+                        .sort("timestamp", QueryDefinition.SortEnum.descending)
+                        .returnedField(FieldDefinition.ID_FIELD)
+                        .rows(5)
+                        .totalHitsThreshold(totalHitsThreshold)
+                        .build());
+        Assert.assertEquals(5, result.documents.size());
+        for (int i = 0; i < 5; i++)
+            Assert.assertEquals(Integer.toString(999 - i), result.documents.get(i).record.id);
+        return result;
+    }
+
+    @Test
+    public void latestFirst() {
+        // Without a threshold, every hit is counted
+        final ResultDefinition.WithObject<Record> result = latest(null);
+        Assert.assertEquals(Long.valueOf(COUNT), result.total_hits);
+        Assert.assertFalse(result.isTotalHitsApproximate());
+    }
+
+    @Test
+    public void earlyTerminated() {
+        // Past the threshold, the sorted segments stop collecting
+        final ResultDefinition.WithObject<Record> result = latest(10);
+        Assert.assertTrue(result.total_hits >= 10);
+        Assert.assertTrue(result.total_hits < COUNT);
+        Assert.assertTrue(result.isTotalHitsApproximate());
+    }
+
+    @Test
+    public void thresholdNotReached() {
+        final ResultDefinition.WithObject<Record> result = latest(COUNT * 2);
+        Assert.assertEquals(Long.valueOf(COUNT), result.total_hits);
+        Assert.assertFalse(result.isTotalHitsApproximate());
+    }
+
+    @Index(name = "IndexSort", schema = "TestQueries")
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        @IndexField(template = FieldDefinition.Template.SortedLongDocValuesField)
+        final public Long timestamp;
+
+        Record(final String id, final Long timestamp) {
+            this.id = id;
+            this.timestamp = timestamp;
+        }
+
+        public Record() {
+            this(null, null);
+        }
+    }
+}
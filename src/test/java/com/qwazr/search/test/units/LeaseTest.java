@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.IndexStatus;
+import com.qwazr.search.index.LeaseDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.query.MatchAllDocsQuery;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LeaseTest extends AbstractIndexTest {
+
+    private final static int MAX_LEASES = 2;
+
+    private static AnnotatedIndexService<Record> indexService;
+    private static AnnotatedIndexService<CappedRecord> cappedService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException, IOException, InterruptedException {
+        indexService = initIndexService(Record.class);
+        cappedService = initIndexService(CappedRecord.class);
+        indexService.postDocument(new Record("1"));
+        indexService.postDocument(new Record("2"));
+    }
+
+    private static long count(final String lease) {
+        return indexService.searchQuery(QueryDefinition.of(new MatchAllDocsQuery()).lease(lease).build()).total_hits;
+    }
+
+    @Test
+    public void pointInTime() throws IOException, InterruptedException {
+        final long before = count(null);
+        final LeaseDefinition lease = indexService.acquireLease(30000L);
+        Assert.assertNotNull(lease.leaseId);
+        Assert.assertEquals(Long.valueOf(30000L), lease.ttlMs);
+
+        indexService.postDocument(new Record("new"));
+
+        // The lease still sees the previous version, the other queries see the new document
+        Assert.assertEquals(before, count(lease.leaseId));
+        Assert.assertEquals(before + 1, count(null));
+
+        IndexStatus.LeaseStats stats = indexService.getIndexStatus().leases;
+        Assert.assertEquals(Integer.valueOf(1), stats.activeCount);
+        Assert.assertEquals(lease.version, stats.oldestVersion);
+
+        Assert.assertTrue(indexService.releaseLease(lease.leaseId));
+        stats = indexService.getIndexStatus().leases;
+        Assert.assertEquals(Integer.valueOf(0), stats.activeCount);
+        Assert.assertTrue(stats.releasedCount >= 1);
+
+        try {
+            count(lease.leaseId);
+            Assert.fail("Exception not thrown");
+        } catch (WebApplicationException e) {
+            Assert.assertEquals(404, e.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void expiration() throws InterruptedException {
+        final LeaseDefinition lease = indexService.acquireLease(1L);
+        Thread.sleep(50);
+        try {
+            count(lease.leaseId);
+            Assert.fail("Exception not thrown");
+        } catch (WebApplicationException e) {
+            Assert.assertEquals(404, e.getResponse().getStatus());
+        }
+        Assert.assertTrue(indexService.getIndexStatus().leases.expiredCount >= 1);
+    }
+
+    @Test
+    public void reapedByTimer() throws InterruptedException {
+        final long expired = indexService.getIndexStatus().leases.expiredCount;
+        indexService.acquireLease(1L);
+        // No other operation on the leases: the timer releases the expired one
+        final long timeout = System.currentTimeMillis() + 10000;
+        IndexStatus.LeaseStats stats;
+        while ((stats = indexService.getIndexStatus().leases).expiredCount == expired) {
+            Assert.assertTrue("Timeout", System.currentTimeMillis() < timeout);
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(Integer.valueOf(0), stats.activeCount);
+    }
+
+    @Test
+    public void maxLeases() {
+        Assert.assertEquals(Integer.valueOf(MAX_LEASES), cappedService.getIndexStatus().settings.maxLeases);
+        final List<LeaseDefinition> leases = new ArrayList<>();
+        try {
+            for (int i = 0; i < MAX_LEASES; i++)
+                leases.add(cappedService.acquireLease(30000L));
+            try {
+                cappedService.acquireLease(30000L);
+                Assert.fail("Exception not thrown");
+            } catch (WebApplicationException e) {
+                Assert.assertEquals(503, e.getResponse().getStatus());
+            }
+            // A released lease frees a slot
+            Assert.assertTrue(cappedService.releaseLease(leases.remove(0).leaseId));
+            leases.add(cappedService.acquireLease(30000L));
+        } finally {
+            for (final LeaseDefinition lease : leases)
+                cappedService.releaseLease(lease.leaseId);
+        }
+        Assert.assertEquals(Integer.valueOf(0), cappedService.getIndexStatus().leases.activeCount);
+    }
+
+    @Index(name = "Lease", schema = "TestQueries")
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        Record(final String id) {
+            this.id = id;
+        }
+
+        public Record() {
+            this(null);
+        }
+    }
+
+    @Index(name = "LeaseCapped", schema = "TestQueries", maxLeases = MAX_LEASES)
+    static public class CappedRecord {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        public CappedRecord() {
+            id = null;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.utils.RandomUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+public class NrtReopenTest extends AbstractIndexTest {
+
+    private final static double MAX_STALE_SEC = 0.5;
+
+    private static AnnotatedIndexService<VisibleRecord> visibleService;
+    private static AnnotatedIndexService<DurableRecord> durableService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException {
+        visibleService = initIndexService(VisibleRecord.class);
+        durableService = initIndexService(DurableRecord.class);
+    }
+
+    @Before
+    public void beforeTest() {
+        visibleService.deleteAll();
+        durableService.deleteAll();
+    }
+
+    @Test
+    public void settings() {
+        final IndexSettingsDefinition settings = visibleService.getIndexStatus().settings;
+        Assert.assertEquals(MAX_STALE_SEC, settings.nrtTargetMaxStaleSec, 0);
+        Assert.assertEquals(0.01, settings.nrtTargetMinStaleSec, 0);
+    }
+
+    @Test
+    public void visibleAfterCommit() throws IOException, InterruptedException {
+        for (int i = 1; i <= 10; i++) {
+            visibleService.postDocument(new VisibleRecord(RandomUtils.alphanumeric(10)));
+            // VISIBLE: the write returns once the reopen thread has refreshed the searcher
+            Assert.assertEquals(i, visibleService.getIndexStatus().numDocs, 0);
+        }
+    }
+
+    @Test
+    public void visibleWithinMaxStale() throws IOException, InterruptedException {
+        durableService.postDocument(new DurableRecord(RandomUtils.alphanumeric(10)));
+        // DURABLE: the reopen thread makes the document visible within the target staleness
+        final long timeout = System.currentTimeMillis() + (long) (MAX_STALE_SEC * 1000 * 10);
+        while (durableService.getIndexStatus().numDocs != 1) {
+            Assert.assertTrue("Timeout", System.currentTimeMillis() < timeout);
+            Thread.sleep(10);
+        }
+    }
+
+    @Index(name = "NrtReopenVisible",
+            schema = "TestQueries",
+            commitWait = IndexSettingsDefinition.CommitWait.VISIBLE,
+            nrtTargetMaxStaleSec = MAX_STALE_SEC,
+            nrtTargetMinStaleSec = 0.01)
+    static public class VisibleRecord {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        VisibleRecord(final String id) {
+            this.id = id;
+        }
+
+        public VisibleRecord() {
+            this(null);
+        }
+    }
+
+    @Index(name = "NrtReopenDurable",
+            schema = "TestQueries",
+            nrtTargetMaxStaleSec = MAX_STALE_SEC,
+            nrtTargetMinStaleSec = 0.01)
+    static public class DurableRecord {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        DurableRecord(final String id) {
+            this.id = id;
+        }
+
+        public DurableRecord() {
+            this(null);
+        }
+    }
+}
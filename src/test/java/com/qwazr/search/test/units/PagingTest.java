@@ -30,6 +30,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -106,6 +107,48 @@ public class PagingTest extends AbstractIndexTest.WithIndexRecord.WithTaxonomy {
 		Assert.assertEquals(totalHits, idSetMap.size());
 	}
 
+	private static List<String> getIds(final ResultDefinition.WithMap result) {
+		final List<String> ids = new ArrayList<>();
+		result.getDocuments().forEach(doc -> ids.add((String) doc.getFields().get(FieldDefinition.ID_FIELD)));
+		return ids;
+	}
+
+	private void checkCursorPaging(final QueryBuilder builder) {
+		final List<String> expectedIds = getIds(indexService.searchQueryWithMap(builder.start(0).rows(1000).build()));
+		Assert.assertEquals(documents.size(), expectedIds.size());
+		final List<String> ids = new ArrayList<>();
+		builder.start(0);
+		for (; ; ) {
+			final ResultDefinition.WithMap result =
+					indexService.searchQueryWithMap(builder.rows(RandomUtils.nextInt(8, 20)).build());
+			Assert.assertEquals(documents.size(), result.getTotalHits().intValue());
+			if (result.getSearchAfter() == null)
+				break;
+			ids.addAll(getIds(result));
+			builder.searchAfter(result.getSearchAfter());
+		}
+		Assert.assertEquals(expectedIds, ids);
+	}
+
+	@Test
+	public void cursorWithoutSort() throws URISyntaxException {
+		checkCursorPaging(QueryDefinition.of(new MatchAllDocsQuery()).returnedField(FieldDefinition.ID_FIELD));
+	}
+
+	@Test
+	public void cursorSort() throws URISyntaxException {
+		checkCursorPaging(QueryDefinition.of(new MatchAllDocsQuery())
+				.returnedField(FieldDefinition.ID_FIELD)
+				.sort("sortedDocValue", QueryDefinition.SortEnum.descending));
+	}
+
+	@Test
+	public void pagingDocOrder() throws URISyntaxException {
+		checkPaging(QueryDefinition.of(new MatchAllDocsQuery())
+				.returnedField("*")
+				.sort(FieldDefinition.DOC_FIELD, QueryDefinition.SortEnum.ascending));
+	}
+
 	@Test
 	public void pagingWithoutSort() throws URISyntaxException {
 		checkPaging(QueryDefinition.of(new MatchAllDocsQuery()).returnedField("*"));
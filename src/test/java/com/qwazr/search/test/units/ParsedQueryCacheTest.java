@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.query.AbstractQuery;
+import com.qwazr.search.query.MultiFieldQuery;
+import com.qwazr.search.query.QueryParser;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+public class ParsedQueryCacheTest extends AbstractIndexTest {
+
+    private static AnnotatedIndexService<Record> indexService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException, IOException, InterruptedException {
+        indexService = initIndexService(Record.class);
+        indexManager.getService()
+                .createUpdateIndex(indexService.getSchemaName(), indexService.getIndexName(),
+                        IndexSettingsDefinition.of().parsedQueryCacheSize(100).build());
+        indexService.postDocument(new Record("1", "hello"));
+    }
+
+    private static long count(final AbstractQuery query) {
+        return indexService.searchQuery(QueryDefinition.of(query).build()).total_hits;
+    }
+
+    @Test
+    public void reusedAcrossRefresh() throws IOException, InterruptedException {
+        final QueryParser queryParser = QueryParser.of("content").setQueryString("hello").build();
+        final MultiFieldQuery multiFieldQuery =
+                MultiFieldQuery.of().fieldBoost("content", 1.0F).queryString("hello").build();
+
+        Assert.assertEquals(1, count(queryParser));
+        Assert.assertEquals(1, count(queryParser));
+        Assert.assertEquals(1, count(multiFieldQuery));
+
+        indexService.postDocument(new Record("2", "hello world"));
+
+        // The parsed query is still valid, the multi field query depends on the reader and is built again
+        Assert.assertEquals(2, count(queryParser));
+        Assert.assertEquals(2, count(multiFieldQuery));
+    }
+
+    @Index(name = "ParsedQueryCache", schema = "TestQueries")
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        @IndexField(template = FieldDefinition.Template.TextField, analyzerClass = StandardAnalyzer.class)
+        final public String content;
+
+        Record(final String id, final String content) {
+            this.id = id;
+            this.content = content;
+        }
+
+        public Record() {
+            this(null, null);
+        }
+    }
+}
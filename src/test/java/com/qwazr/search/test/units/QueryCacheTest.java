@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.IndexStatus;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.query.AbstractQuery;
+import com.qwazr.search.query.BooleanQuery;
+import com.qwazr.search.query.CachingHintQuery;
+import com.qwazr.search.query.MatchAllDocsQuery;
+import com.qwazr.search.query.TermQuery;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+public class QueryCacheTest extends AbstractIndexTest {
+
+    private static AnnotatedIndexService<Record> indexService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException, IOException, InterruptedException {
+        indexService = initIndexService(Record.class);
+        indexManager.getService()
+                .createUpdateIndex(indexService.getSchemaName(), indexService.getIndexName(),
+                        IndexSettingsDefinition.of()
+                                .queryCacheMaxMb(1D)
+                                .queryCacheMinLeafSize(0)
+                                .queryCachePolicy(IndexSettingsDefinition.QueryCachePolicy.NEVER)
+                                .build());
+        indexService.postDocument(new Record("1", "a"));
+        indexService.postDocument(new Record("2", "b"));
+    }
+
+    private static long searchAndCount(final AbstractQuery filter) {
+        final QueryDefinition query = QueryDefinition.of(
+                BooleanQuery.of().must(new MatchAllDocsQuery()).filter(filter).build()).build();
+        Assert.assertEquals(Long.valueOf(1), indexService.searchQuery(query).total_hits);
+        final IndexStatus.QueryCacheStats stats = indexService.getIndexStatus().queryCache;
+        Assert.assertNotNull(stats);
+        return stats.cacheSize;
+    }
+
+    @Test
+    public void cachingHint() {
+        // The policy of the index never caches, unless a hint says so
+        Assert.assertEquals(0, searchAndCount(new TermQuery("category", "a")));
+        Assert.assertEquals(0, searchAndCount(new CachingHintQuery(new TermQuery("category", "a"), false)));
+        Assert.assertEquals(1, searchAndCount(new CachingHintQuery(new TermQuery("category", "a"), true)));
+        Assert.assertEquals(2, searchAndCount(new CachingHintQuery(new TermQuery("category", "b"), null)));
+    }
+
+    @Index(name = "QueryCache", schema = "TestQueries")
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        @IndexField(template = FieldDefinition.Template.StringField)
+        final public String category;
+
+        Record(final String id, final String category) {
+            this.id = id;
+            this.category = category;
+        }
+
+        public Record() {
+            this(null, null);
+        }
+    }
+}
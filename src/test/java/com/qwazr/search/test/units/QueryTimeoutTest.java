@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.collector.BaseCollector;
+import com.qwazr.search.collector.ConcurrentCollector;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.FacetDefinition;
+import com.qwazr.search.index.QueryBuilder;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.index.ResultDefinition;
+import com.qwazr.search.query.AbstractQuery;
+import com.qwazr.search.query.DrillDownQuery;
+import com.qwazr.search.query.MatchAllDocsQuery;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Scorer;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A slow collector makes the queries exceed their time budget: the partial results are flagged as timed out,
+ * and the facets are not counted.
+ */
+public class QueryTimeoutTest extends AbstractIndexTest {
+
+    private final static int COUNT = 2000;
+    private final static long TIMEOUT_MS = 50;
+
+    private static AnnotatedIndexService<Record> indexService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException, IOException, InterruptedException {
+        indexService = initIndexService(Record.class);
+        final List<Record> records = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++)
+            records.add(new Record(Integer.toString(i), "category" + (i % 4)));
+        indexService.postDocuments(records);
+    }
+
+    private static QueryBuilder query(final AbstractQuery query) {
+        return QueryDefinition.of(query).rows(10).facet("category", FacetDefinition.of(10).build());
+    }
+
+    private static void checkTimedOut(final QueryBuilder queryBuilder) {
+        for (final Class<? extends SlowCollector> collectorClass : new Class[] { SlowCollector.class,
+                SlowCollector.Concurrent.class }) {
+            final ResultDefinition.WithObject<Record> result = indexService.searchQuery(
+                    queryBuilder.timeoutMs(TIMEOUT_MS).collector("slow", collectorClass).build());
+            Assert.assertTrue(result.isTimedOut());
+            Assert.assertTrue(result.total_hits < COUNT);
+            Assert.assertFalse(result.isAnyFacet());
+        }
+    }
+
+    private static void checkNotTimedOut(final QueryBuilder queryBuilder) {
+        final ResultDefinition.WithObject<Record> result = indexService.searchQuery(queryBuilder.build());
+        Assert.assertFalse(result.isTimedOut());
+        Assert.assertTrue(result.isAnyFacet());
+    }
+
+    @Test
+    public void timedOut() {
+        checkNotTimedOut(query(new MatchAllDocsQuery()));
+        checkTimedOut(query(new MatchAllDocsQuery()));
+    }
+
+    @Test
+    public void drillSidewaysTimedOut() {
+        checkNotTimedOut(query(new DrillDownQuery(new MatchAllDocsQuery(), true).filter("category", "category1")));
+        checkTimedOut(query(new DrillDownQuery(new MatchAllDocsQuery(), true).filter("category", "category1")));
+    }
+
+    /**
+     * Spends a millisecond on each collected document
+     */
+    public static class SlowCollector extends BaseCollector<Integer> {
+
+        private int count;
+
+        public SlowCollector(final String name) {
+            super(name);
+        }
+
+        @Override
+        public Integer getResult() {
+            return count;
+        }
+
+        @Override
+        public LeafCollector getLeafCollector(final LeafReaderContext context) {
+            return new LeafCollector() {
+
+                @Override
+                public void setScorer(final Scorer scorer) {
+                }
+
+                @Override
+                public void collect(final int doc) throws IOException {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    count++;
+                }
+            };
+        }
+
+        public static class Concurrent extends SlowCollector implements ConcurrentCollector<Integer> {
+
+            public Concurrent(final String name) {
+                super(name);
+            }
+
+            @Override
+            public Integer getReducedResult(final Collection<BaseCollector<Integer>> collectors) {
+                int count = 0;
+                for (final BaseCollector<Integer> collector : collectors)
+                    count += collector.getResult();
+                return count;
+            }
+        }
+    }
+
+    @Index(name = "QueryTimeout", schema = "TestQueries")
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        @IndexField(template = FieldDefinition.Template.SortedSetDocValuesFacetField, facetMultivalued = false)
+        final public String category;
+
+        Record(final String id, final String category) {
+            this.id = id;
+            this.category = category;
+        }
+
+        public Record() {
+            this(null, null);
+        }
+    }
+}
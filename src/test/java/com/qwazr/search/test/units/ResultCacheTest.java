@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.IndexSettingsDefinition;
+import com.qwazr.search.index.IndexStatus;
+import com.qwazr.search.index.LeaseDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.index.ResultDefinition;
+import com.qwazr.search.query.MatchAllDocsQuery;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+public class ResultCacheTest extends AbstractIndexTest {
+
+    private static AnnotatedIndexService<Record> indexService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException, IOException, InterruptedException {
+        indexService = initIndexService(Record.class);
+        indexManager.getService()
+                .createUpdateIndex(indexService.getSchemaName(), indexService.getIndexName(),
+                        IndexSettingsDefinition.of().resultCacheMaxMb(1D).build());
+        indexService.postDocument(new Record("1"));
+    }
+
+    @Test
+    public void invalidatedOnRefresh() throws IOException, InterruptedException {
+        final QueryDefinition query = QueryDefinition.of(new MatchAllDocsQuery()).returnedField("*").build();
+
+        final ResultDefinition.WithMap first = indexService.searchQueryWithMap(query);
+        Assert.assertEquals(Long.valueOf(1), first.total_hits);
+        final long hitCount = indexService.getIndexStatus().resultCache.hitCount;
+        // The same query is served by the cache, as a copy with its own timer
+        first.getDocuments().get(0).getFields().clear();
+        final ResultDefinition.WithMap second = indexService.searchQueryWithMap(query);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(Long.valueOf(1), second.total_hits);
+        Assert.assertEquals("1", second.getDocuments().get(0).getFields().get(FieldDefinition.ID_FIELD));
+        Assert.assertNotNull(second.getTimer());
+        final IndexStatus.ResultCacheStats stats = indexService.getIndexStatus().resultCache;
+        Assert.assertEquals(hitCount + 1, stats.hitCount, 0);
+        Assert.assertTrue(stats.cacheCount >= 1);
+
+        // A new reader drops the cached results
+        indexService.postDocument(new Record("2"));
+        Assert.assertEquals(Long.valueOf(2), indexService.searchQueryWithMap(query).total_hits);
+    }
+
+    @Test
+    public void leaseIsNotInTheKey() throws IOException {
+        final QueryDefinition query = QueryDefinition.of(new MatchAllDocsQuery()).rows(5).build();
+        indexService.searchQueryWithMap(query);
+        final long hitCount = indexService.getIndexStatus().resultCache.hitCount;
+        final LeaseDefinition lease = indexService.acquireLease(60000L);
+        try {
+            // The leased searcher is the current one: the cached result is served
+            indexService.searchQueryWithMap(QueryDefinition.of(query).lease(lease.leaseId).build());
+            Assert.assertEquals(hitCount + 1, indexService.getIndexStatus().resultCache.hitCount, 0);
+        } finally {
+            indexService.releaseLease(lease.leaseId);
+        }
+    }
+
+    @Index(name = "ResultCache", schema = "TestQueries")
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        Record(final String id) {
+            this.id = id;
+        }
+
+        public Record() {
+            this(null);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.FacetDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.query.MatchAllDocsQuery;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class SampledFacetsTest extends AbstractIndexTest {
+
+    private final static int COUNT = 5000;
+    private final static double TOLERANCE = 0.2;
+
+    private static AnnotatedIndexService<Record> indexService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException, IOException, InterruptedException {
+        indexService = initIndexService(Record.class);
+        final List<Record> records = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            // label0: 50%, label1: 30%, label2: 20%
+            final int mod = i % 10;
+            final String label = "label" + (mod < 5 ? 0 : mod < 8 ? 1 : 2);
+            records.add(new Record(Integer.toString(i), label, label));
+        }
+        indexService.postDocuments(records);
+    }
+
+    private static Map<String, Map<String, Number>> facets(final FacetDefinition facet) {
+        return indexService.searchQuery(QueryDefinition.of(new MatchAllDocsQuery())
+                .rows(0)
+                .facet("sortedSet", facet)
+                .facet("taxonomy", facet)
+                .build()).getFacets();
+    }
+
+    private static void assertExtrapolated(final int expected, final Number count) {
+        Assert.assertNotNull(count);
+        Assert.assertEquals(expected, count.doubleValue(), expected * TOLERANCE);
+    }
+
+    @Test
+    public void extrapolatedCounts() {
+        final Map<String, Map<String, Number>> facets = facets(FacetDefinition.of(3).sampleSize(500).build());
+        for (final String dim : new String[] { "sortedSet", "taxonomy" }) {
+            final Map<String, Number> facet = facets.get(dim);
+            Assert.assertNotNull(facet);
+            Assert.assertEquals(3, facet.size());
+            // The sample holds one document out of ten: the counts are extrapolated to the whole index
+            assertExtrapolated(COUNT / 2, facet.get("label0"));
+            assertExtrapolated(COUNT * 3 / 10, facet.get("label1"));
+            assertExtrapolated(COUNT / 5, facet.get("label2"));
+        }
+        // The sample is deterministic
+        Assert.assertEquals(facets, facets(FacetDefinition.of(3).sampleSize(500).build()));
+    }
+
+    @Test
+    public void recountedCounts() {
+        final Map<String, Map<String, Number>> facets =
+                facets(FacetDefinition.of(3).sampleSize(500).sampleRecount(true).build());
+        for (final String dim : new String[] { "sortedSet", "taxonomy" }) {
+            final Map<String, Number> facet = facets.get(dim);
+            Assert.assertNotNull(facet);
+            Assert.assertEquals(COUNT / 2, facet.get("label0").intValue());
+            Assert.assertEquals(COUNT * 3 / 10, facet.get("label1").intValue());
+            Assert.assertEquals(COUNT / 5, facet.get("label2").intValue());
+        }
+    }
+
+    @Test
+    public void smallResultSetIsExact() {
+        final Map<String, Map<String, Number>> facets = facets(FacetDefinition.of(3).sampleSize(COUNT).build());
+        for (final String dim : new String[] { "sortedSet", "taxonomy" })
+            Assert.assertEquals(COUNT / 2, facets.get(dim).get("label0").intValue());
+    }
+
+    @Index(name = "SampledFacets", schema = "TestQueries", enableTaxonomyIndex = true)
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        @IndexField(template = FieldDefinition.Template.SortedSetDocValuesFacetField, facetMultivalued = false)
+        final public String sortedSet;
+
+        @IndexField(template = FieldDefinition.Template.FacetField)
+        final public String taxonomy;
+
+        Record(final String id, final String sortedSet, final String taxonomy) {
+            this.id = id;
+            this.sortedSet = sortedSet;
+            this.taxonomy = taxonomy;
+        }
+
+        public Record() {
+            this(null, null, null);
+        }
+    }
+}
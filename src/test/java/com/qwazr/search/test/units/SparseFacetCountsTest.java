@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.FacetDefinition;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.query.AbstractQuery;
+import com.qwazr.search.query.MatchAllDocsQuery;
+import com.qwazr.search.query.TermQuery;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class SparseFacetCountsTest extends AbstractIndexTest {
+
+    private final static int COUNT = 3000;
+
+    private static AnnotatedIndexService<Record> indexService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException, IOException, InterruptedException {
+        indexService = initIndexService(Record.class);
+        final List<Record> records = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            // Many distinct labels, and a few documents sharing the same label
+            final String label = "label" + (i < 10 ? 0 : i);
+            records.add(new Record(Integer.toString(i), i < 10 ? "few" : "many", label, label));
+        }
+        indexService.postDocuments(records);
+    }
+
+    private static Map<String, Map<String, Number>> facets(final AbstractQuery query) {
+        return indexService.searchQuery(QueryDefinition.of(query)
+                .rows(0)
+                .facet("sortedSet", FacetDefinition.of(3).build())
+                .facet("taxonomy", FacetDefinition.of(3).build())
+                .build()).getFacets();
+    }
+
+    private static void checkFacet(final Map<String, Number> facet) {
+        Assert.assertNotNull(facet);
+        Assert.assertEquals(1, facet.size());
+        Assert.assertEquals(10, facet.get("label0").intValue());
+    }
+
+    @Test
+    public void sparseCounts() {
+        // Ten hits among thousands of labels: the counts are sparse
+        final Map<String, Map<String, Number>> facets = facets(new TermQuery("group", "few"));
+        checkFacet(facets.get("sortedSet"));
+        checkFacet(facets.get("taxonomy"));
+    }
+
+    @Test
+    public void denseCounts() {
+        // The same counts with a dense array, several times to reuse the pooled arrays
+        for (int i = 0; i < 3; i++) {
+            final Map<String, Map<String, Number>> facets = facets(new MatchAllDocsQuery());
+            for (final String dim : new String[] { "sortedSet", "taxonomy" }) {
+                final Map<String, Number> facet = facets.get(dim);
+                Assert.assertNotNull(facet);
+                Assert.assertEquals(3, facet.size());
+                Assert.assertEquals(10, facet.get("label0").intValue());
+            }
+        }
+        sparseCounts();
+    }
+
+    @Index(name = "SparseFacetCounts", schema = "TestQueries", enableTaxonomyIndex = true)
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        @IndexField(template = FieldDefinition.Template.StringField)
+        final public String group;
+
+        @IndexField(template = FieldDefinition.Template.SortedSetDocValuesFacetField, facetMultivalued = false)
+        final public String sortedSet;
+
+        @IndexField(template = FieldDefinition.Template.FacetField)
+        final public String taxonomy;
+
+        Record(final String id, final String group, final String sortedSet, final String taxonomy) {
+            this.id = id;
+            this.group = group;
+            this.sortedSet = sortedSet;
+            this.taxonomy = taxonomy;
+        }
+
+        public Record() {
+            this(null, null, null, null);
+        }
+    }
+}
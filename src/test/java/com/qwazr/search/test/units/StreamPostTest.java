@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.IndexServiceInterface;
+import com.qwazr.utils.ObjectMappers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class StreamPostTest extends AbstractIndexTest.WithIndexRecord.NoTaxonomy {
+
+    private static IndexServiceInterface service;
+
+    @BeforeClass
+    public static void setup() throws IOException, URISyntaxException {
+        initIndexService();
+        service = indexManager.getService();
+    }
+
+    @Before
+    public void beforeTest() {
+        indexService.deleteAll();
+    }
+
+    private static Map<String, Object> getDoc(final int i) {
+        final Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put(FieldDefinition.ID_FIELD, Integer.toString(i));
+        doc.put("storedField", "doc" + i);
+        return doc;
+    }
+
+    private int post(final String content, final String contentType) {
+        return service.postMappedDocumentsStream(indexService.getSchemaName(), indexService.getIndexName(), true, null,
+                contentType, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void ndjsonStream() throws IOException {
+        final int size = 5000;
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++)
+            sb.append(ObjectMappers.JSON.writeValueAsString(getDoc(i))).append('\n');
+        Assert.assertEquals(size, post(sb.toString(), IndexServiceInterface.MEDIATYPE_APPLICATION_NDJSON));
+        Assert.assertEquals(size, indexService.getIndexStatus().numDocs, 0);
+    }
+
+    @Test
+    public void lastVersionWins() throws IOException {
+        final int ids = 10;
+        final int versions = 500;
+        final StringBuilder sb = new StringBuilder();
+        for (int version = 0; version < versions; version++) {
+            for (int i = 0; i < ids; i++) {
+                final Map<String, Object> doc = getDoc(i);
+                doc.put("storedField", "doc" + i + "-v" + version);
+                sb.append(ObjectMappers.JSON.writeValueAsString(doc)).append('\n');
+            }
+        }
+        Assert.assertEquals(ids * versions, post(sb.toString(), IndexServiceInterface.MEDIATYPE_APPLICATION_NDJSON));
+        Assert.assertEquals(ids, indexService.getIndexStatus().numDocs, 0);
+        for (int i = 0; i < ids; i++)
+            Assert.assertEquals("doc" + i + "-v" + (versions - 1),
+                    service.getDocument(indexService.getSchemaName(), indexService.getIndexName(),
+                            Integer.toString(i)).get("storedField"));
+    }
+
+    @Test
+    public void malformedStream() throws IOException {
+        final int size = 100;
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++)
+            sb.append(ObjectMappers.JSON.writeValueAsString(getDoc(i))).append('\n');
+        try {
+            post(sb.toString() + "{\"$id$\": ", IndexServiceInterface.MEDIATYPE_APPLICATION_NDJSON);
+            Assert.fail("WebApplicationException expected");
+        } catch (WebApplicationException e) {
+            // Expected
+        }
+        // The documents indexed before the error are committed, not rolled back
+        Assert.assertTrue(indexService.getIndexStatus().numDocs <= size);
+        Assert.assertFalse(indexService.getIndexStatus().hasUncommittedChanges);
+        // Posting the corrected stream again is idempotent
+        Assert.assertEquals(size, post(sb.toString(), IndexServiceInterface.MEDIATYPE_APPLICATION_NDJSON));
+        Assert.assertEquals(size, indexService.getIndexStatus().numDocs, 0);
+    }
+}
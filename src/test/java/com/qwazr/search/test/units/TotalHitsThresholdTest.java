@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.QueryBuilder;
+import com.qwazr.search.index.QueryDefinition;
+import com.qwazr.search.index.ResultDefinition;
+import com.qwazr.search.query.MatchAllDocsQuery;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TotalHitsThresholdTest extends AbstractIndexTest {
+
+    private final static int COUNT = 100;
+
+    private static AnnotatedIndexService<Record> indexService;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException, IOException, InterruptedException {
+        indexService = initIndexService(Record.class);
+        final List<Record> records = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++)
+            records.add(new Record(Integer.toString(i)));
+        indexService.postDocuments(records);
+    }
+
+    private static QueryBuilder query() {
+        return QueryDefinition.of(new MatchAllDocsQuery());
+    }
+
+    @Test
+    public void exactByDefault() {
+        final ResultDefinition.WithObject<Record> result = indexService.searchQuery(query().rows(0).build());
+        Assert.assertEquals(Long.valueOf(COUNT), result.total_hits);
+        Assert.assertFalse(result.isTotalHitsApproximate());
+    }
+
+    @Test
+    public void countWithThreshold() {
+        final ResultDefinition.WithObject<Record> result =
+                indexService.searchQuery(query().rows(0).totalHitsThreshold(10).build());
+        Assert.assertTrue(result.total_hits >= 10);
+        Assert.assertTrue(result.total_hits < COUNT);
+        Assert.assertTrue(result.isTotalHitsApproximate());
+    }
+
+    @Test
+    public void indexOrderWithThreshold() {
+        final QueryBuilder builder =
+                query().rows(5).sort(FieldDefinition.DOC_FIELD, QueryDefinition.SortEnum.ascending);
+        final ResultDefinition.WithObject<Record> exact = indexService.searchQuery(builder.build());
+        final ResultDefinition.WithObject<Record> approximate =
+                indexService.searchQuery(builder.totalHitsThreshold(20).build());
+        Assert.assertEquals(Long.valueOf(COUNT), exact.total_hits);
+        Assert.assertTrue(approximate.total_hits >= 20);
+        Assert.assertTrue(approximate.total_hits < COUNT);
+        Assert.assertTrue(approximate.isTotalHitsApproximate());
+        // The returned documents are the same
+        Assert.assertEquals(exact.documents.size(), approximate.documents.size());
+        for (int i = 0; i < exact.documents.size(); i++)
+            Assert.assertEquals(exact.documents.get(i).getDoc(), approximate.documents.get(i).getDoc());
+    }
+
+    @Test
+    public void relevanceIsExact() {
+        // The top hits by relevance need every hit to be scored: the total stays exact
+        final ResultDefinition.WithObject<Record> result =
+                indexService.searchQuery(query().rows(5).totalHitsThreshold(10).build());
+        Assert.assertEquals(Long.valueOf(COUNT), result.total_hits);
+        Assert.assertFalse(result.isTotalHitsApproximate());
+    }
+
+    @Index(name = "TotalHitsThreshold", schema = "TestQueries")
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        Record(final String id) {
+            this.id = id;
+        }
+
+        public Record() {
+            this(null);
+        }
+    }
+}
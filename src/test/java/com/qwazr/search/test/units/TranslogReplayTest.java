@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015-2018 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.search.test.units;
+
+import com.qwazr.search.annotations.AnnotatedIndexService;
+import com.qwazr.search.annotations.Index;
+import com.qwazr.search.annotations.IndexField;
+import com.qwazr.search.field.FieldDefinition;
+import com.qwazr.search.index.IndexManager;
+import com.qwazr.search.index.IndexServiceInterface;
+import com.qwazr.search.index.PostDefinition;
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The index is copied while operations are only in the translog, as a crash would leave it,
+ * then the copy is opened: the replay must give the same documents.
+ */
+public class TranslogReplayTest {
+
+    private final static String SCHEMA = "TranslogReplay";
+    private final static String INDEX = "TranslogReplay";
+
+    private final static int THREADS = 4;
+    private final static int UPDATES_PER_THREAD = 50;
+    private final static int DOCUMENTS = 5;
+
+    private static ExecutorService executor;
+    private static Path rootDirectory;
+    private static Path crashDirectory;
+    private static IndexManager indexManager;
+    private static AnnotatedIndexService<Record> indexService;
+
+    @BeforeClass
+    public static void setup() throws IOException, URISyntaxException {
+        executor = Executors.newCachedThreadPool();
+        rootDirectory = Files.createTempDirectory("qwazr_translog_test");
+        crashDirectory = Files.createTempDirectory("qwazr_translog_crash");
+        indexManager = new IndexManager(rootDirectory, executor);
+        indexService = indexManager.getService(Record.class);
+        indexService.createUpdateSchema();
+        indexService.createUpdateIndex();
+        indexService.createUpdateFields();
+    }
+
+    @AfterClass
+    public static void cleanup() throws IOException {
+        if (indexManager != null)
+            indexManager.close();
+        if (executor != null)
+            executor.shutdown();
+        if (rootDirectory != null)
+            FileUtils.deleteDirectory(rootDirectory.toFile());
+        if (crashDirectory != null)
+            FileUtils.deleteDirectory(crashDirectory.toFile());
+    }
+
+    private static List<String> getIds() {
+        final List<String> ids = new ArrayList<>();
+        for (int i = 0; i < DOCUMENTS; i++)
+            ids.add("id" + i);
+        return ids;
+    }
+
+    @Test
+    public void replayAfterCrash()
+            throws IOException, InterruptedException, ExecutionException, URISyntaxException {
+        final IndexServiceInterface service = indexManager.getService();
+
+        // Concurrent updates of the same documents
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                    final Map<String, Object> document = new HashMap<>();
+                    document.put(FieldDefinition.ID_FIELD, "id" + (i % DOCUMENTS));
+                    document.put("title", "thread" + thread + "-update" + i);
+                    service.postMappedDocument(SCHEMA, INDEX, PostDefinition.of(document, null, true));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+
+        final List<Map<String, Object>> expected = service.getDocumentsById(SCHEMA, INDEX, true, getIds());
+        Assert.assertEquals(DOCUMENTS, expected.size());
+
+        // The commit interval is not elapsed: the updates are only in the translog
+        Assert.assertTrue(indexService.getIndexStatus().hasUncommittedChanges);
+        FileUtils.copyDirectory(rootDirectory.toFile(), crashDirectory.toFile());
+
+        try (final IndexManager crashManager = new IndexManager(crashDirectory, executor)) {
+            final IndexServiceInterface crashService = crashManager.getService();
+            Assert.assertEquals(expected, crashService.getDocumentsById(SCHEMA, INDEX, true, getIds()));
+            Assert.assertEquals(DOCUMENTS, crashManager.getService(Record.class).getIndexStatus().numDocs, 0);
+        }
+    }
+
+    @Index(name = INDEX, schema = SCHEMA, translog = true, translogCommitIntervalSec = 3600)
+    static public class Record {
+
+        @IndexField(name = FieldDefinition.ID_FIELD,
+                template = FieldDefinition.Template.StringField,
+                stored = true)
+        final public String id;
+
+        @IndexField(template = FieldDefinition.Template.StringField, stored = true)
+        final public String title;
+
+        public Record() {
+            id = null;
+            title = null;
+        }
+    }
+}